@@ -0,0 +1,227 @@
+package owl.core.structure;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import javax.vecmath.Point3d;
+
+/**
+ * A cache of ASA calculation results with LRU eviction, to avoid recalculating the ASAs of
+ * the same set of atoms, e.g. the same chain in the same orientation in different interfaces
+ * or when processing many entries (or the same entry several times) in one process.
+ *
+ * The key is made of the atom radii and the atom coordinates relative to the first atom
+ * (rounded to {@link #COORD_PRECISION}) together with the calculation parameters: a hash of
+ * them is used for the lookup, but a hit needs all of them to be equal.
+ * The relative coordinates are invariant to translations but not to rotations: since the
+ * Shrake-Rupley sampling depends on the orientation of the molecule (see
+ * {@link InterfacesFinder}), two sets of atoms only share a cache entry if they are related
+ * by a pure translation, i.e. if they are in the same rotation class.
+ *
+ * The size of the cache is bounded by the total number of atoms of the cached results.
+ *
+ * The cache can be used concurrently from several threads.
+ */
+public class AsaCache {
+
+	public static final int DEFAULT_MAX_ATOMS = 1000000;
+
+	// the relative coordinates are rounded to this precision (in Angstroms) for the hashing
+	private static final double COORD_PRECISION = 0.0001;
+
+	private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+	private static final long FNV_PRIME = 0x100000001b3L;
+
+	private static class Key {
+
+		private double[] radii;
+		private long[] relCoords;	// the rounded coordinates relative to the first atom, packed as x,y,z of each atom
+		private long atomsHash;
+		private int nSpherePoints;
+		private double probe;
+		private boolean hetAtoms;
+
+		public Key(Atom[] atoms, int nSpherePoints, double probe, boolean hetAtoms) {
+			this.radii = new double[atoms.length];
+			this.relCoords = new long[3*atoms.length];
+			if (atoms.length>0) {
+				Point3d first = atoms[0].getCoords();
+				for (int i=0;i<atoms.length;i++) {
+					Point3d coords = atoms[i].getCoords();
+					radii[i] = AtomRadii.getRadius(atoms[i]);
+					relCoords[3*i]   = Math.round((coords.x-first.x)/COORD_PRECISION);
+					relCoords[3*i+1] = Math.round((coords.y-first.y)/COORD_PRECISION);
+					relCoords[3*i+2] = Math.round((coords.z-first.z)/COORD_PRECISION);
+				}
+			}
+			this.atomsHash = hashAtoms(radii, relCoords);
+			this.nSpherePoints = nSpherePoints;
+			this.probe = probe;
+			this.hetAtoms = hetAtoms;
+		}
+
+		public int getNumAtoms() {
+			return radii.length;
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (!(o instanceof Key)) return false;
+			Key other = (Key) o;
+			// the hash is only a shortcut: on a hash collision the atoms themselves differ and it is a miss
+			return atomsHash==other.atomsHash &&
+					nSpherePoints==other.nSpherePoints &&
+					probe==other.probe &&
+					hetAtoms==other.hetAtoms &&
+					Arrays.equals(radii, other.radii) &&
+					Arrays.equals(relCoords, other.relCoords);
+		}
+
+		@Override
+		public int hashCode() {
+			return (int)(atomsHash^(atomsHash>>>32)) + 31*nSpherePoints;
+		}
+	}
+
+	private final int maxAtoms;
+	private final LinkedHashMap<Key, double[]> cache;
+	private long numAtoms;		// the total number of atoms of the cached results
+
+	private long hits;
+	private long misses;
+
+	/**
+	 * Constructs a new cache that will hold ASA results of at most {@value #DEFAULT_MAX_ATOMS} atoms in total.
+	 */
+	public AsaCache() {
+		this(DEFAULT_MAX_ATOMS);
+	}
+
+	/**
+	 * Constructs a new cache that will hold ASA results of at most maxAtoms atoms in total,
+	 * the least recently used results being evicted first. Results of more than maxAtoms
+	 * atoms are not cached.
+	 * @param maxAtoms
+	 */
+	public AsaCache(int maxAtoms) {
+		this.maxAtoms = maxAtoms;
+		// access ordered map: the eldest entry is the least recently used
+		this.cache = new LinkedHashMap<Key, double[]>(16, 0.75f, true);
+		this.numAtoms = 0;
+		this.hits = 0;
+		this.misses = 0;
+	}
+
+	/**
+	 * Returns the ASAs of the given atoms, from the cache if an equivalent set of atoms
+	 * was calculated before with the same parameters or otherwise calculating them
+	 * with {@link AsaCalculator} and storing them in the cache.
+	 * @param atoms
+	 * @param probe
+	 * @param nSpherePoints
+	 * @param nThreads
+	 * @param hetAtoms whether the atoms include HET residues, part of the key so that
+	 * results are not shared between calculations with different settings
+	 * @return an array with the ASA of each of the given atoms (a new array that the caller can modify)
+	 */
+	public double[] calculateAsa(Atom[] atoms, double probe, int nSpherePoints, int nThreads, boolean hetAtoms) {
+		Key key = new Key(atoms, nSpherePoints, probe, hetAtoms);
+
+		double[] asas = null;
+		synchronized (this) {
+			asas = cache.get(key);
+			if (asas!=null) {
+				hits++;
+				return asas.clone();
+			}
+			misses++;
+		}
+
+		// we calculate outside of the lock: 2 threads could end up calculating the same thing, which is harmless
+		AsaCalculator asaCalc = new AsaCalculator(atoms, probe, nSpherePoints, nThreads);
+		asas = asaCalc.calculateAsa();
+
+		if (atoms.length<=maxAtoms) {
+			synchronized (this) {
+				if (cache.put(key, asas.clone())==null) {
+					numAtoms += atoms.length;
+				}
+				// evicting the least recently used results until we are within the bound
+				Iterator<Map.Entry<Key, double[]>> it = cache.entrySet().iterator();
+				while (numAtoms>maxAtoms && it.hasNext()) {
+					numAtoms -= it.next().getKey().getNumAtoms();
+					it.remove();
+				}
+			}
+		}
+		return asas;
+	}
+
+	/**
+	 * Returns the number of calls to {@link #calculateAsa(Atom[], double, int, int, boolean)} that
+	 * were served from the cache
+	 * @return
+	 */
+	public synchronized long getHits() {
+		return hits;
+	}
+
+	/**
+	 * Returns the number of calls to {@link #calculateAsa(Atom[], double, int, int, boolean)} that
+	 * needed a calculation
+	 * @return
+	 */
+	public synchronized long getMisses() {
+		return misses;
+	}
+
+	/**
+	 * Returns the number of ASA results currently in the cache
+	 * @return
+	 */
+	public synchronized int size() {
+		return cache.size();
+	}
+
+	/**
+	 * Returns the total number of atoms of the ASA results currently in the cache
+	 * @return
+	 */
+	public synchronized long getNumAtoms() {
+		return numAtoms;
+	}
+
+	/**
+	 * Removes all entries from the cache and resets the hit and miss counters.
+	 */
+	public synchronized void clear() {
+		cache.clear();
+		numAtoms = 0;
+		hits = 0;
+		misses = 0;
+	}
+
+	private static long hashAtoms(double[] radii, long[] relCoords) {
+		long hash = FNV_OFFSET_BASIS;
+		for (int i=0;i<radii.length;i++) {
+			hash = hashLong(hash, Double.doubleToLongBits(radii[i]));
+			hash = hashLong(hash, relCoords[3*i]);
+			hash = hashLong(hash, relCoords[3*i+1]);
+			hash = hashLong(hash, relCoords[3*i+2]);
+		}
+		return hash;
+	}
+
+	private static long hashLong(long hash, long value) {
+		// FNV-1a taking the 8 bytes of the value at once, with the value first mixed  
+		// (murmur3's finaliser) so that its high bits also reach the low bits of the hash
+		value ^= value>>>33;
+		value *= 0xff51afd7ed558ccdL;
+		value ^= value>>>33;
+		hash ^= value;
+		hash *= FNV_PRIME;
+		return hash;
+	}
+}
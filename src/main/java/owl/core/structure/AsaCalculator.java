@@ -1,12 +1,14 @@
 package owl.core.structure;
 
 import java.io.File;
-import java.util.ArrayList;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.Arrays;
+import java.util.concurrent.RecursiveAction;
 
 import javax.vecmath.Point3d;
 
+import owl.core.util.Grid;
+import owl.core.util.SharedPools;
+
 
 
 /**
@@ -32,20 +34,52 @@ public class AsaCalculator {
 	public static final double DEFAULT_PROBE_SIZE = 1.4;
 	public static final int DEFAULT_NTHREADS = 1;
 	
+	// the atoms are split in chunks for the parallel calculation: we want several chunks per 
+	// thread because the cost per atom varies a lot (buried atoms are much cheaper than exposed ones)
+	private static final int CHUNKS_PER_THREAD = 8;
+	private static final int MIN_CHUNK_SIZE = 32;
+	
 	
-	private class AsaCalcWorker implements Runnable {
+	/**
+	 * Calculates the ASAs of a range of atoms, splitting itself in halves until 
+	 * the range is not bigger than chunkSize.
+	 */
+	private class AsaCalcTask extends RecursiveAction {
 
-		private int i;
+		private static final long serialVersionUID = 1L;
+		
+		private int start;
+		private int end;
+		private int chunkSize;
 		private double[] asas;
+		// only for the complex calculation (see calculateComplexAsa), otherwise uncomplexedAsas is null
+		private int numFirstGroupAtoms;
+		private double[] uncomplexedAsas;
 		
-		public AsaCalcWorker(int i, double[] asas) {
-			this.i = i;
+		public AsaCalcTask(int start, int end, int chunkSize, double[] asas, int numFirstGroupAtoms, double[] uncomplexedAsas) {
+			this.start = start;
+			this.end = end;
+			this.chunkSize = chunkSize;
 			this.asas = asas;
+			this.numFirstGroupAtoms = numFirstGroupAtoms;
+			this.uncomplexedAsas = uncomplexedAsas;
 		}
 
 		@Override
-		public void run() {
-			asas[i] = calcSingleAsa(i);
+		protected void compute() {
+			if (end-start<=chunkSize) {
+				for (int i=start;i<end;i++) {
+					if (uncomplexedAsas==null) {
+						asas[i] = calcSingleAsa(i);
+					} else {
+						asas[i] = calcSingleComplexAsa(i, numFirstGroupAtoms, uncomplexedAsas);
+					}
+				}
+			} else {
+				int mid = (start+end)>>>1;
+				invokeAll(new AsaCalcTask(start, mid, chunkSize, asas, numFirstGroupAtoms, uncomplexedAsas), 
+						  new AsaCalcTask(mid, end, chunkSize, asas, numFirstGroupAtoms, uncomplexedAsas));
+			}
 		}
 	}
 	
@@ -57,6 +91,19 @@ public class AsaCalculator {
 	private Point3d[] spherePoints;
 	private double cons;
 	
+	private Grid grid;
+	
+	// flat copies of the atom coordinates and sphere points, so that the 
+	// inner loop of the calculation does not need to allocate any objects
+	private boolean useFlatArrays;
+	private double[] x;
+	private double[] y;
+	private double[] z;
+	private double[] radiiPlusProbeSq; 
+	private double[] spx;
+	private double[] spy;
+	private double[] spz;
+	
 	/**
 	 * Constructs a new AsaCalculator. Subsequently call {@link #calculateAsa()}
 	 * to calculate the ASAs.
@@ -64,7 +111,8 @@ public class AsaCalculator {
 	 * @param probe the probe size
 	 * @param nSpherePoints the number of points to be used in generating the spherical 
 	 * dot-density, the more points the more accurate (and slower) calculation
-	 * @param nThreads the number of parallel threads to use for the calculation
+	 * @param nThreads the number of parallel threads to use for the calculation, the threads
+	 * come from a pool shared by all calculations with the same number of threads (see {@link SharedPools})
 	 */
 	public AsaCalculator(Atom[] atoms, double probe, int nSpherePoints, int nThreads) {
 		this.atoms = atoms;
@@ -73,14 +121,55 @@ public class AsaCalculator {
 		
 		// initialising the radii by looking them up through AtomRadii
 		radii = new double[atoms.length];
+		double maxRadius = 0;
 		for (int i=0;i<atoms.length;i++) {
 			radii[i] = AtomRadii.getRadius(atoms[i]);
+			if (radii[i]>maxRadius) maxRadius = radii[i];
 		}
 		
 		// initialising the sphere points to sample
 		spherePoints = generateSpherePoints(nSpherePoints);
 		
+		this.useFlatArrays = true;
+		x = new double[atoms.length];
+		y = new double[atoms.length];
+		z = new double[atoms.length];
+		radiiPlusProbeSq = new double[atoms.length];
+		for (int i=0;i<atoms.length;i++) {
+			Point3d coords = atoms[i].getCoords();
+			x[i] = coords.x;
+			y[i] = coords.y;
+			z[i] = coords.z;
+			radiiPlusProbeSq[i] = (radii[i] + probe) * (radii[i] + probe);
+		}
+		spx = new double[nSpherePoints];
+		spy = new double[nSpherePoints];
+		spz = new double[nSpherePoints];
+		for (int k=0;k<nSpherePoints;k++) {
+			spx[k] = spherePoints[k].x;
+			spy[k] = spherePoints[k].y;
+			spz[k] = spherePoints[k].z;
+		}
+		
 		cons = 4.0 * Math.PI / (double)nSpherePoints;
+		
+		// the grid for the neighbour search: no 2 atoms can be neighbours if they are further apart 
+		// than 2 max radii plus 2 probes. We add 0.01 to the cell size because the grid truncates 
+		// the cutoff to its 0.01A precision
+		if (atoms.length>0) {
+			grid = new Grid(2.0*(maxRadius+probe)+0.01);
+			grid.addAtoms(atoms, atoms);
+		}
+	}
+	
+	/**
+	 * Sets whether the calculation works on flat primitive copies of the coordinates (default)
+	 * or on the Atom objects directly. Both give identical results, the latter (slower and 
+	 * allocating new objects for every sphere point) is kept for reference and benchmarking.
+	 * @param useFlatArrays
+	 */
+	public void setUseFlatArrays(boolean useFlatArrays) {
+		this.useFlatArrays = useFlatArrays;
 	}
 	
 	/**
@@ -136,22 +225,51 @@ public class AsaCalculator {
 
 
 	    	
-	    	ExecutorService threadPool = Executors.newFixedThreadPool(nThreads);
-
-	    	
-	    	for (int i=0;i<atoms.length;i++) {
-	    		threadPool.submit(new AsaCalcWorker(i,asas));    			
-	    	}
-
-	    	threadPool.shutdown();
-	    	
-	    	while (!threadPool.isTerminated());
+	    	// the pool is shared by all calculations with the same number of threads, invoke blocks until all chunks are done
+	    	int chunkSize = Math.max(MIN_CHUNK_SIZE, atoms.length/(nThreads*CHUNKS_PER_THREAD));
+	    	SharedPools.getPool(nThreads).invoke(new AsaCalcTask(0, atoms.length, chunkSize, asas, 0, null));
 	    	
 	    }
 	    
 	    return asas;
 	}
 	
+	/**
+	 * Calculates the Accessible Surface Areas of a complex of 2 groups of atoms (e.g. the 2 
+	 * molecules of an interface) given the ASAs of each of the groups on its own: the atoms 
+	 * given in constructor with indices below numFirstGroupAtoms form the first group and the 
+	 * rest the second one.
+	 * Only the atoms that have a neighbour in the other group (i.e. an atom of the other group closer 
+	 * than the 2 radii plus 2 probes) can change their ASA upon forming the complex: only the sphere 
+	 * points of those are sampled again (against all their neighbours), for all others the given 
+	 * uncomplexed ASA is returned as is. 
+	 * The result is thus an approximation of {@link #calculateAsa()} whose error for each atom is at most 
+	 * the error of its given uncomplexed ASA: 0 for the atoms sampled again and |uncomplexedAsas[i] - a_i| 
+	 * for all others, a_i being the ASA of the atom calculated for its group alone with the coordinates 
+	 * given here. It is exact if the uncomplexed ASAs were calculated with the same parameters and coordinates. 
+	 * If they come from a copy of the group in a different position (as in {@link InterfacesFinder}) 
+	 * the errors are whole sphere points, i.e. multiples of 4&pi;(radius+probe)<sup>2</sup>/nSpherePoints.
+	 * @param numFirstGroupAtoms the number of atoms of the first group
+	 * @param uncomplexedAsas the ASAs of each atom calculated for its group alone, in the order of 
+	 * the atoms given in constructor
+	 * @return an array with asa values corresponding to each atom of the input array
+	 */
+	public double[] calculateComplexAsa(int numFirstGroupAtoms, double[] uncomplexedAsas) {
+		
+		double[] asas = new double[atoms.length];
+		
+		if (nThreads<=1) {
+			for (int i=0;i<atoms.length;i++) {
+				asas[i] = calcSingleComplexAsa(i, numFirstGroupAtoms, uncomplexedAsas);
+			}
+		} else {
+			int chunkSize = Math.max(MIN_CHUNK_SIZE, atoms.length/(nThreads*CHUNKS_PER_THREAD));
+			SharedPools.getPool(nThreads).invoke(new AsaCalcTask(0, atoms.length, chunkSize, asas, numFirstGroupAtoms, uncomplexedAsas));
+		}
+		
+		return asas;
+	}
+	
 	/**
 	 * Returns list of 3d coordinates of points on a sphere using the
 	 * Golden Section Spiral algorithm.
@@ -173,32 +291,71 @@ public class AsaCalculator {
 
 	/**
 	 * Returns list of indices of atoms within probe distance to atom k.
+	 * Only the atoms in the grid cells around atom k are tested, which makes the
+	 * neighbour search for all atoms linear in the number of atoms.
 	 * @param k index of atom for which we want neighbor indices
+	 * @return the indices of the neighbours, sorted ascending
 	 */
-	private ArrayList<Integer> findNeighborIndices(int k) {
-		// looking at a typical protein case, number of neighbours are from ~10 to ~50, with an average of ~30
-		// Thus 40 seems to be a good compromise for the starting capacity
-	    ArrayList<Integer> neighbor_indices = new ArrayList<Integer>(40);
+	private int[] findNeighborIndices(int k) {
+		
+		int[] candidates = grid.getNearbyJindices(atoms[k].getCoords());
+		
+		// we reuse the candidates array to store the neighbours
+		int n_neighbor = 0;
 	    
 	    double radius = radii[k] + probe + probe;
 	    
-	    for (int i=0;i<atoms.length;i++) {
+	    for (int i:candidates) {
 	    	if (i==k) continue;
 	    	
-	        double dist = atoms[i].getCoords().distance(atoms[k].getCoords());
+	    	double dx = x[i] - x[k];
+	    	double dy = y[i] - y[k];
+	    	double dz = z[i] - z[k];
+	        double dist = Math.sqrt(dx*dx + dy*dy + dz*dz);
 	    	
 	        if (dist < radius + radii[i]) {
-	            neighbor_indices.add(i);
+	            candidates[n_neighbor] = i;
+	            n_neighbor++;
 	        }
 	    }
 	    
+	    int[] neighbor_indices = Arrays.copyOf(candidates, n_neighbor);
+	    // the grid gives them in cell order: we sort them so that the neighbours are visited in the same order as in a full scan
+	    Arrays.sort(neighbor_indices);
+	    
 	    return neighbor_indices;
 	}
 	
 	private double calcSingleAsa(int i) {
+		return calcSingleAsa(i, findNeighborIndices(i));
+	}
+	
+	/**
+	 * Returns the complex ASA of atom i: the uncomplexed ASA if none of its neighbours 
+	 * belongs to the other group, otherwise the ASA sampled against all its neighbours. 
+	 * @param i
+	 * @param numFirstGroupAtoms
+	 * @param uncomplexedAsas
+	 * @return
+	 */
+	private double calcSingleComplexAsa(int i, int numFirstGroupAtoms, double[] uncomplexedAsas) {
+		int[] neighbor_indices = findNeighborIndices(i);
+		boolean firstGroup = i<numFirstGroupAtoms;
+		for (int neighbor:neighbor_indices) {
+			if ((neighbor<numFirstGroupAtoms)!=firstGroup) {
+				return calcSingleAsa(i, neighbor_indices);
+			}
+		}
+		return uncomplexedAsas[i];
+	}
+	
+	private double calcSingleAsa(int i, int[] neighbor_indices) {
+		if (useFlatArrays) {
+			return calcSingleAsaFlat(i, neighbor_indices);
+		}
+		
     	Atom atom_i = atoms[i];
-    	ArrayList<Integer> neighbor_indices = findNeighborIndices(i);
-        int n_neighbor = neighbor_indices.size();
+        int n_neighbor = neighbor_indices.length;
         int j_closest_neighbor = 0;
         double radius = probe + radii[i];
 
@@ -222,8 +379,8 @@ public class AsaCalculator {
             }
 
             for (int j: cycled_indices) {
-                Atom atom_j = atoms[neighbor_indices.get(j)];
-                double r = radii[neighbor_indices.get(j)] + probe;
+                Atom atom_j = atoms[neighbor_indices[j]];
+                double r = radii[neighbor_indices[j]] + probe;
                 double diff_sq = atom_j.getCoords().distanceSquared(test_point);
                 if (diff_sq < r*r) {
                     j_closest_neighbor = j;
@@ -238,6 +395,52 @@ public class AsaCalculator {
         return cons*n_accessible_point*radius*radius;
 	}
 	
+	/**
+	 * Same as the Atom based calculation but on the flat coordinate arrays. The cycling of 
+	 * the neighbour indices (starting from the last occluding neighbour) is done in place 
+	 * so that nothing is allocated per sphere point.
+	 * @param i
+	 * @param neighbor_indices
+	 * @return
+	 */
+	private double calcSingleAsaFlat(int i, int[] neighbor_indices) {
+		int n_neighbor = neighbor_indices.length;
+		int j_closest_neighbor = 0;
+		double radius = probe + radii[i];
+		
+		double xi = x[i];
+		double yi = y[i];
+		double zi = z[i];
+		
+		int n_accessible_point = 0;
+		
+		for (int p=0;p<spx.length;p++) {
+			boolean is_accessible = true;
+			double tx = spx[p]*radius + xi;
+			double ty = spy[p]*radius + yi;
+			double tz = spz[p]*radius + zi;
+			
+			int j = j_closest_neighbor;
+			for (int c=0;c<n_neighbor;c++) {
+				int neighbor = neighbor_indices[j];
+				double dx = x[neighbor] - tx;
+				double dy = y[neighbor] - ty;
+				double dz = z[neighbor] - tz;
+				if (dx*dx + dy*dy + dz*dz < radiiPlusProbeSq[neighbor]) {
+					j_closest_neighbor = j;
+					is_accessible = false;
+					break;
+				}
+				j++;
+				if (j==n_neighbor) j = 0;
+			}
+			if (is_accessible) {
+				n_accessible_point++;
+			}
+		}
+		return cons*n_accessible_point*radius*radius;
+	}
+	
 	/**
 	 * To test the class
 	 * @param args
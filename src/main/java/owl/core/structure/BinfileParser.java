@@ -0,0 +1,357 @@
+package owl.core.structure;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.TreeMap;
+
+import javax.vecmath.Matrix4d;
+import javax.vecmath.Point3d;
+
+import owl.core.structure.features.SecStrucElement;
+import owl.core.structure.features.SecondaryStructure;
+import owl.core.util.FileFormatException;
+
+/**
+ * A parser of the OWL binary structure format written by {@link BinfileWriter}.
+ * The whole file is memory mapped with {@link FileChannel#map} and the residue and atom
+ * columns are read in bulk from the mapped buffer.
+ *
+ * Coordinates, occupancies and B-factors are stored as floats. They are decoded to the
+ * double with 3 decimals that gives the same float if there is one (always the case for
+ * values read from PDB or mmCIF files within +-8192), so that for those the values are exactly
+ * the same as if parsed from the original file. Otherwise the float value is used as is.
+ */
+public class BinfileParser {
+
+	protected static final Charset CHARSET = Charset.forName("UTF-8");
+
+	private File binFile;
+
+	private ByteBuffer buf;
+	private int dataStart; // the position after the header, where every read starts
+
+	private String[] strings;
+
+	/**
+	 * Constructs a BinfileParser for the given file, mapping it to memory and checking
+	 * that it is in OWL binary structure format.
+	 * @param binFile
+	 * @throws IOException
+	 * @throws FileFormatException if the file is not in OWL binary structure format or
+	 * of an unsupported version
+	 */
+	public BinfileParser(File binFile) throws IOException, FileFormatException {
+		this.binFile = binFile;
+		FileInputStream fis = new FileInputStream(binFile);
+		try {
+			FileChannel channel = fis.getChannel();
+			// the mapping stays valid after the channel is closed
+			this.buf = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+		} finally {
+			fis.close();
+		}
+
+		byte[] magic = (BinfileWriter.MAGIC+"\n").getBytes(CHARSET);
+		if (buf.remaining()<magic.length+4) {
+			throw new FileFormatException("File "+binFile+" is not an OWL binary structure file");
+		}
+		for (byte b:magic) {
+			if (buf.get()!=b) {
+				throw new FileFormatException("File "+binFile+" is not an OWL binary structure file");
+			}
+		}
+		int version = buf.getInt();
+		if (version!=BinfileWriter.VERSION) {
+			throw new FileFormatException("Unsupported version "+version+" of OWL binary structure file "+binFile);
+		}
+		dataStart = buf.position();
+	}
+
+	/**
+	 * Reads the entry into the given (empty) PdbAsymUnit: metadata, chains and bio-units.
+	 * @param pdbAsymUnit
+	 * @throws FileFormatException if the file is truncated or corrupted
+	 */
+	public void read(PdbAsymUnit pdbAsymUnit) throws FileFormatException {
+		read(pdbAsymUnit, new PdbLoadOptions());
+	}
+	
+	/**
+	 * Reads the entry into the given (empty) PdbAsymUnit, only the categories, chains and atoms 
+	 * specified in the given load options. The sequences are always the stored ones, 
+	 * i.e. {@link PdbLoadOptions.Category#SEQRES} is ignored. 
+	 * The entry can be read several times, e.g. with different load options.
+	 * @param pdbAsymUnit
+	 * @param options
+	 * @throws FileFormatException if the file is truncated or corrupted
+	 */
+	public void read(PdbAsymUnit pdbAsymUnit, PdbLoadOptions options) throws FileFormatException {
+		buf.position(dataStart);
+		try {
+			readStrings();
+			readMetadata(pdbAsymUnit, options);
+			readChains(pdbAsymUnit, options);
+			if (options.isCategoryWanted(PdbLoadOptions.Category.BIO_UNITS)) {
+				readBioUnits(pdbAsymUnit);
+			}
+		} catch (BufferUnderflowException e) {
+			throw new FileFormatException("OWL binary structure file "+binFile+" is truncated");
+		} catch (IndexOutOfBoundsException e) {
+			throw new FileFormatException("OWL binary structure file "+binFile+" is corrupted: "+e.getMessage());
+		} catch (IllegalArgumentException e) {
+			throw new FileFormatException("OWL binary structure file "+binFile+" is corrupted: "+e.getMessage());
+		}
+	}
+
+	private void readStrings() {
+		strings = new String[buf.getInt()];
+		byte[] bytes = new byte[64];
+		for (int i=0;i<strings.length;i++) {
+			int length = buf.getInt();
+			if (length>bytes.length) bytes = new byte[Math.max(length, 2*bytes.length)];
+			buf.get(bytes, 0, length);
+			// the short strings are names (atom, residue and chain codes...) that we share with all other structures
+			strings[i] = NameInterner.intern(new String(bytes, 0, length, CHARSET));
+		}
+	}
+
+	private void readMetadata(PdbAsymUnit pdbAsymUnit, PdbLoadOptions options) {
+		pdbAsymUnit.setPdbCode(nextString());
+		pdbAsymUnit.setTitle(nextString());
+		pdbAsymUnit.setExpMethod(nextString());
+		long date = buf.getLong();
+		pdbAsymUnit.setReleaseDate(date==BinfileWriter.NO_DATE?null:new Date(date));
+		pdbAsymUnit.setModel(buf.getInt());
+		double resolution = buf.getDouble();
+		double rFree = buf.getDouble();
+		double rSym = buf.getDouble();
+		if (options.isCategoryWanted(PdbLoadOptions.Category.QUALITY)) {
+			pdbAsymUnit.setResolution(resolution);
+			pdbAsymUnit.setRfree(rFree);
+			pdbAsymUnit.setRsym(rSym);
+		}
+		CrystalCell cell = null;
+		if (buf.get()!=0) {
+			cell = new CrystalCell(buf.getDouble(), buf.getDouble(), buf.getDouble(),
+					buf.getDouble(), buf.getDouble(), buf.getDouble());
+		}
+		int sgId = buf.getInt();
+		if (options.isCategoryWanted(PdbLoadOptions.Category.CRYSTAL)) {
+			pdbAsymUnit.setCrystalCell(cell);
+			pdbAsymUnit.setSpaceGroup(sgId==BinfileWriter.NO_SPACE_GROUP?null:SymoplibParser.getSpaceGroup(sgId));
+		}
+	}
+
+	private void readChains(PdbAsymUnit pdbAsymUnit, PdbLoadOptions options) {
+
+		// chain table
+		int numChains = buf.getInt();
+		PdbChain[] chains = new PdbChain[numChains];
+		int[] obsLengths = new int[numChains];
+		SecondaryStructure[] secStructures = new SecondaryStructure[numChains];
+
+		for (int i=0;i<numChains;i++) {
+			PdbChain chain = new PdbChain();
+			chain.setChainCode(nextString());
+			chain.setPdbChainCode(nextString());
+			chain.setParent(pdbAsymUnit);
+			byte flags = buf.get();
+			chain.setIsNonPolyChain((flags & BinfileWriter.NON_POLY_CHAIN)!=0);
+			chain.setHasAltCodes((flags & BinfileWriter.HAS_ALT_CODES)!=0);
+			String seqName = nextString();
+			String seq = nextString();
+			if ((flags & BinfileWriter.HAS_SEQUENCE)!=0) {
+				chain.setSequence(seq, (flags & BinfileWriter.PROTEIN_SEQUENCE)!=0);
+				chain.getSequence().setName(seqName);
+			}
+			obsLengths[i] = buf.getInt();
+
+			int size = buf.getInt();
+			if (size>=0) {
+				TreeMap<Integer,String> resser2pdbresser = new TreeMap<Integer, String>();
+				for (int j=0;j<size;j++) {
+					int resser = buf.getInt();
+					resser2pdbresser.put(resser, nextString());
+				}
+				chain.setResser2pdbresserMap(resser2pdbresser);
+			}
+			size = buf.getInt();
+			if (size>=0) {
+				TreeMap<String,Integer> pdbresser2resser = new TreeMap<String, Integer>();
+				for (int j=0;j<size;j++) {
+					String pdbresser = nextString();
+					pdbresser2resser.put(pdbresser, buf.getInt());
+				}
+				chain.setPdbresser2resserMap(pdbresser2resser);
+			}
+
+			if ((flags & BinfileWriter.HAS_SEC_STRUCTURE)!=0) {
+				SecondaryStructure ss = new SecondaryStructure(nextString());
+				ss.setComment(nextString());
+				int numElems = buf.getInt();
+				for (int j=0;j<numElems;j++) {
+					char type = buf.getChar();
+					int beg = buf.getInt();
+					int end = buf.getInt();
+					String id = nextString();
+					if (options.isCategoryWanted(PdbLoadOptions.Category.SECONDARY_STRUCTURE)) {
+						ss.add(new SecStrucElement(type, beg, end, id));
+					}
+				}
+				secStructures[i] = ss;
+			}
+
+			chains[i] = chain;
+		}
+
+		// residue columns
+		int numResidues = buf.getInt();
+		byte[] resKinds = new byte[numResidues];
+		buf.get(resKinds);
+		int[] resTypes = readIntColumn(numResidues);
+		int[] resSerials = readIntColumn(numResidues);
+		int[] resPdbSerials = readIntColumn(numResidues);
+		int[] resNumAtoms = readIntColumn(numResidues);
+
+		// atom columns
+		int numAtoms = buf.getInt();
+		int[] atomSerials = readIntColumn(numAtoms);
+		int[] atomNames = readIntColumn(numAtoms);
+		int[] atomElements = readIntColumn(numAtoms);
+		float[] xs = readFloatColumn(numAtoms);
+		float[] ys = readFloatColumn(numAtoms);
+		float[] zs = readFloatColumn(numAtoms);
+		float[] occupancies = readFloatColumn(numAtoms);
+		float[] bfactors = readFloatColumn(numAtoms);
+
+		TreeMap<String,String> pdbchaincode2chaincode = new TreeMap<String, String>();
+		pdbAsymUnit.setPdbchaincode2chaincode(pdbchaincode2chaincode);
+		
+		int iRes = 0;
+		int iAtom = 0;
+		for (int i=0;i<numChains;i++) {
+			PdbChain chain = chains[i];
+			if (!options.isCategoryWanted(PdbLoadOptions.Category.ATOMS) || !options.isPdbChainCodeWanted(chain.getPdbChainCode())) {
+				// skipping the residues and atoms of the chain
+				for (int j=0;j<obsLengths[i];j++) {
+					iAtom += resNumAtoms[iRes];
+					iRes++;
+				}
+				continue;
+			}
+			for (int j=0;j<obsLengths[i];j++) {
+				Residue residue = null;
+				switch (resKinds[iRes]) {
+				case BinfileWriter.AA_RESIDUE:
+					residue = new AaResidue(AminoAcid.valueOf(strings[resTypes[iRes]]), resSerials[iRes], chain);
+					break;
+				case BinfileWriter.NUC_RESIDUE:
+					residue = new NucResidue(Nucleotide.valueOf(strings[resTypes[iRes]]), resSerials[iRes], chain);
+					break;
+				case BinfileWriter.HET_RESIDUE:
+					residue = new HetResidue(strings[resTypes[iRes]], resSerials[iRes], chain);
+					break;
+				default:
+					throw new IllegalArgumentException("unknown residue kind "+resKinds[iRes]);
+				}
+				residue.setPdbSerial(getString(resPdbSerials[iRes]));
+				for (int k=0;k<resNumAtoms[iRes];k++) {
+					if (options.isAtomNameWanted(strings[atomNames[iAtom]])) {
+						// the null string stands for an atom without chemical type: we don't guess it again from the code
+						boolean noType = atomElements[iAtom]==BinfileWriter.NO_STRING;
+						Atom atom = new Atom(atomSerials[iAtom], strings[atomNames[iAtom]], noType?AtomType.X.getSymbol():strings[atomElements[iAtom]],
+								new Point3d(decode(xs[iAtom]), decode(ys[iAtom]), decode(zs[iAtom])),
+								residue, decode(occupancies[iAtom]), decode(bfactors[iAtom]));
+						if (noType) atom.setType(null);
+						residue.addAtom(atom);
+					}
+					iAtom++;
+				}
+				if (residue.getNumAtoms()>0) {
+					chain.addResidue(residue);
+				}
+				iRes++;
+			}
+			// chains left without atoms by the atom filter are not loaded
+			if (options.getAtomNames()!=null && chain.getObsLength()==0) continue;
+			
+			if (chain.isNonPolyChain()) {
+				pdbAsymUnit.setNonPolyChain(chain.getChainCode(), chain);
+			} else {
+				pdbAsymUnit.setPolyChain(chain.getChainCode(), chain);
+				pdbchaincode2chaincode.put(chain.getPdbChainCode(), chain.getChainCode());
+			}
+			// setting the secondary structure once the residues are there, so that their elements are assigned
+			if (secStructures[i]!=null) {
+				chain.setSecondaryStructure(secStructures[i]);
+			}
+			chain.initialiseMaps();
+		}
+	}
+
+	private void readBioUnits(PdbAsymUnit pdbAsymUnit) {
+		int numBioUnits = buf.getInt();
+		List<PdbBioUnit> bioUnits = new ArrayList<PdbBioUnit>(numBioUnits);
+		for (int i=0;i<numBioUnits;i++) {
+			PdbBioUnit bioUnit = new PdbBioUnit();
+			bioUnit.setSize(buf.getInt());
+			String type = nextString();
+			bioUnit.setType(type==null?null:BioUnitAssignmentType.getByString(type));
+			int numMembers = buf.getInt();
+			for (int j=0;j<numMembers;j++) {
+				String pdbChainCode = nextString();
+				int numOps = buf.getInt();
+				for (int k=0;k<numOps;k++) {
+					double[] elements = new double[16];
+					buf.asDoubleBuffer().get(elements);
+					buf.position(buf.position()+16*8);
+					bioUnit.addOperator(pdbChainCode, new Matrix4d(elements));
+				}
+			}
+			bioUnits.add(bioUnit);
+		}
+		PdbBioUnitList bioUnitList = new PdbBioUnitList();
+		bioUnitList.setPdbBioUnits(bioUnits);
+		pdbAsymUnit.setPdbBioUnitList(bioUnitList);
+	}
+
+	private String nextString() {
+		return getString(buf.getInt());
+	}
+
+	private String getString(int idx) {
+		return idx==BinfileWriter.NO_STRING?null:strings[idx];
+	}
+
+	private int[] readIntColumn(int n) {
+		int[] column = new int[n];
+		buf.asIntBuffer().get(column);
+		buf.position(buf.position()+n*4);
+		return column;
+	}
+
+	private float[] readFloatColumn(int n) {
+		float[] column = new float[n];
+		buf.asFloatBuffer().get(column);
+		buf.position(buf.position()+n*4);
+		return column;
+	}
+
+	/**
+	 * Decodes a float to the double with 3 decimals giving the same float, if there's one.
+	 * @param value
+	 * @return
+	 */
+	private static double decode(float value) {
+		double rounded = Math.rint((double)value*1000.0)/1000.0;
+		return (float)rounded==value?rounded:value;
+	}
+}
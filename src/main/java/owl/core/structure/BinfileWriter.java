@@ -0,0 +1,312 @@
+package owl.core.structure;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.vecmath.Matrix4d;
+
+import owl.core.structure.features.SecStrucElement;
+import owl.core.structure.features.SecondaryStructure;
+
+/**
+ * A writer of the OWL binary structure format: a compact columnar cache of a {@link PdbAsymUnit}
+ * to be read back with {@link BinfileParser}.
+ *
+ * The file starts with the text line {@link #MAGIC} so that it can be recognised by
+ * {@link owl.core.util.FileTypeGuesser}, followed by a format version and then (all
+ * numbers big-endian):
+ * <ul>
+ * <li>the string table: all distinct strings of the entry (codes, atom names, elements,
+ * residue types, ...), everywhere else strings are given as int indices into it (-1 for null)</li>
+ * <li>the entry metadata: PDB code, title, experimental method, release date, model,
+ * resolution, rFree, rSym, crystal cell and space group id</li>
+ * <li>the chain table: codes, flags, sequence name and sequence, residue serial maps and secondary structure of each chain</li>
+ * <li>the residue columns of all chains: kind, type, serial, PDB serial and number of atoms</li>
+ * <li>the atom columns of all residues: serial, name, element, x, y, z, occupancy and B-factor</li>
+ * <li>the bio-units with their operators</li>
+ * </ul>
+ * Coordinates, occupancies and B-factors are stored as floats: see {@link BinfileParser}
+ * for how they are decoded back to doubles.
+ */
+public class BinfileWriter {
+
+	public static final String MAGIC = "#OWL BINARY STRUCTURE FILE";
+	public static final int VERSION = 1;
+
+	public static final String BIN_FILE_EXTENSION = ".owlbin";
+
+	// residue kinds
+	protected static final byte AA_RESIDUE = 0;
+	protected static final byte NUC_RESIDUE = 1;
+	protected static final byte HET_RESIDUE = 2;
+
+	// chain flags
+	protected static final byte NON_POLY_CHAIN = 1;
+	protected static final byte HAS_ALT_CODES = 2;
+	protected static final byte HAS_SEQUENCE = 4;
+	protected static final byte PROTEIN_SEQUENCE = 8;
+	protected static final byte HAS_SEC_STRUCTURE = 16;
+
+	protected static final int NO_STRING = -1;
+	protected static final long NO_DATE = Long.MIN_VALUE;
+	protected static final int NO_SPACE_GROUP = -1;
+
+	private PdbAsymUnit pdb;
+
+	private List<String> strings;
+	private Map<String,Integer> string2idx;
+
+	/**
+	 * Constructs a BinfileWriter for the given PdbAsymUnit
+	 * @param pdb
+	 */
+	public BinfileWriter(PdbAsymUnit pdb) {
+		this.pdb = pdb;
+	}
+
+	/**
+	 * Writes the PdbAsymUnit to the given file in OWL binary structure format.
+	 * @param outFile
+	 * @throws IOException
+	 */
+	public void write(File outFile) throws IOException {
+
+		strings = new ArrayList<String>();
+		string2idx = new HashMap<String, Integer>();
+
+		List<PdbChain> chains = new ArrayList<PdbChain>(pdb.getAllChains());
+		int numResidues = 0;
+		int numAtoms = 0;
+		for (PdbChain chain:chains) {
+			numResidues += chain.getObsLength();
+			for (Residue residue:chain) {
+				numAtoms += residue.getNumAtoms();
+			}
+		}
+
+		// the columns, the strings are indexed as we go so that the table can be written first
+		byte[] resKinds = new byte[numResidues];
+		int[] resTypes = new int[numResidues];
+		int[] resSerials = new int[numResidues];
+		int[] resPdbSerials = new int[numResidues];
+		int[] resNumAtoms = new int[numResidues];
+
+		int[] atomSerials = new int[numAtoms];
+		int[] atomNames = new int[numAtoms];
+		int[] atomElements = new int[numAtoms];
+		float[] xs = new float[numAtoms];
+		float[] ys = new float[numAtoms];
+		float[] zs = new float[numAtoms];
+		float[] occupancies = new float[numAtoms];
+		float[] bfactors = new float[numAtoms];
+
+		int iRes = 0;
+		int iAtom = 0;
+		for (PdbChain chain:chains) {
+			for (Residue residue:chain) {
+				if (residue instanceof AaResidue) {
+					resKinds[iRes] = AA_RESIDUE;
+					resTypes[iRes] = idx(((AaResidue)residue).getAaType().name());
+				} else if (residue instanceof NucResidue) {
+					resKinds[iRes] = NUC_RESIDUE;
+					resTypes[iRes] = idx(((NucResidue)residue).getNucType().name());
+				} else {
+					resKinds[iRes] = HET_RESIDUE;
+					resTypes[iRes] = idx(residue.getLongCode());
+				}
+				resSerials[iRes] = residue.getSerial();
+				resPdbSerials[iRes] = idx(residue.getPdbSerial());
+				resNumAtoms[iRes] = residue.getNumAtoms();
+				iRes++;
+				for (Atom atom:residue.getAtoms()) {
+					atomSerials[iAtom] = atom.getSerial();
+					atomNames[iAtom] = idx(atom.getCode());
+					atomElements[iAtom] = atom.getType()==null?NO_STRING:idx(atom.getType().getSymbol());
+					xs[iAtom] = (float)atom.getCoords().x;
+					ys[iAtom] = (float)atom.getCoords().y;
+					zs[iAtom] = (float)atom.getCoords().z;
+					occupancies[iAtom] = (float)atom.getOccupancy();
+					bfactors[iAtom] = (float)atom.getBfactor();
+					iAtom++;
+				}
+			}
+		}
+
+		// we can only write the string table once all strings are indexed: we write the rest to memory first
+		ByteArrayOutputStream body = new ByteArrayOutputStream(16+numResidues*17+numAtoms*32);
+		DataOutputStream out = new DataOutputStream(body);
+
+		// metadata
+		out.writeInt(idx(pdb.getPdbCode()));
+		out.writeInt(idx(pdb.getTitle()));
+		out.writeInt(idx(pdb.getExpMethod()));
+		out.writeLong(pdb.getReleaseDate()==null?NO_DATE:pdb.getReleaseDate().getTime());
+		out.writeInt(pdb.getModel());
+		out.writeDouble(pdb.getResolution());
+		out.writeDouble(pdb.getRfree());
+		out.writeDouble(pdb.getRsym());
+		CrystalCell cell = pdb.getCrystalCell();
+		out.writeBoolean(cell!=null);
+		if (cell!=null) {
+			out.writeDouble(cell.getA());
+			out.writeDouble(cell.getB());
+			out.writeDouble(cell.getC());
+			out.writeDouble(cell.getAlpha());
+			out.writeDouble(cell.getBeta());
+			out.writeDouble(cell.getGamma());
+		}
+		out.writeInt(pdb.getSpaceGroup()==null?NO_SPACE_GROUP:pdb.getSpaceGroup().getId());
+
+		// chain table
+		out.writeInt(chains.size());
+		for (PdbChain chain:chains) {
+			writeChain(out, chain);
+		}
+
+		// residue columns
+		out.writeInt(numResidues);
+		out.write(resKinds);
+		writeColumn(out, resTypes);
+		writeColumn(out, resSerials);
+		writeColumn(out, resPdbSerials);
+		writeColumn(out, resNumAtoms);
+
+		// atom columns
+		out.writeInt(numAtoms);
+		writeColumn(out, atomSerials);
+		writeColumn(out, atomNames);
+		writeColumn(out, atomElements);
+		writeColumn(out, xs);
+		writeColumn(out, ys);
+		writeColumn(out, zs);
+		writeColumn(out, occupancies);
+		writeColumn(out, bfactors);
+
+		// bio-units
+		writeBioUnits(out, pdb.getPdbBioUnitList());
+		out.flush();
+
+		DataOutputStream fileOut = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(outFile), 65536));
+		try {
+			fileOut.write((MAGIC+"\n").getBytes(BinfileParser.CHARSET));
+			fileOut.writeInt(VERSION);
+			fileOut.writeInt(strings.size());
+			for (String string:strings) {
+				byte[] bytes = string.getBytes(BinfileParser.CHARSET);
+				fileOut.writeInt(bytes.length);
+				fileOut.write(bytes);
+			}
+			body.writeTo(fileOut);
+		} finally {
+			fileOut.close();
+		}
+	}
+
+	private void writeChain(DataOutputStream out, PdbChain chain) throws IOException {
+		SecondaryStructure ss = chain.getSecondaryStructure();
+
+		byte flags = 0;
+		if (chain.isNonPolyChain()) flags |= NON_POLY_CHAIN;
+		if (chain.hasAltCodes()) flags |= HAS_ALT_CODES;
+		if (chain.getSequence()!=null) flags |= HAS_SEQUENCE;
+		if (chain.getSequence()!=null && chain.getSequence().isProtein()) flags |= PROTEIN_SEQUENCE;
+		if (ss!=null) flags |= HAS_SEC_STRUCTURE;
+
+		out.writeInt(idx(chain.getChainCode()));
+		out.writeInt(idx(chain.getPdbChainCode()));
+		out.writeByte(flags);
+		out.writeInt(chain.getSequence()==null?NO_STRING:idx(chain.getSequence().getName()));
+		out.writeInt(chain.getSequence()==null?NO_STRING:idx(chain.getSequence().getSeq()));
+		out.writeInt(chain.getObsLength());
+
+		// the serial maps can contain unobserved residues, thus they can't be rebuilt from the residues
+		Map<Integer,String> resser2pdbresser = chain.getResser2pdbresserMap();
+		if (resser2pdbresser==null) {
+			out.writeInt(-1);
+		} else {
+			out.writeInt(resser2pdbresser.size());
+			for (Map.Entry<Integer,String> entry:resser2pdbresser.entrySet()) {
+				out.writeInt(entry.getKey());
+				out.writeInt(idx(entry.getValue()));
+			}
+		}
+		Map<String,Integer> pdbresser2resser = chain.getPdbresser2resserMap();
+		if (pdbresser2resser==null) {
+			out.writeInt(-1);
+		} else {
+			out.writeInt(pdbresser2resser.size());
+			for (Map.Entry<String,Integer> entry:pdbresser2resser.entrySet()) {
+				out.writeInt(idx(entry.getKey()));
+				out.writeInt(entry.getValue());
+			}
+		}
+
+		if (ss!=null) {
+			out.writeInt(idx(ss.getSequence()));
+			out.writeInt(idx(ss.getComment()));
+			out.writeInt(ss.getNumElements());
+			for (SecStrucElement ssElem:ss) {
+				out.writeChar(ssElem.getType());
+				out.writeInt(ssElem.getInterval().beg);
+				out.writeInt(ssElem.getInterval().end);
+				out.writeInt(idx(ssElem.getId()));
+			}
+		}
+	}
+
+	private void writeBioUnits(DataOutputStream out, PdbBioUnitList bioUnits) throws IOException {
+		if (bioUnits==null) {
+			out.writeInt(0);
+			return;
+		}
+		out.writeInt(bioUnits.size());
+		for (PdbBioUnit bioUnit:bioUnits) {
+			out.writeInt(bioUnit.getSize());
+			out.writeInt(bioUnit.getType()==null?NO_STRING:idx(bioUnit.getType().getType()));
+			out.writeInt(bioUnit.getMemberPdbChainCodes().size());
+			for (String pdbChainCode:bioUnit.getMemberPdbChainCodes()) {
+				List<Matrix4d> operators = bioUnit.getOperators(pdbChainCode);
+				out.writeInt(idx(pdbChainCode));
+				out.writeInt(operators.size());
+				for (Matrix4d op:operators) {
+					for (int i=0;i<4;i++) {
+						for (int j=0;j<4;j++) {
+							out.writeDouble(op.getElement(i, j));
+						}
+					}
+				}
+			}
+		}
+	}
+
+	private int idx(String string) {
+		if (string==null) return NO_STRING;
+		Integer idx = string2idx.get(string);
+		if (idx==null) {
+			idx = strings.size();
+			strings.add(string);
+			string2idx.put(string, idx);
+		}
+		return idx;
+	}
+
+	private static void writeColumn(DataOutputStream out, int[] column) throws IOException {
+		for (int value:column) {
+			out.writeInt(value);
+		}
+	}
+
+	private static void writeColumn(DataOutputStream out, float[] column) throws IOException {
+		for (float value:column) {
+			out.writeFloat(value);
+		}
+	}
+}
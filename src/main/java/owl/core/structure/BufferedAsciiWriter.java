@@ -0,0 +1,227 @@
+package owl.core.structure;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Locale;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * The base of the fast structure file writers ({@link PdbfileWriter}, {@link CiffileWriter}):
+ * the fields are formatted directly into a large reusable byte buffer, with no Formatter/printf,
+ * and the buffer is written to the underlying stream (optionally gzipped) only when full,
+ * flushed or closed.
+ *
+ * The numbers are formatted as printf would do it (with Locale.US), including the rounding
+ * of the decimals.
+ * The text is written in the default charset, as PrintStream does: all fields are expected to be ASCII.
+ */
+public abstract class BufferedAsciiWriter implements Closeable {
+
+	public static final int BUFFER_SIZE = 65536;
+
+	// above this absolute value decimal fields are formatted with String.format, so that
+	// the fast rounding below is always exact (the field overflows anyway in PDB format)
+	private static final double MAX_FAST_VALUE = 1000000;
+	// when the scaled value is this close to a rounding tie we use String.format to get exactly its rounding
+	private static final double TIE_TOLERANCE = 0.0001;
+
+	private static final long[] POWERS_OF_10 = {1, 10, 100, 1000, 10000, 100000, 1000000};
+
+	private OutputStream out;
+	private boolean closeOut;
+
+	private byte[] buf;
+	private int pos;
+
+	// a scratch buffer for the digits of numbers, in reverse order
+	private byte[] digits;
+
+	/**
+	 * Constructs a writer to the given stream. The stream is not closed
+	 * by {@link #close()}, which only flushes the buffer into it.
+	 * @param out
+	 */
+	protected BufferedAsciiWriter(OutputStream out) {
+		this.out = out;
+		this.closeOut = false;
+		this.buf = new byte[BUFFER_SIZE];
+		this.pos = 0;
+		this.digits = new byte[20];
+	}
+
+	/**
+	 * Constructs a writer to the given file, gzipped if gzip is true.
+	 * @param file
+	 * @param gzip
+	 * @throws IOException
+	 */
+	protected BufferedAsciiWriter(File file, boolean gzip) throws IOException {
+		this(gzip?new GZIPOutputStream(new FileOutputStream(file), BUFFER_SIZE):new FileOutputStream(file));
+		this.closeOut = true;
+	}
+
+	/**
+	 * Writes the given line followed by a newline.
+	 * @param line
+	 * @throws IOException
+	 */
+	public void writeLine(String line) throws IOException {
+		appendString(line);
+		endLine();
+	}
+
+	/**
+	 * Writes the buffer to the underlying stream and flushes it.
+	 * @throws IOException
+	 */
+	public void flush() throws IOException {
+		out.write(buf, 0, pos);
+		pos = 0;
+		out.flush();
+	}
+
+	/**
+	 * Flushes the buffer and closes the underlying stream if it was opened by this writer.
+	 */
+	@Override
+	public void close() throws IOException {
+		try {
+			out.write(buf, 0, pos);
+			pos = 0;
+		} finally {
+			if (closeOut) {
+				out.close();
+			} else {
+				out.flush();
+			}
+		}
+	}
+
+	protected void endLine() throws IOException {
+		appendChar('\n');
+	}
+
+	private void flushBuffer() throws IOException {
+		out.write(buf, 0, pos);
+		pos = 0;
+	}
+
+	protected void appendChar(char c) throws IOException {
+		appendByte((byte) c);
+	}
+
+	protected void appendByte(byte b) throws IOException {
+		if (pos>=buf.length) flushBuffer();
+		buf[pos++] = b;
+	}
+
+	protected void appendString(String s) throws IOException {
+		for (int i=0;i<s.length();i++) {
+			char c = s.charAt(i);
+			if (c>=128) {
+				// not expected in structure files: we encode the rest in the default charset
+				for (byte b:s.substring(i).getBytes()) {
+					appendByte(b);
+				}
+				return;
+			}
+			appendByte((byte) c);
+		}
+	}
+
+	protected void appendSpaces(int n) throws IOException {
+		for (int i=0;i<n;i++) {
+			appendChar(' ');
+		}
+	}
+
+	/**
+	 * Appends the string right-aligned to width, as printf's %ns
+	 */
+	protected void appendRight(String s, int width) throws IOException {
+		appendSpaces(width-s.length());
+		appendString(s);
+	}
+
+	/**
+	 * Appends the string left-aligned to width, as printf's %-ns
+	 */
+	protected void appendLeft(String s, int width) throws IOException {
+		appendString(s);
+		appendSpaces(width-s.length());
+	}
+
+	/**
+	 * Appends the integer right-aligned to width, as printf's %nd (with no padding if width is 0)
+	 */
+	protected void appendInt(long value, int width) throws IOException {
+		boolean negative = value<0;
+		int numDigits = toDigits(negative?-value:value);
+		appendSpaces(width-numDigits-(negative?1:0));
+		if (negative) appendChar('-');
+		for (int i=numDigits-1;i>=0;i--) {
+			appendByte(digits[i]);
+		}
+	}
+
+	/**
+	 * Appends the value with the given number of decimals right-aligned to width, as
+	 * printf's %n.df with Locale.US (with no padding if width is 0)
+	 */
+	protected void appendDecimal(double value, int width, int decimals) throws IOException {
+		double abs = Math.abs(value);
+		if (!(abs<MAX_FAST_VALUE)) { // also NaN
+			appendRight(formatDecimal(value, width, decimals), width);
+			return;
+		}
+		long scale = POWERS_OF_10[decimals];
+		double scaled = abs*scale;
+		long units = (long) scaled;
+		double frac = scaled - units;
+		if (Math.abs(frac-0.5)<TIE_TOLERANCE) {
+			// Formatter's rounding of ties depends on the decimal representation of the double: we let it decide
+			appendRight(formatDecimal(value, width, decimals), width);
+			return;
+		}
+		if (frac>0.5) units++;
+
+		// the sign is the one of the value, even if rounded to 0, as with printf
+		boolean negative = value<0 || (value==0 && 1/value<0);
+		long intPart = units/scale;
+		long decPart = units%scale;
+		int numIntDigits = toDigits(intPart);
+		appendSpaces(width-numIntDigits-1-decimals-(negative?1:0));
+		if (negative) appendChar('-');
+		for (int i=numIntDigits-1;i>=0;i--) {
+			appendByte(digits[i]);
+		}
+		appendChar('.');
+		for (int i=0;i<decimals;i++) {
+			digits[i] = (byte) ('0'+decPart%10);
+			decPart /= 10;
+		}
+		for (int i=decimals-1;i>=0;i--) {
+			appendByte(digits[i]);
+		}
+	}
+
+	private static String formatDecimal(double value, int width, int decimals) {
+		return String.format(Locale.US, "%"+(width>0?width:"")+"."+decimals+"f", value);
+	}
+
+	/**
+	 * Puts the digits of the given non-negative value into the scratch buffer in reverse
+	 * order and returns their number.
+	 */
+	private int toDigits(long value) {
+		int n = 0;
+		do {
+			digits[n++] = (byte) ('0'+value%10);
+			value /= 10;
+		} while (value>0);
+		return n;
+	}
+}
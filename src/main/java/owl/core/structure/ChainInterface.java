@@ -1,14 +1,11 @@
 package owl.core.structure;
 
 import java.io.File;
-import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.PrintStream;
 import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.List;
-import java.util.zip.GZIPOutputStream;
 
 import javax.vecmath.Matrix4d;
 import javax.vecmath.Point3d;
@@ -275,6 +272,36 @@ public class ChainInterface implements Comparable<ChainInterface>, Serializable
 	 * NACCESS' -h option
 	 */
 	protected void calcSurfAccess(int nSpherePoints, int nThreads, boolean hetAtoms) {
+		calcSurfAccess(nSpherePoints, nThreads, hetAtoms, null);
+	}
+	
+	/**
+	 * Calculates the Accessible Surface Areas for the atoms in given complex (as in 
+	 * {@link #calcSurfAccess(int, int, boolean)}), getting the ASAs of the complex from the given 
+	 * cache if the same complex was calculated before in the same orientation.
+	 * @param nSpherePoints
+	 * @param nThreads 
+	 * @param hetAtoms if true HET residues are considered, if false they aren't, equivalent to 
+	 * NACCESS' -h option
+	 * @param asaCache the cache, if null the ASAs of the complex are always calculated
+	 */
+	protected void calcSurfAccess(int nSpherePoints, int nThreads, boolean hetAtoms, AsaCache asaCache) {
+		calcSurfAccess(nSpherePoints, nThreads, hetAtoms, asaCache, false);
+	}
+	
+	/**
+	 * Calculates the buried surface area for the interface (as in {@link #calcSurfAccess(int, int, boolean)}).
+	 * If incremental is true, only the atoms close to the partner molecule are sampled again 
+	 * for the complex and all others take their uncomplexed ASA (see {@link AsaCalculator#calculateComplexAsa(int, double[])}).
+	 * Their BSA is then exactly 0. The asaCache is not used in that case.
+	 * @param nSpherePoints
+	 * @param nThreads 
+	 * @param hetAtoms if true HET residues are considered, if false they aren't, equivalent to 
+	 * NACCESS' -h option
+	 * @param asaCache the cache, if null the ASAs of the complex are always calculated
+	 * @param incremental
+	 */
+	protected void calcSurfAccess(int nSpherePoints, int nThreads, boolean hetAtoms, AsaCache asaCache, boolean incremental) {
 
 		// the ASAs of the uncomplexed chains must be already calculated by the caller
 		
@@ -296,7 +323,9 @@ public class ChainInterface implements Comparable<ChainInterface>, Serializable
 		Atom[] atoms = new Atom[numAtoms];
 		
 		int i = 0;
+		int numFirstGroupAtoms = 0;
 		for (int molecId=0;molecId<2;molecId++) {
+			if (molecId==1) numFirstGroupAtoms = i;
 			PdbChain chain = getMolecule(molecId);
 			for (Residue residue:chain) {
 				if (!hetAtoms && (residue instanceof HetResidue)) continue;
@@ -316,8 +345,20 @@ public class ChainInterface implements Comparable<ChainInterface>, Serializable
 		}
 		
 		// 3) we calculate asas for the complex
-		AsaCalculator asaCalc = new AsaCalculator(atoms, AsaCalculator.DEFAULT_PROBE_SIZE, nSpherePoints, nThreads);
-		double[] asas = asaCalc.calculateAsa();
+		double[] asas = null;
+		if (incremental) {
+			double[] uncomplexedAsas = new double[atoms.length];
+			for (i=0;i<atoms.length;i++) {
+				uncomplexedAsas[i] = atoms[i].getAsa();
+			}
+			AsaCalculator asaCalc = new AsaCalculator(atoms, AsaCalculator.DEFAULT_PROBE_SIZE, nSpherePoints, nThreads);
+			asas = asaCalc.calculateComplexAsa(numFirstGroupAtoms, uncomplexedAsas);
+		} else if (asaCache!=null) {
+			asas = asaCache.calculateAsa(atoms, AsaCalculator.DEFAULT_PROBE_SIZE, nSpherePoints, nThreads, hetAtoms);
+		} else {
+			AsaCalculator asaCalc = new AsaCalculator(atoms, AsaCalculator.DEFAULT_PROBE_SIZE, nSpherePoints, nThreads);
+			asas = asaCalc.calculateAsa();
+		}
 		
 		// 4) by subtraction to the uncomplex values (that should be present in atoms from previously calling calcASAs) we get bsas 
 		for (i=0;i<atoms.length;i++){
@@ -550,6 +591,76 @@ public class ChainInterface implements Comparable<ChainInterface>, Serializable
 	 * @throws IOException 
 	 */
 	public void writeToPdbFile(File file, boolean usePdbResSer, boolean gzip) throws IOException {
+		initChain2forOutput();
+			
+		PdbfileWriter writer = new PdbfileWriter(file, gzip);
+		try {
+			writer.writeLine("HEADER");
+			if (!firstMolecule.isNonPolyChain()) writer.writeSeqresRecord(firstMolecule, firstMolecule.getPdbChainCode());
+			if (!secondMolecule.isNonPolyChain()) writer.writeSeqresRecord(secondMolecule, chain2forOutput);
+			writer.writeAtomLines(firstMolecule, firstMolecule.getPdbChainCode(), usePdbResSer);
+			if (firstCofactors!=null) {
+				for (PdbChain cofactor:firstCofactors) {
+					writer.writeAtomLines(cofactor, firstMolecule.getPdbChainCode(), usePdbResSer);
+				}
+			}
+			writer.writeAtomLines(secondMolecule, chain2forOutput, usePdbResSer);
+			if (secondCofactors!=null) {
+				for (PdbChain cofactor:secondCofactors) {
+					writer.writeAtomLines(cofactor, chain2forOutput, usePdbResSer);
+				}
+			}
+			writer.writeLine("END");
+		} finally {
+			writer.close();
+		}
+	}
+	
+	/**
+	 * Writes this interface to given mmCIF file with original chain names (PDB chain codes) as 
+	 * in {@link #writeToPdbFile(File, boolean, boolean)}. The CIF chain codes are assigned 
+	 * sequentially (see {@link CiffileWriter#getAsymId(int)}): first molecule, second molecule 
+	 * and then the cofactors of each, which are written as separate chains. 
+	 * Both CIF and PDB residue serials are written.
+	 * @param file
+	 * @param gzip if true file will be gzipped, false it will be plain text
+	 * @param compact if true only the _atom_site and _pdbx_poly_seq_scheme columns needed 
+	 * to read the file back are written, if false all standard columns
+	 * @throws IOException
+	 */
+	public void writeToCifFile(File file, boolean gzip, boolean compact) throws IOException {
+		initChain2forOutput();
+		
+		CiffileWriter writer = new CiffileWriter(file, gzip, compact);
+		try {
+			writer.writeHeader(firstMolecule.getPdbCode());
+			if (!firstMolecule.isNonPolyChain() || !secondMolecule.isNonPolyChain()) {
+				writer.beginPdbxPolySeqScheme();
+				if (!firstMolecule.isNonPolyChain()) writer.writePdbxPolySeqRecords(firstMolecule, CiffileWriter.getAsymId(0), firstMolecule.getPdbChainCode());
+				if (!secondMolecule.isNonPolyChain()) writer.writePdbxPolySeqRecords(secondMolecule, CiffileWriter.getAsymId(1), chain2forOutput);
+				writer.endLoop();
+			}
+			writer.beginAtomSite();
+			writer.writeAtomSiteRecords(firstMolecule, CiffileWriter.getAsymId(0), firstMolecule.getPdbChainCode(), PdbAsymUnit.DEFAULT_MODEL);
+			writer.writeAtomSiteRecords(secondMolecule, CiffileWriter.getAsymId(1), chain2forOutput, PdbAsymUnit.DEFAULT_MODEL);
+			int asymIdx = 2;
+			if (firstCofactors!=null) {
+				for (PdbChain cofactor:firstCofactors) {
+					writer.writeAtomSiteRecords(cofactor, CiffileWriter.getAsymId(asymIdx++), firstMolecule.getPdbChainCode(), PdbAsymUnit.DEFAULT_MODEL);
+				}
+			}
+			if (secondCofactors!=null) {
+				for (PdbChain cofactor:secondCofactors) {
+					writer.writeAtomSiteRecords(cofactor, CiffileWriter.getAsymId(asymIdx++), chain2forOutput, PdbAsymUnit.DEFAULT_MODEL);
+				}
+			}
+			writer.endLoop();
+		} finally {
+			writer.close();
+		}
+	}
+	
+	private void initChain2forOutput() {
 		chain2forOutput = secondMolecule.getPdbChainCode();
 		if (secondMolecule.getPdbChainCode().equals(firstMolecule.getPdbChainCode())) {
 			// if both chains are named equally we want to still named them differently in the output pdb file
@@ -561,30 +672,6 @@ public class ChainInterface implements Comparable<ChainInterface>, Serializable
 				chain2forOutput = Character.toString((char)(letter-25)); //i.e. 'A' or 'a'
 			}
 		}
-			
-		PrintStream ps = null;
-		if (gzip) {
-			ps = new PrintStream(new GZIPOutputStream(new FileOutputStream(file)));
-		} else {
-			ps = new PrintStream(file);
-		}
-		ps.println("HEADER");
-		if (!firstMolecule.isNonPolyChain()) firstMolecule.writeSeqresRecord(ps, firstMolecule.getPdbChainCode());
-		if (!secondMolecule.isNonPolyChain()) secondMolecule.writeSeqresRecord(ps,chain2forOutput);
-		firstMolecule.writeAtomLines(ps, firstMolecule.getPdbChainCode(), usePdbResSer);
-		if (firstCofactors!=null) {
-			for (PdbChain cofactor:firstCofactors) {
-				cofactor.writeAtomLines(ps, firstMolecule.getPdbChainCode(), usePdbResSer);
-			}
-		}
-		secondMolecule.writeAtomLines(ps,chain2forOutput, usePdbResSer);
-		if (secondCofactors!=null) {
-			for (PdbChain cofactor:secondCofactors) {
-				cofactor.writeAtomLines(ps, chain2forOutput, usePdbResSer);
-			}
-		}
-		ps.println("END");
-		ps.close();
 	}
 	
 	public String getSecondPdbChainCodeForOutput() {
@@ -2,11 +2,10 @@ package owl.core.structure;
 
 import java.io.BufferedReader;
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.FileOutputStream;
-import java.io.FileReader;
-import java.io.InputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
 import java.net.URL;
 import java.net.URLConnection;
 import java.text.ParseException;
@@ -14,13 +13,14 @@ import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Locale;
 import java.util.Map;
+import java.util.Set;
 import java.util.TreeMap;
 import java.util.TreeSet;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
-import java.util.zip.GZIPInputStream;
 
 import javax.vecmath.Matrix4d;
 import javax.vecmath.Point3d;
@@ -36,10 +36,15 @@ import owl.core.structure.io.PdbxPolySeqGroup;
 import owl.core.structure.io.PdbxPolySeqLine;
 import owl.core.structure.io.PdbxPolySeqLineList;
 import owl.core.util.FileFormatException;
+import owl.core.util.Goodies;
+import owl.core.util.NumberParser;
 
 
 /**
  * A mmCIF file format parser. 
+ * The file can be plain or gzipped, in the latter case it is decompressed on the fly while reading.
+ * The file is read in a single pass: the _atom_site records are parsed into {@link AtomLine}s 
+ * as they are read, all other wanted fields are kept in {@link CifFieldInfo}s to be parsed later.
  * 
  * @author		Jose Duarte
  */
@@ -51,6 +56,13 @@ public class CiffileParser {
 	
 	private static final String TMP_DIR = System.getProperty("java.io.tmpdir");
 	
+	private static final Pattern DATA_BLOCK_REGEX = Pattern.compile("^data_\\w+");
+	private static final Pattern FIELD_ID_REGEX = Pattern.compile("^\\s*(_\\w+)\\..*$");
+	private static final Pattern SUBFIELD_REGEX = Pattern.compile("^\\s*_\\w+\\.([\\w\\-\\[\\]]+)(?:\\s+(.*))?$");
+	private static final Pattern SS_ID_REGEX = Pattern.compile("^(\\w).+_P(\\d+)$");
+	
+	private static final int FIRST_MODEL = -1;
+	
 	/*--------------------------- member variables --------------------------*/
 	
 	// input file
@@ -82,6 +94,13 @@ public class CiffileParser {
 	
 	private HashMap<String, CifFieldInfo> fields;
 	
+	// the ids of the fields whose data are read while scanning: those of the categories skipped 
+	// in the load options remain empty
+	private HashSet<String> scannedIds;
+	
+	private PdbLoadOptions options;
+	private int scanModel; // the model whose atoms are kept while scanning or FIRST_MODEL
+	
 	private boolean fieldsTitlesRead;
 	
 	private boolean hasPdbCode;
@@ -89,6 +108,38 @@ public class CiffileParser {
 	
 	private String[] chainsArray;
 	private Integer[] modelsArray;
+	
+	// the _atom_site data are not stored in their CifFieldInfo but directly parsed into 
+	// AtomLines while scanning the file, only for one model (keptModel): any other model 
+	// is read by scanning the file again
+	private AtomLineList atomLines;
+	private int keptModel;
+	private TreeSet<Integer> allModels;
+	
+	// the _atom_site record being read (a record can span several lines) and the indices of its subfields.
+	// Each token is kept as the line it comes from plus its begin/end positions, so that 
+	// numbers can be parsed in place without creating a String per token
+	private String[] atomSiteRecord;
+	private int[] atomSiteTokenBegs;
+	private int[] atomSiteTokenEnds;
+	private int atomSiteRecordIdx;
+	private int groupPdbIdx;
+	private int idIdx;
+	private int typeSymbolIdx;
+	private int labelAtomIdIdx;
+	private int labelAltIdIdx;
+	private int labelCompIdIdx;
+	private int labelAsymIdIdx;
+	private int labelSeqIdIdx;
+	private int authSeqIdIdx;
+	private int pdbxPDBInsCodeIdx;
+	private int cartnXIdx;
+	private int cartnYIdx;
+	private int cartnZIdx;
+	private int occupancyIdx;
+	private int bIsoOrEquivIdx;
+	private int pdbxPDBModelNumIdx;
+	private int authAsymIdIdx;
 
 
 	/*----------------------------- constructors ----------------------------*/
@@ -108,7 +159,7 @@ public class CiffileParser {
 	
 	/**
 	 * Constructs a cif file parser from online PDB given pdb code and pdbFtpUrl
-	 * Data will be downloaded an stored in local file
+	 * Data will be downloaded an stored (gzipped) in local file
 	 * but will only be loaded from local file upon call of readChain(pdbChainCode, modelSerial)  
 	 * @param pdbCode
 	 * @param pdbFtpUrl
@@ -119,41 +170,35 @@ public class CiffileParser {
 		this.fieldsTitlesRead = false;
 		this.hasPdbCode = false;
 		this.hasPdbxPolySeq = false;
+		this.options = new PdbLoadOptions();
+		this.scanModel = FIRST_MODEL;
 		
-		// we store the file locally instead of reading directly from the ftp stream, so that the file can be cached locally in applications like CMView	
+		// we store the file locally instead of reading directly from the ftp stream, so that the file can be cached locally in applications like CMView
+		// the file is stored gzipped: it is decompressed on the fly while scanning it
 		String gzCifFileName = pdbCode+CIF_FILE_EXTENSION;
-		File gzCifFile = new File(TMP_DIR,gzCifFileName);
-		gzCifFile.deleteOnExit();
-		this.cifFile = new File(TMP_DIR,pdbCode + ".cif");
+		this.cifFile = new File(TMP_DIR,gzCifFileName);
 		this.cifFile.deleteOnExit();
 		
 		// getting gzipped cif file from ftp
 		URL url = new URL(pdbFtpUrl+gzCifFileName);
 		URLConnection urlc = url.openConnection();
 		InputStream is = urlc.getInputStream();
-		FileOutputStream os = new FileOutputStream(gzCifFile);
-		int b;
-		while ( (b=is.read())!=-1) {
-			os.write(b);
-		}
-		is.close();
-		os.close();
-		
-		// unzipping downloaded file
-		GZIPInputStream zis = new GZIPInputStream(new FileInputStream(gzCifFile));
-		os = new FileOutputStream(cifFile);
-		while ( (b=zis.read())!=-1) {
-			os.write(b);
+		FileOutputStream os = new FileOutputStream(cifFile);
+		try {
+			Goodies.copyStream(is, os);
+		} finally {
+			is.close();
+			os.close();
 		}
-		zis.close();
-		os.close();
 		
 		scanFile();
 	}
 	
 	/**
-	 * Constructs a cif file parser object given cif file
+	 * Constructs a cif file parser object given cif file (plain or gzipped)
 	 * Data will be loaded from file upon call of {@link #readChain(String, int)} 
+	 * Only the atoms of the first model are kept while scanning, reading any other model 
+	 * scans the file again.
 	 * @param ciffile
 	 * @throws FileFormatException 
 	 * @throws IOException 
@@ -162,6 +207,26 @@ public class CiffileParser {
 		this.cifFile = ciffile;
 		this.fieldsTitlesRead = false;
 		this.hasPdbCode = false;
+		this.options = new PdbLoadOptions();
+		this.scanModel = FIRST_MODEL;
+		scanFile();
+	}
+	
+	/**
+	 * Constructs a cif file parser object given cif file (plain or gzipped) reading only
+	 * the categories, model, chains and atoms specified in the given load options. 
+	 * Data of any other model will not be available.
+	 * @param ciffile
+	 * @param options
+	 * @throws IOException
+	 * @throws FileFormatException
+	 */
+	public CiffileParser (File ciffile, PdbLoadOptions options) throws IOException, FileFormatException {
+		this.cifFile = ciffile;
+		this.fieldsTitlesRead = false;
+		this.hasPdbCode = false;
+		this.options = options;
+		this.scanModel = options.getModel();
 		scanFile();
 	}
 	
@@ -248,26 +313,17 @@ public class CiffileParser {
 		if (modelsArray!=null) {
 			return modelsArray;
 		}
-		TreeSet<Integer> models = new TreeSet<Integer>();
 		try {
 			if (!fieldsTitlesRead) {
 				scanFile();
 			}
-			
-			CifFieldInfo atomSiteField = fields.get(atomSite);
-			int modelIdx = atomSiteField.getIndexForSubField("pdbx_PDB_model_num");
-			
-			while(atomSiteField.hasMoreData()) {
-				String[] tokens = atomSiteField.getNextTokens();
-				models.add(Integer.parseInt(tokens[modelIdx]));
-			}
-			
 		} catch (IOException e) {
 			throw new PdbLoadException(e);
 		} catch (FileFormatException e) {
 			throw new PdbLoadException(e);
 		}
 		
+		TreeSet<Integer> models = allModels;
 		if (models.isEmpty()) return null;
 		
 		modelsArray = new Integer[models.size()];
@@ -275,108 +331,163 @@ public class CiffileParser {
 		return modelsArray;
 	}
 	
+	/**
+	 * Returns the number of _atom_site records kept from scanning the file.
+	 * @return
+	 */
+	protected int getNumAtomLines() {
+		return atomLines==null?0:atomLines.size();
+	}
+	
 	/*---------------------------- private methods --------------------------*/
 	
 	/**
-	 * Scanning of data structure in file, everything is stored into the fields map.
+	 * Scanning of data structure in file, everything is stored into the fields map, 
+	 * except for the _atom_site records which are parsed directly into AtomLines.
 	 * Only data in ids array is read.
 	 * @throws IOException
 	 * @throws FileFormatException
 	 */
 	private void scanFile() throws IOException, FileFormatException {
+		scanFile(scanModel);
+	}
+	
+	/**
+	 * Scans the file as {@link #scanFile()}, keeping the AtomLines of the given model only.
+	 * @param model the model serial or FIRST_MODEL for the first model found in the file
+	 * @throws IOException
+	 * @throws FileFormatException
+	 */
+	private void scanFile(int model) throws IOException, FileFormatException {
 		// initialising data structure to store the parsed fields
 		fields = new HashMap<String, CifFieldInfo>();
+		scannedIds = new HashSet<String>();
 		for (String id:ids){
 			fields.put(id, new CifFieldInfo(id));
+			PdbLoadOptions.Category category = getCategory(id);
+			if (category==null || options.isCategoryWanted(category)) {
+				scannedIds.add(id);
+			}
 		}
+		atomLines = null;
+		keptModel = model;
+		allModels = new TreeSet<Integer>();
+		atomSiteRecord = null;
+		atomSiteRecordIdx = 0;
 		
-		BufferedReader bf = new BufferedReader(new FileReader(cifFile));
+		BufferedReader bf = new BufferedReader(new InputStreamReader(Goodies.openPossiblyGzippedFile(cifFile)));
 		
-		String line;
-		line = bf.readLine(); // read first line
-		Pattern p = Pattern.compile("^data_\\w+");
-		if (!p.matcher(line).find()){
-			bf.close();
-			throw new FileFormatException("The file "+cifFile+" doesn't seem to be a cif file");
-		}
-		
-		boolean inLoop = false;
-		boolean inWantedData = false;
-		String lastFieldId = null;
-		String currentFieldId = null;
-
-		while((line = bf.readLine()) != null ) {
-			
-			if (line.startsWith("#")) continue; // hashes are comments
-			
-			if (line.trim().isEmpty()) continue; // ignore blank lines
-			
-			if (line.startsWith("loop_")) {
-				inLoop = true;
-				continue;
-			}
-			
-			boolean isDataLine = false;
-			
-			p = Pattern.compile("^\\s*(_\\w+)\\..*$");
-			Matcher m = p.matcher(line);
-			if (m.find()) {
-				currentFieldId = m.group(1);  				
-			} else {
-				// otherwise the line has values of loop element or is in a multi-line quoted value
-				isDataLine = true;
+		try {
+			String line;
+			line = bf.readLine(); // read first line
+			if (line==null || !DATA_BLOCK_REGEX.matcher(line).find()){
+				throw new FileFormatException("The file "+cifFile+" doesn't seem to be a cif file");
 			}
 
-			if (!isDataLine) { // id line: we scan all the ids that we are interested in
-				
-				if (fields.containsKey(currentFieldId)) { // we only scan those we are interested in
-					CifFieldInfo currentField = fields.get(currentFieldId);
-					
-					// setting inWantedData to true to flag that we want to parse any data lines coming within this field 
-					inWantedData = true;
+			boolean inLoop = false;
+			boolean inWantedData = false;
+			String currentFieldId = null;
+			// a ;;-quoted multi-line value within the _atom_site records
+			StringBuilder atomSiteMultiLineValue = null;
 
-					// setting field to loop if seen in last line
-					if (inLoop) {
-						currentField.setLoop(inLoop);
-						inLoop = false;
-					}
+			while((line = bf.readLine()) != null ) {
 
-					p = Pattern.compile("^\\s*"+currentFieldId+"\\.([\\w\\-\\[\\]]+)(?:\\s+(.*))?$");
-					m = p.matcher(line);
-					if (m.find()){
-						currentField.addSubField(m.group(1));
-						
-						if (m.group(2)!=null) { // id there is data in same line we add it
-							// note that we add the end of line so that strings are full, needed for the tokeniser method
-							currentField.addDataToLastSubFieldDataBuffer(m.group(2)+"\n"); 
-						} else {
-							currentField.addDataToLastSubFieldDataBuffer("\n");
-						}
+				if (atomSiteMultiLineValue!=null) {
+					if (line.startsWith(";")) {
+						String value = atomSiteMultiLineValue.toString();
+						addAtomSiteToken(value, 0, value.length());
+						atomSiteMultiLineValue = null;
+						readAtomSiteLine(line.substring(1));
+					} else {
+						if (atomSiteMultiLineValue.length()>0) atomSiteMultiLineValue.append('\n');
+						atomSiteMultiLineValue.append(line);
 					}
+					continue;
+				}
+
+				if (line.startsWith("#")) continue; // hashes are comments
+
+				if (isBlank(line)) continue; // ignore blank lines
+
+				if (line.startsWith("loop_")) {
+					inLoop = true;
+					continue;
+				}
+
+				boolean isDataLine = false;
+
+				// only lines starting with '_' can be id lines: we avoid matching the regex for all other lines
+				Matcher m = null;
+				if (isIdLineCandidate(line)) m = FIELD_ID_REGEX.matcher(line);
+				if (m!=null && m.find()) {
+					currentFieldId = m.group(1);  				
 				} else {
-					inLoop = false; // we need to reset inLoop in case we are in an unwanted field
+					// otherwise the line has values of loop element or is in a multi-line quoted value
+					isDataLine = true;
 				}
 
-			} else { // data line 
-			
-				if (inWantedData) { // if this is one of the fields we want to parse 
-					
-					CifFieldInfo currentField = fields.get(currentFieldId);
-					// note that we add the end of line so that strings are full, needed for the tokeniser method
-					currentField.addDataToLastSubFieldDataBuffer(line+"\n");
+				if (!isDataLine) { // id line: we scan all the ids that we are interested in
+
+					// setting inWantedData to flag whether we want to parse any data lines coming within this field
+					// (this must be done here and not after the line: the data of the first subfield can be in the next lines)
+					inWantedData = scannedIds.contains(currentFieldId);
 
+					if (inWantedData) { // we only scan those we are interested in
+						CifFieldInfo currentField = fields.get(currentFieldId);
+
+						// setting field to loop if seen in last line
+						if (inLoop) {
+							currentField.setLoop(inLoop);
+							inLoop = false;
+						}
+
+						m = SUBFIELD_REGEX.matcher(line);
+						if (m.find()){
+							currentField.addSubField(m.group(1));
+
+							if (m.group(2)!=null) { // id there is data in same line we add it
+								// note that we add the end of line so that strings are full, needed for the tokeniser method
+								currentField.addDataToLastSubFieldDataBuffer(m.group(2)+"\n"); 
+							} else {
+								currentField.addDataToLastSubFieldDataBuffer("\n");
+							}
+						}
+					} else {
+						inLoop = false; // we need to reset inLoop in case we are in an unwanted field
+					}
+
+				} else { // data line 
+
+					if (inWantedData) { // if this is one of the fields we want to parse 
+
+						if (currentFieldId.equals(atomSite)) {
+							// the _atom_site records are not buffered, but parsed as they come
+							if (atomSiteRecord==null) {
+								initAtomSiteIndices(fields.get(atomSite));
+							}
+							if (line.startsWith(";")) {
+								atomSiteMultiLineValue = new StringBuilder(line.substring(1));
+							} else {
+								readAtomSiteLine(line);
+							}
+						} else {
+							CifFieldInfo currentField = fields.get(currentFieldId);
+							// note that we add the end of line so that strings are full, needed for the tokeniser method
+							currentField.addDataToLastSubFieldDataBuffer(line+"\n");
+						}
+
+					}
 				}
-			}
 
-			if (lastFieldId!=null && !lastFieldId.equals(currentFieldId)) {
-				// we are in a new field (id):
-				// resetting inWantedData to false
-				inWantedData = false;
-			}
-			lastFieldId = currentFieldId;
-		} 
+			} 
+
+		} finally {
+			bf.close();
+		}
 		
-		bf.close();
+		if (atomSiteRecordIdx!=0) {
+			throw new FileFormatException("Incomplete last record in _atom_site field of mmCIF file");
+		}
 		
 		for (CifFieldInfo field:fields.values()) {
 			if (!field.checkConsistency()) throw new FileFormatException("Inconsistent data structure while scanning mmCIF file");
@@ -386,6 +497,190 @@ public class CiffileParser {
 		fieldsTitlesRead = true;
 	}
 	
+	/**
+	 * Returns the load category of the given field id or null if the field is always read.
+	 * @param id
+	 * @return
+	 */
+	private static PdbLoadOptions.Category getCategory(String id) {
+		if (id.equals(atomSite)) return PdbLoadOptions.Category.ATOMS;
+		if (id.equals(pdbxPolySeq)) return PdbLoadOptions.Category.SEQRES;
+		if (id.equals(structConf) || id.equals(structSheet)) return PdbLoadOptions.Category.SECONDARY_STRUCTURE;
+		if (id.equals(cell) || id.equals(symmetry) || id.equals(atomSites)) return PdbLoadOptions.Category.CRYSTAL;
+		if (id.equals(reflns) || id.equals(refine)) return PdbLoadOptions.Category.QUALITY;
+		if (id.equals(pdbxStructAssembly) || id.equals(pdbxStructAssemblyGen) || id.equals(pdbxStructOperList)) return PdbLoadOptions.Category.BIO_UNITS;
+		return null;
+	}
+	
+	private static boolean isBlank(String line) {
+		// same as line.trim().isEmpty() without creating a String
+		for (int i=0;i<line.length();i++) {
+			if (line.charAt(i)>' ') return false;
+		}
+		return true;
+	}
+	
+	private static boolean isIdLineCandidate(String line) {
+		for (int i=0;i<line.length();i++) {
+			char c = line.charAt(i);
+			if (c=='_') return true;
+			if (!Character.isWhitespace(c)) return false;
+		}
+		return false;
+	}
+	
+	private void initAtomSiteIndices(CifFieldInfo atomSiteField) {
+		atomSiteRecord = new String[atomSiteField.getNumSubFields()];
+		atomSiteTokenBegs = new int[atomSiteField.getNumSubFields()];
+		atomSiteTokenEnds = new int[atomSiteField.getNumSubFields()];
+		atomSiteRecordIdx = 0;
+		
+		groupPdbIdx = atomSiteField.getIndexForSubField("group_PDB");
+		idIdx = atomSiteField.getIndexForSubField("id");
+		typeSymbolIdx = atomSiteField.getIndexForSubField("type_symbol");
+		labelAtomIdIdx = atomSiteField.getIndexForSubField("label_atom_id");
+		labelAltIdIdx = atomSiteField.getIndexForSubField("label_alt_id");
+		labelCompIdIdx = atomSiteField.getIndexForSubField("label_comp_id");
+		labelAsymIdIdx = atomSiteField.getIndexForSubField("label_asym_id");
+		labelSeqIdIdx = atomSiteField.getIndexForSubField("label_seq_id");
+		authSeqIdIdx = atomSiteField.getIndexForSubField("auth_seq_id");
+		pdbxPDBInsCodeIdx = atomSiteField.getIndexForSubField("pdbx_PDB_ins_code");
+		cartnXIdx = atomSiteField.getIndexForSubField("Cartn_x");
+		cartnYIdx = atomSiteField.getIndexForSubField("Cartn_y");
+		cartnZIdx = atomSiteField.getIndexForSubField("Cartn_z");
+		occupancyIdx = atomSiteField.getIndexForSubField("occupancy");
+		bIsoOrEquivIdx = atomSiteField.getIndexForSubField("B_iso_or_equiv");
+		pdbxPDBModelNumIdx = atomSiteField.getIndexForSubField("pdbx_PDB_model_num");
+		authAsymIdIdx = atomSiteField.getIndexForSubField("auth_asym_id");
+	}
+	
+	/**
+	 * Splits a line of _atom_site data into its tokens (with surrounding '' or "" quotes removed), 
+	 * adding each to the current record. No substrings are created.
+	 * @param line
+	 */
+	private void readAtomSiteLine(String line) {
+		int len = line.length();
+		int i = 0;
+		while (i<len) {
+			char c = line.charAt(i);
+			if (c==' ' || c=='\t') {
+				i++;
+				continue;
+			}
+			int start = i;
+			int end = i;
+			if (c=='\'' || c=='"') {
+				// a quoted value ends with the quote char followed by a space or the end of the line
+				start = i+1;
+				end = start;
+				while (end<len && !(line.charAt(end)==c && (end+1==len || line.charAt(end+1)==' ' || line.charAt(end+1)=='\t'))) {
+					end++;
+				}
+				i = end+1;
+			} else {
+				while (end<len && line.charAt(end)!=' ' && line.charAt(end)!='\t') {
+					end++;
+				}
+				i = end;
+			}
+			addAtomSiteToken(line, start, end);
+		}
+	}
+	
+	private void addAtomSiteToken(String source, int beg, int end) {
+		atomSiteRecord[atomSiteRecordIdx] = source;
+		atomSiteTokenBegs[atomSiteRecordIdx] = beg;
+		atomSiteTokenEnds[atomSiteRecordIdx] = end;
+		atomSiteRecordIdx++;
+		if (atomSiteRecordIdx==atomSiteRecord.length) {
+			addAtomSiteRecord();
+			atomSiteRecordIdx = 0;
+		}
+	}
+	
+	/**
+	 * Returns the token of the current record at given index, interned since 
+	 * all tokens kept as strings are names repeated in many records
+	 * @param idx
+	 * @return
+	 */
+	private String getAtomSiteToken(int idx) {
+		return NameInterner.intern(atomSiteRecord[idx], atomSiteTokenBegs[idx], atomSiteTokenEnds[idx]);
+	}
+	
+	private boolean atomSiteTokenEquals(int idx, String value) {
+		int len = atomSiteTokenEnds[idx]-atomSiteTokenBegs[idx];
+		return len==value.length() && atomSiteRecord[idx].regionMatches(atomSiteTokenBegs[idx], value, 0, len);
+	}
+	
+	private boolean atomSiteTokenIn(int idx, Set<String> values) {
+		for (String value:values) {
+			if (atomSiteTokenEquals(idx, value)) return true;
+		}
+		return false;
+	}
+	
+	private int parseAtomSiteInt(int idx) {
+		return NumberParser.parseInt(atomSiteRecord[idx], atomSiteTokenBegs[idx], atomSiteTokenEnds[idx]);
+	}
+	
+	private double parseAtomSiteDouble(int idx) {
+		return NumberParser.parseDouble(atomSiteRecord[idx], atomSiteTokenBegs[idx], atomSiteTokenEnds[idx]);
+	}
+	
+	private void addAtomSiteRecord() {
+		
+		// group_PDB=0, auth_asym_id=22, pdbx_PDB_model_num=24, label_alt_id=4, id=1, label_atom_id=3, label_comp_id=5, label_asym_id=6, label_seq_id=8, Cartn_x=10, Cartn_y=11, Cartn_z=12, occupancy=13, B_iso_or_equiv=14
+		//   0   1    2  3  4   5 6 7 8  9     10    11       12    13    14 151617181920   2122 23 24
+		//ATOM   2    C CA  . MET A 1 1  ? 38.591 8.543   15.660  1.00 77.79  ? ? ? ? ? 1  MET A CA  1
+		
+		int model = parseAtomSiteInt(pdbxPDBModelNumIdx);
+		allModels.add(model);
+		if (keptModel==FIRST_MODEL) keptModel = model;
+		if (model!=keptModel) return;
+		
+		boolean isHetAtm = atomSiteTokenEquals(groupPdbIdx, "HETATM");
+		if (!isHetAtm && !atomSiteTokenEquals(groupPdbIdx, "ATOM")) return;
+		
+		if (atomSiteTokenEquals(labelCompIdIdx, HetResidue.WATER) || atomSiteTokenEquals(labelCompIdIdx, HetResidue.DEUT_WATER)) return;
+		
+		// the chain and atom filters of the load options: the records are dropped before parsing any of their values
+		if (options.getPdbChainCodes()!=null && !atomSiteTokenIn(authAsymIdIdx, options.getPdbChainCodes())) return;
+		if (options.getAtomNames()!=null && !atomSiteTokenIn(labelAtomIdIdx, options.getAtomNames())) return;
+		
+		String res_type = getAtomSiteToken(labelCompIdIdx); // label_comp_id
+		String asymId = getAtomSiteToken(labelAsymIdIdx);
+		String labelAltId = getAtomSiteToken(labelAltIdIdx);
+		int atomserial=parseAtomSiteInt(idIdx); // id
+		String element = getAtomSiteToken(typeSymbolIdx); // type_symbol
+		String atom = getAtomSiteToken(labelAtomIdIdx); // label_atom_id
+		int resSerial = -1;
+		if (!atomSiteTokenEquals(labelSeqIdIdx, ".")) {
+			resSerial = parseAtomSiteInt(labelSeqIdIdx); // label_seq_id
+		}
+		int pdbResSerial = parseAtomSiteInt(authSeqIdIdx); 
+		String insCode = getAtomSiteToken(pdbxPDBInsCodeIdx);
+		double x = parseAtomSiteDouble(cartnXIdx); // Cartn_x
+		double y = parseAtomSiteDouble(cartnYIdx); // Cartn_y
+		double z = parseAtomSiteDouble(cartnZIdx); // Cartn_z
+		Point3d coords = new Point3d(x,y,z);
+		double occupancy = parseAtomSiteDouble(occupancyIdx); // occupancy
+		double bfactor = parseAtomSiteDouble(bIsoOrEquivIdx); // bfactor
+		String authAsymId = getAtomSiteToken(authAsymIdIdx);
+		
+		if (atomLines==null) {
+			atomLines = new AtomLineList();
+		}
+		// note we don't use the outOfPolyChain field of AtomLine (we use it only 
+		// in pdb file parser), we fill it with false
+		// the insCode and lineIsHetAtm fields are used only in case no pdbx_poly_seq_scheme is present
+		atomLines.addAtomLine(
+				new AtomLine(asymId, labelAltId, atomserial, atom, element, 
+						res_type, resSerial, pdbResSerial, insCode, coords, occupancy, bfactor, 
+						authAsymId, false, isHetAtm));
+	}
+	
 	protected String readPdbCode() {
 
 		CifFieldInfo entryField = fields.get(entry); 
@@ -530,6 +825,8 @@ public class CiffileParser {
 	 */
 	protected String readExpMethod() {
 		CifFieldInfo exptlField = fields.get(exptl);
+		// exptl is optional in non PDB-deposited mmCIF files
+		if (exptlField.isEmpty()) return null;
 		
 		String expMethod = null;
 		
@@ -995,75 +1292,16 @@ public class CiffileParser {
 		
 	}
 	
-	private void readAtomSite(PdbAsymUnit pdbAsymUnit, int model) throws PdbLoadException, FileFormatException {
-		
-		AtomLineList atomLines = new AtomLineList();
-		
-		CifFieldInfo atomSiteField = fields.get(atomSite);
-		
-		int groupPdbIdx = atomSiteField.getIndexForSubField("group_PDB");
-		int idIdx = atomSiteField.getIndexForSubField("id");
-		int typeSymbolIdx = atomSiteField.getIndexForSubField("type_symbol");
-		int labelAtomIdIdx = atomSiteField.getIndexForSubField("label_atom_id");
-		int labelAltIdIdx = atomSiteField.getIndexForSubField("label_alt_id");
-		int labelCompIdIdx = atomSiteField.getIndexForSubField("label_comp_id");
-		int labelAsymIdIdx = atomSiteField.getIndexForSubField("label_asym_id");
-		int labelSeqIdIdx = atomSiteField.getIndexForSubField("label_seq_id");
-		int authSeqIdIdx = atomSiteField.getIndexForSubField("auth_seq_id");
-		int pdbxPDBInsCodeIdx = atomSiteField.getIndexForSubField("pdbx_PDB_ins_code");
-		int cartnXIdx = atomSiteField.getIndexForSubField("Cartn_x");
-		int cartnYIdx = atomSiteField.getIndexForSubField("Cartn_y");
-		int cartnZIdx = atomSiteField.getIndexForSubField("Cartn_z");
-		int occupancyIdx = atomSiteField.getIndexForSubField("occupancy");
-		int bIsoOrEquivIdx = atomSiteField.getIndexForSubField("B_iso_or_equiv");
-		int pdbxPDBModelNumIdx = atomSiteField.getIndexForSubField("pdbx_PDB_model_num");
-		int authAsymIdIdx = atomSiteField.getIndexForSubField("auth_asym_id");
-		 
-		
-		while(atomSiteField.hasMoreData()) {
-
-			// group_PDB=0, auth_asym_id=22, pdbx_PDB_model_num=24, label_alt_id=4, id=1, label_atom_id=3, label_comp_id=5, label_asym_id=6, label_seq_id=8, Cartn_x=10, Cartn_y=11, Cartn_z=12, occupancy=13, B_iso_or_equiv=14
-			//   0   1    2  3  4   5 6 7 8  9     10    11       12    13    14 151617181920   2122 23 24
-			//ATOM   2    C CA  . MET A 1 1  ? 38.591 8.543   15.660  1.00 77.79  ? ? ? ? ? 1  MET A CA  1
-			String[] tokens = atomSiteField.getNextTokens();
-
-			if ((tokens[groupPdbIdx].equals("ATOM") || tokens[groupPdbIdx].equals("HETATM")) &&  
-				Integer.parseInt(tokens[pdbxPDBModelNumIdx])==model) { // match our given chain and model 
-				
-				String asymId = tokens[labelAsymIdIdx];
-				String labelAltId = tokens[labelAltIdIdx];
-				int atomserial=Integer.parseInt(tokens[idIdx]); // id
-				String element = tokens[typeSymbolIdx]; // type_symbol
-				String atom = tokens[labelAtomIdIdx]; // label_atom_id
-				String res_type = tokens[labelCompIdIdx]; // label_comp_id
-				int resSerial = -1;
-				if (!tokens[labelSeqIdIdx].equals(".")) {
-					resSerial = Integer.parseInt(tokens[labelSeqIdIdx]); // label_seq_id
-				}
-				int pdbResSerial = Integer.parseInt(tokens[authSeqIdIdx]); 
-				String insCode = tokens[pdbxPDBInsCodeIdx];
-				double x = Double.parseDouble(tokens[cartnXIdx]); // Cartn_x
-				double y = Double.parseDouble(tokens[cartnYIdx]); // Cartn_y
-				double z = Double.parseDouble(tokens[cartnZIdx]); // Cartn_z
-				Point3d coords = new Point3d(x,y,z);
-				double occupancy = Double.parseDouble(tokens[occupancyIdx]); // occupancy
-				double bfactor = Double.parseDouble(tokens[bIsoOrEquivIdx]); // bfactor
-				String authAsymId = tokens[authAsymIdIdx];
-				if (!res_type.equals(HetResidue.WATER) && !res_type.equals(HetResidue.DEUT_WATER)) {
-					// note we don't use the outOfPolyChain field of AtomLine (we use it only 
-					// in pdb file parser), we fill it with false
-					// the insCode and lineIsHetAtm fields are used only in case no pdbx_poly_seq_scheme is present
-					atomLines.addAtomLine(
-							new AtomLine(asymId, labelAltId, atomserial, atom, element, 
-									res_type, resSerial, pdbResSerial, insCode, coords, occupancy, bfactor, 
-									authAsymId, false, tokens[groupPdbIdx].equals("HETATM")));
-				}
-			}
+	private void readAtomSite(PdbAsymUnit pdbAsymUnit, int model) throws PdbLoadException, FileFormatException, IOException {
+		
+		if (model!=keptModel && scanModel==FIRST_MODEL && allModels.contains(model)) {
+			// only the atoms of one model are kept while scanning: we need to scan again for any other
+			scanFile(model);
 		}
-		if (atomLines.isEmpty()) { // no atom data was found for given model
+
+		if (atomLines==null || model!=keptModel) { // no atom data was found for given model
 			throw new PdbLoadException("Couldn't find _atom_site data for given model: "+model);
 		}
-
 		
 		processAtomLines(pdbAsymUnit, atomLines);
 		
@@ -1273,6 +1511,12 @@ public class CiffileParser {
 
 	private void readPdbxPolySeq(PdbAsymUnit pdbAsymUnit) throws PdbLoadException {
 		
+		if (!options.isCategoryWanted(PdbLoadOptions.Category.SEQRES)) {
+			// we proceed as for non PDB-deposited mmCIF files: sequences from the observed residues
+			hasPdbxPolySeq = false;
+			return;
+		}
+		
 		PdbxPolySeqLineList list  = new PdbxPolySeqLineList();
 		
 		CifFieldInfo pdbxPolySeqField = fields.get(pdbxPolySeq);
@@ -1334,6 +1578,8 @@ public class CiffileParser {
         
         for (PdbxPolySeqGroup group:groups) {
         	
+        	if (!options.isPdbChainCodeWanted(group.getPdbChainCode())) continue;
+        	
         	pdbchaincode2chaincode.put(group.getPdbChainCode(),group.getChainCode());
         	
         	PdbChain pdb = new PdbChain();
@@ -1374,8 +1620,7 @@ public class CiffileParser {
 				int end = Integer.parseInt(structConfField.getSubFieldData("end_label_seq_id"));
 				// we don't parse turns anymore as they were dropped from PDB files and anyway the annotation is VERY inconsistent
 				if (!id.startsWith("TURN")) {
-					Pattern p = Pattern.compile("^(\\w).+_P(\\d+)$");
-					Matcher m = p.matcher(id);
+					Matcher m = SS_ID_REGEX.matcher(id);
 					String ssId="Unknown";
 					if (m.find()){
 						ssId = m.group(1)+m.group(2); // e.g.: Hnn (helices) or Tnn (turns) 				
@@ -1390,7 +1635,7 @@ public class CiffileParser {
 					}
 					if(ssType != SecStrucElement.OTHER) {
 						SecStrucElement ssElem = new SecStrucElement(ssType, beg, end, ssId);
-						pdbAsymUnit.getChainForChainCode(begChainCode).getSecondaryStructure().add(ssElem);
+						addSecStrucElement(pdbAsymUnit, begChainCode, ssElem);
 					}
 				}
 
@@ -1413,8 +1658,7 @@ public class CiffileParser {
 					String begChainCode = tokens[begLabelAsymIdIdx];
 					String id = tokens[idIdx];
 					if (id.startsWith("TURN")) continue; // we don't parse turns anymore as they were dropped from PDB files and anyway the annotation is VERY inconsistent
-					Pattern p = Pattern.compile("^(\\w).+_P(\\d+)$");
-					Matcher m = p.matcher(id);
+					Matcher m = SS_ID_REGEX.matcher(id);
 					String ssId="Unknown";
 					if (m.find()){
 						ssId = m.group(1)+m.group(2); // e.g.: Hnn (helices) or Tnn (turns) 				
@@ -1431,7 +1675,7 @@ public class CiffileParser {
 					}
 					if(ssType != SecStrucElement.OTHER) {
 						SecStrucElement ssElem = new SecStrucElement(ssType, beg, end, ssId);
-						pdbAsymUnit.getChainForChainCode(begChainCode).getSecondaryStructure().add(ssElem);
+						addSecStrucElement(pdbAsymUnit, begChainCode, ssElem);
 					}
 				}
 
@@ -1453,7 +1697,7 @@ public class CiffileParser {
 				int end = Integer.parseInt(structSheetField.getSubFieldData("end_label_seq_id"));
 				String ssId=SecStrucElement.STRAND+sheetid+id; // e.g.: SA1, SA2..., SB1, SB2,...
 				SecStrucElement ssElem = new SecStrucElement(SecStrucElement.STRAND, beg, end, ssId);
-				pdbAsymUnit.getChainForChainCode(begChainCode).getSecondaryStructure().add(ssElem);
+				addSecStrucElement(pdbAsymUnit, begChainCode, ssElem);
 				
 			// loop
 			} else {
@@ -1478,7 +1722,7 @@ public class CiffileParser {
 					int end = Integer.parseInt(tokens[endLabelSeqIdIdx]);
 					String ssId=SecStrucElement.STRAND+sheetid+id; // e.g.: SA1, SA2..., SB1, SB2,...
 					SecStrucElement ssElem = new SecStrucElement(SecStrucElement.STRAND, beg, end, ssId);
-					pdbAsymUnit.getChainForChainCode(begChainCode).getSecondaryStructure().add(ssElem);
+					addSecStrucElement(pdbAsymUnit, begChainCode, ssElem);
 		
 				}
 			}
@@ -1494,6 +1738,13 @@ public class CiffileParser {
 		}
 	}
 	
+	private static void addSecStrucElement(PdbAsymUnit pdbAsymUnit, String chainCode, SecStrucElement ssElem) {
+		PdbChain chain = pdbAsymUnit.getChainForChainCode(chainCode);
+		// chains can be missing if filtered out in the load options
+		if (chain==null) return;
+		chain.getSecondaryStructure().add(ssElem);
+	}
+	
 	private static boolean isDouble(String value) {	
 		if(value==null) return false;
 		try{
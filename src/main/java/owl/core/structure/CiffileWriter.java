@@ -0,0 +1,437 @@
+package owl.core.structure;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.text.SimpleDateFormat;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+import javax.vecmath.Point3d;
+
+import owl.core.util.NumberParser;
+
+/**
+ * A fast writer of mmCIF files: the header data, the _pdbx_poly_seq_scheme and _atom_site
+ * loops are formatted directly into a large reusable byte buffer (see {@link BufferedAsciiWriter}),
+ * so that the atoms are streamed out in one pass.
+ * Unlike PDB format, mmCIF has no limits in the number of atoms or chains nor in the length
+ * of the chain codes: it is the format to use for large assemblies (more than 99999 atoms or 62 chains).
+ *
+ * The loops are written in 2 possible layouts:
+ * <ul>
+ * <li>standard: the same columns as the mmCIF files from the PDB</li>
+ * <li>compact: only the columns that {@link CiffileParser} reads, with no placeholder values,
+ * i.e. smaller files that are written and read back faster</li>
+ * </ul>
+ * A loop is written by calling its begin method, then the records methods for each chain and
+ * finally {@link #endLoop()}. Atom records are written sorted by atom serial as with {@link PdbfileWriter}.
+ * The files written can be read back with {@link PdbAsymUnit#PdbAsymUnit(File)}:
+ * alt locs, secondary structure and biounits are not written.
+ */
+public class CiffileWriter extends BufferedAsciiWriter {
+
+	private static final String DEFAULT_DATA_BLOCK_NAME = "owl";
+
+	private static final String[] ATOM_SITE_COLUMNS = {
+		"group_PDB", "id", "type_symbol", "label_atom_id", "label_alt_id", "label_comp_id",
+		"label_asym_id", "label_entity_id", "label_seq_id", "pdbx_PDB_ins_code",
+		"Cartn_x", "Cartn_y", "Cartn_z", "occupancy", "B_iso_or_equiv", "pdbx_formal_charge",
+		"auth_seq_id", "auth_comp_id", "auth_asym_id", "auth_atom_id", "pdbx_PDB_model_num"};
+
+	private static final String[] COMPACT_ATOM_SITE_COLUMNS = {
+		"group_PDB", "id", "type_symbol", "label_atom_id", "label_alt_id", "label_comp_id",
+		"label_asym_id", "label_seq_id", "pdbx_PDB_ins_code",
+		"Cartn_x", "Cartn_y", "Cartn_z", "occupancy", "B_iso_or_equiv",
+		"auth_seq_id", "auth_asym_id", "pdbx_PDB_model_num"};
+
+	private static final String[] PDBX_POLY_SEQ_SCHEME_COLUMNS = {
+		"asym_id", "entity_id", "seq_id", "mon_id", "ndb_seq_num", "pdb_seq_num", "auth_seq_num",
+		"pdb_mon_id", "auth_mon_id", "pdb_strand_id", "pdb_ins_code", "hetero"};
+
+	private static final String[] COMPACT_PDBX_POLY_SEQ_SCHEME_COLUMNS = {
+		"asym_id", "seq_id", "mon_id", "pdb_seq_num", "pdb_strand_id", "pdb_ins_code"};
+
+	private boolean compact;
+
+	/**
+	 * Constructs a CiffileWriter that writes to the given stream. The stream is
+	 * not closed by {@link #close()}, which only flushes the buffer into it.
+	 * @param out
+	 * @param compact if true the loops are written in the compact layout, if false in the standard one
+	 */
+	public CiffileWriter(OutputStream out, boolean compact) {
+		super(out);
+		this.compact = compact;
+	}
+
+	/**
+	 * Constructs a CiffileWriter that writes to the given file, gzipped if gzip is true.
+	 * @param file
+	 * @param gzip
+	 * @param compact if true the loops are written in the compact layout, if false in the standard one
+	 * @throws IOException
+	 */
+	public CiffileWriter(File file, boolean gzip, boolean compact) throws IOException {
+		super(file, gzip);
+		this.compact = compact;
+	}
+
+	/**
+	 * Returns the CIF chain code (asym id) for the given 0-based index, following the PDB 
+	 * convention: A, B, ..., Z, AA, BA, ..., ZA, AB, ...
+	 * @param index
+	 * @return
+	 */
+	public static String getAsymId(int index) {
+		StringBuilder asymId = new StringBuilder();
+		do {
+			asymId.append((char) ('A'+index%26));
+			index = index/26-1;
+		} while (index>=0);
+		return asymId.toString();
+	}
+
+	/**
+	 * Writes the data block header with the given PDB code as data block name and entry id.
+	 * If the PDB code is {@link PdbAsymUnit#NO_PDB_CODE} no entry id is written.
+	 * @param pdbCode
+	 * @throws IOException
+	 */
+	public void writeHeader(String pdbCode) throws IOException {
+		boolean hasPdbCode = pdbCode!=null && !pdbCode.equals(PdbAsymUnit.NO_PDB_CODE);
+		writeLine("data_"+(hasPdbCode?pdbCode.toUpperCase():DEFAULT_DATA_BLOCK_NAME));
+		endCategory();
+		if (hasPdbCode) {
+			writeItem("_entry.id", pdbCode.toUpperCase());
+			endCategory();
+		}
+	}
+
+	/**
+	 * Writes the data block header with the entry data of the given PdbAsymUnit: PDB code,
+	 * title, experimental method, release date, crystal cell, space group and quality parameters.
+	 * @param pdb
+	 * @throws IOException
+	 */
+	public void writeHeader(PdbAsymUnit pdb) throws IOException {
+		writeHeader(pdb.getPdbCode());
+		if (pdb.getTitle()!=null) {
+			writeItem("_struct.title", pdb.getTitle());
+			endCategory();
+		}
+		if (pdb.getExpMethod()!=null) {
+			writeItem("_exptl.method", pdb.getExpMethod());
+			endCategory();
+		}
+		if (pdb.getReleaseDate()!=null) {
+			writeItem("_database_PDB_rev.num", "1");
+			writeItem("_database_PDB_rev.date", new SimpleDateFormat("yyyy-MM-dd", Locale.ENGLISH).format(pdb.getReleaseDate()));
+			endCategory();
+		}
+		CrystalCell cell = pdb.getCrystalCell();
+		if (cell!=null) {
+			writeItem("_cell.length_a", Double.toString(cell.getA()));
+			writeItem("_cell.length_b", Double.toString(cell.getB()));
+			writeItem("_cell.length_c", Double.toString(cell.getC()));
+			writeItem("_cell.angle_alpha", Double.toString(cell.getAlpha()));
+			writeItem("_cell.angle_beta", Double.toString(cell.getBeta()));
+			writeItem("_cell.angle_gamma", Double.toString(cell.getGamma()));
+			endCategory();
+		}
+		if (pdb.getSpaceGroup()!=null) {
+			writeItem("_symmetry.space_group_name_H-M", pdb.getSpaceGroup().getShortSymbol());
+			endCategory();
+		}
+		if (pdb.getResolution()!=-1 || pdb.getRfree()!=-1) {
+			if (pdb.getResolution()!=-1) writeItem("_refine.ls_d_res_high", Double.toString(pdb.getResolution()));
+			if (pdb.getRfree()!=-1) writeItem("_refine.ls_R_factor_R_free", Double.toString(pdb.getRfree()));
+			endCategory();
+		}
+		if (pdb.getRsym()!=-1) {
+			writeItem("_reflns.pdbx_Rsym_value", Double.toString(pdb.getRsym()));
+			endCategory();
+		}
+	}
+
+	/**
+	 * Begins the _pdbx_poly_seq_scheme loop. The records of each polymer chain are then written
+	 * with {@link #writePdbxPolySeqRecords(PdbChain, String, String)}.
+	 * @throws IOException
+	 */
+	public void beginPdbxPolySeqScheme() throws IOException {
+		beginLoop("_pdbx_poly_seq_scheme", compact?COMPACT_PDBX_POLY_SEQ_SCHEME_COLUMNS:PDBX_POLY_SEQ_SCHEME_COLUMNS);
+	}
+
+	/**
+	 * Writes the _pdbx_poly_seq_scheme records of the full (SEQRES) sequence of the given polymer chain
+	 * using the given chain codes instead of its own ones.
+	 * The unobserved residues with no PDB residue serial are assigned one following the numbering of
+	 * the observed residues.
+	 * @param chain
+	 * @param asymId the CIF chain code to write
+	 * @param pdbStrandId the PDB chain code to write
+	 * @throws IOException
+	 */
+	public void writePdbxPolySeqRecords(PdbChain chain, String asymId, String pdbStrandId) throws IOException {
+		String seq = chain.getSequence().getSeq();
+		String[] pdbSerials = getPdbSerials(chain);
+		for (int i=0;i<seq.length();i++) {
+			int resser = i+1;
+			String monId = null;
+			boolean observed = chain.containsResidue(resser);
+			if (observed) {
+				monId = chain.getResidue(resser).getLongCode();
+			} else if (chain.getSequence().isProtein()) {
+				monId = AminoAcid.getByOneLetterCode(seq.charAt(i)).getThreeLetterCode();
+			} else {
+				monId = Nucleotide.getByOneLetterCode(seq.charAt(i)).getTwoLetterCode();
+			}
+			String pdbSerial = pdbSerials[i];
+			int insCodeIdx = getInsCodeIndex(pdbSerial);
+
+			appendToken(asymId);
+			if (!compact) appendString(" ?");
+			appendChar(' ');
+			appendInt(resser, 0);
+			appendChar(' ');
+			appendToken(monId);
+			if (!compact) {
+				appendChar(' ');
+				appendInt(resser, 0);
+			}
+			appendChar(' ');
+			appendPdbSerialNumber(pdbSerial, insCodeIdx);
+			if (!compact) {
+				appendChar(' ');
+				if (observed) appendPdbSerialNumber(pdbSerial, insCodeIdx);
+				else appendChar('?');
+				appendChar(' ');
+				if (observed) appendToken(monId);
+				else appendChar('?');
+				appendChar(' ');
+				if (observed) appendToken(monId);
+				else appendChar('?');
+			}
+			appendChar(' ');
+			appendToken(pdbStrandId);
+			appendChar(' ');
+			if (insCodeIdx<pdbSerial.length()) appendToken(pdbSerial.substring(insCodeIdx));
+			else appendChar('.');
+			if (!compact) appendString(" n");
+			endLine();
+		}
+	}
+
+	/**
+	 * Begins the _atom_site loop. The records of each chain are then written with
+	 * {@link #writeAtomSiteRecords(PdbChain, String, String, int)}.
+	 * @throws IOException
+	 */
+	public void beginAtomSite() throws IOException {
+		beginLoop("_atom_site", compact?COMPACT_ATOM_SITE_COLUMNS:ATOM_SITE_COLUMNS);
+	}
+
+	/**
+	 * Writes the _atom_site records of the given chain using the given chain codes instead
+	 * of its own ones.
+	 * @param chain
+	 * @param labelAsymId the CIF chain code to write
+	 * @param authAsymId the PDB chain code to write
+	 * @param model the model serial to write
+	 * @throws IOException
+	 */
+	public void writeAtomSiteRecords(PdbChain chain, String labelAsymId, String authAsymId, int model) throws IOException {
+		boolean nonPoly = chain.isNonPolyChain();
+		for (int atomser:chain.getAllAtomSerials()) {
+			Atom atom = chain.getAtom(atomser);
+			Residue residue = atom.getParentResidue();
+			String atomCode = atom.getCode();
+			String resCode = residue.getLongCode();
+			String pdbSerial = residue.getPdbSerial();
+			if (pdbSerial==null) pdbSerial = String.valueOf(residue.getSerial());
+			int insCodeIdx = getInsCodeIndex(pdbSerial);
+			Point3d coords = atom.getCoords();
+
+			appendString(residue instanceof HetResidue?"HETATM ":"ATOM ");
+			appendInt(atomser, 0);
+			appendChar(' ');
+			appendToken(atom.getType().getSymbol());
+			appendChar(' ');
+			appendToken(atomCode);
+			appendString(" . ");
+			appendToken(resCode);
+			appendChar(' ');
+			appendToken(labelAsymId);
+			if (!compact) appendString(" ?");
+			appendChar(' ');
+			if (nonPoly) appendChar('.');
+			else appendInt(residue.getSerial(), 0);
+			appendChar(' ');
+			if (insCodeIdx<pdbSerial.length()) appendToken(pdbSerial.substring(insCodeIdx));
+			else appendChar('?');
+			appendChar(' ');
+			appendDecimal(coords.x, 0, 3);
+			appendChar(' ');
+			appendDecimal(coords.y, 0, 3);
+			appendChar(' ');
+			appendDecimal(coords.z, 0, 3);
+			appendChar(' ');
+			appendDecimal(atom.getOccupancy(), 0, 2);
+			appendChar(' ');
+			appendDecimal(atom.getBfactor(), 0, 2);
+			if (!compact) appendString(" ?");
+			appendChar(' ');
+			appendPdbSerialNumber(pdbSerial, insCodeIdx);
+			if (!compact) {
+				appendChar(' ');
+				appendToken(resCode);
+			}
+			appendChar(' ');
+			appendToken(authAsymId);
+			if (!compact) {
+				appendChar(' ');
+				appendToken(atomCode);
+			}
+			appendChar(' ');
+			appendInt(model, 0);
+			endLine();
+		}
+	}
+
+	/**
+	 * Ends the current loop.
+	 * @throws IOException
+	 */
+	public void endLoop() throws IOException {
+		endCategory();
+	}
+
+	private void beginLoop(String category, String[] columns) throws IOException {
+		writeLine("loop_");
+		for (String column:columns) {
+			appendString(category);
+			appendChar('.');
+			appendString(column);
+			endLine();
+		}
+	}
+
+	private void endCategory() throws IOException {
+		writeLine("#");
+	}
+
+	private void writeItem(String item, String value) throws IOException {
+		appendString(item);
+		if (value.indexOf('\n')>=0 || (value.indexOf('\'')>=0 && value.indexOf('"')>=0)) {
+			// a multi-line text field
+			endLine();
+			appendChar(';');
+			appendString(value);
+			endLine();
+			appendChar(';');
+		} else {
+			appendChar(' ');
+			appendToken(value);
+		}
+		endLine();
+	}
+
+	/**
+	 * Appends the value as a mmCIF token, quoting it if needed.
+	 */
+	private void appendToken(String value) throws IOException {
+		if (!needsQuoting(value)) {
+			appendString(value);
+			return;
+		}
+		char quote = value.indexOf('\'')>=0?'"':'\'';
+		appendChar(quote);
+		appendString(value);
+		appendChar(quote);
+	}
+
+	private static boolean needsQuoting(String value) {
+		if (value.isEmpty()) return true;
+		char first = value.charAt(0);
+		if (first=='_' || first=='#' || first=='$' || first=='\'' || first=='"' || first==';' || first=='[' || first==']') return true;
+		for (int i=0;i<value.length();i++) {
+			if (value.charAt(i)<=' ') return true;
+		}
+		if (value.equals(".") || value.equals("?")) return true;
+		String lower = value.toLowerCase();
+		return lower.startsWith("data_") || lower.startsWith("save_") ||
+				lower.equals("loop_") || lower.equals("global_") || lower.equals("stop_");
+	}
+
+	/**
+	 * Appends the number part of the given PDB residue serial, whose insertion code begins at insCodeIdx
+	 */
+	private void appendPdbSerialNumber(String pdbSerial, int insCodeIdx) throws IOException {
+		appendInt(NumberParser.parseInt(pdbSerial, 0, insCodeIdx), 0);
+	}
+
+	/**
+	 * Returns the index where the insertion code of the given PDB residue serial begins,
+	 * its length if it has none.
+	 */
+	private static int getInsCodeIndex(String pdbSerial) {
+		int i = pdbSerial.length();
+		while (i>0 && !Character.isDigit(pdbSerial.charAt(i-1))) {
+			i--;
+		}
+		return i;
+	}
+
+	/**
+	 * Returns the PDB residue serials of all residues in the SEQRES sequence of the given chain
+	 * (indices are residue serials - 1), assigning one to those that don't have it: the
+	 * residue serial of the previous residue + 1 (or the next residue - 1 at the beginning
+	 * of the chain), with an insertion code in case it is already taken.
+	 */
+	private static String[] getPdbSerials(PdbChain chain) {
+		int length = chain.getSequence().getLength();
+		String[] pdbSerials = new String[length];
+		Map<Integer,String> resser2pdbresser = chain.getResser2pdbresserMap();
+		Set<String> taken = new HashSet<String>();
+		int firstMapped = -1;
+		for (int i=0;i<length;i++) {
+			String pdbSerial = null;
+			if (resser2pdbresser!=null) {
+				pdbSerial = resser2pdbresser.get(i+1);
+			}
+			if (pdbSerial==null && chain.containsResidue(i+1)) {
+				pdbSerial = chain.getResidue(i+1).getPdbSerial();
+			}
+			if (pdbSerial!=null) {
+				pdbSerials[i] = pdbSerial;
+				taken.add(pdbSerial);
+				if (firstMapped==-1) firstMapped = i;
+			}
+		}
+		for (int i=0;i<length;i++) {
+			if (pdbSerials[i]!=null) continue;
+			int number;
+			if (firstMapped==-1) {
+				number = i+1;
+			} else if (i<firstMapped) {
+				number = getPdbSerialNumber(pdbSerials[firstMapped]) - (firstMapped-i);
+			} else {
+				number = getPdbSerialNumber(pdbSerials[i-1]) + 1;
+			}
+			String pdbSerial = String.valueOf(number);
+			for (char insCode='A';taken.contains(pdbSerial) && insCode<='Z';insCode++) {
+				pdbSerial = String.valueOf(number)+insCode;
+			}
+			pdbSerials[i] = pdbSerial;
+			taken.add(pdbSerial);
+		}
+		return pdbSerials;
+	}
+
+	private static int getPdbSerialNumber(String pdbSerial) {
+		return NumberParser.parseInt(pdbSerial, 0, getInsCodeIndex(pdbSerial));
+	}
+}
@@ -7,12 +7,19 @@ import java.util.Iterator;
 import java.util.List;
 import java.util.Set;
 import java.util.TreeMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
 
+import javax.vecmath.Matrix4d;
 import javax.vecmath.Point3i;
 import javax.vecmath.Vector3d;
 
 import owl.core.structure.graphs.AICGraph;
 import owl.core.util.BoundingBox;
+import owl.core.util.GridContacts;
+import owl.core.util.SharedPools;
 
 /**
  * A class containing methods to find interfaces in a given PdbAsymUnit by
@@ -41,6 +48,125 @@ public class InterfacesFinder {
 	// We set the default value to 12 based on that (having not seen any difference in runtime)
 	private static final int DEF_NUM_CELLS = 12;
 	
+	/**
+	 * A crystal operator (asym unit of the unit cell plus a lattice translation) that 
+	 * passed the bounding box and redundancy checks and needs a chain to chain search.
+	 */
+	private class OperatorCandidate {
+		public int au;
+		public Point3i trans;
+		public boolean selfEquivalent;
+		public OperatorCandidate(int au, Point3i trans, boolean selfEquivalent) {
+			this.au = au;
+			this.trans = trans;
+			this.selfEquivalent = selfEquivalent;
+		}
+	}
+	
+	/**
+	 * Searches the chains of one symmetry mate (as transformed views of the unit cell chains) 
+	 * against the original asym unit's chains, one ChainPairTask per overlapping chain pair.
+	 */
+	private class OperatorSearchTask extends RecursiveAction {
+		
+		private static final long serialVersionUID = 1L;
+		
+		private OperatorCandidate op;
+		private long firstKey;
+		private PdbUnitCell cell;
+		private List<PdbChain> ichains;
+		private List<Atom[]> iAtoms;
+		private ConcurrentSkipListMap<Long,ChainInterface> results;
+		
+		private PdbAsymUnit jAsym;
+		
+		public OperatorSearchTask(OperatorCandidate op, long firstKey, PdbUnitCell cell, List<PdbChain> ichains, List<Atom[]> iAtoms, ConcurrentSkipListMap<Long,ChainInterface> results) {
+			this.op = op;
+			this.firstKey = firstKey;
+			this.cell = cell;
+			this.ichains = ichains;
+			this.iAtoms = iAtoms;
+			this.results = results;
+		}
+		
+		@Override
+		protected void compute() {
+			PdbAsymUnit cellAsym = cell.getAsymUnit(op.au);
+			Matrix4d translation = getTranslationMatrix(op.trans, cellAsym);
+			
+			Collection<PdbChain> jchains = null;
+			if (nonPoly) jchains = cellAsym.getAllChains();
+			else jchains = cellAsym.getProtChains();
+			
+			List<ChainPairTask> tasks = new ArrayList<ChainPairTask>();
+			int jIdx = -1;
+			for (PdbChain chainj:jchains) {
+				jIdx++;
+				// each task has its own views: their coordinates buffers are not shared between operators
+				TransformedPdbChain jView = new TransformedPdbChain(chainj, translation);
+				boolean anyOverlap = false;
+				for (int iIdx=0;iIdx<ichains.size();iIdx++) {
+					// in case of self equivalency of the operator we can safely skip half of the matrix
+					if (op.selfEquivalent && (jIdx>iIdx)) continue;
+					if (jView.isNotOverlapping(ichains.get(iIdx), cutoff)) continue;
+					anyOverlap = true;
+					// the key gives the same order as the sequential search: operator, then j chain, then i chain
+					long key = firstKey + jIdx*ichains.size() + iIdx;
+					tasks.add(new ChainPairTask(key, iIdx, jIdx, jView, this));
+				}
+				// the coordinates are calculated lazily: we do it before the pair tasks read them concurrently
+				if (anyOverlap) jView.getCoords();
+			}
+			invokeAll(tasks);
+		}
+		
+		/**
+		 * Returns the actual copy of the symmetry mate, creating it on first call 
+		 * @return
+		 */
+		public synchronized PdbAsymUnit getMaterializedAsym() {
+			if (jAsym==null) {
+				jAsym = materializeAsym(op.au, op.trans, cell);
+			}
+			return jAsym;
+		}
+	}
+	
+	/**
+	 * Calculates the contacts of a pair of chains and if found puts the interface in the results.
+	 */
+	private class ChainPairTask extends RecursiveAction {
+		
+		private static final long serialVersionUID = 1L;
+		
+		private long key;
+		private int iIdx;
+		private int jIdx;
+		private TransformedPdbChain jView;
+		private OperatorSearchTask parent;
+		
+		public ChainPairTask(long key, int iIdx, int jIdx, TransformedPdbChain jView, OperatorSearchTask parent) {
+			this.key = key;
+			this.iIdx = iIdx;
+			this.jIdx = jIdx;
+			this.jView = jView;
+			this.parent = parent;
+		}
+		
+		@Override
+		protected void compute() {
+			PdbChain chaini = parent.ichains.get(iIdx);
+			GridContacts contacts = jView.getContacts(chaini, parent.iAtoms.get(iIdx), cutoff);
+			if (contacts==null || contacts.size()==0) return;
+			
+			PdbAsymUnit jAsym = parent.getMaterializedAsym();
+			ChainInterface interf = createInterface(chaini, parent.iAtoms.get(iIdx), contacts, jIdx, jAsym);
+			if (interf!=null) {
+				parent.results.put(key, interf);
+			}
+		}
+	}
+	
 	private class PartnerIdChainInterface {
 		public int partnerId;
 		public ChainInterface chainInterface;
@@ -62,6 +188,12 @@ public class InterfacesFinder {
 	
 	private int numCells;
 	
+	private int searchThreads;
+	
+	private AsaCache asaCache;
+	
+	private boolean incrementalBsa;
+	
 	private ArrayList<CrystalTransform> visited;
 	
 	// debugging vars
@@ -84,6 +216,9 @@ public class InterfacesFinder {
 		this.pdb = pdb;
 		this.debug = false;
 		this.numCells = DEF_NUM_CELLS;
+		this.searchThreads = 1;
+		this.asaCache = null;
+		this.incrementalBsa = false;
 		if (this.pdb.hasHydrogens()) {
 			// We have to warn because at the moment we implemented things so that we have to call removeHatoms() before calling getAllInterfaces()
 			// We need to fix that so that we simply can calculate interfaces by ignoring Hydrogens without having to remove them
@@ -100,6 +235,45 @@ public class InterfacesFinder {
 		this.numCells = numCells;
 	}
 	
+	/**
+	 * Sets the number of threads to use for the search of interfaces in the crystal lattice.
+	 * With more than 1 thread, the symmetry operators are first filtered (bounding box overlap
+	 * and symmetry redundancy) sequentially and then the chain to chain contact calculations of 
+	 * all surviving operators are done in parallel. The interfaces found and their order are the
+	 * same as with the sequential search. Default 1 (sequential search).
+	 * Note this is independent of the number of threads used for ASA calculations passed to 
+	 * {@link #getAllInterfaces(double, int, int, boolean, boolean, int, double)} 
+	 * @param searchThreads
+	 */
+	public void setSearchThreads(int searchThreads) {
+		this.searchThreads = searchThreads;
+	}
+	
+	/**
+	 * Sets a cache for the ASA calculations of the isolated chains and of the interface complexes.
+	 * The same cache can be shared by many InterfacesFinders (e.g. when processing many entries in 
+	 * one process), see {@link AsaCache}. Default null: no caching.
+	 * @param asaCache
+	 */
+	public void setAsaCache(AsaCache asaCache) {
+		this.asaCache = asaCache;
+	}
+	
+	/**
+	 * Sets whether the BSAs of the interfaces are calculated incrementally: only the atoms near
+	 * the partner molecule are sampled again for the complex, while all other atoms keep their 
+	 * uncomplexed ASA (BSA 0). Since most atoms of a chain are far from any one interface this 
+	 * is much faster. Values can differ very slightly from the full calculation: there the atoms 
+	 * far from the interface can get tiny non-zero BSAs, because the uncomplexed ASAs are shared
+	 * between chains that differ by a translation (see the notes in the ASA calculation and the error 
+	 * bound in {@link AsaCalculator#calculateComplexAsa(int, double[])}). 
+	 * The ASA cache is not used for the complexes in this mode. Default false.
+	 * @param incrementalBsa
+	 */
+	public void setIncrementalBsa(boolean incrementalBsa) {
+		this.incrementalBsa = incrementalBsa;
+	}
+	
 	private void initialiseVisited() {
 		visited = new ArrayList<CrystalTransform>();
 	}
@@ -274,6 +448,32 @@ public class InterfacesFinder {
 					"(2x"+numChains+"chains x "+cell.getNumAsymUnits()+"AUs x "+neighbors+"cells = "+trials+" total possible trials)");
 		}
 
+		// the operators to be searched in parallel (only used if searchThreads>1)
+		List<OperatorCandidate> candidates = new ArrayList<OperatorCandidate>();
+		
+		List<PdbChain> ichains = new ArrayList<PdbChain>();
+		if (nonPoly) ichains.addAll(pdb.getAllChains());
+		else ichains.addAll(pdb.getProtChains());
+		// the atoms of the original chains, gathered only once for all operators
+		List<Atom[]> iAtoms = new ArrayList<Atom[]>();
+		for (PdbChain chain:ichains) {
+			iAtoms.add(chain.getAllAtoms());
+		}
+		
+		// the views of the cell's AU chains, whose coordinates buffers are reused for all translations (only used if searchThreads==1)
+		List<List<TransformedPdbChain>> cellViews = new ArrayList<List<TransformedPdbChain>>();
+		if (searchThreads==1) {
+			for (int au=0;au<cell.getNumAsymUnits();au++) {
+				Collection<PdbChain> jchains = null;
+				if (nonPoly) jchains = cell.getAsymUnit(au).getAllChains();
+				else jchains = cell.getAsymUnit(au).getProtChains();
+				List<TransformedPdbChain> views = new ArrayList<TransformedPdbChain>();
+				for (PdbChain chain:jchains) {
+					views.add(new TransformedPdbChain(chain, null));
+				}
+				cellViews.add(views);
+			}
+		}
 
 		for (int i=-numCells;i<=numCells;i++) {
 			for (int j=-numCells;j<=numCells;j++) {
@@ -304,48 +504,47 @@ public class InterfacesFinder {
 						}
 						addVisited(tt);
 						
+						if (searchThreads>1) {
+							// the symmetry mate's transform will be tt: see below for the self-equivalent case
+							candidates.add(new OperatorCandidate(au, trans, tt.isEquivalent(tt)));
+							continue;
+						}
 						
 						boolean selfEquivalent = false;
 						
-						// now we copy and actually translate the AU if we saw it does overlap and the sym op was not redundant
-						PdbAsymUnit jAsym = cell.getAsymUnit(au).copy();
-						jAsym.doCrystalTranslation(trans);
-
-						
-
 						// 3) an operator can be "self redundant" if it is the inverse of itself (involutory, e.g. all pure 2-folds with no translation)						
-						if (jAsym.getTransform().isEquivalent(jAsym.getTransform())) { 
+						if (tt.isEquivalent(tt)) { 
 							if (debug) 
-								System.out.println("Transform "+jAsym.getTransform()+" is equivalent to itself, will skip half of i-chains to j-chains comparisons");
+								System.out.println("Transform "+tt+" is equivalent to itself, will skip half of i-chains to j-chains comparisons");
 							// in this case we can't skip the operator, but we can skip half of the matrix comparisons e.g. j>i
 							// we set a flag and do that within the loop below
 							selfEquivalent = true;
 						}
 						
-						if (debug) System.out.print(jAsym.getTransform()+" ");
+						if (debug) System.out.print(tt+" ");
 						
-						// Now that we know that boxes overlap and operator is not redundant, we have to go to the details 
+						// Now that we know that boxes overlap and operator is not redundant, we have to go to the details.
+						// We don't copy the AU yet: the chains are checked as translated views of the cell's AU chains,
+						// the actual copy (jAsym) is only done if some interface is found
+						PdbAsymUnit jAsym = null;
+						Matrix4d translation = getTranslationMatrix(trans, cell.getAsymUnit(au));
 						int contactsFound = 0;
-						Collection<PdbChain> ichains = null;
-						Collection<PdbChain> jchains = null;
-						if (nonPoly) jchains = jAsym.getAllChains();
-						else jchains = jAsym.getProtChains();
-												
+						List<TransformedPdbChain> jchains = cellViews.get(au);
+						
 						int jIdx = -1;
-						for (PdbChain chainj:jchains) {
+						for (TransformedPdbChain chainj:jchains) {
 							jIdx++;
-							if (nonPoly) ichains = pdb.getAllChains();
-							else ichains = pdb.getProtChains();
+							chainj.setTransform(translation);
 							int iIdx = -1;
 							for (PdbChain chaini:ichains) { // we only have to compare the original asymmetric unit to every full cell around
 								iIdx++;
 								if(selfEquivalent && (jIdx>iIdx)) {
 									// in case of self equivalency of the operator we can safely skip half of the matrix
-									skippedSelfEquivalent++;
+									if (debug) skippedSelfEquivalent++;
 									continue;
 								}
-								// before calculating the AICgraph we check for overlap, then we save putting atoms into the grid
-								if (chaini.isNotOverlapping(chainj, cutoff)) {
+								// before calculating the contacts we check for overlap, then we save putting atoms into the grid
+								if (chainj.isNotOverlapping(chaini, cutoff)) {
 									if (debug) {
 										skippedChainsNoOverlap++;
 										System.out.print(".");
@@ -354,17 +553,15 @@ public class InterfacesFinder {
 								}
 								if (debug) trialCount++;
 
-								AICGraph graph = chaini.getAICGraph(chainj, cutoff);
-								if (graph.getEdgeCount()>0) {
+								GridContacts contacts = chainj.getContacts(chaini, iAtoms.get(iIdx), cutoff);
+								ChainInterface interf = null;
+								if (contacts!=null && contacts.size()>0) {
+									if (jAsym==null) jAsym = materializeAsym(au, trans, cell);
+									interf = createInterface(chaini, iAtoms.get(iIdx), contacts, jIdx, jAsym);
+								}
+								if (interf!=null) {
 									contactsFound++;										
 									if (debug) System.out.print("x");
-									// because of the bsas are values of the residues of each chain we need to make a copy so that each interface has independent residues
-									PdbChain chainiCopy = chaini.copy(pdb);
-									PdbChain chainjCopy = chainj.copy(jAsym);
-									ChainInterface interf = new ChainInterface(chainiCopy,chainjCopy,graph,pdb.getTransform(),jAsym.getTransform());
-									interf.setFirstCofactors(getCofactors(chaini.getChainCode(), pdb.getTransform(), pdb));
-									interf.setSecondCofactors(getCofactors(chainj.getChainCode(), jAsym.getTransform(), jAsym));
-
 									set.add(interf);
 									
 								} else {
@@ -382,6 +579,130 @@ public class InterfacesFinder {
 				}
 			}
 		}
+		
+		if (searchThreads>1) {
+			calcInterfacesCrystalParallel(cell, candidates, ichains, iAtoms, set);
+		}
+	}
+	
+	/**
+	 * Finds the interfaces between the original asym unit and the given symmetry operators
+	 * using searchThreads parallel threads. The interfaces are added to the set in the same
+	 * order as the sequential search would add them.
+	 * @param cell
+	 * @param candidates
+	 * @param ichains
+	 * @param iAtoms
+	 * @param set
+	 */
+	private void calcInterfacesCrystalParallel(PdbUnitCell cell, List<OperatorCandidate> candidates, List<PdbChain> ichains, List<Atom[]> iAtoms, Collection<ChainInterface> set) {
+		
+		// the atom arrays and bounds are lazily calculated and cached in the chains: we do it before going parallel
+		for (PdbChain chain:ichains) {
+			chain.getAllAtoms();
+			chain.getBoundingBox();
+		}
+		for (int au=0;au<cell.getNumAsymUnits();au++) {
+			for (PdbChain chain:cell.getAsymUnit(au).getAllChains()) {
+				chain.getAllAtoms();
+				chain.getBoundingBox();
+			}
+		}
+		
+		int maxJChains = 0;
+		for (int au=0;au<cell.getNumAsymUnits();au++) {
+			if (nonPoly) maxJChains = Math.max(maxJChains, cell.getAsymUnit(au).getNumChains());
+			else maxJChains = Math.max(maxJChains, cell.getAsymUnit(au).getProtChains().size());
+		}
+		long maxPairsPerOp = (long)maxJChains*ichains.size();
+		
+		if (debug) {
+			System.out.println("Searching "+candidates.size()+" non-redundant operators with "+searchThreads+" threads");
+		}
+		
+		ConcurrentSkipListMap<Long,ChainInterface> results = new ConcurrentSkipListMap<Long, ChainInterface>();
+		
+		ForkJoinPool pool = SharedPools.getPool(searchThreads);
+		List<ForkJoinTask<Void>> tasks = new ArrayList<ForkJoinTask<Void>>();
+		for (int opIdx=0;opIdx<candidates.size();opIdx++) {
+			tasks.add(pool.submit(new OperatorSearchTask(candidates.get(opIdx), opIdx*maxPairsPerOp, cell, ichains, iAtoms, results)));
+		}
+		for (ForkJoinTask<Void> task:tasks) {
+			task.join();
+		}
+		
+		set.addAll(results.values());
+	}
+	
+	/**
+	 * Returns the matrix for the translation of the given asym unit of the unit cell to 
+	 * the given neighbouring cell
+	 * @param trans
+	 * @param cellAsym
+	 * @return
+	 */
+	private Matrix4d getTranslationMatrix(Point3i trans, PdbAsymUnit cellAsym) {
+		Vector3d transOrth = new Vector3d(trans.x, trans.y, trans.z);
+		cellAsym.getCrystalCell().transfToOrthonormal(transOrth);
+		Matrix4d translation = new Matrix4d();
+		translation.setIdentity();
+		translation.setTranslation(transOrth);
+		return translation;
+	}
+	
+	/**
+	 * Copies and translates the given asym unit of the unit cell to the given neighbouring cell
+	 * @param au
+	 * @param trans
+	 * @param cell
+	 * @return
+	 */
+	private PdbAsymUnit materializeAsym(int au, Point3i trans, PdbUnitCell cell) {
+		PdbAsymUnit jAsym = cell.getAsymUnit(au).copy();
+		jAsym.doCrystalTranslation(trans);
+		return jAsym;
+	}
+	
+	/**
+	 * Creates the interface for the given contacts between given chain of the original asym unit 
+	 * and the chain with index jIdx of the symmetry mate jAsym. 
+	 * @param chaini
+	 * @param iAtoms the atoms of chaini, to which the i indices of the contacts refer
+	 * @param contacts
+	 * @param jIdx the index of the chain in the (poly or all) chains of jAsym
+	 * @param jAsym the actual copy of the symmetry mate
+	 * @return the interface or null if no contacts with non-zero distance exist
+	 */
+	private ChainInterface createInterface(PdbChain chaini, Atom[] iAtoms, GridContacts contacts, int jIdx, PdbAsymUnit jAsym) {
+		Collection<PdbChain> jchains = null;
+		if (nonPoly) jchains = jAsym.getAllChains();
+		else jchains = jAsym.getProtChains();
+		PdbChain chainj = new ArrayList<PdbChain>(jchains).get(jIdx);
+		
+		// the atoms of the copy are in the same order as the ones of the view the contacts were calculated with 
+		AICGraph graph = PdbChain.createAICGraph(contacts, iAtoms, chainj.getAllAtoms(), cutoff);
+		if (graph.getEdgeCount()==0) return null;
+		
+		return createInterface(chaini, chainj, graph, jAsym);
+	}
+	
+	/**
+	 * Creates the interface between given chain of the original asym unit and given chain of 
+	 * the symmetry mate jAsym, with their cofactors.
+	 * @param chaini
+	 * @param chainj
+	 * @param graph
+	 * @param jAsym
+	 * @return
+	 */
+	private ChainInterface createInterface(PdbChain chaini, PdbChain chainj, AICGraph graph, PdbAsymUnit jAsym) {
+		// because of the bsas are values of the residues of each chain we need to make a copy so that each interface has independent residues
+		PdbChain chainiCopy = chaini.copy(pdb);
+		PdbChain chainjCopy = chainj.copy(jAsym);
+		ChainInterface interf = new ChainInterface(chainiCopy,chainjCopy,graph,pdb.getTransform(),jAsym.getTransform());
+		interf.setFirstCofactors(getCofactors(chaini.getChainCode(), pdb.getTransform(), pdb));
+		interf.setSecondCofactors(getCofactors(chainj.getChainCode(), jAsym.getTransform(), jAsym));
+		return interf;
 	}
 
 	private ChainInterfaceList calcAsas(Collection<ChainInterface> set, int nSpherePoints, int nThreads, boolean hetAtoms, double minInterfAreaToKeep) {
@@ -423,7 +744,7 @@ public class InterfacesFinder {
 			//List<PdbChain> cofactors = getCofactors(chain.getChainCode(), chain.getParent().getTransform(), chain.getParent());
 			PdbChain chain = pidci.getPdbChain();
 			List<PdbChain> cofactors = pidci.getCofactors();
-			chain.calcASAs(nSpherePoints, nThreads, hetAtoms, cofactors);
+			chain.calcASAs(nSpherePoints, nThreads, hetAtoms, cofactors, asaCache);
 		}
 		if (debug) System.out.println();
 		
@@ -433,15 +754,19 @@ public class InterfacesFinder {
 			PdbChain first = interf.getFirstMolecule();
 			PdbChain second = interf.getSecondMolecule();
 			if (!first.hasASA()) {
-				first.setASAs(transformId2chain.get(first.getPdbChainCode()+interf.getFirstTransf().getTransformId()).getPdbChain());
+				PartnerIdChainInterface pidci = transformId2chain.get(first.getPdbChainCode()+interf.getFirstTransf().getTransformId());
+				first.setASAs(pidci.getPdbChain());
+				setCofactorsASAs(interf.getFirstCofactors(), pidci.getCofactors());
 			}
 			if (!second.hasASA()) {
-				second.setASAs(transformId2chain.get(second.getPdbChainCode()+interf.getSecondTransf().getTransformId()).getPdbChain());
+				PartnerIdChainInterface pidci = transformId2chain.get(second.getPdbChainCode()+interf.getSecondTransf().getTransformId());
+				second.setASAs(pidci.getPdbChain());
+				setCofactorsASAs(interf.getSecondCofactors(), pidci.getCofactors());
 			}
 
 			// finally we need to calculate bsas
 			if (debug) System.out.print(".");
-			interf.calcSurfAccess(nSpherePoints, nThreads,hetAtoms);
+			interf.calcSurfAccess(nSpherePoints, nThreads, hetAtoms, asaCache, incrementalBsa);
 
 		}
 		
@@ -449,6 +774,8 @@ public class InterfacesFinder {
 		if (debug) {
 			end = System.currentTimeMillis();
 			System.out.println("\nDone. Time "+(end-start)/1000+"s");
+			if (asaCache!=null) 
+				System.out.println("ASA cache: "+asaCache.getHits()+" hits, "+asaCache.getMisses()+" misses, "+asaCache.size()+" entries");
 		}
 
 		// now that we have the areas we can put them into a list and sort them
@@ -523,6 +850,27 @@ public class InterfacesFinder {
 		}
 	}
 	
+	/**
+	 * Sets the uncomplexed ASAs of the given cofactors from the ones calculated for the cofactors 
+	 * of another copy of the same poly chain and transform id. Both lists come from 
+	 * {@link #getCofactors(String, CrystalTransform, PdbAsymUnit)} and thus have the same chains and 
+	 * atoms in the same order. 
+	 * The BSAs of the cofactor atoms and the incremental BSA calculation rely on these values.
+	 * @param cofactors
+	 * @param other
+	 */
+	private static void setCofactorsASAs(List<PdbChain> cofactors, List<PdbChain> other) {
+		for (int i=0;i<cofactors.size();i++) {
+			Iterator<Residue> otherResidues = other.get(i).iterator();
+			for (Residue residue:cofactors.get(i)) {
+				Iterator<Atom> otherAtoms = otherResidues.next().iterator();
+				for (Atom atom:residue) {
+					atom.setAsa(otherAtoms.next().getAsa());
+				}
+			}
+		}
+	}
+	
 	private List<PdbChain> getCofactors(String polyChainCode, CrystalTransform ct, PdbAsymUnit parent) {
 		List<PdbChain> cofactors = new ArrayList<PdbChain>();
 		for (String nonPolyChainCode:polyChainCodes2cofactorsChainCodes.get(polyChainCode)) {
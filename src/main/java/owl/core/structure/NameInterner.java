@@ -0,0 +1,152 @@
+package owl.core.structure;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * A process-wide pool of the short names found in structure files: atom codes, residue codes,
+ * elements, chain codes, alt codes and insertion codes. The parsers intern these names so that all
+ * loaded structures share a single String instance per name instead of one per atom, which is a
+ * big part of the heap when many structures are kept in memory.
+ *
+ * The pool is seeded with the codes of {@link AminoAcid}, {@link Nucleotide} and {@link AtomType},
+ * so that the standard names are those same instances.
+ * Names can be interned directly from a region of a line, with no substring created when the name
+ * is already in the pool.
+ *
+ * Lookups are lock-free and the pool can be used concurrently from several parser threads.
+ * Names longer than {@link #MAX_NAME_LENGTH} are not interned and the pool stops growing
+ * after {@link #MAX_SIZE} names (the names are then returned without being interned).
+ */
+public class NameInterner {
+
+	public static final int MAX_NAME_LENGTH = 5;
+	public static final int MAX_SIZE = 100000;
+
+	private static final int NUM_BUCKETS = 8192; // a power of 2
+
+	private static class Entry {
+		private final String name;
+		private final int hash;
+		private final Entry next;
+
+		public Entry(String name, int hash, Entry next) {
+			this.name = name;
+			this.hash = hash;
+			this.next = next;
+		}
+	}
+
+	private static final AtomicReferenceArray<Entry> buckets = new AtomicReferenceArray<Entry>(NUM_BUCKETS);
+	private static final AtomicInteger size = new AtomicInteger(0);
+
+	static {
+		intern(".");
+		intern("?");
+		for (AminoAcid aa:AminoAcid.values()) {
+			intern(aa.getThreeLetterCode());
+		}
+		for (Nucleotide nuc:Nucleotide.values()) {
+			intern(nuc.getTwoLetterCode());
+		}
+		for (AtomType type:AtomType.values()) {
+			intern(type.getSymbol());
+		}
+	}
+
+	/**
+	 * Returns the pooled instance of the given name.
+	 * @param name
+	 * @return
+	 */
+	public static String intern(String name) {
+		if (name==null) return null;
+		return intern(name, 0, name.length(), name);
+	}
+
+	/**
+	 * Returns the pooled instance of the name in the region [beg,end) of the given CharSequence.
+	 * @param s
+	 * @param beg
+	 * @param end
+	 * @return
+	 */
+	public static String intern(CharSequence s, int beg, int end) {
+		return intern(s, beg, end, null);
+	}
+
+	/**
+	 * Returns the pooled instance of the name in the region [beg,end) of the given CharSequence
+	 * with leading and trailing spaces removed, as for a fixed-width field of a PDB file.
+	 * @param s
+	 * @param beg
+	 * @param end
+	 * @return
+	 */
+	public static String internTrimmed(CharSequence s, int beg, int end) {
+		while (beg<end && s.charAt(beg)==' ') beg++;
+		while (end>beg && s.charAt(end-1)==' ') end--;
+		return intern(s, beg, end, null);
+	}
+
+	/**
+	 * Returns the number of names in the pool.
+	 * @return
+	 */
+	public static int size() {
+		return size.get();
+	}
+
+	/**
+	 * Looks up the region in the pool, adding it if not there: as the given name if not null or
+	 * else as a new String.
+	 */
+	private static String intern(CharSequence s, int beg, int end, String name) {
+		int length = end-beg;
+		if (length>MAX_NAME_LENGTH) {
+			return name!=null?name:s.subSequence(beg, end).toString();
+		}
+		// the same hash as String.hashCode()
+		int hash = 0;
+		for (int i=beg;i<end;i++) {
+			hash = 31*hash + s.charAt(i);
+		}
+		int idx = (hash ^ (hash>>>16)) & (NUM_BUCKETS-1);
+
+		Entry head = buckets.get(idx);
+		String pooled = find(head, null, s, beg, end, hash);
+		if (pooled!=null) return pooled;
+
+		if (name==null) name = s.subSequence(beg, end).toString();
+		while (size.get()<MAX_SIZE) {
+			if (buckets.compareAndSet(idx, head, new Entry(name, hash, head))) {
+				size.incrementAndGet();
+				return name;
+			}
+			// another thread added to this bucket: it could have been the same name
+			Entry newHead = buckets.get(idx);
+			pooled = find(newHead, head, s, beg, end, hash);
+			if (pooled!=null) return pooled;
+			head = newHead;
+		}
+		return name;
+	}
+
+	/**
+	 * Searches the entries of a bucket from first down to (excluded) last.
+	 */
+	private static String find(Entry first, Entry last, CharSequence s, int beg, int end, int hash) {
+		for (Entry e=first;e!=last;e=e.next) {
+			if (e.hash==hash && regionEquals(e.name, s, beg, end)) return e.name;
+		}
+		return null;
+	}
+
+	private static boolean regionEquals(String name, CharSequence s, int beg, int end) {
+		if (name.length()!=end-beg) return false;
+		for (int i=0;i<name.length();i++) {
+			if (name.charAt(i)!=s.charAt(beg+i)) return false;
+		}
+		return true;
+	}
+}
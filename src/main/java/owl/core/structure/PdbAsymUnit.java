@@ -1,5 +1,6 @@
 package owl.core.structure;
 
+import java.io.BufferedOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
@@ -29,6 +30,7 @@ import javax.vecmath.Vector3d;
 import owl.core.util.BoundingBox;
 import owl.core.util.FileFormatException;
 import owl.core.util.FileTypeGuesser;
+import owl.core.util.Goodies;
 
 /**
  * A protein crystal's asymmetric unit, i.e. a PDB entry.
@@ -144,7 +146,7 @@ public class PdbAsymUnit implements Serializable { //, Iterable<PdbChain>
 	/**
 	 * Constructs a PdbAsymUnit by reading model {@value #DEFAULT_MODEL} for all chains 
 	 * from given pdbSourceFile. 
-	 * The pdbSourceFile can be in PDB or mmCIF format.
+	 * The pdbSourceFile can be in PDB, mmCIF or OWL binary format (see {@link #writeToBinFile(File)}).
 	 * @param pdbSourceFile
 	 * @throws IOException if IO problems while reading PDB data from file
 	 * @throws FileFormatException if given file is not in PDB or mmCIF format
@@ -157,7 +159,7 @@ public class PdbAsymUnit implements Serializable { //, Iterable<PdbChain>
 	/**
 	 * Constructs a PdbAsymUnit by reading given model for all chains 
 	 * from given pdbSourceFile. 
-	 * The pdbSourceFile can be in PDB or mmCIF format. 
+	 * The pdbSourceFile can be in PDB, mmCIF or OWL binary format (see {@link #writeToBinFile(File)}). 
 	 * @param pdbSourceFile
 	 * @param model
 	 * @throws IOException if IO problems while reading PDB data from file
@@ -165,32 +167,13 @@ public class PdbAsymUnit implements Serializable { //, Iterable<PdbChain>
 	 * @throws PdbLoadException if problems while loading the PDB data from file
 	 */
 	public PdbAsymUnit(File pdbSourceFile, int model) throws IOException, FileFormatException, PdbLoadException {
-		this.releaseDate = null;
-		this.expMethod = null;
-		this.resolution = -1;
-		this.rFree = -1;
-		this.rSym = -1;
-		this.pdbCode = NO_PDB_CODE;
-		this.model = model;
-		this.title = null;
-		this.chains = new TreeMap<String, PdbChain>();
-		this.nonPolyChains = new TreeMap<String,PdbChain>();
-		this.pdbBioUnitList = new PdbBioUnitList();
-		int type = FileTypeGuesser.guessFileType(pdbSourceFile);
-		if (type==FileTypeGuesser.PDB_FILE || type ==FileTypeGuesser.RAW_PDB_FILE || type==FileTypeGuesser.CASP_TS_FILE) {
-			loadFromPdbFile(pdbSourceFile, true);
-		} else if (type==FileTypeGuesser.CIF_FILE) {
-			loadFromCifFile(pdbSourceFile);
-		} else {
-			throw new FileFormatException("The given file does not seem to be neither a PDB file nor a mmCIF file");
-		}
-		
+		this(pdbSourceFile, model, true);
 	}
 	
 	/**
 	 * Constructs a PdbAsymUnit by reading given model for all chains 
 	 * from given pdbSourceFile. 
-	 * The pdbSourceFile can be in PDB or mmCIF format. 
+	 * The pdbSourceFile can be in PDB, mmCIF or OWL binary format (see {@link #writeToBinFile(File)}). 
 	 * @param pdbSourceFile
 	 * @param model
 	 * @param missingSeqResPadding if true in a PDB file without SEQRES, the sequence will be padded with X 
@@ -201,90 +184,162 @@ public class PdbAsymUnit implements Serializable { //, Iterable<PdbChain>
 	 * @throws PdbLoadException if problems while loading the PDB data from file
 	 */
 	public PdbAsymUnit(File pdbSourceFile, int model, boolean missingSeqResPadding) throws IOException, FileFormatException, PdbLoadException {
+		PdbLoadOptions options = new PdbLoadOptions();
+		options.setModel(model);
+		load(pdbSourceFile, options, missingSeqResPadding);
+	}
+	
+	/**
+	 * Constructs a PdbAsymUnit by reading from given pdbSourceFile only the data specified 
+	 * in the given load options, e.g. only the CA atoms of one chain or only the crystal data. 
+	 * The pdbSourceFile can be in PDB, mmCIF or OWL binary format (see {@link #writeToBinFile(File)}).
+	 * @param pdbSourceFile
+	 * @param options
+	 * @throws IOException if IO problems while reading PDB data from file
+	 * @throws FileFormatException if given file is not in PDB or mmCIF format
+	 * @throws PdbLoadException if problems while loading the PDB data from file
+	 */
+	public PdbAsymUnit(File pdbSourceFile, PdbLoadOptions options) throws IOException, FileFormatException, PdbLoadException {
+		load(pdbSourceFile, options, true);
+	}
+	
+	/*----------------------------------  loader methods ----------------------------------------*/
+	
+	private void load(File pdbSourceFile, PdbLoadOptions options, boolean missingSeqResPadding) throws IOException, FileFormatException, PdbLoadException {
 		this.releaseDate = null;
 		this.expMethod = null;
 		this.resolution = -1;
 		this.rFree = -1;
 		this.rSym = -1;
 		this.pdbCode = NO_PDB_CODE;
-		this.model = model;
+		this.model = options.getModel();
 		this.title = null;
 		this.chains = new TreeMap<String, PdbChain>();
 		this.nonPolyChains = new TreeMap<String,PdbChain>();
+		this.pdbchaincode2chaincode = new TreeMap<String, String>();
 		this.pdbBioUnitList = new PdbBioUnitList();
 		int type = FileTypeGuesser.guessFileType(pdbSourceFile);
 		if (type==FileTypeGuesser.PDB_FILE || type ==FileTypeGuesser.RAW_PDB_FILE || type==FileTypeGuesser.CASP_TS_FILE) {
-			loadFromPdbFile(pdbSourceFile, missingSeqResPadding);
+			loadFromPdbFile(pdbSourceFile, missingSeqResPadding, options);
 		} else if (type==FileTypeGuesser.CIF_FILE) {
-			loadFromCifFile(pdbSourceFile);
+			loadFromCifFile(pdbSourceFile, options);
+		} else if (type==FileTypeGuesser.OWL_BIN_FILE) {
+			loadFromBinFile(pdbSourceFile, options);
 		} else {
 			throw new FileFormatException("The given file does not seem to be neither a PDB file nor a mmCIF file. If a PDB file make sure it starts with a HEADER record.");
 		}
 		
 	}
 	
-	/*----------------------------------  loader methods ----------------------------------------*/
-	
-	private void loadFromPdbFile(File pdbFile, boolean missingSeqResPadding) throws PdbLoadException {
-		PdbfileParser parser = new PdbfileParser(pdbFile.getAbsolutePath(),missingSeqResPadding);
+	private void loadFromPdbFile(File pdbFile, boolean missingSeqResPadding, PdbLoadOptions options) throws PdbLoadException {
+		PdbfileParser parser = new PdbfileParser(pdbFile.getAbsolutePath(),missingSeqResPadding,options);
 		
 		parser.readChains(this,model);
 		
+		initialiseFromPdbParser(parser, options);
+	}
+	
+	/**
+	 * Initialises the metadata, bio-units and chain clusters of this PdbAsymUnit from  
+	 * the given PDB file parser, once the chains have been read with it. 
+	 * @param parser
+	 * @param options
+	 * @throws PdbLoadException
+	 */
+	protected void initialiseFromPdbParser(PdbfileParser parser, PdbLoadOptions options) throws PdbLoadException {
 		this.releaseDate = parser.getReleaseDate();
 		this.pdbCode = parser.getPdbCode();
 		this.expMethod = parser.getExpMethod();
 		this.title = parser.getTitle();
-		this.crystalCell = parser.getCrystalCell();
-		this.spaceGroup = parser.getSpaceGroup();
+		if (options.isCategoryWanted(PdbLoadOptions.Category.CRYSTAL)) {
+			this.crystalCell = parser.getCrystalCell();
+			this.spaceGroup = parser.getSpaceGroup();
+		}
 		this.transform = new CrystalTransform(spaceGroup);
-		this.resolution = parser.getResolution();
-		this.rFree = parser.getRfree();
-		this.rSym = parser.getRsym();
+		if (options.isCategoryWanted(PdbLoadOptions.Category.QUALITY)) {
+			this.resolution = parser.getResolution();
+			this.rFree = parser.getRfree();
+			this.rSym = parser.getRsym();
+		}
 		
 		checkNoEmptyChains();
 		
-		checkScaleMatrix(parser.getScaleMatrix());
+		if (options.isCategoryWanted(PdbLoadOptions.Category.CRYSTAL)) {
+			checkScaleMatrix(parser.getScaleMatrix());
+		}
 		
 		checkUnreasonableCrystalCell();
 		
-		this.setPdbBioUnitList(new PdbBioUnitList(this, parser.getBioUnitAssemblies(), parser.getBioUnitGenerators(), parser.getBioUnitOperations(),"pdb"));
+		if (options.isCategoryWanted(PdbLoadOptions.Category.BIO_UNITS)) {
+			this.setPdbBioUnitList(new PdbBioUnitList(this, parser.getBioUnitAssemblies(), parser.getBioUnitGenerators(), parser.getBioUnitOperations(),"pdb"));
+		}
 
 		// TODO check whether we can trust sequences or not: based on existence of SEQRES lines for instance
 		boolean trustSequences = true;
-		initialiseChainClusters(trustSequences); 
+		initialiseChainClusters(trustSequences, options); 
 	}
 	
-	private void loadFromCifFile(File cifFile) throws PdbLoadException, IOException, FileFormatException {
-		CiffileParser parser = new CiffileParser(cifFile);
+	private void loadFromCifFile(File cifFile, PdbLoadOptions options) throws PdbLoadException, IOException, FileFormatException {
+		CiffileParser parser = new CiffileParser(cifFile, options);
 		
 		this.releaseDate = parser.readReleaseDate();
 		this.pdbCode = parser.readPdbCode();
 		this.expMethod = parser.readExpMethod();
 		this.title = parser.readTitle();
-		this.crystalCell = parser.readCrystalCell();
-		this.spaceGroup = parser.readSpaceGroup();
+		if (options.isCategoryWanted(PdbLoadOptions.Category.CRYSTAL)) {
+			this.crystalCell = parser.readCrystalCell();
+			this.spaceGroup = parser.readSpaceGroup();
+		}
 		this.transform = new CrystalTransform(spaceGroup);
-		double[] qParams = parser.readQparams();
-		this.resolution = qParams[0];
-		this.rFree = qParams[1];
-		this.rSym = qParams[2];
+		if (options.isCategoryWanted(PdbLoadOptions.Category.QUALITY)) {
+			double[] qParams = parser.readQparams();
+			this.resolution = qParams[0];
+			this.rFree = qParams[1];
+			this.rSym = qParams[2];
+		}
 		
-		parser.readChains(this, model);
-		for (PdbChain chain:getAllChains()) {
-			chain.setParent(this);
+		if (options.isCategoryWanted(PdbLoadOptions.Category.ATOMS)) {
+			parser.readChains(this, model);
+			for (PdbChain chain:getAllChains()) {
+				chain.setParent(this);
+			}
+		}
+		
+		// polymer chains from pdbx_poly_seq_scheme can be left with no atoms after filtering
+		if (options.hasAtomFilters()) {
+			removeEmptyChains();
 		}
 		
 		checkNoEmptyChains();
 
-		checkScaleMatrix(parser.readScaleMatrix());		
+		if (options.isCategoryWanted(PdbLoadOptions.Category.CRYSTAL)) {
+			checkScaleMatrix(parser.readScaleMatrix());
+		}
 		
 		checkUnreasonableCrystalCell();
 		
-		parser.readBioUnit(this);
+		if (options.isCategoryWanted(PdbLoadOptions.Category.BIO_UNITS)) {
+			parser.readBioUnit(this);
+		}
 		
 		// TODO check whether we can trust sequences or not: based on existence of pdbx_poly_seq_scheme for instance
 		boolean trustSequences = true;
-		initialiseChainClusters(trustSequences);
+		initialiseChainClusters(trustSequences, options);
+	}
+	
+	private void loadFromBinFile(File binFile, PdbLoadOptions options) throws PdbLoadException, IOException, FileFormatException {
+		int wantedModel = this.model;
+		
+		BinfileParser parser = new BinfileParser(binFile);
+		parser.read(this, options);
+		if (this.model!=wantedModel) {
+			throw new PdbLoadException("The binary file contains only model "+this.model+", can't read model "+wantedModel);
+		}
+		this.transform = new CrystalTransform(spaceGroup);
+		
+		// the binary files are written from PdbAsymUnits already loaded from PDB/mmCIF files: we trust them as they were
+		boolean trustSequences = true;
+		initialiseChainClusters(trustSequences, options);
 	}
 	
 	private void checkScaleMatrix(Matrix4d scaleMatrix) throws PdbLoadException {
@@ -294,6 +349,15 @@ public class PdbAsymUnit implements Serializable { //, Iterable<PdbChain>
 		}		
 	}
 	
+	private void removeEmptyChains() {
+		for (PdbChain chain:new ArrayList<PdbChain>(this.getPolyChains())) {
+			if (chain.getObsLength()==0) {
+				chains.remove(chain.getChainCode());
+				pdbchaincode2chaincode.remove(chain.getPdbChainCode());
+			}
+		}
+	}
+	
 	private void checkNoEmptyChains() throws PdbLoadException {
 		// this check is necessary for weird (and in my opinion not properly data-modelled) entries. e.g.:
 		// 1oax: seqres contains chains I and K but there's not a single observed atom for them 
@@ -879,7 +943,7 @@ public class PdbAsymUnit implements Serializable { //, Iterable<PdbChain>
 	 * @throws FileNotFoundException
 	 */
 	public void writeToPdbFile(File outFile) throws FileNotFoundException {
-		PrintStream ps = new PrintStream(outFile);
+		PrintStream ps = new PrintStream(new BufferedOutputStream(new FileOutputStream(outFile), PdbfileWriter.BUFFER_SIZE));
 		writePDBFileHeader(ps);
 		for (PdbChain chain:getPolyChains()) {
 			chain.writeSeqresRecord(ps, chain.getChainCode());
@@ -891,6 +955,52 @@ public class PdbAsymUnit implements Serializable { //, Iterable<PdbChain>
 		ps.close();
 	}
 	
+	/**
+	 * Writes this PdbAsymUnit in the compact OWL binary format, a cache that can be 
+	 * loaded back much faster than parsing PDB or mmCIF files with {@link #PdbAsymUnit(File)}.
+	 * Coordinates, occupancies and B-factors are stored in single precision.
+	 * @param outFile
+	 * @throws IOException
+	 * @see BinfileWriter
+	 */
+	public void writeToBinFile(File outFile) throws IOException {
+		new BinfileWriter(this).write(outFile);
+	}
+	
+	/**
+	 * Writes PDB data out in mmCIF file format, with no limits in number of atoms or chains
+	 * nor in the length of chain codes (unlike {@link #writeToPdbFile(File)}).
+	 * Both the CIF and PDB chain codes and residue serials are written.
+	 * @param outFile
+	 * @param gzip if true file will be gzipped, false it will be plain text
+	 * @param compact if true only the _atom_site and _pdbx_poly_seq_scheme columns needed 
+	 * to read the file back are written, if false all standard columns
+	 * @throws IOException
+	 * @see CiffileWriter
+	 */
+	public void writeToCifFile(File outFile, boolean gzip, boolean compact) throws IOException {
+		CiffileWriter writer = new CiffileWriter(outFile, gzip, compact);
+		try {
+			writer.writeHeader(this);
+			if (getNumPolyChains()>0) {
+				writer.beginPdbxPolySeqScheme();
+				for (PdbChain chain:getPolyChains()) {
+					writer.writePdbxPolySeqRecords(chain, chain.getChainCode(), chain.getPdbChainCode());
+				}
+				writer.endLoop();
+			}
+			if (getNumChains()>0) {
+				writer.beginAtomSite();
+				for (PdbChain chain:getAllChains()) {
+					writer.writeAtomSiteRecords(chain, chain.getChainCode(), chain.getPdbChainCode(), model);
+				}
+				writer.endLoop();
+			}
+		} finally {
+			writer.close();
+		}
+	}
+	
 	/**
 	 * Writes to given PrintWriter the PDB file format HEADER line
 	 * @param out
@@ -1186,6 +1296,20 @@ public class PdbAsymUnit implements Serializable { //, Iterable<PdbChain>
 		
 	}
 
+	/**
+	 * Initialises the chain clusters as {@link #initialiseChainClusters(boolean)} if the 
+	 * load options ask for them, otherwise there will be no clusters.
+	 * @param trustSequences
+	 * @param options
+	 */
+	private void initialiseChainClusters(boolean trustSequences, PdbLoadOptions options) {
+		if (!options.isChainClusters()) {
+			protChainClusters = new TreeMap<String,ChainCluster>();
+			return;
+		}
+		initialiseChainClusters(trustSequences);
+	}
+
 	/**
 	 * Returns a list of all unique protein chain clusters, i.e. groups of identical 
 	 * in sequence (except for unobserved residues) NCS-related chains.
@@ -1280,6 +1404,8 @@ public class PdbAsymUnit implements Serializable { //, Iterable<PdbChain>
 	/**
 	 * Grabs and unzips a cif file from either the online PDB ftp or a local directory 
 	 * containing zipped cif files. The file is written to the given cifFile. 
+	 * The data is decompressed while streamed, no intermediate gzipped copy is written to disk.
+	 * Note that the gzipped files can also be read directly by {@link #PdbAsymUnit(File)}.
 	 * @param localCifDir
 	 * @param pdbFtpCifUrl
 	 * @param pdbCode
@@ -1290,34 +1416,25 @@ public class PdbAsymUnit implements Serializable { //, Iterable<PdbChain>
 	public static void grabCifFile(String localCifDir, String pdbFtpCifUrl, String pdbCode, File cifFile, boolean online) throws IOException {
 		pdbCode = pdbCode.toLowerCase();
 		String gzCifFileName = pdbCode+".cif.gz";
-		File gzCifFile = null;
+		InputStream is = null;
 		if (!online) {	
-			gzCifFile = new File(localCifDir,gzCifFileName);
+			is = new FileInputStream(new File(localCifDir,gzCifFileName));
 		} else {
-			gzCifFile = File.createTempFile(pdbCode+".", ".cif.gz");
 			System.out.println("Downloading cif file "+gzCifFileName+" from ftp...");
 			// getting gzipped cif file from ftp
 			URL url = new URL(pdbFtpCifUrl+gzCifFileName);
 			URLConnection urlc = url.openConnection();
-			InputStream is = urlc.getInputStream();
-			FileOutputStream os = new FileOutputStream(gzCifFile);
-			int b;
-			while ( (b=is.read())!=-1) {
-				os.write(b);
-			}
-			is.close();
-			os.close();
-			gzCifFile.deleteOnExit();
+			is = urlc.getInputStream();
 		} 
 
-		// unzipping file
-		GZIPInputStream zis = new GZIPInputStream(new FileInputStream(gzCifFile));
+		// unzipping while reading
+		GZIPInputStream zis = new GZIPInputStream(is, 65536);
 		FileOutputStream os = new FileOutputStream(cifFile);
-		int b;
-		while ( (b=zis.read())!=-1) {
-			os.write(b);
+		try {
+			Goodies.copyStream(zis, os);
+		} finally {
+			zis.close();
+			os.close();
 		}
-		zis.close();
-		os.close();
 	}
 }
@@ -0,0 +1,348 @@
+package owl.core.structure;
+
+import java.io.File;
+import java.io.FileFilter;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import owl.core.util.FileFormatException;
+
+/**
+ * A batch loader of the entries of a local mmCIF mirror (a directory of gzipped
+ * mmCIF files named pdbcode.cif.gz, as used by {@link PdbAsymUnit#grabCifFile(String, String, String, File, boolean)})
+ * that runs a computation on each of them, e.g. interfaces and ASAs.
+ *
+ * The entries go through a pipeline of 2 stages, each with its own threads:
+ * <ul>
+ * <li>the I/O stage: parser threads decompress and parse the files into PdbAsymUnits</li>
+ * <li>the compute stage: compute threads run the given {@link EntryHandler} on each loaded entry</li>
+ * </ul>
+ * The stages are connected by a bounded queue: the parser threads wait when it's full, so
+ * that no more than a fixed number of entries are in memory whatever the size of the batch.
+ *
+ * An entry that fails (while loading or in the handler, also with an Error like a
+ * StackOverflowError) doesn't stop the batch: its error is kept and can be retrieved
+ * with {@link #getErrors()} at the end.
+ *
+ * Since the parallelism is over the entries, the handler should do its computations
+ * with 1 thread, e.g. <code>pdb.getAllInterfaces(cutoff, nSpherePoints, 1, ...)</code>
+ */
+public class PdbBatchLoader {
+
+	public static final String CIF_GZ_FILE_EXTENSION = ".cif.gz";
+
+	public static final int DEFAULT_PROGRESS_INTERVAL = 1000;
+
+	/**
+	 * The computation to run on each loaded entry in the compute stage.
+	 * It is called concurrently from several threads.
+	 */
+	public interface EntryHandler {
+
+		/**
+		 * Processes the given loaded entry. Any exception thrown is recorded
+		 * as the error of the entry.
+		 * @param pdbCode
+		 * @param pdb
+		 * @throws Exception
+		 */
+		public void process(String pdbCode, PdbAsymUnit pdb) throws Exception;
+	}
+
+	private static class LoadedEntry {
+
+		private String pdbCode;
+		private PdbAsymUnit pdb;
+
+		public LoadedEntry(String pdbCode, PdbAsymUnit pdb) {
+			this.pdbCode = pdbCode;
+			this.pdb = pdb;
+		}
+	}
+
+	// marks the end of the batch in the queue, one per compute thread
+	private static final LoadedEntry END_OF_BATCH = new LoadedEntry(null, null);
+
+	// how often the parser threads waiting on a full queue check that there are compute threads left
+	private static final long PUT_TIMEOUT = 100; // in milliseconds
+
+	private File localCifDir;
+	private int nParserThreads;
+	private int nComputeThreads;
+	private int queueCapacity;
+
+	private PdbLoadOptions loadOptions;
+
+	private PrintStream progressStream;
+	private int progressInterval;
+
+	private int numEntries;
+	private AtomicInteger numLoaded;
+	private AtomicInteger numDone;
+	private AtomicInteger numFailed;
+	private AtomicInteger numLiveComputeThreads;
+	private Map<String,Throwable> errors;
+	private long startTime;
+	private long endTime;
+
+	/**
+	 * Constructs a PdbBatchLoader for the given local mmCIF mirror directory.
+	 * @param localCifDir
+	 * @param nParserThreads number of threads of the I/O stage
+	 * @param nComputeThreads number of threads of the compute stage
+	 * @param queueCapacity maximum number of loaded entries waiting to be processed
+	 */
+	public PdbBatchLoader(File localCifDir, int nParserThreads, int nComputeThreads, int queueCapacity) {
+		this.localCifDir = localCifDir;
+		this.nParserThreads = nParserThreads;
+		this.nComputeThreads = nComputeThreads;
+		this.queueCapacity = queueCapacity;
+		this.loadOptions = null;
+		this.progressStream = null;
+		this.progressInterval = DEFAULT_PROGRESS_INTERVAL;
+		this.numLoaded = new AtomicInteger(0);
+		this.numDone = new AtomicInteger(0);
+		this.numFailed = new AtomicInteger(0);
+		this.numLiveComputeThreads = new AtomicInteger(0);
+		this.errors = new ConcurrentSkipListMap<String, Throwable>();
+	}
+
+	/**
+	 * Sets the load options to be used for all entries, by default (null) the full entries
+	 * are loaded.
+	 * @param loadOptions
+	 */
+	public void setLoadOptions(PdbLoadOptions loadOptions) {
+		this.loadOptions = loadOptions;
+	}
+
+	/**
+	 * Sets the stream where progress and throughput are reported every progressInterval
+	 * processed entries. By default (null) nothing is reported.
+	 * @param progressStream
+	 * @param progressInterval
+	 */
+	public void setProgressStream(PrintStream progressStream, int progressInterval) {
+		this.progressStream = progressStream;
+		this.progressInterval = progressInterval;
+	}
+
+	/**
+	 * Returns the alphabetically sorted PDB codes of all entries present in the local mmCIF mirror.
+	 * @return
+	 * @throws IOException if the directory can't be read
+	 */
+	public List<String> getAllPdbCodes() throws IOException {
+		File[] files = localCifDir.listFiles(new FileFilter() {
+			@Override
+			public boolean accept(File file) {
+				return file.isFile() && file.getName().endsWith(CIF_GZ_FILE_EXTENSION);
+			}
+		});
+		if (files==null) throw new IOException("Can't list the files of directory "+localCifDir);
+		List<String> pdbCodes = new ArrayList<String>();
+		for (File file:files) {
+			String name = file.getName();
+			pdbCodes.add(name.substring(0, name.length()-CIF_GZ_FILE_EXTENSION.length()));
+		}
+		Collections.sort(pdbCodes);
+		return pdbCodes;
+	}
+
+	/**
+	 * Loads all given entries from the local mmCIF mirror and runs the handler on each of them,
+	 * returning when all of them are done. The errors and metrics of the batch can be
+	 * retrieved afterwards.
+	 * @param pdbCodes
+	 * @param handler
+	 * @throws InterruptedException if interrupted while waiting for the batch to finish
+	 */
+	public void run(List<String> pdbCodes, final EntryHandler handler) throws InterruptedException {
+		numEntries = pdbCodes.size();
+		numLoaded.set(0);
+		numDone.set(0);
+		numFailed.set(0);
+		errors.clear();
+		numLiveComputeThreads.set(nComputeThreads);
+		startTime = System.nanoTime();
+		endTime = 0;
+
+		final BlockingQueue<LoadedEntry> queue = new ArrayBlockingQueue<LoadedEntry>(queueCapacity);
+
+		ExecutorService computePool = Executors.newFixedThreadPool(nComputeThreads);
+		for (int i=0;i<nComputeThreads;i++) {
+			computePool.execute(new Runnable() {
+				@Override
+				public void run() {
+					try {
+						LoadedEntry entry;
+						while ((entry = queue.take())!=END_OF_BATCH) {
+							try {
+								handler.process(entry.pdbCode, entry.pdb);
+							} catch (Throwable e) {
+								// also Errors: a dead compute thread would leave the parser threads waiting on the queue
+								addError(entry.pdbCode, e);
+							}
+							entryDone();
+						}
+					} catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+					} finally {
+						numLiveComputeThreads.decrementAndGet();
+					}
+				}
+			});
+		}
+
+		ExecutorService parserPool = Executors.newFixedThreadPool(nParserThreads);
+		for (final String pdbCode:pdbCodes) {
+			parserPool.execute(new Runnable() {
+				@Override
+				public void run() {
+					PdbAsymUnit pdb = null;
+					try {
+						pdb = load(pdbCode);
+						numLoaded.incrementAndGet();
+					} catch (Throwable e) {
+						// not only the load exceptions: a bug in the parsers for this entry shouldn't stop the batch either
+						addError(pdbCode, e);
+					}
+					if (pdb==null) {
+						entryDone();
+						return;
+					}
+					try {
+						if (!put(queue, new LoadedEntry(pdbCode, pdb))) {
+							addError(pdbCode, new IllegalStateException("No compute threads left to process the entry"));
+							entryDone();
+						}
+					} catch (InterruptedException e) {
+						addError(pdbCode, e);
+						entryDone();
+						Thread.currentThread().interrupt();
+					}
+				}
+			});
+		}
+
+		try {
+			parserPool.shutdown();
+			parserPool.awaitTermination(Long.MAX_VALUE, TimeUnit.SECONDS);
+			for (int i=0;i<nComputeThreads;i++) {
+				if (!put(queue, END_OF_BATCH)) break;
+			}
+			computePool.shutdown();
+			computePool.awaitTermination(Long.MAX_VALUE, TimeUnit.SECONDS);
+		} catch (InterruptedException e) {
+			parserPool.shutdownNow();
+			computePool.shutdownNow();
+			throw e;
+		} finally {
+			endTime = System.nanoTime();
+		}
+	}
+
+	/**
+	 * Puts the entry in the queue, waiting while it is full as long as there are compute threads left
+	 * @return true if the entry was put, false if there are no compute threads left to take it
+	 * @throws InterruptedException
+	 */
+	private boolean put(BlockingQueue<LoadedEntry> queue, LoadedEntry entry) throws InterruptedException {
+		while (numLiveComputeThreads.get()>0) {
+			if (queue.offer(entry, PUT_TIMEOUT, TimeUnit.MILLISECONDS)) return true;
+		}
+		return false;
+	}
+
+	private PdbAsymUnit load(String pdbCode) throws IOException, FileFormatException, PdbLoadException {
+		File cifFile = new File(localCifDir, pdbCode.toLowerCase()+CIF_GZ_FILE_EXTENSION);
+		if (loadOptions==null) {
+			return new PdbAsymUnit(cifFile);
+		}
+		return new PdbAsymUnit(cifFile, loadOptions);
+	}
+
+	private void addError(String pdbCode, Throwable e) {
+		errors.put(pdbCode, e);
+		numFailed.incrementAndGet();
+	}
+
+	private void entryDone() {
+		int done = numDone.incrementAndGet();
+		if (progressStream!=null && (done%progressInterval==0 || done==numEntries)) {
+			progressStream.printf("Done %d/%d entries (%d failed), %.1f entries/s\n",
+					done, numEntries, numFailed.get(), getThroughput());
+		}
+	}
+
+	/**
+	 * Returns the number of entries in the last batch.
+	 * @return
+	 */
+	public int getNumEntries() {
+		return numEntries;
+	}
+
+	/**
+	 * Returns the number of entries of the last batch successfully loaded so far.
+	 * @return
+	 */
+	public int getNumLoaded() {
+		return numLoaded.get();
+	}
+
+	/**
+	 * Returns the number of entries of the last batch done so far, i.e. processed or failed.
+	 * @return
+	 */
+	public int getNumDone() {
+		return numDone.get();
+	}
+
+	/**
+	 * Returns the number of entries of the last batch that failed so far.
+	 * @return
+	 */
+	public int getNumFailed() {
+		return numFailed.get();
+	}
+
+	/**
+	 * Returns a map of PDB codes to the errors of the entries of the last batch that
+	 * failed to load or to be processed.
+	 * @return
+	 */
+	public Map<String,Throwable> getErrors() {
+		return errors;
+	}
+
+	/**
+	 * Returns the time taken by the last batch in seconds (up to now if still running).
+	 * @return
+	 */
+	public double getElapsedTime() {
+		long end = endTime==0?System.nanoTime():endTime;
+		return (end-startTime)/1000000000.0;
+	}
+
+	/**
+	 * Returns the throughput of the last batch: entries done per second.
+	 * @return
+	 */
+	public double getThroughput() {
+		double elapsed = getElapsedTime();
+		if (elapsed==0) return 0;
+		return numDone.get()/elapsed;
+	}
+}
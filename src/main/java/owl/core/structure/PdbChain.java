@@ -1,5 +1,6 @@
 package owl.core.structure;
 
+import java.io.BufferedOutputStream;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
@@ -10,7 +11,6 @@ import java.util.Collections;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
-import java.util.Locale;
 import java.util.Map;
 import java.util.Set;
 import java.util.TreeMap;
@@ -40,12 +40,16 @@ import owl.core.structure.graphs.AICGraph;
 import owl.core.structure.graphs.AIGEdge;
 import owl.core.structure.graphs.AIGNode;
 import owl.core.structure.graphs.AIGraph;
+import owl.core.structure.graphs.RIGContactMap;
+import owl.core.structure.graphs.RIGEdge;
 import owl.core.structure.graphs.RIGNode;
 import owl.core.structure.graphs.RIGraph;
 import owl.core.util.BoundingBox;
 import owl.core.util.FileFormatException;
 import owl.core.util.GeometryTools;
 import owl.core.util.Grid;
+import owl.core.util.GridContacts;
+import owl.core.util.IntPairAccumulator;
 import owl.core.util.Interval;
 import owl.core.util.IntervalSet;
 import owl.core.util.MySQLConnection;
@@ -159,7 +163,9 @@ public class PdbChain implements Serializable, Iterable<Residue> {
 	
 	private boolean isNonPolyChain;		// true if chain is a non-polymer chain (purely a HET residues one, ligands and other hets), i.e. not polypeptide or nucleotide chain 
 
-	private BoundingBox bounds; 		// cached bounding box (calculated in getAllAtoms() from old atoms in chain) to speed up getAICGraph()
+	private volatile BoundingBox bounds; 		// cached bounding box (calculated in getAllAtoms() from old atoms in chain) to speed up getAICGraph()
+	
+	private transient volatile Atom[] atomArray;	// cached flat array of all atoms in residue order, for the bulk coordinate operations (reset whenever residues or atoms change), only assigned once complete
 	
 	/*----------------------------------  constructors -----------------------------------------------*/
 
@@ -236,6 +242,7 @@ public class PdbChain implements Serializable, Iterable<Residue> {
 	 */
 	protected void initialiseResidues() {
 		residues = new TreeMap<Integer, Residue>();
+		atomArray = null;
 	}
 	
 	/**
@@ -243,6 +250,7 @@ public class PdbChain implements Serializable, Iterable<Residue> {
 	 * @param residue
 	 */
 	public void addResidue(Residue residue) {
+		atomArray = null;
 		Residue returnRes = residues.put(residue.getSerial(), residue);
 		if (returnRes!=null) {
 			System.err.println("Warning: a residue with the same residue serial already exists in this chain. New residue: "+residue+", old residue: "+returnRes);
@@ -371,27 +379,42 @@ public class PdbChain implements Serializable, Iterable<Residue> {
 	 * @return
 	 */
 	protected Atom[] getAllAtoms() {
- 		Atom[] atoms = new Atom[this.getNumAtoms()];
-		int i = 0;
-		for (Residue residue:this) {
-			for (Atom atom:residue) {
-				atoms[i]=atom;
-				i++;
-			}
-		}
+		Atom[] atoms = getAtomArray().clone();
 		if (this.bounds==null) {
 			this.bounds = new BoundingBox(atoms);
 		}
 		return atoms;		
 	}
 	
+	/**
+	 * Gets the cached array of all atoms of this chain (in the same order as {@link #getAllAtoms()}),
+	 * building it if needed. The coordinate operations loop over it instead of over the residues maps.
+	 * The array is internal and must not be modified.
+	 * @return
+	 */
+	private Atom[] getAtomArray() {
+		Atom[] atoms = atomArray;
+		if (atoms==null) {
+			atoms = new Atom[this.getNumAtoms()];
+			int i = 0;
+			for (Residue residue:this) {
+				for (Atom atom:residue) {
+					atoms[i]=atom;
+					i++;
+				}
+			}
+			atomArray = atoms;
+		}
+		return atoms;
+	}
+	
 	protected BoundingBox getBoundingBox() {
-		if (bounds!=null) {
-			return bounds;
-		} else {
-			getAllAtoms();
-			return bounds;
+		BoundingBox bb = bounds;
+		if (bb==null) {
+			bb = new BoundingBox(getAtomArray());
+			bounds = bb;
 		}
+		return bb;
 	}
 	
 	protected boolean isNotOverlapping(PdbChain other, double cutoff) {
@@ -413,6 +436,7 @@ public class PdbChain implements Serializable, Iterable<Residue> {
 	 * Populates the atomser2atom map (from the Residues and Atoms objects)
 	 */
 	protected void initialiseMaps() {
+		atomArray = null;
 		atomser2atom = new TreeMap<Integer, Atom>();
 		for (Residue residue:residues.values()) {
 			for (Atom atom:residue.getAtoms()) {
@@ -588,6 +612,25 @@ public class PdbChain implements Serializable, Iterable<Residue> {
 	 * ASAs, if null then only atoms of this PdbChain will be used for ASAs calculation 
 	 */
 	public void calcASAs(int nSpherePoints, int nThreads, boolean hetAtoms, List<PdbChain> cofactors) {
+		calcASAs(nSpherePoints, nThreads, hetAtoms, cofactors, null);
+	}
+	
+	/**
+	 * Calculate the Accessible Surface Area using our implementation of the 
+	 * rolling ball algorithm. Sets both the Atoms' and Residues' asa members 
+	 * See Shrake, A., and J. A. Rupley. "Environment and Exposure to Solvent of Protein Atoms. 
+	 * Lysozyme and Insulin." JMB (1973) 79:351-371.
+	 * @param nSpherePoints the number of points to be used in generating the spherical 
+	 * dot-density, the more points the more accurate (and slower) calculation
+	 * @param nThreads number of threads to be used for ASA calculation
+	 * @param hetAtoms if true HET residues are considered, if false they aren't, equivalent to 
+	 * NACCESS' -h option
+	 * @param cofactors molecules to be considered as bound to this PdbChain for calculation of its 
+	 * ASAs, if null then only atoms of this PdbChain will be used for ASAs calculation 
+	 * @param asaCache the cache to get the ASAs from if this chain (with cofactors) was calculated 
+	 * before in the same orientation, if null the ASAs are always calculated
+	 */
+	public void calcASAs(int nSpherePoints, int nThreads, boolean hetAtoms, List<PdbChain> cofactors, AsaCache asaCache) {
 		
 		int numAtoms = getNumNonHetAtoms();
 		if (hetAtoms) {
@@ -620,8 +663,13 @@ public class PdbChain implements Serializable, Iterable<Residue> {
 		}
 		
 		
-		AsaCalculator asaCalc = new AsaCalculator(atoms, AsaCalculator.DEFAULT_PROBE_SIZE, nSpherePoints, nThreads);
-		double[] asas = asaCalc.calculateAsa();
+		double[] asas = null;
+		if (asaCache!=null) {
+			asas = asaCache.calculateAsa(atoms, AsaCalculator.DEFAULT_PROBE_SIZE, nSpherePoints, nThreads, hetAtoms);
+		} else {
+			AsaCalculator asaCalc = new AsaCalculator(atoms, AsaCalculator.DEFAULT_PROBE_SIZE, nSpherePoints, nThreads);
+			asas = asaCalc.calculateAsa();
+		}
 		
 		for (i=0;i<atoms.length;i++) {
 			atoms[i].setAsa(asas[i]);
@@ -821,57 +869,13 @@ public class PdbChain implements Serializable, Iterable<Residue> {
 	 * residue serials are written
 	 */
 	public void writeAtomLines(PrintStream out, String chainCode, boolean usePdbResSer) {
-		String chainCodeStr = chainCode;
-		if (chainCode.length()>1) {
-			System.err.println("Warning! Chain code with more than 1 character ("+chainCode+"), only first character will be written to ATOM lines");
-			chainCodeStr = chainCode.substring(0,1);
-		}
-		// we write atoms sorted by atom serial, 
-		// if we were iterating over residues and then atoms we'd get them in order of residue and atom code alphabetical order
-		for (int atomser:this.getAllAtomSerials()) {
-			Atom atom = getAtom(atomser);
-			int resser = atom.getParentResSerial();
-			String pdbresser = atom.getParentResidue().getPdbSerial();
-			String atomCode = atom.getCode();
-			String atomType = atom.getType().getSymbol();
-			String res = atom.getParentResidue().getLongCode();
-			Point3d coords = atom.getCoords();
-			double occupancy = atom.getOccupancy();
-			double bFactor = atom.getBfactor();
-			
-			String lineType = "ATOM  ";
-			if (atom.getParentResidue() instanceof HetResidue) {
-				lineType = "HETATM";
-			}
-			
-			String atomCodePrintf = " %-3s";
-			// some hydrogens have a 4 letter code and it is not aligned to column 14 but to 13 instead
-			// for atoms with 2 letter codes (CL, NA, ....) the alignment is to the left again
-			if (atomCode.length()==4 || atomType.length()==2) { 
-				atomCodePrintf = "%-4s";
-			}
-			
-			String resSerPrintf = "%4d ";
-			if (usePdbResSer) {
-				resSerPrintf = "%4s ";
-				if (!Character.isDigit(pdbresser.charAt(pdbresser.length()-1))) {
-					resSerPrintf = "%5s";
-				}
-			}
-			
-			String printfStr = lineType+"%5d "+atomCodePrintf+" %3s %1s"+resSerPrintf+"   %8.3f%8.3f%8.3f%6.2f%6.2f          %2s\n";
-
-			// Local.US is necessary, otherwise java prints the doubles locale-dependant (i.e. with ',' for some locales)
-			if (usePdbResSer) {
-				out.printf(Locale.US, printfStr,
-					atomser, atomCode, res, chainCodeStr, pdbresser, coords.x, coords.y, coords.z, occupancy, bFactor, atomType);				
-			} else {
-				out.printf(Locale.US, printfStr,
-					atomser, atomCode, res, chainCodeStr, resser, coords.x, coords.y, coords.z, occupancy, bFactor, atomType);
-			}
+		PdbfileWriter writer = new PdbfileWriter(out);
+		try {
+			writer.writeAtomLines(this, chainCode, usePdbResSer);
+			writer.flush();
+		} catch (IOException e) {
+			// can't happen: PrintStreams don't throw IOExceptions (they set their error flag instead)
 		}
-		if (!isNonPolyChain()) out.println("TER");
-
 	}
 
 	/**
@@ -881,36 +885,12 @@ public class PdbChain implements Serializable, Iterable<Residue> {
 	 * @param chainCode
 	 */
 	protected void writeSeqresRecord(PrintStream out, String chainCode) {
-		String chainCodeStr = chainCode;
-		if (chainCode.length()>1) {
-			System.err.println("Warning! Chain code with more than 1 character ("+chainCode+"), only first character will be written to SEQRES lines");
-			chainCodeStr = chainCode.substring(0,1);
-		}
-		ArrayList<String> seqLines = new ArrayList<String>();
-		String seqLine = null;
-		for (int i=0;i<this.sequence.getSeq().length();i++){
-			String longCode = AminoAcid.XXX.getThreeLetterCode();
-			if (this.sequence.isProtein()) {
-				AminoAcid aa = AminoAcid.getByOneLetterCode(this.sequence.getSeq().charAt(i));
-				longCode = aa.getThreeLetterCode();
-			} else {
-				Nucleotide nuc = Nucleotide.getByOneLetterCode(this.sequence.getSeq().charAt(i));
-				longCode = nuc.getTwoLetterCode();				
-			}
-			if (longCode.equals(AminoAcid.XXX.getThreeLetterCode())) {
-				if (containsResidue(i+1)) {
-					longCode = getResidue(i+1).getLongCode();				
-				}
-			}
-			if (i%13==0) {
-				if (seqLine!=null) seqLines.add(seqLine);
-				seqLine = "";
-			}
-			seqLine += String.format("%3s ",longCode);
-		}
-		seqLines.add(seqLine); // the last line wasn't added by the loop
-		for (int i=0;i<seqLines.size();i++){
-			out.printf("SEQRES %3d %s %4d  %s\n",i+1,chainCodeStr,this.getFullLength(),seqLines.get(i));
+		PdbfileWriter writer = new PdbfileWriter(out);
+		try {
+			writer.writeSeqresRecord(this, chainCode);
+			writer.flush();
+		} catch (IOException e) {
+			// can't happen: PrintStreams don't throw IOExceptions (they set their error flag instead)
 		}
 	}
 	
@@ -924,7 +904,7 @@ public class PdbChain implements Serializable, Iterable<Residue> {
 	 * @throws FileNotFoundException
 	 */
 	public void writeToPDBFile(File outFile) throws FileNotFoundException {
-		PrintStream out = new PrintStream(new FileOutputStream(outFile));
+		PrintStream out = new PrintStream(new BufferedOutputStream(new FileOutputStream(outFile), PdbfileWriter.BUFFER_SIZE));
 		if (!isNonPolyChain()) {
 			writeSeqresRecord(out, chainCode);
 		}
@@ -944,7 +924,7 @@ public class PdbChain implements Serializable, Iterable<Residue> {
 	 * @throws FileNotFoundException
 	 */
 	public void writeToPDBFileWithPdbChainCodes(File outFile, boolean usePdbResSer) throws FileNotFoundException {
-		PrintStream out = new PrintStream(new FileOutputStream(outFile));
+		PrintStream out = new PrintStream(new BufferedOutputStream(new FileOutputStream(outFile), PdbfileWriter.BUFFER_SIZE));
 		if (!isNonPolyChain()) {
 			writeSeqresRecord(out, pdbChainCode);
 		}
@@ -954,6 +934,30 @@ public class PdbChain implements Serializable, Iterable<Residue> {
 		out.close();
 	}
 	
+	/**
+	 * Writes coordinate data into a file in mmCIF format (_pdbx_poly_seq_scheme and _atom_site only)
+	 * Both the CIF and PDB chain codes and residue serials are written.
+	 * @param outFile
+	 * @throws IOException
+	 * @see CiffileWriter
+	 */
+	public void writeToCifFile(File outFile) throws IOException {
+		CiffileWriter writer = new CiffileWriter(outFile, false, false);
+		try {
+			writer.writeHeader(getPdbCode());
+			if (!isNonPolyChain()) {
+				writer.beginPdbxPolySeqScheme();
+				writer.writePdbxPolySeqRecords(this, chainCode, pdbChainCode);
+				writer.endLoop();
+			}
+			writer.beginAtomSite();
+			writer.writeAtomSiteRecords(this, chainCode, pdbChainCode, parent==null?PdbAsymUnit.DEFAULT_MODEL:parent.getModel());
+			writer.endLoop();
+		} finally {
+			writer.close();
+		}
+	}
+	
 	/**
 	 * Writes coordinates to given File in CASP TS format.
      * Note that the CASP target number, CASP model number, CASP author, 
@@ -964,7 +968,7 @@ public class PdbChain implements Serializable, Iterable<Residue> {
 	 * @throws FileNotFoundException
 	 */
 	public void writeToCaspTSFile(File outFile) throws FileNotFoundException {
-		PrintStream out = new PrintStream(new FileOutputStream(outFile));
+		PrintStream out = new PrintStream(new BufferedOutputStream(new FileOutputStream(outFile), PdbfileWriter.BUFFER_SIZE));
 		writeCaspTSHeader(out, this.caspParents);
 		writeAtomLines(out,DEFAULT_CASP_TS_CHAINCODE);
 		out.println("END");
@@ -1235,7 +1239,7 @@ public class PdbChain implements Serializable, Iterable<Residue> {
 			grid.addAtoms(iAtoms,iAtoms);
 		}
 		
-		float[][] distMatrix = grid.getDistMatrix(crossed);
+		GridContacts contacts = grid.getContacts(crossed);
 
 		// creating the AIGraph
 		AIGraph graph = new AIGraph();
@@ -1280,24 +1284,22 @@ public class PdbChain implements Serializable, Iterable<Residue> {
 		graph.setCrossed(crossed);
 		
 		// populating the AIGraph with AIGEdges 
-		for (int i=0;i<distMatrix.length;i++){
-			for (int j=0;j<distMatrix[i].length;j++){
-				// the condition distMatrix[i][j]!=0.0 takes care of skipping several things: 
-				// - diagonal of the matrix in case of non-crossed
-				// - lower half of matrix in case of non-crossed
-				// - cells for which we didn't calculate a distance because the 2 points were not in same or neighbouring boxes (i.e. too far apart)
-				if (distMatrix[i][j]!=0.0f && distMatrix[i][j]<=cutoff){
-					if (!crossed) {
-						graph.addEdge(new AIGEdge(distMatrix[i][j]), graph.getNodeFromSerial(iAtoms[i].getSerial()), graph.getNodeFromSerial(iAtoms[j].getSerial()), EdgeType.UNDIRECTED);
-					}
-					// This condition is to take care of crossed contact types that have overlapping sets of atoms: 
-					//   the matrix would contain both i,j and j,i but that's only 1 edge in the AIGraph
-					//TODO if our AIGraph didn't allow parallel edges, this extra check wouldn't be necessary
-					else if (!graph.containsEdgeIJ(iAtoms[i].getSerial(), jAtoms[j].getSerial())) {
-						graph.addEdge(new AIGEdge(distMatrix[i][j]), graph.getNodeFromSerial(iAtoms[i].getSerial()), graph.getNodeFromSerial(jAtoms[j].getSerial()), EdgeType.UNDIRECTED);
-					}
+		for (int k=0;k<contacts.size();k++){
+			int i = contacts.getI(k);
+			int j = contacts.getJ(k);
+			float dist = contacts.getDistance(k);
+			// the contacts are all within cutoff and in case of non-crossed only with j>i
+			// the condition dist!=0.0 skips the atoms paired to themselves in crossed contact types with overlapping sets of atoms
+			if (dist!=0.0f){
+				if (!crossed) {
+					graph.addEdge(new AIGEdge(dist), graph.getNodeFromSerial(iAtoms[i].getSerial()), graph.getNodeFromSerial(iAtoms[j].getSerial()), EdgeType.UNDIRECTED);
+				}
+				// This condition is to take care of crossed contact types that have overlapping sets of atoms: 
+				//   the contacts would contain both i,j and j,i but that's only 1 edge in the AIGraph
+				//TODO if our AIGraph didn't allow parallel edges, this extra check wouldn't be necessary
+				else if (!graph.containsEdgeIJ(iAtoms[i].getSerial(), jAtoms[j].getSerial())) {
+					graph.addEdge(new AIGEdge(dist), graph.getNodeFromSerial(iAtoms[i].getSerial()), graph.getNodeFromSerial(jAtoms[j].getSerial()), EdgeType.UNDIRECTED);
 				}
-
 			}
 		}
 
@@ -1323,12 +1325,37 @@ public class PdbChain implements Serializable, Iterable<Residue> {
 			throw new IllegalArgumentException("Contact type "+ct+" is overlapping. Generating directed graphs for it is unsupported");
 		}
 		
-		String[] cts = ct.split("\\+");		
-		AIGraph atomGraph = getAIGraph(cts[0], cutoff);
-		for(int i=1; i< cts.length; i++) {
-			atomGraph.addGraph(getAIGraph(cts[i], cutoff));
+		TreeSet<Integer> ressers = new TreeSet<Integer>();
+		IntPairAccumulator resPairs = getResidueContacts(ct, cutoff, directed, ressers);
+
+		RIGraph graph = new RIGraph();
+		graph.setPdbCode(getPdbCode());
+		graph.setChainCode(chainCode);
+		graph.setPdbChainCode(pdbChainCode);
+		graph.setModel(parent.getModel());
+		graph.setSid(sid);
+		graph.setTargetNum(targetNum);
+		graph.setGroupNum(groupNum);
+		graph.setCaspModelNum(caspModelNum);
+		graph.setAuthorStr(caspAuthorStr);
+		graph.setMethodStr(caspMethodStr);
+		graph.setParents(caspParents);
+		graph.setSequence(sequence.getSeq());
+		SecondaryStructure secondaryStructureCopy = secondaryStructure.copy();
+		graph.setSecondaryStructure(secondaryStructureCopy);
+		
+		for (int resser:ressers) {
+			// NOTE!: we are passing references to the SecStrucElement objects! they point to the same objects as secondaryStructureCopy
+			graph.addVertex(new RIGNode(resser, ((AaResidue)getResidue(resser)).getAaType().getThreeLetterCode(), 
+					secondaryStructureCopy.getSecStrucElement(resser))); // this also adds the node to the serials2nodes map
+		}
+		
+		EdgeType et = directed?EdgeType.DIRECTED:EdgeType.UNDIRECTED;
+		for (int k=0;k<resPairs.size();k++) {
+			RIGEdge edge = new RIGEdge(resPairs.getCount(k));
+			edge.setDistance(resPairs.getDistance(k));
+			graph.addEdge(edge, graph.getNodeFromSerial(resPairs.getI(k)), graph.getNodeFromSerial(resPairs.getJ(k)), et);
 		}
-		RIGraph graph = atomGraph.getRIGraph(directed);
 		
 		graph.setContactType(ct);
 		graph.setCutoff(cutoff);
@@ -1336,6 +1363,78 @@ public class PdbChain implements Serializable, Iterable<Residue> {
 		return graph;
 	}
 	
+	/**
+	 * Finds the residue contacts of the given contact type and cutoff, accumulating the atom 
+	 * contacts found by the grid directly into residue pairs (with their number of atom contacts 
+	 * and minimum atom distance), i.e. with no atom graph.
+	 * The atom contacts are the same that {@link #getAIGraph(String, double)} finds (combined 
+	 * with {@link AIGraph#addGraph(AIGraph)} for contact types joined by "+") and are collapsed 
+	 * into residue pairs as {@link AIGraph#getRIGraph(boolean)} does.
+	 * Only standard aminoacids are considered.
+	 * @param ct  the contact type
+	 * @param cutoff  the distance cutoff
+	 * @param directed  if false the residue pairs are accumulated regardless of their order 
+	 * and returned with i<j 
+	 * @param ressers  the set where the residue serials of all atoms of the contact type are added
+	 * @return the residue pairs, in the order they were found 
+	 */
+	private IntPairAccumulator getResidueContacts(String ct, double cutoff, boolean directed, Set<Integer> ressers) {
+		IntPairAccumulator resPairs = new IntPairAccumulator();
+		// for overlapping contact types the same atom contact can be found more than once (by 2 different 
+		// contact types or in both directions by a crossed contact type): we count it only once, as the AIGraph does
+		IntPairAccumulator atomPairs = null;
+		if (ContactType.isOverlapping(ct)) {
+			atomPairs = new IntPairAccumulator();
+		}
+		
+		for (String subCt:ct.split("\\+")) {
+			Atom[] iAtoms = null;
+			Atom[] jAtoms = null;
+			boolean crossed = false;
+			if (!subCt.contains("/")){
+				iAtoms = getAtomsForCt(subCt, null);
+				jAtoms = iAtoms;
+			} else {
+				iAtoms = getAtomsForCt(subCt.split("/")[0],null);
+				jAtoms = getAtomsForCt(subCt.split("/")[1],null);
+				crossed = true;
+			}
+			for (Atom atom:iAtoms) {
+				ressers.add(atom.getParentResSerial());
+			}
+			if (crossed) {
+				for (Atom atom:jAtoms) {
+					ressers.add(atom.getParentResSerial());
+				}
+			}
+
+			Grid grid = new Grid(cutoff);
+			grid.addAtoms(iAtoms,jAtoms);
+			GridContacts contacts = grid.getContacts(crossed);
+
+			for (int k=0;k<contacts.size();k++) {
+				float dist = contacts.getDistance(k);
+				// the condition dist!=0.0 skips the atoms paired to themselves in crossed contact types with overlapping sets of atoms
+				if (dist==0.0f) continue;
+				Atom iAtom = iAtoms[contacts.getI(k)];
+				Atom jAtom = jAtoms[contacts.getJ(k)];
+				if (atomPairs!=null && 
+						atomPairs.add(Math.min(iAtom.getSerial(), jAtom.getSerial()), Math.max(iAtom.getSerial(), jAtom.getSerial()), dist)>1) {
+					continue;
+				}
+				int iResser = iAtom.getParentResSerial();
+				int jResser = jAtom.getParentResSerial();
+				if (iResser==jResser) continue;
+				if (!directed && iResser>jResser) {
+					resPairs.add(jResser, iResser, dist);
+				} else {
+					resPairs.add(iResser, jResser, dist);
+				}
+			}
+		}
+		return resPairs;
+	}
+	
 	/**
 	 * Returns a RIGraph for given contact type and cutoff
 	 * Crossed contact types (i.e. those containing a "/") will be considered always as 
@@ -1354,6 +1453,48 @@ public class PdbChain implements Serializable, Iterable<Residue> {
 		return getRIGraph(ct, cutoff, crossed);
 	}
 	
+	/**
+	 * Returns the residue contact map for given contact type, cutoff and directionality 
+	 * in the compressed form of {@link RIGContactMap}, with the same contacts as 
+	 * {@link #getRIGraph(String, double, boolean)}.
+	 * The residue contacts are accumulated directly from the atom contacts found by the grid,
+	 * without building an atom graph.
+	 * Only standard aminoacids are considered.
+	 * @param ct  the contact type
+	 * @param cutoff  the distance cutoff
+	 * @param directed  true if we want a directed contact map, false for undirected
+	 * @return
+	 */
+	public RIGContactMap getContactMap(String ct, double cutoff, boolean directed) {
+		if (directed && ContactType.isOverlapping(ct)) {
+			throw new IllegalArgumentException("Contact type "+ct+" is overlapping. Generating directed contact maps for it is unsupported");
+		}
+		
+		TreeSet<Integer> ressers = new TreeSet<Integer>();
+		IntPairAccumulator resPairs = getResidueContacts(ct, cutoff, directed, ressers);
+		
+		int[] serials = new int[ressers.size()];
+		String[] residueTypes = new String[ressers.size()];
+		int k = 0;
+		for (int resser:ressers) {
+			serials[k] = resser;
+			residueTypes[k] = ((AaResidue)getResidue(resser)).getAaType().getThreeLetterCode();
+			k++;
+		}
+		
+		RIGContactMap cm = new RIGContactMap(serials, residueTypes, directed, 
+				resPairs.size(), resPairs.getIs(), resPairs.getJs(), resPairs.getCounts(), resPairs.getDistances(), null);
+		cm.setSequence(sequence.getSeq());
+		cm.setPdbCode(getPdbCode());
+		cm.setChainCode(chainCode);
+		cm.setPdbChainCode(pdbChainCode);
+		cm.setModel(parent.getModel());
+		cm.setContactType(ct);
+		cm.setCutoff(cutoff);
+		cm.setSecondaryStructure(secondaryStructure.copy());
+		return cm;
+	}
+	
 	/**
 	 * Returns an all atom graph in a AIGraph object
 	 * Only standard aminoacids are considered.
@@ -1473,23 +1614,32 @@ public class PdbChain implements Serializable, Iterable<Residue> {
 		Grid grid = new Grid(cutoff);
 		grid.addAtoms(thisAtoms,bounds,otherAtoms,other.bounds);
 		
-		AICGraph graph = new AICGraph();
-		graph.setDistCutoff(cutoff);
-
 		if (grid.isNoOverlap()) {
+			AICGraph graph = new AICGraph();
+			graph.setDistCutoff(cutoff);
 			return graph;
 		}
 		
-		float[][] distMatrix = grid.getDistMatrix(true);
+		return createAICGraph(grid.getContacts(true), thisAtoms, otherAtoms, cutoff);
+	}
+	
+	/**
+	 * Creates the atom interaction graph for the given contacts between 2 sets of atoms.
+	 * @param contacts the contacts with i indices referring to iAtoms and j indices to jAtoms
+	 * @param iAtoms
+	 * @param jAtoms
+	 * @param cutoff
+	 * @return
+	 */
+	protected static AICGraph createAICGraph(GridContacts contacts, Atom[] iAtoms, Atom[] jAtoms, double cutoff) {
+		AICGraph graph = new AICGraph();
+		graph.setDistCutoff(cutoff);
 		
-		for (int i=0;i<distMatrix.length;i++){ 
-			for (int j=0;j<distMatrix[i].length;j++){
-				// the condition distMatrix[i][j]!=0.0 takes care of skipping cells for which we 
-				// didn't calculate a distance because the 2 points were not in same or neighbouring boxes (i.e. too far apart)
-				if (distMatrix[i][j]!=0.0f && distMatrix[i][j]<=cutoff){
-					graph.addEdge(new AICGEdge(distMatrix[i][j]), thisAtoms[i], otherAtoms[j], EdgeType.UNDIRECTED);
-				}
-
+		for (int k=0;k<contacts.size();k++){ 
+			float dist = contacts.getDistance(k);
+			// as with the old distance matrix we skip the 0.0 distances (atoms with identical coordinates)
+			if (dist!=0.0f){
+				graph.addEdge(new AICGEdge(dist), iAtoms[contacts.getI(k)], jAtoms[contacts.getJ(k)], EdgeType.UNDIRECTED);
 			}
 		}
 		return graph;
@@ -1816,7 +1966,15 @@ public class PdbChain implements Serializable, Iterable<Residue> {
 	protected void setResser2pdbresserMap(TreeMap<Integer,String> resser2pdbresser){
 		this.resser2pdbresser = resser2pdbresser;
 	}
-	
+
+	protected TreeMap<String,Integer> getPdbresser2resserMap() {
+		return pdbresser2resser;
+	}
+
+	protected TreeMap<Integer,String> getResser2pdbresserMap() {
+		return resser2pdbresser;
+	}
+
 	/**
 	 * Tells whether this chain contains atoms with alt codes. 
 	 * We don't store them but catch the case when we parse from PDB/mmCIF/pdbase
@@ -2707,13 +2865,11 @@ public class PdbChain implements Serializable, Iterable<Residue> {
 	 */
 	public void mirror() {
 		this.bounds = null; // we must reset bounds whenever the coordinates are changed
-		for (Residue residue:this) {
-			for (Atom atom:residue) {
-				Point3d coords = atom.getCoords();
-				coords.x *= -1;
-				coords.y *= -1;
-				coords.z *= -1;				
-			}
+		for (Atom atom:getAtomArray()) {
+			Point3d coords = atom.getCoords();
+			coords.x = -coords.x;
+			coords.y = -coords.y;
+			coords.z = -coords.z;
 		}
 	}
 
@@ -2723,11 +2879,40 @@ public class PdbChain implements Serializable, Iterable<Residue> {
 	 */
 	public void transform(Matrix4d m) {	
 		this.bounds = null; // we must reset bounds whenever the coordinates are changed
-		for (Residue residue:this) {
-			for (Atom atom:residue) {
-				Point3d coords = atom.getCoords();
-				m.transform(coords);
-			}
+		transform(getAtomArray(), m);
+	}
+	
+	/**
+	 * Transforms in place the coordinates of the given atoms by the given matrix, with the same 
+	 * arithmetic as {@link Matrix4d#transform(Point3d)} but with the matrix elements read only once.
+	 * @param atoms
+	 * @param m
+	 */
+	private static void transform(Atom[] atoms, Matrix4d m) {
+		final double m00 = m.m00, m01 = m.m01, m02 = m.m02, m03 = m.m03;
+		final double m10 = m.m10, m11 = m.m11, m12 = m.m12, m13 = m.m13;
+		final double m20 = m.m20, m21 = m.m21, m22 = m.m22, m23 = m.m23;
+		for (Atom atom:atoms) {
+			Point3d coords = atom.getCoords();
+			double x = coords.x, y = coords.y, z = coords.z;
+			coords.x = m00*x + m01*y + m02*z + m03;
+			coords.y = m10*x + m11*y + m12*z + m13;
+			coords.z = m20*x + m21*y + m22*z + m23;
+		}
+	}
+	
+	/**
+	 * Adds the given vector to the coordinates of the given atoms.
+	 * @param atoms
+	 * @param v
+	 */
+	private static void translate(Atom[] atoms, Tuple3d v) {
+		final double tx = v.x, ty = v.y, tz = v.z;
+		for (Atom atom:atoms) {
+			Point3d coords = atom.getCoords();
+			coords.x += tx;
+			coords.y += ty;
+			coords.z += tz;
 		}
 	}
 	
@@ -2756,12 +2941,7 @@ public class PdbChain implements Serializable, Iterable<Residue> {
 		if (bounds!=null) {
 			bounds.translate(transOrth);
 		}
-		for (Residue residue:this) {
-			for (Atom atom:residue) {
-				Point3d coords = atom.getCoords();
-				coords.add(transOrth);
-			}
-		}
+		translate(getAtomArray(), transOrth);
 	}
 	
 	/**
@@ -2781,15 +2961,11 @@ public class PdbChain implements Serializable, Iterable<Residue> {
 		// note that the matrix needs to be initialised to the unit matrix otherwise setRotation() doesn't work properly
 		Matrix4d rot = new Matrix4d(1,0,0,0, 0,1,0,0, 0,0,1,0, 0,0,0,1); 
 		rot.setRotation(axisAngle);
-		for (Residue residue: this) {
-			for (Atom atom:residue) {
-				Point3d coords = atom.getCoords();
-				// translate to new origin
-				coords.sub(center);
-				// rotate so that z axis is the given axis
-				rot.transform(coords);
-			}
-		}
+		Atom[] atoms = getAtomArray();
+		// translate to new origin
+		translate(atoms, new Vector3d(-center.x, -center.y, -center.z));
+		// rotate so that z axis is the given axis
+		transform(atoms, rot);
 	}
 	
 	/**
@@ -2803,11 +2979,7 @@ public class PdbChain implements Serializable, Iterable<Residue> {
 		// note that the matrix needs to be initialised to the unit matrix otherwise setRotation() doesn't work properly
 		Matrix4d rot = new Matrix4d(1,0,0,0, 0,1,0,0, 0,0,1,0, 0,0,0,1); 
 		rot.setRotation(axisAngle);
-		for (Residue residue: this) {
-			for (Atom atom:residue) {
-				rot.transform(atom.getCoords());
-			}
-		}
+		transform(getAtomArray(), rot);
 	}
 
 	
@@ -2817,11 +2989,7 @@ public class PdbChain implements Serializable, Iterable<Residue> {
 	public void moveToOrigin() {
 		this.bounds = null; // we must reset bounds whenever the coordinates are changed
 		Point3d center = getCentroid();
-		for (Residue residue: this) {
-			for (Atom atom:residue) {
-				atom.getCoords().sub(center);
-			}
-		}
+		translate(getAtomArray(), new Vector3d(-center.x, -center.y, -center.z));
 	}
 	
 	/**
@@ -2840,11 +3008,8 @@ public class PdbChain implements Serializable, Iterable<Residue> {
 		sumVector.scale(1.0/numVectors);
 		//System.out.println(sumVector);
 		
-		for (Residue residue: this) {
-			for (Atom atom:residue) {
-				atom.getCoords().sub(sumVector);
-			}
-		}
+		sumVector.negate();
+		translate(getAtomArray(), sumVector);
 	}
 	
 	/**
@@ -2854,16 +3019,16 @@ public class PdbChain implements Serializable, Iterable<Residue> {
 	 * @return
 	 */
 	public Point3d getCentroid() {
-		Vector3d sumVector = new Vector3d();
-		int numAtoms = 0;
-		for (Residue residue:this) {
-			for (Atom atom:residue) {
-				Point3d coords = atom.getCoords();
-				sumVector.add(coords);
-				numAtoms++;
-			}
+		Atom[] atoms = getAtomArray();
+		double sumx = 0, sumy = 0, sumz = 0;
+		for (Atom atom:atoms) {
+			Point3d coords = atom.getCoords();
+			sumx += coords.x;
+			sumy += coords.y;
+			sumz += coords.z;
 		}
-		sumVector.scale(1.0/numAtoms);
+		Vector3d sumVector = new Vector3d(sumx, sumy, sumz);
+		sumVector.scale(1.0/atoms.length);
 		return new Point3d(sumVector);
 	}
 	
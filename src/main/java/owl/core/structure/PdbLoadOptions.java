@@ -0,0 +1,143 @@
+package owl.core.structure;
+
+import java.util.Collection;
+import java.util.EnumSet;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Options to load only parts of a PDB entry with {@link PdbAsymUnit#PdbAsymUnit(java.io.File, PdbLoadOptions)}:
+ * which categories of data to read, which chains, model and atoms to read and whether
+ * to compute the chain clusters. By default everything is loaded, as with the other
+ * PdbAsymUnit constructors.
+ *
+ * The header data (PDB code, title, release date and experimental method) are always read.
+ * For mmCIF files the skipped categories are not tokenised at all and the filtered out
+ * atoms are dropped while scanning the file.
+ */
+public class PdbLoadOptions {
+
+	/**
+	 * The categories of data of a PDB entry that can be loaded
+	 */
+	public enum Category {
+		/** the atoms and thus the chains: if not read the PdbAsymUnit will have no chains */
+		ATOMS,
+		/** the full sequences (SEQRES in PDB files, pdbx_poly_seq_scheme in mmCIF files): if not read
+		 * the sequences are taken from the observed residues */
+		SEQRES,
+		/** the author secondary structure annotation */
+		SECONDARY_STRUCTURE,
+		/** the crystal cell, space group and scale matrix */
+		CRYSTAL,
+		/** resolution, rFree and rSym */
+		QUALITY,
+		/** the biological unit assemblies */
+		BIO_UNITS
+	}
+
+	private EnumSet<Category> categories;
+	private int model;
+	private Set<String> pdbChainCodes;
+	private Set<String> atomNames;
+	private boolean chainClusters;
+
+	/**
+	 * Constructs a PdbLoadOptions to load everything of model {@value PdbAsymUnit#DEFAULT_MODEL}
+	 */
+	public PdbLoadOptions() {
+		this.categories = EnumSet.allOf(Category.class);
+		this.model = PdbAsymUnit.DEFAULT_MODEL;
+		this.pdbChainCodes = null;
+		this.atomNames = null;
+		this.chainClusters = true;
+	}
+
+	/**
+	 * Sets the categories of data to read, any other category will be skipped.
+	 * @param categories
+	 */
+	public void setCategories(Collection<Category> categories) {
+		this.categories = categories.isEmpty()?EnumSet.noneOf(Category.class):EnumSet.copyOf(categories);
+	}
+
+	/**
+	 * Skips reading the given category of data.
+	 * @param category
+	 */
+	public void skipCategory(Category category) {
+		this.categories.remove(category);
+	}
+
+	public boolean isCategoryWanted(Category category) {
+		return categories.contains(category);
+	}
+
+	public int getModel() {
+		return model;
+	}
+
+	/**
+	 * Sets the model to read, atoms of all other models are skipped.
+	 * @param model
+	 */
+	public void setModel(int model) {
+		this.model = model;
+	}
+
+	/**
+	 * Sets the PDB chain codes (author chain ids) of the chains to read, polymer and
+	 * non-polymer. If null (default) all chains are read.
+	 * @param pdbChainCodes
+	 */
+	public void setPdbChainCodes(Collection<String> pdbChainCodes) {
+		this.pdbChainCodes = pdbChainCodes==null?null:new HashSet<String>(pdbChainCodes);
+	}
+
+	public Set<String> getPdbChainCodes() {
+		return pdbChainCodes;
+	}
+
+	public boolean isPdbChainCodeWanted(String pdbChainCode) {
+		return pdbChainCodes==null || pdbChainCodes.contains(pdbChainCode);
+	}
+
+	/**
+	 * Sets the names of the atoms to read, e.g. "CA" for a CA trace. The filter applies
+	 * to all residues, including het residues: chains left without atoms are not loaded.
+	 * If null (default) all atoms are read.
+	 * @param atomNames
+	 */
+	public void setAtomNames(Collection<String> atomNames) {
+		this.atomNames = atomNames==null?null:new HashSet<String>(atomNames);
+	}
+
+	public Set<String> getAtomNames() {
+		return atomNames;
+	}
+
+	public boolean isAtomNameWanted(String atomName) {
+		return atomNames==null || atomNames.contains(atomName);
+	}
+
+	/**
+	 * Tells whether only some of the chains or atoms are read.
+	 * @return
+	 */
+	public boolean hasAtomFilters() {
+		return pdbChainCodes!=null || atomNames!=null;
+	}
+
+	/**
+	 * Sets whether the protein chain clusters (see {@link PdbAsymUnit#getProtChainClusters()})
+	 * are computed, true by default. If not computed there will be no chain clusters.
+	 * @param chainClusters
+	 */
+	public void setChainClusters(boolean chainClusters) {
+		this.chainClusters = chainClusters;
+	}
+
+	public boolean isChainClusters() {
+		return chainClusters;
+	}
+}
@@ -2,16 +2,18 @@ package owl.core.structure;
 
 import java.io.BufferedReader;
 import java.io.File;
-import java.io.FileReader;
 import java.io.IOException;
+import java.io.InputStreamReader;
 import java.text.ParseException;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.Locale;
 import java.util.Map;
+import java.util.NoSuchElementException;
 import java.util.TreeMap;
 import java.util.TreeSet;
 import java.util.regex.Matcher;
@@ -30,6 +32,8 @@ import owl.core.structure.io.BioUnitAssembly;
 import owl.core.structure.io.BioUnitAssemblyGen;
 import owl.core.structure.io.SecStructureLine;
 import owl.core.util.FileFormatException;
+import owl.core.util.Goodies;
+import owl.core.util.NumberParser;
 
 /**
  * A PDB file format parser, reads PDB files or CASP TS files
@@ -50,6 +54,19 @@ public class PdbfileParser {
 
 	private static final Pattern INNER_GAPS_REGEX = Pattern.compile("\\w-+\\w");
 	
+	private static final Pattern HEADER_PDBCODE_REGEX = Pattern.compile("^HEADER.{56}(\\d\\w{3})");
+	private static final Pattern CASP_PFRMAT_REGEX = Pattern.compile("^PFRMAT\\s+TS");
+	private static final Pattern CASP_TARGET_REGEX = Pattern.compile("^TARGET\\s+[Tt](\\d+)");
+	private static final Pattern RESOLUTION_REGEX = Pattern.compile("^REMARK   3   RESOLUTION RANGE HIGH \\(ANGSTROMS\\) :\\s+(\\d+\\.\\d+).*");
+	private static final Pattern RFREE_REGEX = Pattern.compile("^REMARK   3   FREE R VALUE\\s+(?:\\(NO CUTOFF\\))?\\s+:\\s+(\\d\\.\\d+).*");
+	private static final Pattern RMERGE_REGEX = Pattern.compile("^REMARK 200  R MERGE                    \\(I\\)\\s+:\\s+(\\d\\.\\d+).*");
+	private static final Pattern RSYM_REGEX = Pattern.compile("^REMARK 200  R SYM                      \\(I\\)\\s+:\\s+(\\d\\.\\d+).*");
+	private static final Pattern BIOMT_REGEX = Pattern.compile("REMARK 350   BIOMT(\\d)\\s+(\\d+)\\s+([\\-.0-9]+)\\s+([\\-.0-9]+)\\s+([\\-.0-9]+)\\s+([\\-.0-9]+)\\s+");
+	private static final Pattern MODEL_REGEX = Pattern.compile("^MODEL\\s+(\\d+)");
+	private static final Pattern PARENT_REGEX = Pattern.compile("^PARENT\\s+.+");
+	private static final Pattern PARENT_CODE_REGEX = Pattern.compile("(\\d\\w\\w\\w_?\\w?)");
+	private static final Pattern WHITESPACE_REGEX = Pattern.compile("\\s+");
+	
 	public static final String NULL_chainCode = "A";
 	
 	private String pdbfile;
@@ -82,6 +99,22 @@ public class PdbfileParser {
 	
 	private boolean missingSeqResPadding;
 	
+	private PdbLoadOptions options;
+	
+	// the parsing state, in members so that the models can be read one at a time (see getModelIterator())
+	private BufferedReader fpdb;
+	private int linecount;
+	private int thismodel;
+	private AtomLineList atomLines;
+	private ArrayList<SecStructureLine> secStructureLines;
+	private boolean outOfPolyChain; // true when out of poly chain (after TER record seen), false again when an ATOM record found
+	private boolean atomAtOriginSeen; // if we've read at least 1 atom at the origin (0,0,0) it is set to true
+	private boolean terRecordSeen;
+	private BioUnitAssembly assembly;
+	private BioUnitAssemblyGen generator;
+	private int bioUnitOperationId;
+	private Matrix4d operation;
+	
 	private ArrayList<BioUnitAssembly> bioUnitAssemblies;
 	private ArrayList<BioUnitAssemblyGen> bioUnitGenerators;
 	private Map<Integer,Matrix4d> bioUnitOperations;
@@ -100,6 +133,7 @@ public class PdbfileParser {
 		this.rFree = -1;
 		this.rSym = -1;
 		this.missingSeqResPadding = true;
+		this.options = new PdbLoadOptions();
 	}
 
 	/**
@@ -118,7 +152,20 @@ public class PdbfileParser {
 		this.rFree = -1;
 		this.rSym = -1;
 		this.missingSeqResPadding = missingSeqResPadding;
-
+		this.options = new PdbLoadOptions();
+	}
+	
+	/**
+	 * Constructs a pdb file parser object given a pdbfile name that reads only the
+	 * categories, chains and atoms specified in the given load options. The model 
+	 * is the one given in {@link #readChains(PdbAsymUnit, int)}
+	 * @param pdbfile
+	 * @param missingSeqResPadding 
+	 * @param options
+	 */
+	public PdbfileParser (String pdbfile, boolean missingSeqResPadding, PdbLoadOptions options) {
+		this(pdbfile, missingSeqResPadding);
+		this.options = options;
 	}
 	
 	/**
@@ -142,6 +189,7 @@ public class PdbfileParser {
 			// so that the GC releases memory (hopefully) for the tmp residue objects
 			tmpResiduesLists = null;
 			tmpResiduesMaps = null;
+			atomLines = null;
 			
 		} catch (FileFormatException e) {
 			throw new PdbLoadException(e);
@@ -151,6 +199,22 @@ public class PdbfileParser {
 //		return pdb;
 	}
 	
+	/**
+	 * Returns an iterator over all models of the PDB file (e.g. of an NMR ensemble or 
+	 * of a trajectory) that reads the file in one pass: each model is read up to its ENDMDL 
+	 * record and returned as a new PdbAsymUnit, thus only one model is in memory at a time 
+	 * (plus the ones kept by the caller). The header data must be before the first model, 
+	 * as in the PDB format. The chains, atoms and categories read are those of the load options 
+	 * given in the constructor (their model is ignored).
+	 * If problems occur while reading the file the iterator throws a RuntimeException with 
+	 * the PdbLoadException as its cause.
+	 * @return
+	 * @throws PdbLoadException if the file can't be opened
+	 */
+	public Iterator<PdbAsymUnit> getModelIterator() throws PdbLoadException {
+		return new ModelIterator();
+	}
+	
 	/**
 	 * Returns all alphabetically sorted PDB chain codes present in the PDB file by quickly parsing the chain 
 	 * info from the ATOM lines of the PDB file.
@@ -163,7 +227,7 @@ public class PdbfileParser {
 		}
 		TreeSet<String> chains = new TreeSet<String>();
 		try {
-			BufferedReader fpdb = new BufferedReader(new FileReader(new File(pdbfile)));
+			BufferedReader fpdb = new BufferedReader(new InputStreamReader(Goodies.openPossiblyGzippedFile(new File(pdbfile))));
 			String  line;
 			while ((line=fpdb.readLine())!=null) {
 				if (line.startsWith("ATOM")) {
@@ -198,14 +262,14 @@ public class PdbfileParser {
 		}
 		TreeSet<Integer> models = new TreeSet<Integer>();
 		try {
-			BufferedReader fpdb = new BufferedReader(new FileReader(new File(pdbfile)));
+			BufferedReader fpdb = new BufferedReader(new InputStreamReader(Goodies.openPossiblyGzippedFile(new File(pdbfile))));
 			String  line;
 			while ((line=fpdb.readLine())!=null) {
 				// The model serial numbers should occur in columns 11-14 (official PDB format spec)
 				// Here we are less strict: we allow for the numbers to appear in any column after the MODEL keyword (with any number of spaces in between)
 				// We mainly need this because of CASP TS file which don't follow the PDB format 100% 
-				Pattern p = Pattern.compile("^MODEL\\s+(\\d+)");
-				Matcher m = p.matcher(line);
+				if (!line.startsWith("MODEL")) continue;
+				Matcher m = MODEL_REGEX.matcher(line);
 				if (m.find()){
 					int model = Integer.parseInt(m.group(1));
 					models.add(model);
@@ -301,450 +365,491 @@ public class PdbfileParser {
 	 * pdbChainCode and model or the space group found is not recognised
 	 */
 	private void parse(PdbAsymUnit pdbAsymUnit) throws IOException, FileFormatException, PdbLoadException {
-		AtomLineList atomLines = new AtomLineList();
+		initParsing();
+		initModel();
+		String line;
+		while((line = fpdb.readLine()) != null ) {
+			linecount++;
+			parseLine(line);
+		}
+		fpdb.close();
+		
+		endHeader();
+		
+		readModel(pdbAsymUnit);
+	}
+	
+	/**
+	 * Initialises the parsing state of the whole file and opens it for reading.
+	 * @throws IOException
+	 */
+	private void initParsing() throws IOException {
 		sequences = new HashMap<String,String>();
-		//HashMap<String,SecondaryStructure> secStructures = new HashMap<String,SecondaryStructure>();
-		ArrayList<SecStructureLine> secStructureLines = new ArrayList<SecStructureLine>();
-		tmpResiduesLists = new HashMap<String, ArrayList<Residue>>();
-		tmpResiduesMaps = new HashMap<String, HashMap<String,Residue>>();
-		Pattern p;
-		Matcher m;
+		secStructureLines = new ArrayList<SecStructureLine>();
 		this.title = null;
 		this.releaseDate = null;
-		boolean outOfPolyChain = false; // true when out of poly chain (after TER record seen), false again when an ATOM record found
-		boolean atomAtOriginSeen = false; // if we've read at least 1 atom at the origin (0,0,0) it is set to true
-		boolean terRecordSeen = false;
-		int thismodel=PdbAsymUnit.DEFAULT_MODEL; // we initialise to DEFAULT_MODEL, in case file doesn't have MODEL lines 
-		BufferedReader fpdb = new BufferedReader(new FileReader(new File(pdbfile)));
-		int linecount=0;
-		String line;
-		LinkedList<String> parentList = null;
+		thismodel=PdbAsymUnit.DEFAULT_MODEL; // we initialise to DEFAULT_MODEL, in case file doesn't have MODEL lines 
+		fpdb = new BufferedReader(new InputStreamReader(Goodies.openPossiblyGzippedFile(new File(pdbfile))));
+		linecount=0;
 
 		//Variables for biounits
 		bioUnitAssemblies = new ArrayList<BioUnitAssembly>();
-		BioUnitAssembly assembly = new BioUnitAssembly();
+		assembly = new BioUnitAssembly();
 		bioUnitGenerators = new ArrayList<BioUnitAssemblyGen>();
-		BioUnitAssemblyGen generator = new BioUnitAssemblyGen();
+		generator = new BioUnitAssemblyGen();
 		bioUnitOperations = new TreeMap<Integer,Matrix4d>();
-		int bioUnitOperationId = 0;
-		Matrix4d operation = null;
-		
-		while((line = fpdb.readLine()) != null ) {
-			linecount++;
-			if (linecount==1) {
-				// HEADER
-				p = Pattern.compile("^HEADER");
-				m = p.matcher(line);
-				if (m.find()){
-					Pattern ph = Pattern.compile("^HEADER.{56}(\\d\\w{3})");
-					Matcher mh = ph.matcher(line);
-					if (mh.find()) {
-						pdbCode=mh.group(1).toLowerCase();
+		bioUnitOperationId = 0;
+		operation = null;
+	}
+	
+	/**
+	 * Initialises the parsing state of a model: to be called before reading its atom lines.
+	 */
+	private void initModel() {
+		atomLines = new AtomLineList();
+		tmpResiduesLists = new HashMap<String, ArrayList<Residue>>();
+		tmpResiduesMaps = new HashMap<String, HashMap<String,Residue>>();
+		outOfPolyChain = false;
+		atomAtOriginSeen = false;
+		terRecordSeen = false;
+	}
+	
+	/**
+	 * Parses a line of the PDB file: atom lines of the current model are stored 
+	 * to be read later by {@link #readModel(PdbAsymUnit)}, everything else goes to the 
+	 * header data.
+	 * @param line
+	 * @throws IOException
+	 * @throws FileFormatException
+	 * @throws PdbLoadException
+	 */
+	private void parseLine(String line) throws IOException, FileFormatException, PdbLoadException {
+		Matcher m;
+		// ATOM/HETATM: these are by far the most frequent lines, we dispatch them first and skip all other record checks
+		boolean isAtomLine = line.startsWith("ATOM");
+		if (isAtomLine || line.startsWith("HETATM")) {
+			if (thismodel!=model) return; // we skip reading of atom lines if we are not in the desired model
+			if (!options.isCategoryWanted(PdbLoadOptions.Category.ATOMS)) return;
+			try {
+				if (line.length()<54) {
+					// the least we admit is a PDB file with coordinates up to z
+					fpdb.close();
+					throw new FileFormatException("ATOM/HETATM line is too short to contain the minimum fields required. PDB file "+pdbfile+" at line "+linecount);
+				}
+				// all names are interned, they are repeated in many lines
+				String res_type = NameInterner.internTrimmed(line,17,20);
+				if (!res_type.equals(HetResidue.WATER) && !res_type.equals(HetResidue.DEUT_WATER)) {
+					if (isAtomLine) outOfPolyChain = false;
+					String pdbChainCode = NameInterner.intern(line,21,22);
+					String atom = NameInterner.internTrimmed(line,12,16);
+					// the chain and atom filters of the load options: after updating outOfPolyChain so that chains are assigned as without filters
+					if (!options.isPdbChainCodeWanted(pdbChainCode) || !options.isAtomNameWanted(atom)) return;
+					// all numbers are parsed in place from their fixed columns 
+					int atomserial=NumberParser.parseInt(line,6,11);
+					int pdbResSerial = 0;
+					String insCode = ".";
+					// the residue serial with the insertion code (if any) in its last character 
+					int resSerialEnd = 27;
+					while (resSerialEnd>22 && line.charAt(resSerialEnd-1)==' ') resSerialEnd--;
+					if (resSerialEnd==22) throw new NumberFormatException("Empty residue serial field");
+					if (Character.isDigit(line.charAt(resSerialEnd-1))) {
+						pdbResSerial = NumberParser.parseInt(line,22,resSerialEnd);
+					} else {
+						pdbResSerial = NumberParser.parseInt(line,22,resSerialEnd-1);
+						insCode = NameInterner.intern(line,resSerialEnd-1,resSerialEnd);
 					}
-				} else { // header not found
-					// check whether this is a Casp prediction file
-					p = Pattern.compile("^PFRMAT\\s+TS");
-					m = p.matcher(line);
-					if(m.find()) {
-						// ok, it is
-						isCaspTS = true; 
-						pdbCode = PdbAsymUnit.NO_PDB_CODE;
-						// we try to read the TARGET from the next line, if there's no TARGET line appearing this is not respecting the format: exception
-						if((line = fpdb.readLine()) != null ) {
-							linecount++;
-							p = Pattern.compile("^TARGET\\s+[Tt](\\d+)");
-							m = p.matcher(line);
-							if (m.find()) {
-								caspTargetNum = Integer.parseInt(m.group(1));
-							} else {
-								fpdb.close();
-								throw new FileFormatException("The CASP TS file "+pdbfile+" does not have a TARGET line");
-							}
+					
+					char altCodeChar = line.charAt(16);
+					String altCode = altCodeChar==' '?".":NameInterner.intern(line,16,17);
+					double x = NumberParser.parseDouble(line,30,38);
+					double y = NumberParser.parseDouble(line,38,46);
+					double z = NumberParser.parseDouble(line,46,54);
+					double occupancy = Atom.DEFAULT_OCCUPANCY;
+					if (line.length()>=60 && !NumberParser.isBlank(line,54,60)) {
+						occupancy = NumberParser.parseDouble(line,54,60);
+					}
+					double bfactor = Atom.DEFAULT_B_FACTOR;
+					if (line.length()>=66 && !NumberParser.isBlank(line,60,66)) {
+						bfactor = NumberParser.parseDouble(line,60,66);
+					}
+					String element = null;
+					if (line.length()>=78) {
+						// some programs like phenix use lower case for double-letter atom symbols like "Cl", we force the upper case
+						element = NameInterner.internTrimmed(line,76,78);
+						String upperElement = element.toUpperCase(Locale.ENGLISH);
+						if (upperElement!=element) element = NameInterner.intern(upperElement);
+						if (element.equals("") || Character.isDigit(element.charAt(0)) || (element.length()==2 && Character.isDigit(element.charAt(1)))) 
+							element = null;
+					}
+					if (isCaspTS && x==0.0 && y==0.0 && z==0.0) {
+						// in CASP TS (0,0,0) coordinates are considered unobserved (see http://predictioncenter.org/casp7/doc/casp7-format.html)
+						if (!atomAtOriginSeen) {
+							// first atom at origin we see is valid, we set the flag that we've seen it to true and later it will be read
+							atomAtOriginSeen = true;
 						} else {
-							fpdb.close();
-							throw new FileFormatException("The CASP TS file "+pdbfile+" is empty after the PFRMAT line");
+							// more than 1 atom at origin: we don't want to read it: we skip it by returning
+							return;
 						}
-					}
+					} 
+					
+					atomLines.addAtomLine(
+						new AtomLine(null, altCode, atomserial, atom, element, res_type, 0, pdbResSerial, insCode, new Point3d(x,y,z), occupancy, bfactor, 
+								pdbChainCode, outOfPolyChain, !isAtomLine));
 				}
+			} catch(NumberFormatException e) {
+				fpdb.close();
+				throw new FileFormatException("Wrong number format in PDB file "+pdbfile+" at line "+linecount+". Error: " + e.getMessage());
 			}
-			// TITLE
-			if (line.startsWith("TITLE")) {
-				if (this.title==null) {
-					this.title = safeSubstring(line, 10, line.length()); 
-				} else { // more than 1 title line encountered
-					if (isInteger(safeSubstring(line,8,10))) {
-						char lastChar = this.title.charAt(this.title.length()-1);
-						if (lastChar!='-') { 
-							this.title += " ";
+			return;
+		}
+		
+		if (linecount==1) {
+			// HEADER
+			if (line.startsWith("HEADER")){
+				Matcher mh = HEADER_PDBCODE_REGEX.matcher(line);
+				if (mh.find()) {
+					pdbCode=mh.group(1).toLowerCase();
+				}
+			} else { // header not found
+				// check whether this is a Casp prediction file
+				m = CASP_PFRMAT_REGEX.matcher(line);
+				if(m.find()) {
+					// ok, it is
+					isCaspTS = true; 
+					pdbCode = PdbAsymUnit.NO_PDB_CODE;
+					// we try to read the TARGET from the next line, if there's no TARGET line appearing this is not respecting the format: exception
+					if((line = fpdb.readLine()) != null ) {
+						linecount++;
+						m = CASP_TARGET_REGEX.matcher(line);
+						if (m.find()) {
+							caspTargetNum = Integer.parseInt(m.group(1));
+						} else {
+							fpdb.close();
+							throw new FileFormatException("The CASP TS file "+pdbfile+" does not have a TARGET line");
 						}
+					} else {
+						fpdb.close();
+						throw new FileFormatException("The CASP TS file "+pdbfile+" is empty after the PFRMAT line");
 					}
-					String titleStr = safeSubstring(line,10,line.length());
-					if (titleStr!=null) this.title += titleStr;
 				}
-				
 			}
-			//Release Date
-			if (line.startsWith("REVDAT   1")){
-				String date = line.split("\\s+")[2].trim();
-				try{
-					this.releaseDate = new SimpleDateFormat("dd-MMM-yy", Locale.ENGLISH).parse(date);
-				}catch(ParseException pe){
-					System.err.println("Error in reading the format of release date from pdb file.");
+		}
+		// TITLE
+		if (line.startsWith("TITLE")) {
+			if (this.title==null) {
+				this.title = safeSubstring(line, 10, line.length()); 
+			} else { // more than 1 title line encountered
+				if (isInteger(safeSubstring(line,8,10))) {
+					char lastChar = this.title.charAt(this.title.length()-1);
+					if (lastChar!='-') { 
+						this.title += " ";
+					}
 				}
+				String titleStr = safeSubstring(line,10,line.length());
+				if (titleStr!=null) this.title += titleStr;
 			}
-			// EXPDTA
-			if (line.startsWith("EXPDTA")) {
-				 String exp = safeSubstring(line, 6, line.length());
-				 if (exp!=null)
-					 this.expMethod = exp.split(";\\s")[0]; // in some (strange) cases there are several exp methods, we simply take first, e.g. 2krl
+			
+		}
+		//Release Date
+		if (line.startsWith("REVDAT   1")){
+			String date = WHITESPACE_REGEX.split(line)[2].trim();
+			try{
+				this.releaseDate = new SimpleDateFormat("dd-MMM-yy", Locale.ENGLISH).parse(date);
+			}catch(ParseException pe){
+				System.err.println("Error in reading the format of release date from pdb file.");
 			}
-			// REMARK 3 (for resolution)
-			if (line.startsWith("REMARK   3   RESOLUTION RANGE HIGH")){
-				Pattern pR = Pattern.compile("^REMARK   3   RESOLUTION RANGE HIGH \\(ANGSTROMS\\) :\\s+(\\d+\\.\\d+).*");
-				Matcher mR = pR.matcher(line);
-				if (mR.matches()) {
-					resolution = Double.parseDouble(mR.group(1));
+		}
+		// EXPDTA
+		if (line.startsWith("EXPDTA")) {
+			 String exp = safeSubstring(line, 6, line.length());
+			 if (exp!=null)
+				 this.expMethod = exp.split(";\\s")[0]; // in some (strange) cases there are several exp methods, we simply take first, e.g. 2krl
+		}
+		// REMARK 3 (for resolution)
+		if (line.startsWith("REMARK   3   RESOLUTION RANGE HIGH")){
+			Matcher mR = RESOLUTION_REGEX.matcher(line);
+			if (mR.matches()) {
+				resolution = Double.parseDouble(mR.group(1));
+			}
+		}
+		// REMARK 3 (for R free)
+		if (line.startsWith("REMARK   3   FREE R VALUE")) {
+			Matcher mR = RFREE_REGEX.matcher(line);
+			if (mR.matches()) {
+				rFree = Double.parseDouble(mR.group(1));
+			}				
+		}
+		// REMARK 200 (for R merge)
+		if (line.startsWith("REMARK 200  R MERGE                    (I)")) {
+			Matcher mR = RMERGE_REGEX.matcher(line);
+			if (mR.matches()) {
+				if (this.rSym == -1) {
+					this.rSym = Double.parseDouble(mR.group(1));
 				}
+			}								
+		}
+		// REMARK 200 (for R sym)
+		// if both Rsym/Rmerge are present, we don't compare them but take the Rsym value to be 
+		// the right one (there's not much consensus in the field as to what's the 
+		// right thing to do anyway!)			
+		if (line.startsWith("REMARK 200  R SYM                      (I)")) {
+			Matcher mR = RSYM_REGEX.matcher(line);
+			if (mR.matches()) {
+				this.rSym = Double.parseDouble(mR.group(1));
+			}												
+		}
+		//REMARK 300 for detecting number of biounits present
+		//if (line.startsWith("REMARK 300 BIOMOLECULE:")) {
+		//	String[] fields = line.split(" ");
+		//	int numBioUnits=Integer.parseInt(fields[fields.length-1]);
+		//}
+		
+		//REMARK 350 for getting the data on the biounits
+		if (line.startsWith("REMARK 350")) {
+			String[] fields = line.split(" ");
+			//Reset for the start
+			if (line.startsWith("REMARK 350 BIOMOLECULE:")) {
+				if(generator.isReading()) {
+					bioUnitGenerators.add(generator);
+					assembly.addGeneratorId(generator.getId());
+					generator.setReading(false);
+				}
+				if(assembly.isReading())	bioUnitAssemblies.add(assembly);
+				assembly = new BioUnitAssembly();
+				assembly.setReading(true);
+				if(isInteger(fields[fields.length-1])) assembly.setId(Integer.parseInt(fields[fields.length-1].trim()));
 			}
-			// REMARK 3 (for R free)
-			if (line.startsWith("REMARK   3   FREE R VALUE")) {
-				Pattern pR = Pattern.compile("^REMARK   3   FREE R VALUE\\s+(?:\\(NO CUTOFF\\))?\\s+:\\s+(\\d\\.\\d+).*");
-				Matcher mR = pR.matcher(line);
-				if (mR.matches()) {
-					rFree = Double.parseDouble(mR.group(1));
-				}				
+			
+			if (line.startsWith("REMARK 350 AUTHOR DETERMINED BIOLOGICAL UNIT")) {
+				assembly.addType("authors");
+				assembly.setSize(fields[fields.length-1].toLowerCase());
 			}
-			// REMARK 200 (for R merge)
-			if (line.startsWith("REMARK 200  R MERGE                    (I)")) {
-				Pattern pR = Pattern.compile("^REMARK 200  R MERGE                    \\(I\\)\\s+:\\s+(\\d\\.\\d+).*");
-				Matcher mR = pR.matcher(line);
-				if (mR.matches()) {
-					if (this.rSym == -1) {
-						this.rSym = Double.parseDouble(mR.group(1));
-					}
-				}								
+			if (line.startsWith("REMARK 350 SOFTWARE DETERMINED QUATERNARY STRUCTURE")) {
+				assembly.setSize(fields[fields.length-1].toLowerCase());
 			}
-			// REMARK 200 (for R sym)
-			// if both Rsym/Rmerge are present, we don't compare them but take the Rsym value to be 
-			// the right one (there's not much consensus in the field as to what's the 
-			// right thing to do anyway!)			
-			if (line.startsWith("REMARK 200  R SYM                      (I)")) {
-				Pattern pR = Pattern.compile("^REMARK 200  R SYM                      \\(I\\)\\s+:\\s+(\\d\\.\\d+).*");
-				Matcher mR = pR.matcher(line);
-				if (mR.matches()) {
-					this.rSym = Double.parseDouble(mR.group(1));
-				}												
+			if (line.startsWith("REMARK 350 SOFTWARE USED")) {
+				String temp = line.replaceAll("REMARK 350 SOFTWARE USED:(.*)","$1");
+				String[] software = temp.split(",");
+				for(String soft:software) assembly.addType(soft.trim().toLowerCase());
 			}
-			//REMARK 300 for detecting number of biounits present
-			//if (line.startsWith("REMARK 300 BIOMOLECULE:")) {
-			//	String[] fields = line.split(" ");
-			//	int numBioUnits=Integer.parseInt(fields[fields.length-1]);
-			//}
-			
-			//REMARK 350 for getting the data on the biounits
-			if (line.startsWith("REMARK 350")) {
-				String[] fields = line.split(" ");
-				//Reset for the start
-				if (line.startsWith("REMARK 350 BIOMOLECULE:")) {
-					if(generator.isReading()) {
-						bioUnitGenerators.add(generator);
-						assembly.addGeneratorId(generator.getId());
-						generator.setReading(false);
-					}
-					if(assembly.isReading())	bioUnitAssemblies.add(assembly);
-					assembly = new BioUnitAssembly();
-					assembly.setReading(true);
-					if(isInteger(fields[fields.length-1])) assembly.setId(Integer.parseInt(fields[fields.length-1].trim()));
+			if (line.startsWith("REMARK 350 APPLY THE FOLLOWING TO CHAINS:")){
+				if(generator.isReading()) {
+					bioUnitGenerators.add(generator);
+					assembly.addGeneratorId(generator.getId());
 				}
-				
-				if (line.startsWith("REMARK 350 AUTHOR DETERMINED BIOLOGICAL UNIT")) {
-					assembly.addType("authors");
-					assembly.setSize(fields[fields.length-1].toLowerCase());
-				}
-				if (line.startsWith("REMARK 350 SOFTWARE DETERMINED QUATERNARY STRUCTURE")) {
-					assembly.setSize(fields[fields.length-1].toLowerCase());
-				}
-				if (line.startsWith("REMARK 350 SOFTWARE USED")) {
-					String temp = line.replaceAll("REMARK 350 SOFTWARE USED:(.*)","$1");
-					String[] software = temp.split(",");
-					for(String soft:software) assembly.addType(soft.trim().toLowerCase());
-				}
-				if (line.startsWith("REMARK 350 APPLY THE FOLLOWING TO CHAINS:")){
-					if(generator.isReading()) {
-						bioUnitGenerators.add(generator);
-						assembly.addGeneratorId(generator.getId());
-					}
-					generator = new BioUnitAssemblyGen(generator.getId()+1);
-					generator.setReading(true);
-					String[] parts = line.split("CHAINS:");
-					String[] chainCodes = parts[parts.length-1].trim().split(",");
-					generator.addPdbChainCodes(chainCodes);
-				}
-				if (line.startsWith("REMARK 350                    AND CHAINS:") ){
-					String[] parts = line.split("CHAINS:");
-					String[] chainCodes = parts[parts.length-1].trim().split(",");
-					generator.addPdbChainCodes(chainCodes);
-				}
-				
-				if (line.startsWith("REMARK 350   BIOMT")){
-					Pattern pR = Pattern.compile("REMARK 350   BIOMT(\\d)\\s+(\\d+)\\s+([\\-.0-9]+)\\s+([\\-.0-9]+)\\s+([\\-.0-9]+)\\s+([\\-.0-9]+)\\s+");
-					Matcher mR = pR.matcher(line);
-					if (mR.matches()) {
-						int matLine = Integer.parseInt(mR.group(1));
-						//int opNum = Integer.parseInt(mR.group(2));
-						double x = Double.parseDouble(mR.group(3));
-						double y = Double.parseDouble(mR.group(4));
-						double z = Double.parseDouble(mR.group(5));
-						double t = Double.parseDouble(mR.group(6));
-						
-						if(matLine == 1){
-							bioUnitOperationId++;
-							operation = new Matrix4d();
-							operation.setElement(3, 3, 1);
-						}
-						
-						operation.setElement(matLine-1, 0, x);
-						operation.setElement(matLine-1, 1, y);
-						operation.setElement(matLine-1, 2, z);
-						operation.setElement(matLine-1, 3, t);
-						
-						if(matLine == 3){
-							bioUnitOperations.put(bioUnitOperationId, operation);
-							generator.addOperationId(bioUnitOperationId);
-						}
-					}
-				}
-				
+				generator = new BioUnitAssemblyGen(generator.getId()+1);
+				generator.setReading(true);
+				String[] parts = line.split("CHAINS:");
+				String[] chainCodes = parts[parts.length-1].trim().split(",");
+				generator.addPdbChainCodes(chainCodes);
+			}
+			if (line.startsWith("REMARK 350                    AND CHAINS:") ){
+				String[] parts = line.split("CHAINS:");
+				String[] chainCodes = parts[parts.length-1].trim().split(",");
+				generator.addPdbChainCodes(chainCodes);
 			}
 			
-			
-			
-			// CRYST1
-			if (line.startsWith("CRYST1")) {
-				if (isDouble(safeSubstring(line,  6, 15)) &&
-						isDouble(safeSubstring(line, 15, 24)) &&
-						isDouble(safeSubstring(line, 24, 33)) &&
-						isDouble(safeSubstring(line, 33, 40)) &&
-						isDouble(safeSubstring(line, 40, 47)) &&
-						isDouble(safeSubstring(line, 47, 54))) {
+			if (line.startsWith("REMARK 350   BIOMT")){
+				Matcher mR = BIOMT_REGEX.matcher(line);
+				if (mR.matches()) {
+					int matLine = Integer.parseInt(mR.group(1));
+					//int opNum = Integer.parseInt(mR.group(2));
+					double x = Double.parseDouble(mR.group(3));
+					double y = Double.parseDouble(mR.group(4));
+					double z = Double.parseDouble(mR.group(5));
+					double t = Double.parseDouble(mR.group(6));
 					
-					double a = Double.parseDouble(line.substring( 6, 15));
-					double b = Double.parseDouble(line.substring(15, 24));
-					double c = Double.parseDouble(line.substring(24, 33));
-					double alpha = Double.parseDouble(line.substring(33, 40));
-					double beta = Double.parseDouble(line.substring(40, 47));
-					double gamma = Double.parseDouble(line.substring(47, 54));
+					if(matLine == 1){
+						bioUnitOperationId++;
+						operation = new Matrix4d();
+						operation.setElement(3, 3, 1);
+					}
 					
-					// some programs like phenix don't write the z number and thus can have no trailing spaces so that the line is shorter
-					String sg = safeSubstring(line, 55, 66);
-					crystalCell = new CrystalCell(a, b, c, alpha, beta, gamma);
-					spaceGroup = SymoplibParser.getSpaceGroup(sg);
-					if (spaceGroup==null) {
-						fpdb.close();
-						throw new PdbLoadException("The space group found '"+sg+"' is not recognised as a standard space group");
+					operation.setElement(matLine-1, 0, x);
+					operation.setElement(matLine-1, 1, y);
+					operation.setElement(matLine-1, 2, z);
+					operation.setElement(matLine-1, 3, t);
+					
+					if(matLine == 3){
+						bioUnitOperations.put(bioUnitOperationId, operation);
+						generator.addOperationId(bioUnitOperationId);
 					}
 				}
 			}
-			// SCALE1,2,3: parsed in order to detect non-standard orthogonalisations (also flagged in REMARK 285)
-			if ( (line.startsWith("SCALE1") || line.startsWith("SCALE2") || line.startsWith("SCALE3")) &&
-					isDouble(safeSubstring(line, 10, 20)) &&
-					isDouble(safeSubstring(line, 20, 30)) &&
-					isDouble(safeSubstring(line, 30, 40)) &&
-					isDouble(safeSubstring(line, 45, 55))) { 
 			
-				if (line.startsWith("SCALE1")) {
-					scaleMatrix = new Matrix4d();
-					scaleMatrix.m00 = Double.parseDouble(line.substring(10,20));
-					scaleMatrix.m01 = Double.parseDouble(line.substring(20,30));
-					scaleMatrix.m02 = Double.parseDouble(line.substring(30,40));
-					scaleMatrix.m03 = Double.parseDouble(line.substring(45,55));
-				}
-				if (line.startsWith("SCALE2")) {
-					scaleMatrix.m10 = Double.parseDouble(line.substring(10,20));
-					scaleMatrix.m11 = Double.parseDouble(line.substring(20,30));
-					scaleMatrix.m12 = Double.parseDouble(line.substring(30,40));
-					scaleMatrix.m13 = Double.parseDouble(line.substring(45,55));
-				}
-				if (line.startsWith("SCALE3")) {
-					scaleMatrix.m20 = Double.parseDouble(line.substring(10,20));
-					scaleMatrix.m21 = Double.parseDouble(line.substring(20,30));
-					scaleMatrix.m22 = Double.parseDouble(line.substring(30,40));
-					scaleMatrix.m23 = Double.parseDouble(line.substring(45,55));
-				}
-			}
-			// SEQRES
-			//SEQRES   1 A  348  VAL ASN ILE LYS THR ASN PRO PHE LYS ALA VAL SER PHE
-			if (line.startsWith("SEQRES")){
-				if (line.length()>10) {
-					String chain = line.substring(11,12);
-					if (!sequences.containsKey(chain)) {
-						sequences.put(chain,"");
-					}
-					String sequence = sequences.get(chain);
-					for (int i=19;i<=67;i+=4) {
-						// most pdb files have blank spaces up to 80 characters, but some don't.
-						// because of that we need to check that (in the last line of SEQRES) the line is long enough
-						// else we'd get an out of bounds error
-						if (line.length()>=i+3) {  
-							if (!line.substring(i, i+3).equals("   ")) {
-								if (AminoAcid.isStandardAA(line.substring(i, i+3))) { // for non-standard aas
-									sequence+= AminoAcid.three2one(line.substring(i, i+3));
-								} else if (Nucleotide.isStandardNuc(line.substring(i, i+3).trim())) {
-									sequence+=Nucleotide.getByCode(line.substring(i, i+3).trim()).getOneLetterCode();
-								} else {
-									sequence+=AminoAcid.XXX.getOneLetterCode();
-								}
-							}
-						}
-					}
-					sequences.put(chain,sequence);
-				}
-				// if SEQRES was not empty then we have sequences
-				if (!sequences.isEmpty()) {
-					hasSeqRes = true;
+		}
+		
+		
+		
+		// CRYST1
+		if (line.startsWith("CRYST1")) {
+			if (isDouble(safeSubstring(line,  6, 15)) &&
+					isDouble(safeSubstring(line, 15, 24)) &&
+					isDouble(safeSubstring(line, 24, 33)) &&
+					isDouble(safeSubstring(line, 33, 40)) &&
+					isDouble(safeSubstring(line, 40, 47)) &&
+					isDouble(safeSubstring(line, 47, 54))) {
+				
+				double a = Double.parseDouble(line.substring( 6, 15));
+				double b = Double.parseDouble(line.substring(15, 24));
+				double c = Double.parseDouble(line.substring(24, 33));
+				double alpha = Double.parseDouble(line.substring(33, 40));
+				double beta = Double.parseDouble(line.substring(40, 47));
+				double gamma = Double.parseDouble(line.substring(47, 54));
+				
+				// some programs like phenix don't write the z number and thus can have no trailing spaces so that the line is shorter
+				String sg = safeSubstring(line, 55, 66);
+				crystalCell = new CrystalCell(a, b, c, alpha, beta, gamma);
+				spaceGroup = SymoplibParser.getSpaceGroup(sg);
+				if (spaceGroup==null) {
+					fpdb.close();
+					throw new PdbLoadException("The space group found '"+sg+"' is not recognised as a standard space group");
 				}
 			}
-			// SECONDARY STRUCTURE
-			// helix
-			//HELIX    1   1 LYS A   17  LEU A   26  1
-			if (line.startsWith("HELIX") && line.length()>37) {
-				String begChain = line.substring(19,20);
-				String endChain = line.substring(31,32);
-				int serial = Integer.valueOf(line.substring(7,10).trim());
-				String beg = line.substring(21,26).trim();
-				String end = line.substring(33,38).trim();
-				secStructureLines.add(new SecStructureLine("HELIX", begChain, endChain, beg, end, serial, ""));
+		}
+		// SCALE1,2,3: parsed in order to detect non-standard orthogonalisations (also flagged in REMARK 285)
+		if ( (line.startsWith("SCALE1") || line.startsWith("SCALE2") || line.startsWith("SCALE3")) &&
+				isDouble(safeSubstring(line, 10, 20)) &&
+				isDouble(safeSubstring(line, 20, 30)) &&
+				isDouble(safeSubstring(line, 30, 40)) &&
+				isDouble(safeSubstring(line, 45, 55))) { 
+		
+			if (line.startsWith("SCALE1")) {
+				scaleMatrix = new Matrix4d();
+				scaleMatrix.m00 = Double.parseDouble(line.substring(10,20));
+				scaleMatrix.m01 = Double.parseDouble(line.substring(20,30));
+				scaleMatrix.m02 = Double.parseDouble(line.substring(30,40));
+				scaleMatrix.m03 = Double.parseDouble(line.substring(45,55));
 			}
-			// sheet
-			//SHEET    2   A 5 ILE A  96  THR A  99 -1  N  LYS A  98   O  THR A 107
-			if (line.startsWith("SHEET") && line.length()>37) {
-				String begChain = line.substring(21,22);
-				String endChain = line.substring(32,33);
-				int strandSerial = Integer.valueOf(line.substring(7,10).trim());
-				String sheetId = line.substring(11,14).trim();
-				String beg = line.substring(22,27).trim();
-				String end = line.substring(33,38).trim();
-				secStructureLines.add(new SecStructureLine("SHEET", begChain, endChain, beg, end, strandSerial, sheetId));
+			if (line.startsWith("SCALE2")) {
+				scaleMatrix.m10 = Double.parseDouble(line.substring(10,20));
+				scaleMatrix.m11 = Double.parseDouble(line.substring(20,30));
+				scaleMatrix.m12 = Double.parseDouble(line.substring(30,40));
+				scaleMatrix.m13 = Double.parseDouble(line.substring(45,55));
 			}
-			
-			//TURN     1 S1A GLY A  16  GLN A  18     SURFACE
-			//							turn ser				beg res ser					end res ser
-			// turn has been deprecated (see PDB file format ver 3.20)
-			
-			// MODEL
-			// The model serial numbers should occur in columns 11-14 (official PDB format spec)
-			// Here we are less strict: we allow for the numbers to appear in any column after the MODEL keyword (with any number of spaces in between)
-			// We mainly need this because of CASP TS file which don't follow the PDB format 100% 
-			p = Pattern.compile("^MODEL\\s+(\\d+)");
-			m = p.matcher(line);
-			if (m.find()){
-				thismodel=Integer.parseInt(m.group(1));
+			if (line.startsWith("SCALE3")) {
+				scaleMatrix.m20 = Double.parseDouble(line.substring(10,20));
+				scaleMatrix.m21 = Double.parseDouble(line.substring(20,30));
+				scaleMatrix.m22 = Double.parseDouble(line.substring(30,40));
+				scaleMatrix.m23 = Double.parseDouble(line.substring(45,55));
 			}
-			if (thismodel!=model) continue; // we skip reading of atom lines if we are not in the desired model
-			
-			// PARENT (optional for Casp TS files)
-			p = Pattern.compile("^PARENT\\s+.+");
-			m = p.matcher(line);
-			if(m.find()) {
-				parentList = new LinkedList<String>();
-				Pattern p2 = Pattern.compile("(\\d\\w\\w\\w_?\\w?)");
-				m = p2.matcher(line);
-				//System.out.printf("| ");
-				while(m.find()) {
-					parentList.add(parseParent(m.group()));
-					//System.out.printf("%s ", parentList.getLast());
+		}
+		// SEQRES
+		//SEQRES   1 A  348  VAL ASN ILE LYS THR ASN PRO PHE LYS ALA VAL SER PHE
+		if (line.startsWith("SEQRES") && options.isCategoryWanted(PdbLoadOptions.Category.SEQRES)){
+			if (line.length()>10) {
+				String chain = line.substring(11,12);
+				if (!sequences.containsKey(chain)) {
+					sequences.put(chain,"");
 				}
-				//System.out.printf("(%d) ", parentList.size());
-				caspParents = new String[0];
-				caspParents = parentList.toArray(caspParents);
-			}
-			if (line.startsWith("TER")) {
-				outOfPolyChain = true;
-				terRecordSeen = true;
-			}
-			// ATOM
-			p = Pattern.compile("^(ATOM|HETATM)");
-			m = p.matcher(line);
-			if (m.find()){
-				try {
-					if (line.length()<54) {
-						// the least we admit is a PDB file with coordinates up to z
-						fpdb.close();
-						throw new FileFormatException("ATOM/HETATM line is too short to contain the minimum fields required. PDB file "+pdbfile+" at line "+linecount);
-					}
-					if (!line.substring(17,20).trim().equals(HetResidue.WATER) && !line.substring(17,20).trim().equals(HetResidue.DEUT_WATER)) {
-						if (m.group(1).equals("ATOM")) outOfPolyChain = false;
-						int atomserial=Integer.parseInt(line.substring(6,11).trim());
-						String atom = line.substring(12,16).trim();
-						String res_type = line.substring(17,20).trim();
-						String pdbChainCode = line.substring(21, 22);
-						String pdbResSerialField = line.substring(22,27).trim();
-						int pdbResSerial = 0;
-						String insCode = ".";
-						if (Character.isDigit(pdbResSerialField.charAt(pdbResSerialField.length()-1))) {
-							pdbResSerial = Integer.parseInt(pdbResSerialField);
-						} else {
-							pdbResSerial = Integer.parseInt(pdbResSerialField.substring(0,pdbResSerialField.length()-1));
-							insCode = pdbResSerialField.substring(pdbResSerialField.length()-1);
-						}
-						
-						String altCode = line.substring(16, 17);
-						if (altCode.equals(" ")) altCode=".";
-						double x = Double.parseDouble(line.substring(30,38).trim());
-						double y = Double.parseDouble(line.substring(38,46).trim());
-						double z = Double.parseDouble(line.substring(46,54).trim());
-						Point3d coords = new Point3d(x,y,z);
-						double occupancy = Atom.DEFAULT_OCCUPANCY;
-						if (line.length()>=60) {
-							String occupancyStr = line.substring(54,60).trim();
-							if (!occupancyStr.equals("")) {
-								occupancy = Double.parseDouble(occupancyStr);
-							}
-						}
-						double bfactor = Atom.DEFAULT_B_FACTOR;
-						if (line.length()>=66) {
-							String bfactorStr = line.substring(60,66).trim();
-							if (!bfactorStr.equals("")) {
-								bfactor = Double.parseDouble(bfactorStr);
-							}
-						}
-						String element = null;
-						if (line.length()>=78) {
-							// some programs like phenix use lower case for double-letter atom symbols like "Cl", we force the upper case
-							element = line.substring(76,78).trim().toUpperCase(Locale.ENGLISH);
-							if (element.equals("") || Character.isDigit(element.charAt(0)) || (element.length()==2 && Character.isDigit(element.charAt(1)))) 
-								element = null;
-						}
-						if (isCaspTS && coords.equals(new Point3d(0.0,0.0,0.0))) {
-							// in CASP TS (0,0,0) coordinates are considered unobserved (see http://predictioncenter.org/casp7/doc/casp7-format.html)
-							if (!atomAtOriginSeen) {
-								// first atom at origin we see is valid, we set the flag that we've seen it to true and later it will be read
-								atomAtOriginSeen = true;
+				String sequence = sequences.get(chain);
+				for (int i=19;i<=67;i+=4) {
+					// most pdb files have blank spaces up to 80 characters, but some don't.
+					// because of that we need to check that (in the last line of SEQRES) the line is long enough
+					// else we'd get an out of bounds error
+					if (line.length()>=i+3) {  
+						if (!line.substring(i, i+3).equals("   ")) {
+							if (AminoAcid.isStandardAA(line.substring(i, i+3))) { // for non-standard aas
+								sequence+= AminoAcid.three2one(line.substring(i, i+3));
+							} else if (Nucleotide.isStandardNuc(line.substring(i, i+3).trim())) {
+								sequence+=Nucleotide.getByCode(line.substring(i, i+3).trim()).getOneLetterCode();
 							} else {
-								// more than 1 atom at origin: we don't want to read it: we skip it by continuing to next line
-								continue;
+								sequence+=AminoAcid.XXX.getOneLetterCode();
 							}
-						} 
-						
-						atomLines.addAtomLine(
-							new AtomLine(null, altCode, atomserial, atom, element, res_type, 0, pdbResSerial, insCode, coords, occupancy, bfactor, 
-									pdbChainCode, outOfPolyChain, m.group(1).equals("HETATM")));
+						}
 					}
-				} catch(NumberFormatException e) {
-					fpdb.close();
-					throw new FileFormatException("Wrong number format in PDB file "+pdbfile+" at line "+linecount+". Error: " + e.getMessage());
 				}
-				
+				sequences.put(chain,sequence);
+			}
+			// if SEQRES was not empty then we have sequences
+			if (!sequences.isEmpty()) {
+				hasSeqRes = true;
 			}
 		}
-		fpdb.close();
+		// SECONDARY STRUCTURE
+		// helix
+		//HELIX    1   1 LYS A   17  LEU A   26  1
+		if (line.startsWith("HELIX") && line.length()>37 && options.isCategoryWanted(PdbLoadOptions.Category.SECONDARY_STRUCTURE)) {
+			String begChain = line.substring(19,20);
+			String endChain = line.substring(31,32);
+			int serial = Integer.valueOf(line.substring(7,10).trim());
+			String beg = line.substring(21,26).trim();
+			String end = line.substring(33,38).trim();
+			secStructureLines.add(new SecStructureLine("HELIX", begChain, endChain, beg, end, serial, ""));
+		}
+		// sheet
+		//SHEET    2   A 5 ILE A  96  THR A  99 -1  N  LYS A  98   O  THR A 107
+		if (line.startsWith("SHEET") && line.length()>37 && options.isCategoryWanted(PdbLoadOptions.Category.SECONDARY_STRUCTURE)) {
+			String begChain = line.substring(21,22);
+			String endChain = line.substring(32,33);
+			int strandSerial = Integer.valueOf(line.substring(7,10).trim());
+			String sheetId = line.substring(11,14).trim();
+			String beg = line.substring(22,27).trim();
+			String end = line.substring(33,38).trim();
+			secStructureLines.add(new SecStructureLine("SHEET", begChain, endChain, beg, end, strandSerial, sheetId));
+		}
+		
+		//TURN     1 S1A GLY A  16  GLN A  18     SURFACE
+		//							turn ser				beg res ser					end res ser
+		// turn has been deprecated (see PDB file format ver 3.20)
 		
+		// MODEL
+		// The model serial numbers should occur in columns 11-14 (official PDB format spec)
+		// Here we are less strict: we allow for the numbers to appear in any column after the MODEL keyword (with any number of spaces in between)
+		// We mainly need this because of CASP TS file which don't follow the PDB format 100% 
+		if (line.startsWith("MODEL")) {
+			m = MODEL_REGEX.matcher(line);
+			if (m.find()){
+				thismodel=Integer.parseInt(m.group(1));
+			}
+		}
+		if (thismodel!=model) return; // we skip reading of atom lines if we are not in the desired model
+		
+		// PARENT (optional for Casp TS files)
+		if(line.startsWith("PARENT") && PARENT_REGEX.matcher(line).find()) {
+			LinkedList<String> parentList = new LinkedList<String>();
+			m = PARENT_CODE_REGEX.matcher(line);
+			//System.out.printf("| ");
+			while(m.find()) {
+				parentList.add(parseParent(m.group()));
+				//System.out.printf("%s ", parentList.getLast());
+			}
+			//System.out.printf("(%d) ", parentList.size());
+			caspParents = new String[0];
+			caspParents = parentList.toArray(caspParents);
+		}
+		if (line.startsWith("TER")) {
+			outOfPolyChain = true;
+			terRecordSeen = true;
+		}
+	}
+	
+	/**
+	 * Saves the last biounit entries read, if present. To be called once the header is read.
+	 */
+	private void endHeader() {
 		//Save temporary biounit entries if present
 		if(generator.isReading()) {
 			bioUnitGenerators.add(generator);
 			assembly.addGeneratorId(generator.getId());
+			generator.setReading(false);
+		}
+		if(assembly.isReading()) {
+			bioUnitAssemblies.add(assembly);
+			assembly.setReading(false);
 		}
-		if(assembly.isReading())	bioUnitAssemblies.add(assembly);
+	}
+	
+	/**
+	 * Creates the chains of the given PdbAsymUnit from the atom lines stored for the current 
+	 * model and from the header data (sequences and secondary structure).
+	 * @param pdbAsymUnit
+	 * @throws FileFormatException
+	 * @throws PdbLoadException if no ATOM lines are found for the model
+	 */
+	private void readModel(PdbAsymUnit pdbAsymUnit) throws FileFormatException, PdbLoadException {
+		// nothing else to do if atoms not wanted: there will be no chains
+		if (!options.isCategoryWanted(PdbLoadOptions.Category.ATOMS)) return;
 		
 		// we check that there was at least one observed residue
 		if (atomLines.isEmpty()) {
@@ -894,6 +999,7 @@ public class PdbfileParser {
 		String lastType = null;
 		String lastId = null;
 		for (SecStructureLine ssline:secStructureLines) {
+			if (!options.isPdbChainCodeWanted(ssline.begChain)) continue;
 			if (!ssline.begChain.equals(ssline.endChain)) 
 				throw new PdbLoadException(ssline.type+" element beg and end chain id differ for ss element with serial "+ssline.serial);
 			SecondaryStructure secStructure = pdbAsymUnit.getChain(ssline.begChain).getSecondaryStructure();
@@ -1225,6 +1331,121 @@ public class PdbfileParser {
 		return pdbfile;
 	}
 	
+	/**
+	 * Iterates over the models of the file, parsing each one when it is requested.
+	 * See {@link #getModelIterator()}
+	 */
+	private class ModelIterator implements Iterator<PdbAsymUnit> {
+		
+		private PdbAsymUnit nextModel;
+		private String pendingLine; // a MODEL line already read that starts the next model
+		private boolean headerRead;
+		private boolean finished;
+		
+		public ModelIterator() throws PdbLoadException {
+			try {
+				initParsing();
+			} catch (IOException e) {
+				throw new PdbLoadException(e);
+			}
+			initModel();
+			model = thismodel;
+			headerRead = false;
+			finished = false;
+		}
+		
+		@Override
+		public boolean hasNext() {
+			if (nextModel==null && !finished) {
+				try {
+					nextModel = readNextModel();
+				} catch (IOException e) {
+					close();
+					throw new RuntimeException(new PdbLoadException(e));
+				} catch (FileFormatException e) {
+					close();
+					throw new RuntimeException(new PdbLoadException(e));
+				} catch (PdbLoadException e) {
+					close();
+					throw new RuntimeException(e);
+				}
+			}
+			return nextModel!=null;
+		}
+
+		@Override
+		public PdbAsymUnit next() {
+			if (!hasNext()) throw new NoSuchElementException();
+			PdbAsymUnit pdbAsymUnit = nextModel;
+			nextModel = null;
+			return pdbAsymUnit;
+		}
+
+		@Override
+		public void remove() {
+			throw new UnsupportedOperationException();
+		}
+		
+		private PdbAsymUnit readNextModel() throws IOException, FileFormatException, PdbLoadException {
+			String line;
+			while ((line = nextLine())!=null) {
+				boolean isModelLine = line.startsWith("MODEL");
+				if (!headerRead && (isModelLine || line.startsWith("ATOM") || line.startsWith("HETATM"))) {
+					endHeader();
+					headerRead = true;
+				}
+				if (isModelLine && !atomLines.isEmpty()) {
+					// no ENDMDL for the previous model: this line starts the next one 
+					pendingLine = line;
+					return buildModel();
+				}
+				if (line.startsWith("ENDMDL")) {
+					// a model left without atoms by the load options is skipped
+					if (!atomLines.isEmpty()) return buildModel();
+					continue;
+				}
+				parseLine(line);
+				if (isModelLine) model = thismodel;
+			}
+			close();
+			endHeader();
+			if (!atomLines.isEmpty()) return buildModel();
+			return null;
+		}
+		
+		private String nextLine() throws IOException {
+			if (pendingLine!=null) {
+				String line = pendingLine;
+				pendingLine = null;
+				return line;
+			}
+			String line = fpdb.readLine();
+			if (line!=null) linecount++;
+			return line;
+		}
+		
+		private PdbAsymUnit buildModel() throws FileFormatException, PdbLoadException {
+			PdbAsymUnit pdbAsymUnit = new PdbAsymUnit();
+			pdbAsymUnit.setModel(model);
+			readModel(pdbAsymUnit);
+			for (PdbChain pdb:pdbAsymUnit.getAllChains()) {
+				pdb.initialiseMaps();
+			}
+			pdbAsymUnit.initialiseFromPdbParser(PdbfileParser.this, options);
+			initModel();
+			return pdbAsymUnit;
+		}
+		
+		private void close() {
+			finished = true;
+			try {
+				fpdb.close();
+			} catch (IOException e) {
+				// nothing to do, we are done with the file
+			}
+		}
+	}
+	
 	/**
 	 * Given a string and beg and end indices returns the corresponding 
 	 * trimmed substring.
@@ -0,0 +1,145 @@
+package owl.core.structure;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+
+import javax.vecmath.Point3d;
+
+/**
+ * A fast writer of PDB format SEQRES and ATOM/HETATM lines. The fixed-width fields are formatted
+ * directly into a large reusable byte buffer, with no Formatter/printf, and the buffer is written
+ * to the underlying stream (optionally gzipped) only when full, flushed or closed.
+ *
+ * The output is the same as what printf would give for the PDB format strings (with Locale.US),
+ * including the rounding of the decimal fields, thus the same as before for all the
+ * writeAtomLines methods of {@link PdbChain}.
+ */
+public class PdbfileWriter extends BufferedAsciiWriter {
+
+	/**
+	 * Constructs a PdbfileWriter that writes to the given stream. The stream is
+	 * not closed by {@link #close()}, which only flushes the buffer into it.
+	 * @param out
+	 */
+	public PdbfileWriter(OutputStream out) {
+		super(out);
+	}
+
+	/**
+	 * Constructs a PdbfileWriter that writes to the given file, gzipped if gzip is true.
+	 * @param file
+	 * @param gzip
+	 * @throws IOException
+	 */
+	public PdbfileWriter(File file, boolean gzip) throws IOException {
+		super(file, gzip);
+	}
+
+	/**
+	 * Writes the SEQRES record of the given chain using the given chain code instead
+	 * of its internal CIF chain code. If the code is longer than 1 character only the first
+	 * one is used and a warning issued.
+	 * @param chain
+	 * @param chainCode
+	 * @throws IOException
+	 */
+	public void writeSeqresRecord(PdbChain chain, String chainCode) throws IOException {
+		if (chainCode.length()>1) {
+			System.err.println("Warning! Chain code with more than 1 character ("+chainCode+"), only first character will be written to SEQRES lines");
+			chainCode = chainCode.substring(0,1);
+		}
+		String seq = chain.getSequence().getSeq();
+		int fullLength = chain.getFullLength();
+		for (int i=0;i<seq.length();i++){
+			String longCode = AminoAcid.XXX.getThreeLetterCode();
+			if (chain.getSequence().isProtein()) {
+				longCode = AminoAcid.getByOneLetterCode(seq.charAt(i)).getThreeLetterCode();
+			} else {
+				longCode = Nucleotide.getByOneLetterCode(seq.charAt(i)).getTwoLetterCode();
+			}
+			if (longCode.equals(AminoAcid.XXX.getThreeLetterCode())) {
+				if (chain.containsResidue(i+1)) {
+					longCode = chain.getResidue(i+1).getLongCode();
+				}
+			}
+			if (i%13==0) {
+				if (i>0) endLine();
+				appendString("SEQRES ");
+				appendInt(i/13+1, 3);
+				appendChar(' ');
+				appendString(chainCode);
+				appendChar(' ');
+				appendInt(fullLength, 4);
+				appendString("  ");
+			}
+			appendRight(longCode, 3);
+			appendChar(' ');
+		}
+		if (seq.length()>0) endLine();
+	}
+
+	/**
+	 * Writes the atom lines of the given chain using the given chain code instead of the
+	 * internal CIF chain code, followed by a TER record for polymer chains. If the code is
+	 * longer than 1 character only the first one is used and a warning issued.
+	 * @param chain
+	 * @param chainCode
+	 * @param usePdbResSer if true PDB residue serials are written, if false CIF
+	 * residue serials are written
+	 * @throws IOException
+	 */
+	public void writeAtomLines(PdbChain chain, String chainCode, boolean usePdbResSer) throws IOException {
+		if (chainCode.length()>1) {
+			System.err.println("Warning! Chain code with more than 1 character ("+chainCode+"), only first character will be written to ATOM lines");
+			chainCode = chainCode.substring(0,1);
+		}
+		// we write atoms sorted by atom serial,
+		// if we were iterating over residues and then atoms we'd get them in order of residue and atom code alphabetical order
+		for (int atomser:chain.getAllAtomSerials()) {
+			Atom atom = chain.getAtom(atomser);
+			Residue residue = atom.getParentResidue();
+			String atomCode = atom.getCode();
+			String atomType = atom.getType().getSymbol();
+			Point3d coords = atom.getCoords();
+
+			appendString(residue instanceof HetResidue?"HETATM":"ATOM  ");
+			appendInt(atomser, 5);
+			appendChar(' ');
+			// some hydrogens have a 4 letter code and it is not aligned to column 14 but to 13 instead
+			// for atoms with 2 letter codes (CL, NA, ....) the alignment is to the left again
+			if (atomCode.length()==4 || atomType.length()==2) {
+				appendLeft(atomCode, 4);
+			} else {
+				appendChar(' ');
+				appendLeft(atomCode, 3);
+			}
+			appendChar(' ');
+			appendRight(residue.getLongCode(), 3);
+			appendChar(' ');
+			appendRight(chainCode, 1);
+			if (usePdbResSer) {
+				String pdbresser = residue.getPdbSerial();
+				if (!Character.isDigit(pdbresser.charAt(pdbresser.length()-1))) {
+					appendRight(pdbresser, 5);
+				} else {
+					appendRight(pdbresser, 4);
+					appendChar(' ');
+				}
+			} else {
+				appendInt(atom.getParentResSerial(), 4);
+				appendChar(' ');
+			}
+			appendString("   ");
+			appendDecimal(coords.x, 8, 3);
+			appendDecimal(coords.y, 8, 3);
+			appendDecimal(coords.z, 8, 3);
+			appendDecimal(atom.getOccupancy(), 6, 2);
+			appendDecimal(atom.getBfactor(), 6, 2);
+			appendString("          ");
+			appendRight(atomType, 2);
+			endLine();
+		}
+		if (!chain.isNonPolyChain()) writeLine("TER");
+	}
+}
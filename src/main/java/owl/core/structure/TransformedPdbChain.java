@@ -0,0 +1,148 @@
+package owl.core.structure;
+
+import javax.vecmath.Matrix4d;
+import javax.vecmath.Point3d;
+import javax.vecmath.Vector3d;
+
+import owl.core.util.BoundingBox;
+import owl.core.util.Grid;
+import owl.core.util.GridContacts;
+
+/**
+ * A lightweight view of a PdbChain transformed by a rotation/translation matrix.
+ * 
+ * The view keeps a reference to the original chain and its atoms: no PdbChain, Residue
+ * or Atom objects are copied. The transformed coordinates are calculated lazily into a 
+ * primitive buffer that is reused when the transformation is changed with {@link #setTransform(Matrix4d)}.
+ * This is useful for checking many symmetry operators on a chain when only a few of them
+ * will need an actual transformed copy of it (e.g. the search for interfaces in a crystal lattice).
+ * 
+ * The view assumes that the original chain is not modified while it is in use. It is not thread-safe.
+ */
+public class TransformedPdbChain {
+
+	private PdbChain chain;
+	private Atom[] atoms;
+	
+	private Matrix4d transform;
+	
+	private double[] coords; // the transformed coordinates packed as x,y,z of each atom, in the order of atoms
+	private boolean coordsCalculated;
+	private BoundingBox bounds;
+	
+	/**
+	 * Constructs a new view of the given chain transformed by the given matrix
+	 * @param chain
+	 * @param transform the rotation/translation matrix, it is not copied
+	 */
+	public TransformedPdbChain(PdbChain chain, Matrix4d transform) {
+		this.chain = chain;
+		this.atoms = chain.getAllAtoms();
+		this.coords = new double[3*atoms.length];
+		setTransform(transform);
+	}
+	
+	/**
+	 * Sets a new transformation matrix for this view. The coordinates buffer is reused.
+	 * @param transform the rotation/translation matrix, it is not copied
+	 */
+	public void setTransform(Matrix4d transform) {
+		this.transform = transform;
+		this.coordsCalculated = false;
+		this.bounds = null;
+	}
+	
+	public Matrix4d getTransform() {
+		return transform;
+	}
+	
+	/**
+	 * Returns the original (untransformed) chain
+	 * @return
+	 */
+	public PdbChain getChain() {
+		return chain;
+	}
+	
+	/**
+	 * Returns the original (untransformed) atoms, in the same order as the coordinates 
+	 * of {@link #getCoords()} 
+	 * @return
+	 */
+	public Atom[] getAtoms() {
+		return atoms;
+	}
+	
+	/**
+	 * Returns the transformed coordinates packed as x,y,z of each atom. The returned array is the
+	 * internal buffer of this view: it will be overwritten after a call to {@link #setTransform(Matrix4d)}
+	 * @return
+	 */
+	public double[] getCoords() {
+		if (!coordsCalculated) {
+			Point3d p = new Point3d();
+			for (int i=0;i<atoms.length;i++) {
+				transform.transform(atoms[i].getCoords(), p);
+				coords[3*i]   = p.x;
+				coords[3*i+1] = p.y;
+				coords[3*i+2] = p.z;
+			}
+			coordsCalculated = true;
+		}
+		return coords;
+	}
+	
+	/**
+	 * Returns the bounding box of the transformed coordinates. If the transformation is a pure 
+	 * translation the bounds of the original chain are translated and no coordinates are transformed. 
+	 * @return
+	 * @throws IllegalArgumentException if the chain has no atoms
+	 */
+	public BoundingBox getBoundingBox() {
+		if (bounds==null) {
+			if (atoms.length==0) throw new IllegalArgumentException("Chain "+chain.getChainCode()+" has no atoms: it has no bounding box");
+			if (isPureTranslation()) {
+				bounds = new BoundingBox(chain.getBoundingBox());
+				bounds.translate(new Vector3d(transform.m03, transform.m13, transform.m23));
+			} else {
+				bounds = new BoundingBox(getCoords());
+			}
+		}
+		return bounds;
+	}
+	
+	private boolean isPureTranslation() {
+		return transform.m00==1 && transform.m01==0 && transform.m02==0 &&
+				transform.m10==0 && transform.m11==1 && transform.m12==0 &&
+				transform.m20==0 && transform.m21==0 && transform.m22==1;
+	}
+	
+	/**
+	 * Returns true if the bounding box of this transformed chain and the given chain are further
+	 * apart than the cutoff, i.e. there can't be any contacts between them.
+	 * @param other
+	 * @param cutoff
+	 * @return
+	 */
+	public boolean isNotOverlapping(PdbChain other, double cutoff) {
+		return !other.getBoundingBox().overlaps(getBoundingBox(), cutoff);
+	}
+	
+	/**
+	 * Calculates the atom contacts between given chain and this transformed chain.
+	 * @param other
+	 * @param otherAtoms the atoms of other as returned by {@link PdbChain#getAllAtoms()}, 
+	 * passed so that they don't need to be gathered for each call
+	 * @param cutoff
+	 * @return the contacts with i indices referring to otherAtoms and j indices to the atoms 
+	 * of this chain (see {@link #getAtoms()}), or null if the two chains are not overlapping  
+	 */
+	public GridContacts getContacts(PdbChain other, Atom[] otherAtoms, double cutoff) {
+		Grid grid = new Grid(cutoff);
+		grid.addAtoms(otherAtoms, other.getBoundingBox(), getCoords(), getBoundingBox());
+		if (grid.isNoOverlap()) {
+			return null;
+		}
+		return grid.getContacts(true);
+	}
+}
@@ -0,0 +1,476 @@
+package owl.core.structure.graphs;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.concurrent.RecursiveAction;
+
+import owl.core.util.SharedPools;
+
+/**
+ * A static snapshot of the (undirected) neighbourhoods of a {@link ProtStructGraph} for
+ * counting common neighbours and enumerating triangles and triplets.
+ * The nodes are numbered in the order of their serials and the neighbours of each node are
+ * kept as a sorted array of node numbers, so that common neighbourhoods are merge intersections.
+ * For dense graphs the neighbourhoods are also kept as bitsets and intersected word-wise.
+ * The results are returned as arrays of serials instead of sets of node objects.
+ *
+ * As in {@link RIGraph#getCommonNbhood(RIGNode, RIGNode)} the neighbours of a node are its
+ * neighbours in either direction if the graph is directed. Loop edges are ignored.
+ *
+ * The enumerations over all nodes can be split into node ranges run in parallel,
+ * see {@link #setNumThreads(int)}: the results are the same and in the same order.
+ */
+public class GraphAdjacency {
+
+	/**
+	 * The graph is dense (neighbourhoods kept as bitsets) if the average degree
+	 * is at least the number of nodes divided by this
+	 */
+	private static final int DENSE_DEGREE_FRACTION = 16;
+
+	private static final int MIN_NODES_PER_TASK = 32;
+
+	private int[] serials;			// the serials of the nodes, sorted
+	private int[] rowStart;			// the neighbours of node k are in positions rowStart[k] to rowStart[k+1]-1 of nbs
+	private int[] nbs;				// the neighbour node numbers, sorted within each row
+	private long[][] nbBits;		// the neighbourhoods as bitsets, null if the graph is not dense
+
+	private int numThreads;
+
+	/**
+	 * Constructs the adjacency arrays of the given graph, using bitsets if it is dense
+	 * @param graph
+	 */
+	public <V,E> GraphAdjacency(ProtStructGraph<V,E> graph) {
+		this(graph, null);
+	}
+
+	/**
+	 * Constructs the adjacency arrays of the given graph
+	 * @param graph
+	 * @param useBitsets whether to keep the neighbourhoods also as bitsets, if null they are
+	 * kept if the graph is dense
+	 */
+	public <V,E> GraphAdjacency(ProtStructGraph<V,E> graph, Boolean useBitsets) {
+		int n = graph.getVertexCount();
+		serials = new int[n];
+		HashMap<V,Integer> node2index = new HashMap<V,Integer>();
+		int k = 0;
+		for (int serial:graph.getSerials()) {
+			V node = graph.getNodeFromSerial(serial);
+			if (!graph.containsVertex(node)) continue;
+			serials[k] = serial;
+			node2index.put(node, k);
+			k++;
+		}
+		if (k<n) serials = Arrays.copyOf(serials, k);
+		n = k;
+
+		rowStart = new int[n+1];
+		int[] row = new int[n];
+		int numNbs = 0;
+		nbs = new int[Math.max(2*graph.getEdgeCount(),1)];
+		for (k=0;k<n;k++) {
+			int size = 0;
+			for (V nb:graph.getNeighbors(graph.getNodeFromSerial(serials[k]))) {
+				int index = node2index.get(nb);
+				if (index!=k) row[size++] = index;
+			}
+			Arrays.sort(row, 0, size);
+			if (numNbs+size>nbs.length) {
+				nbs = Arrays.copyOf(nbs, Math.max(2*nbs.length, numNbs+size));
+			}
+			System.arraycopy(row, 0, nbs, numNbs, size);
+			numNbs += size;
+			rowStart[k+1] = numNbs;
+		}
+
+		boolean dense = useBitsets!=null?useBitsets:(long)numNbs*DENSE_DEGREE_FRACTION>=(long)n*n;
+		if (dense) {
+			nbBits = new long[n][(n+63)/64];
+			for (k=0;k<n;k++) {
+				for (int p=rowStart[k];p<rowStart[k+1];p++) {
+					nbBits[k][nbs[p]>>>6] |= 1L<<nbs[p];
+				}
+			}
+		}
+		numThreads = 1;
+	}
+
+	/**
+	 * Sets the number of threads to use for the enumerations over all nodes
+	 * ({@link #getAllCommonNbhSizes()}, {@link #getTriangles()}, {@link #getTriplets()}).
+	 * Default 1.
+	 * @param numThreads
+	 */
+	public void setNumThreads(int numThreads) {
+		this.numThreads = Math.max(numThreads, 1);
+	}
+
+	/**
+	 * Returns true if the neighbourhoods are intersected as bitsets
+	 * @return
+	 */
+	public boolean usesBitsets() {
+		return nbBits!=null;
+	}
+
+	/**
+	 * Returns the ordered serials of the nodes
+	 * @return
+	 */
+	public int[] getSerials() {
+		return serials.clone();
+	}
+
+	/**
+	 * Returns the number of neighbours of the node with serial i, 0 if there's no such node
+	 * @param i
+	 * @return
+	 */
+	public int getDegree(int i) {
+		int k = Arrays.binarySearch(serials, i);
+		return k<0?0:rowStart[k+1]-rowStart[k];
+	}
+
+	/**
+	 * Returns the number of common neighbours of the nodes with serials i and j,
+	 * 0 if there's no such nodes
+	 * @param i
+	 * @param j
+	 * @return
+	 * @see RIGraph#getCommonNbhood(RIGNode, RIGNode)
+	 */
+	public int getCommonNbhSize(int i, int j) {
+		int a = Arrays.binarySearch(serials, i);
+		int b = Arrays.binarySearch(serials, j);
+		if (a<0 || b<0) return 0;
+		return countCommonNbs(a, b, -1);
+	}
+
+	/**
+	 * Counts the common neighbours of nodes a and b greater than after
+	 */
+	private int countCommonNbs(int a, int b, int after) {
+		if (nbBits!=null) {
+			long[] bitsA = nbBits[a];
+			long[] bitsB = nbBits[b];
+			int first = after+1;
+			int w = first>>>6;
+			if (w>=bitsA.length) return 0;
+			int count = Long.bitCount(bitsA[w] & bitsB[w] & (-1L<<first));
+			for (w++;w<bitsA.length;w++) {
+				count += Long.bitCount(bitsA[w] & bitsB[w]);
+			}
+			return count;
+		}
+		int p = firstNbAfter(a, after);
+		int q = firstNbAfter(b, after);
+		int endP = rowStart[a+1];
+		int endQ = rowStart[b+1];
+		int count = 0;
+		while (p<endP && q<endQ) {
+			int nbA = nbs[p];
+			int nbB = nbs[q];
+			if (nbA==nbB) {
+				count++;
+				p++;
+				q++;
+			} else if (nbA<nbB) {
+				p++;
+			} else {
+				q++;
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * Returns the position in nbs of the first neighbour of node a greater than after
+	 */
+	private int firstNbAfter(int a, int after) {
+		if (after<0) return rowStart[a];
+		int p = Arrays.binarySearch(nbs, rowStart[a], rowStart[a+1], after);
+		return p>=0?p+1:-p-1;
+	}
+
+	private boolean isNb(int a, int b) {
+		if (nbBits!=null) {
+			return (nbBits[a][b>>>6] & (1L<<b))!=0;
+		}
+		return Arrays.binarySearch(nbs, rowStart[a], rowStart[a+1], b)>=0;
+	}
+
+	/**
+	 * Returns the common neighbourhood sizes of all pairs of nodes (contacts or not) with
+	 * at least one common neighbour, as 3 arrays of the same length: the serials i, the
+	 * serials j (i<j) and the sizes, ordered by i and j.
+	 * @return
+	 * @see RIGraph#getAllCommonNbhSizes()
+	 */
+	public int[][] getAllCommonNbhSizes() {
+		return split(runOverNodes(new NodeTask() {
+			public void run(int from, int to, IntBuffer out) {
+				if (nbBits!=null) {
+					for (int a=from;a<to;a++) {
+						for (int b=a+1;b<serials.length;b++) {
+							int size = countCommonNbs(a, b, -1);
+							if (size>0) out.add(serials[a], serials[b], size);
+						}
+					}
+					return;
+				}
+				// we count the paths a-k-b through each neighbour k of a
+				int[] counts = new int[serials.length];
+				int[] touched = new int[serials.length];
+				for (int a=from;a<to;a++) {
+					int numTouched = 0;
+					for (int p=rowStart[a];p<rowStart[a+1];p++) {
+						int k = nbs[p];
+						for (int q=firstNbAfter(k, a);q<rowStart[k+1];q++) {
+							int b = nbs[q];
+							if (counts[b]++==0) touched[numTouched++] = b;
+						}
+					}
+					Arrays.sort(touched, 0, numTouched);
+					for (int t=0;t<numTouched;t++) {
+						int b = touched[t];
+						out.add(serials[a], serials[b], counts[b]);
+						counts[b] = 0;
+					}
+				}
+			}
+		}), 3);
+	}
+
+	/**
+	 * Returns all triangles (3 nodes connected to each other) as 3 arrays of the same length:
+	 * the serials i, j and k (i<j<k) of each triangle, ordered by i, j and k.
+	 * @return
+	 * @see ProtStructGraph#getTriangles()
+	 */
+	public int[][] getTriangles() {
+		return split(runOverNodes(new NodeTask() {
+			public void run(int from, int to, IntBuffer out) {
+				for (int a=from;a<to;a++) {
+					for (int p=firstNbAfter(a, a);p<rowStart[a+1];p++) {
+						int b = nbs[p];
+						if (nbBits!=null) {
+							long[] bitsA = nbBits[a];
+							long[] bitsB = nbBits[b];
+							for (int w=(b+1)>>>6;w<bitsA.length;w++) {
+								long word = bitsA[w] & bitsB[w];
+								if (w==(b+1)>>>6) word &= -1L<<(b+1);
+								while (word!=0) {
+									int c = (w<<6) + Long.numberOfTrailingZeros(word);
+									out.add(serials[a], serials[b], serials[c]);
+									word &= word-1;
+								}
+							}
+							continue;
+						}
+						int q = p+1;
+						int r = firstNbAfter(b, b);
+						while (q<rowStart[a+1] && r<rowStart[b+1]) {
+							if (nbs[q]==nbs[r]) {
+								out.add(serials[a], serials[b], serials[nbs[q]]);
+								q++;
+								r++;
+							} else if (nbs[q]<nbs[r]) {
+								q++;
+							} else {
+								r++;
+							}
+						}
+					}
+				}
+			}
+		}), 3);
+	}
+
+	/**
+	 * Returns the number of triangles
+	 * @return
+	 */
+	public int getTriangleCount() {
+		int[] counts = runOverNodes(new NodeTask() {
+			public void run(int from, int to, IntBuffer out) {
+				int count = 0;
+				for (int a=from;a<to;a++) {
+					for (int p=firstNbAfter(a, a);p<rowStart[a+1];p++) {
+						count += countCommonNbs(a, nbs[p], nbs[p]);
+					}
+				}
+				out.add(count);
+			}
+		});
+		int count = 0;
+		for (int c:counts) count += c;
+		return count;
+	}
+
+	/**
+	 * Returns all triplets, i.e. the sets of 3 nodes one of which (the centre) is a
+	 * neighbour of the other 2, as 3 arrays of the same length: the serials of the centre
+	 * and of the 2 others (in increasing order), ordered by centre and the 2 others.
+	 * Each set of 3 nodes is given once: for triangles with its smallest node as centre.
+	 * @return
+	 * @see ProtStructGraph#getTriplets()
+	 */
+	public int[][] getTriplets() {
+		return split(runOverNodes(new NodeTask() {
+			public void run(int from, int to, IntBuffer out) {
+				for (int c=from;c<to;c++) {
+					for (int p=rowStart[c];p<rowStart[c+1];p++) {
+						int a = nbs[p];
+						for (int q=p+1;q<rowStart[c+1];q++) {
+							int b = nbs[q];
+							// a triangle is given only from its smallest node
+							if (c>a && isNb(a, b)) continue;
+							out.add(serials[c], serials[a], serials[b]);
+						}
+					}
+				}
+			}
+		}), 3);
+	}
+
+	/**
+	 * Returns the number of triplets (see {@link #getTriplets()})
+	 * @return
+	 */
+	public long getTripletCount() {
+		long count = 0;
+		for (int k=0;k<serials.length;k++) {
+			long degree = rowStart[k+1]-rowStart[k];
+			count += degree*(degree-1)/2;
+		}
+		return count - 2L*getTriangleCount();
+	}
+
+	/**
+	 * A computation over a range of nodes writing its results to a buffer
+	 */
+	private interface NodeTask {
+		public void run(int from, int to, IntBuffer out);
+	}
+
+	/**
+	 * Runs the given task over all nodes, in parallel node ranges if more than one thread is
+	 * set, and returns the concatenation of the results in node order.
+	 */
+	private int[] runOverNodes(final NodeTask task) {
+		int n = serials.length;
+		int numTasks = Math.min(4*numThreads, n/MIN_NODES_PER_TASK);
+		if (numThreads==1 || numTasks<2) {
+			IntBuffer out = new IntBuffer();
+			task.run(0, n, out);
+			return out.toArray();
+		}
+		// the ranges are shorter at the start, where the nodes have more (larger) neighbours to go through
+		int[] rangeStarts = new int[numTasks+1];
+		for (int t=0;t<=numTasks;t++) {
+			rangeStarts[t] = getRangeStart(t, numTasks, n);
+		}
+		IntBuffer[] outs = new IntBuffer[numTasks];
+		// the pool is shared by all calculations with the same number of threads, invoke blocks until all ranges are done
+		SharedPools.getPool(numThreads).invoke(new NodeRangesTask(task, rangeStarts, outs, 0, numTasks));
+		IntBuffer all = new IntBuffer();
+		for (IntBuffer out:outs) {
+			all.add(out);
+		}
+		return all.toArray();
+	}
+
+	/**
+	 * Runs a NodeTask over the node ranges from to to (exclusive), splitting them in halves 
+	 * until there is a single one, whose results go to its buffer in outs
+	 */
+	private static class NodeRangesTask extends RecursiveAction {
+
+		private static final long serialVersionUID = 1L;
+
+		private NodeTask task;
+		private int[] rangeStarts;
+		private IntBuffer[] outs;
+		private int from;
+		private int to;
+
+		public NodeRangesTask(NodeTask task, int[] rangeStarts, IntBuffer[] outs, int from, int to) {
+			this.task = task;
+			this.rangeStarts = rangeStarts;
+			this.outs = outs;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected void compute() {
+			if (to-from==1) {
+				IntBuffer out = new IntBuffer();
+				task.run(rangeStarts[from], rangeStarts[to], out);
+				outs[from] = out;
+			} else {
+				int mid = (from+to)>>>1;
+				invokeAll(new NodeRangesTask(task, rangeStarts, outs, from, mid),
+						new NodeRangesTask(task, rangeStarts, outs, mid, to));
+			}
+		}
+	}
+
+	/**
+	 * Returns the start of range t of numRanges over n nodes, so that all ranges contain
+	 * about the same number of pairs a<b
+	 */
+	private static int getRangeStart(int t, int numRanges, int n) {
+		if (t==numRanges) return n;
+		return (int) Math.round(n*(1.0-Math.sqrt(1.0-(double)t/numRanges)));
+	}
+
+	/**
+	 * Splits the interleaved values of the given array into width arrays
+	 */
+	private static int[][] split(int[] values, int width) {
+		int[][] arrays = new int[width][values.length/width];
+		for (int v=0;v<values.length;v++) {
+			arrays[v%width][v/width] = values[v];
+		}
+		return arrays;
+	}
+
+	/**
+	 * A growable array of ints
+	 */
+	private static class IntBuffer {
+		private int[] values = new int[64];
+		private int size = 0;
+
+		public void add(int v) {
+			ensureCapacity(size+1);
+			values[size++] = v;
+		}
+
+		public void add(int v1, int v2, int v3) {
+			ensureCapacity(size+3);
+			values[size++] = v1;
+			values[size++] = v2;
+			values[size++] = v3;
+		}
+
+		public void add(IntBuffer other) {
+			ensureCapacity(size+other.size);
+			System.arraycopy(other.values, 0, values, size, other.size);
+			size += other.size;
+		}
+
+		private void ensureCapacity(int capacity) {
+			if (capacity>values.length) {
+				values = Arrays.copyOf(values, Math.max(2*values.length, capacity));
+			}
+		}
+
+		public int[] toArray() {
+			return Arrays.copyOf(values, size);
+		}
+	}
+}
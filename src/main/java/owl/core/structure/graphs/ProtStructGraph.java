@@ -1,7 +1,10 @@
 package owl.core.structure.graphs;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.HashSet;
+import java.util.Map;
 import java.util.Set;
 import java.util.TreeMap;
 
@@ -405,29 +408,10 @@ public abstract class ProtStructGraph<V,E> extends SparseGraph<V,E> {
 	 * The V class needs to implement equals() and hashCode() so that Triplet's equals() and hashCode() 
 	 * can work properly
 	 * @return
+	 * @see GraphAdjacency#getTriangles()
 	 */
 	public Collection<Triplet<V>> getTriangles() {
-		// for this to work properly V must implement proper hashCode() and equals()
-		// well not strictly necessary because in our case all nodes are unique and thus their 
-		// memory addresses (default hash) are good enough to identify them
-		HashSet<Triplet<V>> set = new HashSet<Triplet<V>>();
-		for (E edge:this.getEdges()) {
-			Pair<V> pair = this.getEndpoints(edge);
-			V v1 = pair.getFirst();
-			V v2 = pair.getSecond();
-			
-			Collection<V> v1nbs = this.getNeighbors(v1);
-			Collection<V> v2nbs = this.getNeighbors(v2);
-			//int countNew = 0;
-			for (V v3:v1nbs) {
-				if (v3!=v2 && v2nbs.contains(v3)) {
-					//if (set.add(new Triplet<V>(v1,v2,v3))) countNew++;
-					set.add(new Triplet<V>(v1,v2,v3));
-				}
-			}
-			//System.out.println(v1.toString()+" "+v2.toString()+": "+countNew);
-		}
-		return set;
+		return toTriplets(new GraphAdjacency(this).getTriangles());
 	}
 	
 	/**
@@ -436,27 +420,31 @@ public abstract class ProtStructGraph<V,E> extends SparseGraph<V,E> {
 	 * The V class needs to implement equals() and hashCode() so that Triplet's equals() and hashCode() 
 	 * can work properly  
 	 * @return
+	 * @see GraphAdjacency#getTriplets()
 	 */
 	public Collection<Triplet<V>> getTriplets() {
-		// for this to work properly V must implement proper hashCode() and equals()
-		// well not strictly necessary because in our case all nodes are unique and thus their 
-		// memory addresses (default hash) are good enough to identify them
-		HashSet<Triplet<V>> set = new HashSet<Triplet<V>>();
-		for (V node:this.getVertices()) {
-			Collection<V> nbs = this.getNeighbors(node);
-			if (nbs.size()>1) {
-				int i = 0;
-				for (V nbi:nbs) {
-					int j = 0;
-					for (V nbj:nbs) {
-						if (j>i) {
-							set.add(new Triplet<V>(node,nbi,nbj));
-						}
-						j++;
-					}
-					i++;
-				}
-			}
+		return toTriplets(new GraphAdjacency(this).getTriplets());
+	}
+	
+	/**
+	 * Returns the set of Triplets of nodes for the given 3 arrays of serials
+	 * @param serials
+	 * @return
+	 */
+	private Collection<Triplet<V>> toTriplets(int[][] serials) {
+		// we look up the nodes in a sorted array of serials rather than in the serials2nodes map
+		int[] nodeSerials = new int[serials2nodes.size()];
+		ArrayList<V> nodes = new ArrayList<V>(serials2nodes.size());
+		int k = 0;
+		for (Map.Entry<Integer,V> entry:serials2nodes.entrySet()) {
+			nodeSerials[k++] = entry.getKey();
+			nodes.add(entry.getValue());
+		}
+		HashSet<Triplet<V>> set = new HashSet<Triplet<V>>(2*serials[0].length);
+		for (int t=0;t<serials[0].length;t++) {
+			set.add(new Triplet<V>(nodes.get(Arrays.binarySearch(nodeSerials, serials[0][t])),
+					nodes.get(Arrays.binarySearch(nodeSerials, serials[1][t])),
+					nodes.get(Arrays.binarySearch(nodeSerials, serials[2][t]))));
 		}
 		return set;
 	}
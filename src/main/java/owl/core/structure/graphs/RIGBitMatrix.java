@@ -0,0 +1,276 @@
+package owl.core.structure.graphs;
+
+import java.util.Arrays;
+
+/**
+ * A residue contact map packed as a bitset with one bit per cell of the (strictly upper
+ * triangular if undirected) contact matrix of residue serials 1 to size.
+ * The cells are laid out by sequence separation bands: first the cells i,i+1, then i,i+2
+ * and so on (for directed maps followed by the lower triangle in the same order). Thus all
+ * contacts above a minimum sequence separation are a contiguous range of bits and the
+ * comparisons of contact maps (common contacts, contacts only in one of them, union for
+ * averaging) are word-wide AND/ANDNOT/OR operations and popcounts over that range.
+ *
+ * Two maps can be combined only if they have the same size and directionality.
+ *
+ * @see RIGraph#evaluatePrediction(RIGraph, int)
+ * @see RIGraph#compare(RIGraph)
+ */
+public class RIGBitMatrix {
+
+	private int size;
+	private boolean directed;
+
+	private int[] bandStart;	// the index of the first cell of each band (sequence separation) in a triangle, bandStart[size] is the triangle size
+	private int numBits;
+	private long[] words;
+
+	/**
+	 * Constructs an empty contact map for residue serials 1 to size
+	 * @param size
+	 * @param directed
+	 */
+	public RIGBitMatrix(int size, boolean directed) {
+		this.size = size;
+		this.directed = directed;
+		this.bandStart = new int[Math.max(size+1,2)];
+		for (int d=1;d<bandStart.length;d++) {
+			bandStart[d] = (d-1)*size - (d-1)*d/2;
+		}
+		int triangle = bandStart[bandStart.length-1];
+		this.numBits = directed?2*triangle:triangle;
+		this.words = new long[(numBits+63)/64];
+	}
+
+	public int getSize() {
+		return size;
+	}
+
+	public boolean isDirected() {
+		return directed;
+	}
+
+	/**
+	 * Returns the bit index of cell i,j
+	 * @throws IllegalArgumentException if i or j are out of range or i==j
+	 */
+	private int getIndex(int i, int j) {
+		if (i<1 || j<1 || i>size || j>size || i==j) {
+			throw new IllegalArgumentException("Cell ("+i+","+j+") is out of the contact map of size "+size);
+		}
+		if (i<j) {
+			return bandStart[j-i] + i-1;
+		}
+		if (directed) {
+			return bandStart[size] + bandStart[i-j] + j-1;
+		}
+		return bandStart[i-j] + j-1;
+	}
+
+	/**
+	 * Sets the contact between residue serials i and j (from i to j if directed)
+	 * @param i
+	 * @param j
+	 * @return true if the contact was not set before
+	 * @throws IllegalArgumentException if i or j are out of range or i==j
+	 */
+	public boolean addEdgeIJ(int i, int j) {
+		int index = getIndex(i, j);
+		long mask = 1L<<index;
+		boolean isNew = (words[index>>>6] & mask)==0;
+		words[index>>>6] |= mask;
+		return isNew;
+	}
+
+	/**
+	 * Returns true if there is a contact between residue serials i and j (from i to j if directed).
+	 * Cells out of the contact map have no contact.
+	 * @param i
+	 * @param j
+	 * @return
+	 */
+	public boolean containsEdgeIJ(int i, int j) {
+		if (i<1 || j<1 || i>size || j>size || i==j) return false;
+		int index = getIndex(i, j);
+		return (words[index>>>6] & (1L<<index))!=0;
+	}
+
+	/**
+	 * Returns the number of contacts
+	 * @return
+	 */
+	public int getEdgeCount() {
+		return getEdgeCount(1);
+	}
+
+	/**
+	 * Returns the number of contacts with sequence separation at least minSeqSep
+	 * @param minSeqSep
+	 * @return
+	 */
+	public int getEdgeCount(int minSeqSep) {
+		return countBits(this, null, false, minSeqSep);
+	}
+
+	/**
+	 * Returns the number of contacts with sequence separation at least minSeqSep
+	 * present in both this and the other contact map
+	 * @param other
+	 * @param minSeqSep
+	 * @return
+	 */
+	public int getCommonEdgeCount(RIGBitMatrix other, int minSeqSep) {
+		checkCompatible(other);
+		return countBits(this, other, false, minSeqSep);
+	}
+
+	/**
+	 * Returns the number of contacts with sequence separation at least minSeqSep
+	 * present in this but not in the other contact map
+	 * @param other
+	 * @param minSeqSep
+	 * @return
+	 */
+	public int getOnlyThisEdgeCount(RIGBitMatrix other, int minSeqSep) {
+		checkCompatible(other);
+		return countBits(this, other, true, minSeqSep);
+	}
+
+	/**
+	 * Counts the bits set in a (and in b or not in b if b is not null) in the bands of
+	 * sequence separation at least minSeqSep
+	 */
+	private static int countBits(RIGBitMatrix a, RIGBitMatrix b, boolean not, int minSeqSep) {
+		int minBand = Math.max(minSeqSep, 1);
+		if (minBand>=a.size) return 0;
+		int triangle = a.bandStart[a.size];
+		int count = countBits(a.words, b==null?null:b.words, not, a.bandStart[minBand], triangle);
+		if (a.directed) {
+			count += countBits(a.words, b==null?null:b.words, not, triangle+a.bandStart[minBand], 2*triangle);
+		}
+		return count;
+	}
+
+	/**
+	 * Counts the bits in range [from,to) set in a (and in b or not in b if b is not null)
+	 */
+	private static int countBits(long[] a, long[] b, boolean not, int from, int to) {
+		if (from>=to) return 0;
+		int firstWord = from>>>6;
+		int lastWord = (to-1)>>>6;
+		long firstMask = -1L<<from;
+		long lastMask = -1L>>>(-to);
+		int count = 0;
+		for (int w=firstWord;w<=lastWord;w++) {
+			long word = a[w];
+			if (b!=null) word &= not?~b[w]:b[w];
+			if (w==firstWord) word &= firstMask;
+			if (w==lastWord) word &= lastMask;
+			count += Long.bitCount(word);
+		}
+		return count;
+	}
+
+	/**
+	 * Keeps only the contacts that are also in the other contact map
+	 * @param other
+	 */
+	public void and(RIGBitMatrix other) {
+		checkCompatible(other);
+		for (int w=0;w<words.length;w++) {
+			words[w] &= other.words[w];
+		}
+	}
+
+	/**
+	 * Removes the contacts that are in the other contact map
+	 * @param other
+	 */
+	public void andNot(RIGBitMatrix other) {
+		checkCompatible(other);
+		for (int w=0;w<words.length;w++) {
+			words[w] &= ~other.words[w];
+		}
+	}
+
+	/**
+	 * Adds the contacts of the other contact map
+	 * @param other
+	 */
+	public void or(RIGBitMatrix other) {
+		checkCompatible(other);
+		for (int w=0;w<words.length;w++) {
+			words[w] |= other.words[w];
+		}
+	}
+
+	private void checkCompatible(RIGBitMatrix other) {
+		if (size!=other.size || directed!=other.directed) {
+			throw new IllegalArgumentException("Contact maps of different size or directionality can't be combined");
+		}
+	}
+
+	/**
+	 * Returns the index of the first contact at or after the given index, or -1 if there are no more,
+	 * to iterate over the contacts: the residue serials of each are given by {@link #getI(int)} and {@link #getJ(int)}
+	 * @param fromIndex
+	 * @return
+	 */
+	public int nextEdgeIndex(int fromIndex) {
+		if (fromIndex>=numBits) return -1;
+		int w = fromIndex>>>6;
+		long word = words[w] & (-1L<<fromIndex);
+		while (true) {
+			if (word!=0) {
+				int index = (w<<6) + Long.numberOfTrailingZeros(word);
+				return index<numBits?index:-1;
+			}
+			w++;
+			if (w==words.length) return -1;
+			word = words[w];
+		}
+	}
+
+	/**
+	 * Returns the residue serial i of the contact i,j with the given index
+	 * @param index
+	 * @return
+	 */
+	public int getI(int index) {
+		int triangle = bandStart[size];
+		if (index<triangle) {
+			return index-bandStart[getBand(index)]+1;
+		}
+		index -= triangle;
+		return index-bandStart[getBand(index)]+1+getBand(index);
+	}
+
+	/**
+	 * Returns the residue serial j of the contact i,j with the given index
+	 * @param index
+	 * @return
+	 */
+	public int getJ(int index) {
+		int triangle = bandStart[size];
+		if (index<triangle) {
+			return index-bandStart[getBand(index)]+1+getBand(index);
+		}
+		index -= triangle;
+		return index-bandStart[getBand(index)]+1;
+	}
+
+	/**
+	 * Returns the band (sequence separation) of the given index within a triangle
+	 */
+	private int getBand(int index) {
+		int b = Arrays.binarySearch(bandStart, 1, size, index);
+		// with no exact match we get the band whose start is the one just before index
+		return b>=0?b:-b-2;
+	}
+
+	public RIGBitMatrix copy() {
+		RIGBitMatrix newMatrix = new RIGBitMatrix(size, directed);
+		System.arraycopy(words, 0, newMatrix.words, 0, words.length);
+		return newMatrix;
+	}
+}
@@ -0,0 +1,538 @@
+package owl.core.structure.graphs;
+
+import java.util.Arrays;
+
+import owl.core.structure.features.SecondaryStructure;
+
+import edu.uci.ics.jung.graph.util.EdgeType;
+import edu.uci.ics.jung.graph.util.Pair;
+
+/**
+ * A residue contact map stored in compressed sparse row (CSR) form: a lightweight
+ * alternative to {@link RIGraph} for when many contact maps have to be calculated
+ * and queried, e.g. for whole-PDB contact statistics.
+ *
+ * There are no node or edge objects: the neighbours of each residue are stored as a
+ * sorted run of residue serials in a single int array, with the atom weights (number of
+ * atom contacts), minimum distances and weights of the edges in parallel arrays (distances
+ * and weights are optional and stored as floats).
+ * Vertex lookups and degrees are O(1) and edge lookups are a binary search within the
+ * neighbours of a residue.
+ *
+ * For undirected maps every edge is stored in the rows of both its residues. For directed
+ * maps the row of a residue contains its successors only, thus neighbourhoods in directed
+ * maps are the out-neighbourhoods.
+ *
+ * The map is immutable once constructed. Use {@link #toRIGraph()} and {@link #fromRIGraph(RIGraph)}
+ * to convert to/from RIGraph for the existing tools.
+ *
+ * @see owl.core.structure.PdbChain#getContactMap(String, double, boolean)
+ */
+public class RIGContactMap {
+
+	private boolean directed;
+
+	private int[] serials;				// the residue serials of the nodes, sorted
+	private String[] residueTypes;		// the residue types (3 letter codes) of the nodes, may be null
+	private int firstSerial;
+	private int[] serial2index;			// the index of the node for each serial-firstSerial, -1 if no such node
+
+	private int[] rowStart;				// the neighbours of node k are in positions rowStart[k] to rowStart[k+1]-1 of the arrays below
+	private int[] nbSerials;			// the neighbour serials, sorted within each row
+	private int[] atomWeights;			// the number of atom contacts of each edge
+	private float[] distances;			// the minimum atom distance of each edge, may be null
+	private float[] weights;			// the weight of each edge, may be null
+
+	// the graph data that is passed on to the RIGraph
+	private String sequence;
+	private String pdbCode;
+	private String chainCode;
+	private String pdbChainCode;
+	private int model;
+	private String contactType;
+	private double cutoff;
+	private SecondaryStructure secondaryStructure;
+
+	/**
+	 * Constructs a contact map with the given nodes from a list of contacts between them.
+	 * The contacts can be given in any order and the contacts between the same pair of
+	 * residues (in either order if undirected) are merged into one edge: its atom weight is the
+	 * sum of the atom weights of the contacts, its distance their minimum distance and its weight
+	 * their maximum weight. Contacts of a residue with itself are ignored.
+	 * @param serials the residue serials of the nodes
+	 * @param residueTypes the residue types of the nodes (same order as serials), if null
+	 * the nodes have no residue types
+	 * @param directed
+	 * @param numContacts the number of contacts, i.e. the number of elements to be
+	 * read from the arrays below
+	 * @param iSerials the residue serial of the first residue of each contact
+	 * @param jSerials the residue serial of the second residue of each contact
+	 * @param atomWeights the atom weight of each contact, if null each contact counts as 1
+	 * @param distances the distance of each contact, if null the map has no distances
+	 * @param weights the weight of each contact, if null the map has no weights
+	 * @throws IllegalArgumentException if a contact residue is not one of the nodes
+	 */
+	public RIGContactMap(int[] serials, String[] residueTypes, boolean directed,
+			int numContacts, int[] iSerials, int[] jSerials, int[] atomWeights, float[] distances, float[] weights) {
+
+		this.directed = directed;
+		this.model = ProtStructGraph.DEFAULT_MODEL;
+		this.contactType = ProtStructGraph.NO_CONTACT_TYPE;
+		this.cutoff = ProtStructGraph.NO_CUTOFF;
+
+		initNodes(serials, residueTypes);
+
+		int numNodes = this.serials.length;
+
+		// counting the entries of each row: 1 per contact if directed, 2 if undirected
+		int[] rowCount = new int[numNodes+1];
+		for (int k=0;k<numContacts;k++) {
+			int i = getNodeIndex(iSerials[k]);
+			int j = getNodeIndex(jSerials[k]);
+			if (i==j) continue;
+			rowCount[i+1]++;
+			if (!directed) rowCount[j+1]++;
+		}
+		for (int i=0;i<numNodes;i++) {
+			rowCount[i+1]+=rowCount[i];
+		}
+
+		// placing the entries in their rows as (neighbour index, contact index) keys and sorting each row
+		int[] fill = Arrays.copyOf(rowCount, numNodes);
+		long[] keys = new long[rowCount[numNodes]];
+		for (int k=0;k<numContacts;k++) {
+			int i = getNodeIndex(iSerials[k]);
+			int j = getNodeIndex(jSerials[k]);
+			if (i==j) continue;
+			keys[fill[i]++] = ((long)j<<32) | k;
+			if (!directed) keys[fill[j]++] = ((long)i<<32) | k;
+		}
+
+		// merging the entries with the same neighbour into one edge
+		this.rowStart = new int[numNodes+1];
+		this.nbSerials = new int[keys.length];
+		this.atomWeights = new int[keys.length];
+		if (distances!=null) this.distances = new float[keys.length];
+		if (weights!=null) this.weights = new float[keys.length];
+		int numEntries = 0;
+		for (int i=0;i<numNodes;i++) {
+			rowStart[i] = numEntries;
+			Arrays.sort(keys, rowCount[i], rowCount[i+1]);
+			int lastNb = -1;
+			for (int p=rowCount[i];p<rowCount[i+1];p++) {
+				int nb = (int)(keys[p]>>>32);
+				int k = (int)keys[p];
+				int atomWeight = atomWeights==null?1:atomWeights[k];
+				if (nb!=lastNb) {
+					nbSerials[numEntries] = this.serials[nb];
+					this.atomWeights[numEntries] = atomWeight;
+					if (distances!=null) this.distances[numEntries] = distances[k];
+					if (weights!=null) this.weights[numEntries] = weights[k];
+					numEntries++;
+					lastNb = nb;
+				} else {
+					int e = numEntries-1;
+					this.atomWeights[e] += atomWeight;
+					if (distances!=null) this.distances[e] = Math.min(this.distances[e], distances[k]);
+					if (weights!=null) this.weights[e] = Math.max(this.weights[e], weights[k]);
+				}
+			}
+		}
+		rowStart[numNodes] = numEntries;
+
+		if (numEntries<keys.length) {
+			nbSerials = Arrays.copyOf(nbSerials, numEntries);
+			this.atomWeights = Arrays.copyOf(this.atomWeights, numEntries);
+			if (distances!=null) this.distances = Arrays.copyOf(this.distances, numEntries);
+			if (weights!=null) this.weights = Arrays.copyOf(this.weights, numEntries);
+		}
+	}
+
+	private void initNodes(int[] serials, String[] residueTypes) {
+		int numNodes = serials.length;
+		int[] order = new int[numNodes];
+		long[] keys = new long[numNodes];
+		for (int k=0;k<numNodes;k++) {
+			keys[k] = ((long)serials[k]<<32) | k;
+		}
+		Arrays.sort(keys);
+		for (int k=0;k<numNodes;k++) {
+			order[k] = (int)keys[k];
+		}
+
+		this.serials = new int[numNodes];
+		if (residueTypes!=null) this.residueTypes = new String[numNodes];
+		for (int k=0;k<numNodes;k++) {
+			this.serials[k] = serials[order[k]];
+			if (residueTypes!=null) this.residueTypes[k] = residueTypes[order[k]];
+			if (k>0 && this.serials[k]==this.serials[k-1]) {
+				throw new IllegalArgumentException("Duplicate node serial "+this.serials[k]);
+			}
+		}
+
+		this.firstSerial = numNodes==0?0:this.serials[0];
+		int range = numNodes==0?0:this.serials[numNodes-1]-firstSerial+1;
+		this.serial2index = new int[range];
+		Arrays.fill(serial2index, -1);
+		for (int k=0;k<numNodes;k++) {
+			serial2index[this.serials[k]-firstSerial] = k;
+		}
+	}
+
+	/**
+	 * Returns the index of the node with the given serial
+	 * @throws IllegalArgumentException if there's no such node
+	 */
+	private int getNodeIndex(int serial) {
+		int k = indexOf(serial);
+		if (k<0) {
+			throw new IllegalArgumentException("Residue serial "+serial+" is not a node of this contact map");
+		}
+		return k;
+	}
+
+	/**
+	 * Returns the index of the node with the given serial or -1 if there's no such node
+	 */
+	private int indexOf(int serial) {
+		int s = serial-firstSerial;
+		if (s<0 || s>=serial2index.length) return -1;
+		return serial2index[s];
+	}
+
+	/**
+	 * Returns the position of the edge i->j in the edge arrays or -1 if there's no such edge
+	 */
+	private int indexOfEdge(int i, int j) {
+		int k = indexOf(i);
+		if (k<0) return -1;
+		int p = Arrays.binarySearch(nbSerials, rowStart[k], rowStart[k+1], j);
+		return p<0?-1:p;
+	}
+
+	/**
+	 * Creates a contact map from the given RIGraph, with its nodes, edges (with their
+	 * atom weights, distances and weights) and graph data.
+	 * The weights and distances are stored as floats.
+	 * @param graph
+	 * @return
+	 */
+	public static RIGContactMap fromRIGraph(RIGraph graph) {
+		int numNodes = graph.getVertexCount();
+		int[] serials = new int[numNodes];
+		String[] residueTypes = new String[numNodes];
+		int k = 0;
+		for (int serial:graph.getSerials()) {
+			serials[k] = serial;
+			residueTypes[k] = graph.getNodeFromSerial(serial).getResidueType();
+			k++;
+		}
+
+		int numEdges = graph.getEdgeCount();
+		int[] iSerials = new int[numEdges];
+		int[] jSerials = new int[numEdges];
+		int[] atomWeights = new int[numEdges];
+		float[] distances = new float[numEdges];
+		float[] weights = new float[numEdges];
+		k = 0;
+		for (RIGEdge edge:graph.getEdges()) {
+			Pair<RIGNode> pair = graph.getEndpoints(edge);
+			iSerials[k] = pair.getFirst().getResidueSerial();
+			jSerials[k] = pair.getSecond().getResidueSerial();
+			atomWeights[k] = edge.getAtomWeight();
+			distances[k] = (float) edge.getDistance();
+			weights[k] = (float) edge.getWeight();
+			k++;
+		}
+
+		RIGContactMap cm = new RIGContactMap(serials, residueTypes, graph.isDirected(),
+				numEdges, iSerials, jSerials, atomWeights, distances, weights);
+		cm.sequence = graph.getSequence();
+		cm.pdbCode = graph.getPdbCode();
+		cm.chainCode = graph.getChainCode();
+		cm.pdbChainCode = graph.getPdbChainCode();
+		cm.model = graph.getModel();
+		cm.contactType = graph.getContactType();
+		cm.cutoff = graph.getCutoff();
+		cm.secondaryStructure = graph.getSecondaryStructure();
+		return cm;
+	}
+
+	/**
+	 * Creates a RIGraph with the nodes, edges and graph data of this contact map.
+	 * The nodes get the secondary structure elements of this map's secondary structure (if any).
+	 * @return
+	 */
+	public RIGraph toRIGraph() {
+		RIGraph graph = new RIGraph();
+		if (sequence!=null) graph.setSequence(sequence);
+		graph.setPdbCode(pdbCode);
+		graph.setChainCode(chainCode);
+		graph.setPdbChainCode(pdbChainCode);
+		graph.setModel(model);
+		graph.setContactType(contactType);
+		graph.setCutoff(cutoff);
+		graph.setSecondaryStructure(secondaryStructure);
+
+		RIGNode[] nodes = new RIGNode[serials.length];
+		for (int k=0;k<serials.length;k++) {
+			nodes[k] = new RIGNode(serials[k], residueTypes==null?null:residueTypes[k],
+					secondaryStructure==null?null:secondaryStructure.getSecStrucElement(serials[k]));
+			graph.addVertex(nodes[k]);
+		}
+
+		EdgeType et = directed?EdgeType.DIRECTED:EdgeType.UNDIRECTED;
+		for (int k=0;k<serials.length;k++) {
+			for (int p=rowStart[k];p<rowStart[k+1];p++) {
+				// undirected edges are in both rows: we add them from the row of the lower serial
+				if (!directed && nbSerials[p]<serials[k]) continue;
+				RIGEdge edge = new RIGEdge(atomWeights[p]);
+				if (distances!=null) edge.setDistance(distances[p]);
+				if (weights!=null) edge.setWeight(weights[p]);
+				graph.addEdge(edge, nodes[k], nodes[indexOf(nbSerials[p])], et);
+			}
+		}
+		return graph;
+	}
+
+	public boolean isDirected() {
+		return directed;
+	}
+
+	/**
+	 * Returns the number of nodes (residues) of this contact map
+	 * @return
+	 */
+	public int getNodeCount() {
+		return serials.length;
+	}
+
+	/**
+	 * Returns the number of edges (contacts) of this contact map
+	 * @return
+	 */
+	public int getEdgeCount() {
+		return directed?nbSerials.length:nbSerials.length/2;
+	}
+
+	/**
+	 * Returns the ordered residue serials of the nodes of this contact map.
+	 * @return
+	 */
+	public int[] getSerials() {
+		return serials.clone();
+	}
+
+	/**
+	 * Returns the residue type (3 letter code) of the node with the given serial,
+	 * null if there's no such node or the nodes have no types
+	 * @param i
+	 * @return
+	 */
+	public String getResidueType(int i) {
+		int k = indexOf(i);
+		if (k<0 || residueTypes==null) return null;
+		return residueTypes[k];
+	}
+
+	/**
+	 * Returns true if this contact map has a node with residue serial i
+	 * @param i
+	 * @return
+	 */
+	public boolean containsVertexI(int i) {
+		return indexOf(i)>=0;
+	}
+
+	/**
+	 * Returns true if this contact map contains an edge between residues i and j
+	 * (from i to j if directed).
+	 * @param i
+	 * @param j
+	 * @return
+	 */
+	public boolean containsEdgeIJ(int i, int j) {
+		return indexOfEdge(i, j)>=0;
+	}
+
+	/**
+	 * Returns the degree of residue i (its out-degree if directed), 0 if there's no such node
+	 * @param i
+	 * @return
+	 */
+	public int getDegree(int i) {
+		int k = indexOf(i);
+		if (k<0) return 0;
+		return rowStart[k+1]-rowStart[k];
+	}
+
+	/**
+	 * Returns the ordered residue serials of the neighbours of residue i
+	 * (its successors if directed), an empty array if there's no such node
+	 * @param i
+	 * @return
+	 */
+	public int[] getNeighbors(int i) {
+		int k = indexOf(i);
+		if (k<0) return new int[0];
+		return Arrays.copyOfRange(nbSerials, rowStart[k], rowStart[k+1]);
+	}
+
+	/**
+	 * Returns the ordered residue serials of the common neighbours of residues i and j
+	 * @param i
+	 * @param j
+	 * @return
+	 * @see RIGraph#getCommonNbhood(RIGNode, RIGNode)
+	 */
+	public int[] getCommonNeighbors(int i, int j) {
+		int ki = indexOf(i);
+		int kj = indexOf(j);
+		if (ki<0 || kj<0) return new int[0];
+		int[] common = new int[Math.min(rowStart[ki+1]-rowStart[ki], rowStart[kj+1]-rowStart[kj])];
+		int n = 0;
+		int p = rowStart[ki], q = rowStart[kj];
+		while (p<rowStart[ki+1] && q<rowStart[kj+1]) {
+			if (nbSerials[p]<nbSerials[q]) p++;
+			else if (nbSerials[p]>nbSerials[q]) q++;
+			else {
+				common[n++] = nbSerials[p];
+				p++;
+				q++;
+			}
+		}
+		return Arrays.copyOf(common, n);
+	}
+
+	/**
+	 * Returns the number of common neighbours of residues i and j
+	 * @param i
+	 * @param j
+	 * @return
+	 */
+	public int getCommonNbhSize(int i, int j) {
+		int ki = indexOf(i);
+		int kj = indexOf(j);
+		if (ki<0 || kj<0) return 0;
+		int n = 0;
+		int p = rowStart[ki], q = rowStart[kj];
+		while (p<rowStart[ki+1] && q<rowStart[kj+1]) {
+			if (nbSerials[p]<nbSerials[q]) p++;
+			else if (nbSerials[p]>nbSerials[q]) q++;
+			else {
+				n++;
+				p++;
+				q++;
+			}
+		}
+		return n;
+	}
+
+	/**
+	 * Returns the atom weight (number of atom contacts) of the edge between residues i and j,
+	 * 0 if there's no such edge
+	 * @param i
+	 * @param j
+	 * @return
+	 */
+	public int getAtomWeight(int i, int j) {
+		int p = indexOfEdge(i, j);
+		return p<0?0:atomWeights[p];
+	}
+
+	/**
+	 * Returns the (minimum atom) distance of the edge between residues i and j,
+	 * NaN if there's no such edge or this map has no distances
+	 * @param i
+	 * @param j
+	 * @return
+	 */
+	public float getDistance(int i, int j) {
+		int p = indexOfEdge(i, j);
+		return (p<0 || distances==null)?Float.NaN:distances[p];
+	}
+
+	/**
+	 * Returns the weight of the edge between residues i and j,
+	 * NaN if there's no such edge or this map has no weights
+	 * @param i
+	 * @param j
+	 * @return
+	 */
+	public float getWeight(int i, int j) {
+		int p = indexOfEdge(i, j);
+		return (p<0 || weights==null)?Float.NaN:weights[p];
+	}
+
+	public boolean hasDistances() {
+		return distances!=null;
+	}
+
+	public boolean hasWeights() {
+		return weights!=null;
+	}
+
+	public String getSequence() {
+		return sequence;
+	}
+
+	public void setSequence(String sequence) {
+		this.sequence = sequence;
+	}
+
+	public String getPdbCode() {
+		return pdbCode;
+	}
+
+	public void setPdbCode(String pdbCode) {
+		this.pdbCode = pdbCode;
+	}
+
+	public String getChainCode() {
+		return chainCode;
+	}
+
+	public void setChainCode(String chainCode) {
+		this.chainCode = chainCode;
+	}
+
+	public String getPdbChainCode() {
+		return pdbChainCode;
+	}
+
+	public void setPdbChainCode(String pdbChainCode) {
+		this.pdbChainCode = pdbChainCode;
+	}
+
+	public int getModel() {
+		return model;
+	}
+
+	public void setModel(int model) {
+		this.model = model;
+	}
+
+	public String getContactType() {
+		return contactType;
+	}
+
+	public void setContactType(String contactType) {
+		this.contactType = contactType;
+	}
+
+	public double getCutoff() {
+		return cutoff;
+	}
+
+	public void setCutoff(double cutoff) {
+		this.cutoff = cutoff;
+	}
+
+	public SecondaryStructure getSecondaryStructure() {
+		return secondaryStructure;
+	}
+
+	public void setSecondaryStructure(SecondaryStructure secondaryStructure) {
+		this.secondaryStructure = secondaryStructure;
+	}
+}
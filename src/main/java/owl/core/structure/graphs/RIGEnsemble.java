@@ -10,6 +10,7 @@ import owl.core.structure.CiffileParser;
 import owl.core.structure.PdbChain;
 import owl.core.structure.PdbAsymUnit;
 import owl.core.structure.PdbLoadException;
+import owl.core.structure.PdbLoadOptions;
 import owl.core.structure.PdbfileParser;
 import owl.core.structure.features.SecStrucElement;
 import owl.core.util.FileFormatException;
@@ -250,20 +251,16 @@ public class RIGEnsemble {
 		switch(fileType) {
 		case(FileTypeGuesser.PDB_FILE):
 		case(FileTypeGuesser.RAW_PDB_FILE):
-			PdbfileParser pdbparser = new PdbfileParser(file.getAbsolutePath());
-			models = pdbparser.getModels();
+			// we don't need the chain clusters for the graphs
+			PdbLoadOptions options = new PdbLoadOptions();
+			options.setChainClusters(false);
+			PdbfileParser pdbparser = new PdbfileParser(file.getAbsolutePath(), true, options);
 			chains = pdbparser.getChains();
 			if(chain==null) chain = chains[0];
-			for(int mod: models) {
-				//pdb = new PdbfilePdb(file.getAbsolutePath());
-				PdbAsymUnit fullpdb = null;
-				try {
-					fullpdb = new PdbAsymUnit(file,mod);
-				} catch (FileFormatException e) {
-					// this cannot happen: it happens if the FileTypeGuesser in PdbAsymUnit couldn't guess
-					// but here we are within a FileTypeGuesser case
-					System.err.println(e.getMessage());
-				}
+			// the models are read one after the other in a single pass through the file
+			Iterator<PdbAsymUnit> modelIterator = pdbparser.getModelIterator();
+			while (modelIterator.hasNext()) {
+				PdbAsymUnit fullpdb = modelIterator.next();
 				pdb = fullpdb.getChain(chain);
 				graph = pdb.getRIGraph(this.edgeType, this.distCutoff);
 				this.addRIG(graph);
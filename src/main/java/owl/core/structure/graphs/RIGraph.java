@@ -4,6 +4,7 @@ import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.PrintStream;
+import java.sql.Connection;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
@@ -15,6 +16,7 @@ import java.util.HashMap;
 import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.Locale;
+import java.util.Map;
 import java.util.Random;
 import java.util.TreeMap;
 import java.util.TreeSet;
@@ -215,21 +217,13 @@ public class RIGraph extends ProtStructGraph<RIGNode,RIGEdge> {
 	 * @return
 	 */
 	public HashMap<Pair<Integer>,Integer> getAllCommonNbhSizes() {
+		int[][] sizes = new GraphAdjacency(this).getAllCommonNbhSizes();
 		HashMap<Pair<Integer>,Integer> comNbhSizes = new HashMap<Pair<Integer>, Integer>();
 		boolean directed = this.isDirected();
-		for (RIGNode n1:this.getVertices()) {
-			for (RIGNode n2:this.getVertices()) {
-				if (directed) {
-					if (n1!=n2) {
-						int size = getCommonNbhood(n1, n2).size();
-						if (size>0) comNbhSizes.put(new Pair<Integer>(n1.getResidueSerial(),n2.getResidueSerial()),size);					
-					}					
-				} else {
-					if (n1.getResidueSerial()<n2.getResidueSerial()) {
-						int size = getCommonNbhood(n1, n2).size();
-						if (size>0) comNbhSizes.put(new Pair<Integer>(n1.getResidueSerial(),n2.getResidueSerial()),size);					
-					}
-				}
+		for (int p=0;p<sizes[0].length;p++) {
+			comNbhSizes.put(new Pair<Integer>(sizes[0][p],sizes[1][p]),sizes[2][p]);
+			if (directed) {
+				comNbhSizes.put(new Pair<Integer>(sizes[1][p],sizes[0][p]),sizes[2][p]);
 			}
 		}
 		return comNbhSizes;
@@ -386,12 +380,91 @@ public class RIGraph extends ProtStructGraph<RIGNode,RIGEdge> {
 	/**
 	 * Evaluate this graph (assuming it is a prediction) against an original graph,
 	 * considering only edges with sequence separation at least minSeqSep.
+	 * The contacts are counted on {@link RIGBitMatrix}es of both graphs.
 	 * @param originalGraph
 	 * @param minSeqSep
 	 * @return
 	 */
 	public GraphComparisonResult evaluatePrediction(RIGraph originalGraph, int minSeqSep) {
 		
+		int size = getBitMatrixSize(originalGraph);
+		if (size<0) {
+			return evaluatePredictionByEdges(originalGraph, minSeqSep);
+		}
+		RIGBitMatrix predictedBits = this.getBitMatrix(size);
+		RIGBitMatrix origBits = originalGraph.getBitMatrix(size);
+		if (predictedBits==null || origBits==null) {
+			return evaluatePredictionByEdges(originalGraph, minSeqSep);
+		}
+		
+		int predicted = predictedBits.getEdgeCount(minSeqSep);
+		int original = origBits.getEdgeCount(minSeqSep);
+		int cmtotal = getContactMapTotal(originalGraph, minSeqSep);
+		
+		int TruePos = predictedBits.getCommonEdgeCount(origBits, minSeqSep);
+		int FalsePos = predicted-TruePos;
+		int FalseNeg = original-TruePos;
+		int TrueNeg = cmtotal-TruePos-FalsePos-FalseNeg;
+		return new GraphComparisonResult(TruePos,FalsePos,TrueNeg,FalseNeg,0,predicted,original,cmtotal);
+	}
+	
+	/**
+	 * Returns the total size of the contact map of the given graph (potential contacts) with
+	 * sequence separation at least minSeqSep
+	 */
+	private static int getContactMapTotal(RIGraph originalGraph, int minSeqSep) {
+		if (originalGraph.isDirected()){
+			return (originalGraph.getFullLength()-(minSeqSep-1))*(originalGraph.getFullLength()-minSeqSep);
+		} else {
+			return (int)(((originalGraph.getFullLength()-(minSeqSep-1))*(originalGraph.getFullLength()-minSeqSep))/2);
+		}
+	}
+	
+	/**
+	 * Returns the size of the {@link RIGBitMatrix}es to compare this graph with the other one, 
+	 * or -1 if they can't be compared as RIGBitMatrixes: if their directionality is different 
+	 * (then the order of the edge ends matters) or if they have residue serials below 1.
+	 * @param other
+	 * @return
+	 */
+	private int getBitMatrixSize(RIGraph other) {
+		if (this.isDirected()!=other.isDirected()) return -1;
+		int size = Math.max(this.getFullLength(), other.getFullLength());
+		for (RIGraph graph:new RIGraph[]{this, other}) {
+			if (graph.getVertexCount()==0) continue;
+			if (graph.getFirstResidueSerial()<1) return -1;
+			size = Math.max(size, graph.getLastResidueSerial());
+		}
+		return size;
+	}
+	
+	/**
+	 * Returns the edges of this graph as a {@link RIGBitMatrix} of the given size, 
+	 * or null if this graph has loops (which can't be in a RIGBitMatrix)
+	 * @param size
+	 * @return
+	 */
+	private RIGBitMatrix getBitMatrix(int size) {
+		RIGBitMatrix bits = new RIGBitMatrix(size, this.isDirected());
+		for (RIGEdge edge:this.getEdges()) {
+			Pair<RIGNode> pair = this.getEndpoints(edge);
+			int i = pair.getFirst().getResidueSerial();
+			int j = pair.getSecond().getResidueSerial();
+			if (i==j) return null;
+			bits.addEdgeIJ(i, j);
+		}
+		return bits;
+	}
+	
+	/**
+	 * Evaluates this graph against an original graph edge by edge, for graphs that can't 
+	 * be compared as RIGBitMatrixes, see {@link #evaluatePrediction(RIGraph, int)}
+	 * @param originalGraph
+	 * @param minSeqSep
+	 * @return
+	 */
+	private GraphComparisonResult evaluatePredictionByEdges(RIGraph originalGraph, int minSeqSep) {
+		
 		Collection<RIGEdge> predictedContacts = this.getEdges();
 		Collection<RIGEdge> origContacts = originalGraph.getEdges();
 		// total predicted contacts
@@ -411,12 +484,7 @@ public class RIGraph extends ProtStructGraph<RIGNode,RIGEdge> {
 		}		
 				
 		// total size of contact map (potential contacts)
-		int cmtotal = 0;
-		if (originalGraph.isDirected()){
-			cmtotal = (originalGraph.getFullLength()-(minSeqSep-1))*(originalGraph.getFullLength()-minSeqSep);
-		} else {
-			cmtotal = (int)(((originalGraph.getFullLength()-(minSeqSep-1))*(originalGraph.getFullLength()-minSeqSep))/2);
-		}
+		int cmtotal = getContactMapTotal(originalGraph, minSeqSep);
 		int TruePos=0, FalsePos=0, TrueNeg=0, FalseNeg=0;
 		
 		// directed/ non-directed graphs should be both fine with this code 
@@ -455,18 +523,18 @@ public class RIGraph extends ProtStructGraph<RIGNode,RIGEdge> {
 	}
 	
 	/**
-	 * Write graph to given db, using our db graph format, 
-	 * i.e. tables: chain_graph, single_model_graph, single_model_node, single_model_edge
+	 * Writes the graph info of this graph to given db, using our db graph format:
+	 * to chain_graph (or scop_graph if this graph is restricted to a SCOP domain) if not there yet
+	 * and to single_model_graph.
 	 * @param conn
 	 * @param db
 	 * @param weighted whether atom weights will be used or not
+	 * @param singleModelIds a cache of the single_model_ids (per query) looked up in the single models db, 
+	 * if null they are always looked up
+	 * @return the graph_id assigned in single_model_graph
 	 * @throws SQLException
 	 */
-	public void writeToDb(MySQLConnection conn, String db, boolean weighted) throws SQLException{
-		//TODO we might want to move this to a graph i/o class
-		//TODO Get rid of this and only keep fast one??
-		
-		HashMap<Integer,Integer> resser2nodeid = new HashMap<Integer,Integer>();
+	int writeGraphInfoToDb(Connection conn, String db, boolean weighted, Map<String,Integer> singleModelIds) throws SQLException {
 		// values we fix to constant 
 		String CW = "1";
 		String CR = "(true)";
@@ -544,11 +612,16 @@ public class RIGraph extends ProtStructGraph<RIGNode,RIGEdge> {
 		sql = "SELECT single_model_id FROM "+singleModelsDb+".single_model WHERE "+
 				" dist="+distCutoff+" AND expBB="+EXPBB+" AND CW='"+CW+"' AND CT='"+ctStr+"' AND CR='"+CR+ "' "+
 				(singleModelsDb.equals(DEFAULT_SINGLEMODELS_DB)?"":("AND d="+directedStr))+";";
-		rsst = stmt.executeQuery(sql);
-		if (rsst.next()){
-			singlemodelid = rsst.getInt(1);
+		if (singleModelIds!=null && singleModelIds.containsKey(sql)) {
+			singlemodelid = singleModelIds.get(sql);
+		} else {
+			rsst = stmt.executeQuery(sql);
+			if (rsst.next()){
+				singlemodelid = rsst.getInt(1);
+			}
+			rsst.close();
+			if (singleModelIds!=null) singleModelIds.put(sql, singlemodelid);
 		}
-		rsst.close();
 		// and then insert to single_model_graph
 		sql = "INSERT INTO "+db+".single_model_graph (pgraph_id,graph_type,accession_code,single_model_id,dist,expBB,CW,CT,CR,w,d,num_nodes,date) " +
 				" VALUES ("+pgraphid+", '"+((sid==null)?"chain":"scop")+"', '"+pdbCode+"', "+singlemodelid+", "+distCutoff+", "+EXPBB+", '"+CW+"','"+ctStr+"', '"+CR+"', "+weightedStr+", "+directedStr+", "+getObsLength()+", now())";
@@ -561,6 +634,26 @@ public class RIGraph extends ProtStructGraph<RIGNode,RIGEdge> {
 		}
 		rsst.close();
 		stmt.close();
+		return graphid;
+	}
+	
+	/**
+	 * Write graph to given db, using our db graph format, 
+	 * i.e. tables: chain_graph, single_model_graph, single_model_node, single_model_edge
+	 * @param conn
+	 * @param db
+	 * @param weighted whether atom weights will be used or not
+	 * @throws SQLException
+	 */
+	public void writeToDb(MySQLConnection conn, String db, boolean weighted) throws SQLException{
+		//TODO we might want to move this to a graph i/o class
+		//TODO Get rid of this and only keep fast one??
+		
+		HashMap<Integer,Integer> resser2nodeid = new HashMap<Integer,Integer>();
+		int graphid = writeGraphInfoToDb(conn.getConnectionObject(), db, weighted, null);
+		String sql;
+		Statement stmt;
+		ResultSet rsst;
 		
 		// inserting nodes
 		stmt = conn.createStatement();
@@ -714,99 +807,10 @@ public class RIGraph extends ProtStructGraph<RIGNode,RIGEdge> {
 		
 		HashMap<Integer,Integer> resser2nodeid = new HashMap<Integer,Integer>();
 		
-		// values we fix to constant 
-		String CW = "1";
-		String CR = "(true)";
-		String EXPBB = "0";
-		String ctStr = contactType;
-		String weightedStr = "0";
-		String directedStr = isDirected()?"1":"0";
-		
-		if (contactType.contains("_CAGLY")) {
-			ctStr = contactType.replaceAll("_CAGLY", "");
-		}
-		if (ctStr.equals("ALL")) {
-			ctStr = "BB+SC+BB/SC";
-		}
-		if (ContactType.isValidMultiAtomContactType(contactType, isDirected()) && weighted) {
-			CW = ctStr;
-			weightedStr = "1";
-		}
-		if (contactType.contains("_CAGLY") || contactType.contains("Cb")) {
-			EXPBB = "-1";
-		}
-		if (minSeqSep != -1) {
-			CR = "((i_cid!=j_cid)OR(abs(i_num-j_num)>="+minSeqSep+"))";
-		} else if (interSSE) {
-			CR = "((i_sstype!=j_sstype)OR(i_ssid!=j_ssid))";
-		}
-				
-		int pgraphid=0;
-		int graphid=0;
-		String sql;		
-		if (sid==null) {
-			sql = "SELECT graph_id FROM "+db+".chain_graph " +
-					" WHERE accession_code='"+pdbCode+"' AND pchain_code='"+chainCode+"'" +
-					" AND model_serial = "+model+" AND dist = "+distCutoff+" AND expBB = "+EXPBB+ 
-					" AND method = 'rc-cutoff';";
-		} else {
-			sql = "SELECT graph_id FROM "+db+".scop_graph " +
-					" WHERE scop_id = '"+sid+"' "+
-					" AND model_serial = "+model+" AND dist = "+distCutoff+" AND expBB = "+EXPBB+ 
-					" AND method = 'rc-cutoff';";			
-		}		
-		Statement stmt = conn.createStatement();
-		ResultSet rsst = stmt.executeQuery(sql);
-		if (rsst.next()){	// if the pdbCode + chainCode were already in chain_graph then we take the graph_id as the pgraphid
-			pgraphid = rsst.getInt(1);
-		} else {			// no pdbCode + chainCode found, we insert them in chain_graph, thus assigning a new graph_id (pgraphid)
-			// we are inserting same number for num_obs_res and num_nodes (the difference would be the non-standard aas, but we can't get that number from this object at the moment)
-			String pdbChainCodeStr = "'"+pdbChainCode+"'";
-			if (pdbChainCode.equals(PdbAsymUnit.NULL_CHAIN_CODE)) {
-				pdbChainCodeStr="NULL";
-			}
-			if (sid==null) {
-				sql = "INSERT INTO "+db+".chain_graph (accession_code,chain_pdb_code,pchain_code,model_serial,dist,expBB,method,num_res,num_obs_res,num_nodes,sses,date) " +
-						"VALUES ('"+pdbCode+"', "+pdbChainCodeStr+",'"+chainCode+"', "+model+", "+distCutoff+", "+EXPBB+", 'rc-cutoff', "+getFullLength()+", "+getObsLength()+", "+getObsLength()+", "+((secondaryStructure!=null)?secondaryStructure.getNumElements():0)+", now())";
-			} else {
-				sql = "INSERT INTO "+db+".scop_graph (scop_id,accession_code,chain_pdb_code,pchain_code,model_serial,dist,expBB,method,num_res,num_obs_res,num_nodes,sses,date) " +
-						"VALUES ('"+sid+"', '"+pdbCode+"', "+pdbChainCodeStr+",'"+chainCode+"', "+model+", "+distCutoff+", "+EXPBB+", 'rc-cutoff', "+getFullLength()+", "+getObsLength()+", "+getObsLength()+", "+((secondaryStructure!=null)?secondaryStructure.getNumElements():0)+", now())";				
-			}
-			Statement stmt2 = conn.createStatement();
-			stmt2.executeUpdate(sql);
-			// now we take the newly assigned graph_id as pgraphid
-			sql = "SELECT LAST_INSERT_ID() FROM "+db+"."+((sid==null)?"chain":"scop")+"_graph LIMIT 1";
-			ResultSet rsst2 = stmt2.executeQuery(sql);
-			if (rsst2.next()){
-				pgraphid = rsst2.getInt(1);
-			}
-			stmt2.close();
-			rsst2.close();
-		}
-		rsst.close();
-		// now we insert the graph info into single_model_graph
-		// 1st we grab the single_model_id
-		int singlemodelid = 0;
-		sql = "SELECT single_model_id FROM "+singleModelsDb+".single_model WHERE "+
-				" dist="+distCutoff+" AND expBB="+EXPBB+" AND CW='"+CW+"' AND CT='"+ctStr+"' AND CR='"+CR+ "' "+
-				(singleModelsDb.equals(DEFAULT_SINGLEMODELS_DB)?"":("AND d="+directedStr))+";";
-		rsst = stmt.executeQuery(sql);
-		if (rsst.next()){
-			singlemodelid = rsst.getInt(1);
-		}
-		rsst.close();
-		// and then insert to single_model_graph
-		sql = "INSERT INTO "+db+".single_model_graph (pgraph_id,graph_type,accession_code,single_model_id,dist,expBB,CW,CT,CR,w,d,num_nodes,date) " +
-				" VALUES ("+pgraphid+", '"+((sid==null)?"chain":"scop")+"', '"+pdbCode+"', "+singlemodelid+", "+distCutoff+", "+EXPBB+", '"+CW+"','"+ctStr+"', '"+CR+"', "+weightedStr+", "+directedStr+", "+getObsLength()+", now())";
-		stmt.executeUpdate(sql);
-		// and we grab the graph_id just assigned in single_model_graph
-		sql = "SELECT LAST_INSERT_ID() FROM "+db+".single_model_graph LIMIT 1";
-		rsst = stmt.executeQuery(sql);
-		if (rsst.next()){
-			graphid = rsst.getInt(1);
-		}
-		rsst.close();
-		stmt.close();
+		int graphid = writeGraphInfoToDb(conn.getConnectionObject(), db, weighted, null);
+		String sql;
+		Statement stmt;
+		ResultSet rsst;
 		
 		// inserting nodes
 		PrintStream nodesOut = new PrintStream(new FileOutputStream(graphid+"_nodes.txt"));
@@ -956,7 +960,7 @@ public class RIGraph extends ProtStructGraph<RIGNode,RIGEdge> {
 	 * @throws IOException
 	 */
 	public void writeToDbFast(MySQLConnection conn, String db) throws SQLException, IOException {
-		writeToDb(conn, db, true);
+		writeToDbFast(conn, db, true);
 	}
 	
 	/**
@@ -1182,6 +1186,24 @@ public class RIGraph extends ProtStructGraph<RIGNode,RIGEdge> {
 		//NOTE: the common graph will have same node/edge properties as this graph, 
 		//      which doesn't make a lot of sense, but anyway one has to choose between this or other, 
 		//      or otherwise make some kind of merge, e.g. merge the weights by averaging? 
+		HashMap<String,RIGraph> result = new HashMap<String,RIGraph>();
+
+		int size = getBitMatrixSize(other);
+		RIGBitMatrix thisBits = size<0?null:this.getBitMatrix(size);
+		RIGBitMatrix otherBits = size<0?null:other.getBitMatrix(size);
+		if (thisBits!=null && otherBits!=null) {
+			RIGBitMatrix common = thisBits.copy();
+			common.and(otherBits);
+			RIGBitMatrix onlyThis = thisBits.copy();
+			onlyThis.andNot(otherBits);
+			RIGBitMatrix onlyOther = otherBits;
+			onlyOther.andNot(thisBits);
+			result.put("common", this.copy(common));
+			result.put("onlythis", this.copy(onlyThis));
+			result.put("onlyother", other.copy(onlyOther));
+			return result;
+		}
+		
 		RIGraph commongraph = this.copy(); 
 		RIGraph onlythisgraph = this.copy();
 		RIGraph onlyothergraph = other.copy();
@@ -1198,7 +1220,6 @@ public class RIGraph extends ProtStructGraph<RIGNode,RIGEdge> {
 			}
 		}
 
-		HashMap<String,RIGraph> result = new HashMap<String,RIGraph>();
 		result.put("common", commongraph);
 		result.put("onlythis", onlythisgraph);
 		result.put("onlyother",onlyothergraph);
@@ -1218,6 +1239,13 @@ public class RIGraph extends ProtStructGraph<RIGNode,RIGEdge> {
 			return commonEdges;
 		}
 		
+		int size = getBitMatrixSize(other);
+		RIGBitMatrix thisBits = size<0?null:this.getBitMatrix(size);
+		RIGBitMatrix otherBits = size<0?null:other.getBitMatrix(size);
+		if (thisBits!=null && otherBits!=null) {
+			return thisBits.getCommonEdgeCount(otherBits, 1);
+		}
+		
 		for (RIGEdge cont:this.getEdges()){
 			Pair<RIGNode> pair = this.getEndpoints(cont);
 			int i_resser = pair.getFirst().getResidueSerial();
@@ -1235,6 +1263,16 @@ public class RIGraph extends ProtStructGraph<RIGNode,RIGEdge> {
 	 * @return
 	 */
 	public RIGraph copy() {
+		return copy(null);
+	}
+	
+	/**
+	 * Returns a copy of this graph with only the edges that are in the given contact map
+	 * (all edges if null).
+	 * @param edgesToCopy
+	 * @return
+	 */
+	private RIGraph copy(RIGBitMatrix edgesToCopy) {
 		RIGraph newGraph = new RIGraph();
 		newGraph.setPdbCode(pdbCode);
 		newGraph.setPdbChainCode(pdbChainCode);
@@ -1259,6 +1297,7 @@ public class RIGraph extends ProtStructGraph<RIGNode,RIGEdge> {
 			Pair<RIGNode> pair = this.getEndpoints(edge);
 			int i_resser = pair.getFirst().getResidueSerial();
 			int j_resser = pair.getSecond().getResidueSerial();
+			if (edgesToCopy!=null && !edgesToCopy.containsEdgeIJ(i_resser, j_resser)) continue;
 			// EdgeType enum should copy correctly because enums are treated as ints in copying (always deep copied)
 			newGraph.addEdge(edge.copy(), newGraph.getNodeFromSerial(i_resser), newGraph.getNodeFromSerial(j_resser), this.getEdgeType(edge));
 		}
@@ -0,0 +1,529 @@
+package owl.core.structure.graphs;
+
+import java.io.ByteArrayInputStream;
+import java.io.UnsupportedEncodingException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Savepoint;
+import java.sql.Statement;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+import owl.core.structure.AminoAcid;
+import owl.core.structure.features.SecStrucElement;
+import owl.core.util.MySQLConnection;
+
+import edu.uci.ics.jung.graph.util.Pair;
+
+/**
+ * Writes RIGraphs to a graph database in our db graph format, i.e. tables chain_graph
+ * (or scop_graph), single_model_graph, single_model_node and single_model_edge, with the
+ * same contents as {@link RIGraph#writeToDb(MySQLConnection, String, boolean)}.
+ *
+ * Instead of one statement per node and edge, the nodes and edges of each graph are written
+ * with multi-row INSERTs of up to {@link #setRowsPerInsert(int)} rows each (edge INSERTs are
+ * sent as one JDBC batch) or, if {@link #setUseLoadDataStreams(boolean)} is set, with
+ * LOAD DATA LOCAL INFILE statements reading from an in-memory stream (MySQL driver only).
+ * The graphs are written in transactions of {@link #setGraphsPerTransaction(int)} graphs:
+ * call {@link #close()} (or {@link #commit()}) when done to commit the last ones.
+ * If the writing of a graph fails, only that graph is rolled back (to a savepoint set
+ * before it): the graphs written since the last commit are kept. They are discarded only if
+ * the commit itself fails.
+ */
+public class RIGraphDbWriter {
+
+	public static final int DEFAULT_ROWS_PER_INSERT = 500;
+	public static final int DEFAULT_GRAPHS_PER_TRANSACTION = 100;
+
+	private static final String NODE_TABLE = "single_model_node";
+	private static final String NODE_COLUMNS =
+		"graph_id, cid, num, res, sstype, ssid, sheet_serial, turn, k, k_in, k_out, n, nwg, n_num";
+	private static final String EDGE_TABLE = "single_model_edge";
+	private static final String EDGE_COLUMNS =
+		"graph_id, i_node_id, i_cid, i_num, i_res, i_sstype, i_ssid, i_sheet_serial, i_turn, "+
+		"j_node_id, j_cid, j_num, j_res, j_sstype, j_ssid, j_sheet_serial, j_turn, weight, norm_weight, distance";
+
+	private Connection conn;
+	private String db;
+
+	private int rowsPerInsert;
+	private int graphsPerTransaction;
+	private boolean useLoadDataStreams;
+
+	private HashMap<String,Integer> singleModelIds;		// the single_model_ids already looked up, per query
+	private HashMap<String,PreparedStatement> inserts;	// the prepared INSERTs of rowsPerInsert rows, per table
+
+	private boolean inTransaction;
+	private boolean autoCommit;		// the auto commit mode of the connection before our first transaction
+	private int numPendingGraphs;	// the number of graphs written since the last commit
+
+	/**
+	 * Constructs a RIGraphDbWriter writing to the given db through the given connection
+	 * @param conn
+	 * @param db
+	 */
+	public RIGraphDbWriter(MySQLConnection conn, String db) {
+		this(conn.getConnectionObject(), db);
+	}
+
+	/**
+	 * Constructs a RIGraphDbWriter writing to the given db through the given JDBC connection
+	 * @param conn
+	 * @param db
+	 */
+	public RIGraphDbWriter(Connection conn, String db) {
+		this.conn = conn;
+		this.db = db;
+		this.rowsPerInsert = DEFAULT_ROWS_PER_INSERT;
+		this.graphsPerTransaction = DEFAULT_GRAPHS_PER_TRANSACTION;
+		this.useLoadDataStreams = false;
+		this.singleModelIds = new HashMap<String, Integer>();
+		this.inserts = new HashMap<String, PreparedStatement>();
+		this.inTransaction = false;
+		this.numPendingGraphs = 0;
+	}
+
+	/**
+	 * Sets the maximum number of rows written by each INSERT statement. Default {@value #DEFAULT_ROWS_PER_INSERT}
+	 * @param rowsPerInsert
+	 * @throws IllegalArgumentException if rowsPerInsert is smaller than 1
+	 */
+	public void setRowsPerInsert(int rowsPerInsert) {
+		if (rowsPerInsert<1) {
+			throw new IllegalArgumentException("Rows per insert must be at least 1");
+		}
+		closeInserts();
+		this.rowsPerInsert = rowsPerInsert;
+	}
+
+	/**
+	 * Sets the number of graphs written in each transaction. Default {@value #DEFAULT_GRAPHS_PER_TRANSACTION}
+	 * @param graphsPerTransaction
+	 * @throws IllegalArgumentException if graphsPerTransaction is smaller than 1
+	 */
+	public void setGraphsPerTransaction(int graphsPerTransaction) {
+		if (graphsPerTransaction<1) {
+			throw new IllegalArgumentException("Graphs per transaction must be at least 1");
+		}
+		this.graphsPerTransaction = graphsPerTransaction;
+	}
+
+	/**
+	 * Sets whether the nodes and edges are written with LOAD DATA LOCAL INFILE statements reading
+	 * from in-memory streams instead of INSERTs. This needs a connection of the MySQL driver with
+	 * local infile allowed by the server. Default false.
+	 * @param useLoadDataStreams
+	 */
+	public void setUseLoadDataStreams(boolean useLoadDataStreams) {
+		this.useLoadDataStreams = useLoadDataStreams;
+	}
+
+	/**
+	 * Returns the number of graphs written since the last commit
+	 * @return
+	 */
+	public int getNumPendingGraphs() {
+		return numPendingGraphs;
+	}
+
+	/**
+	 * Writes the given graph using atom weights.
+	 * @param graph
+	 * @throws SQLException
+	 * @see #write(RIGraph, boolean)
+	 */
+	public void write(RIGraph graph) throws SQLException {
+		write(graph, true);
+	}
+
+	/**
+	 * Writes the given graph. The transaction is committed if it reaches the number of
+	 * graphs per transaction.
+	 * @param graph
+	 * @param weighted whether atom weights will be used or not
+	 * @throws SQLException if the writing fails, after rolling back this graph, or if the
+	 * commit fails, after rolling back all graphs written since the last commit
+	 */
+	public void write(RIGraph graph, boolean weighted) throws SQLException {
+		if (!inTransaction) {
+			autoCommit = conn.getAutoCommit();
+			if (autoCommit) conn.setAutoCommit(false);
+			inTransaction = true;
+		}
+		Savepoint savepoint = conn.setSavepoint();
+		try {
+			int graphId = graph.writeGraphInfoToDb(conn, db, weighted, singleModelIds);
+
+			int[] serials = new int[graph.getVertexCount()];
+			List<Object[]> nodeRows = getNodeRows(graph, graphId, serials);
+			int[] nodeIds;
+			if (useLoadDataStreams) {
+				loadData(NODE_TABLE, NODE_COLUMNS, nodeRows);
+				nodeIds = new int[nodeRows.size()];
+				int firstNodeId = getLastInsertId();
+				for (int k=0;k<nodeIds.length;k++) {
+					nodeIds[k] = firstNodeId+k;
+				}
+			} else {
+				nodeIds = insert(NODE_TABLE, NODE_COLUMNS, nodeRows, true);
+			}
+			HashMap<Integer,Integer> resser2nodeid = new HashMap<Integer,Integer>();
+			for (int k=0;k<serials.length;k++) {
+				resser2nodeid.put(serials[k], nodeIds[k]);
+			}
+
+			List<Object[]> edgeRows = getEdgeRows(graph, graphId, weighted, resser2nodeid);
+			if (useLoadDataStreams) {
+				loadData(EDGE_TABLE, EDGE_COLUMNS, edgeRows);
+			} else {
+				insert(EDGE_TABLE, EDGE_COLUMNS, edgeRows, false);
+			}
+		} catch (SQLException e) {
+			rollback(savepoint);
+			throw e;
+		}
+		// the savepoints are released with the commit
+		numPendingGraphs++;
+		if (numPendingGraphs>=graphsPerTransaction) {
+			commit();
+		}
+	}
+
+	/**
+	 * Commits the graphs written since the last commit
+	 * @throws SQLException if the commit fails, after rolling back the graphs written since the last commit
+	 */
+	public void commit() throws SQLException {
+		if (inTransaction) {
+			try {
+				conn.commit();
+			} catch (SQLException e) {
+				int numLost = numPendingGraphs;
+				rollback();
+				SQLException ex = new SQLException("Couldn't commit the last "+numLost+" graphs, they were rolled back: "+e.getMessage());
+				ex.initCause(e);
+				throw ex;
+			}
+		}
+		numPendingGraphs = 0;
+	}
+
+	/**
+	 * Rolls back the graph being written: its rows are discarded but the pending graphs are kept.
+	 * If the savepoint can't be rolled back to, the whole transaction is rolled back.
+	 */
+	private void rollback(Savepoint savepoint) {
+		// the batched rows of a failed graph must not be sent with the next one
+		clearInserts();
+		try {
+			conn.rollback(savepoint);
+		} catch (SQLException e) {
+			System.err.println("Couldn't roll back graph to savepoint, rolling back the last "+numPendingGraphs+" graphs: "+e.getMessage());
+			rollback();
+		}
+	}
+
+	private void rollback() {
+		try {
+			conn.rollback();
+		} catch (SQLException e) {
+			System.err.println("Couldn't roll back graphs transaction: "+e.getMessage());
+		}
+		numPendingGraphs = 0;
+	}
+
+	/**
+	 * Commits the graphs written since the last commit, restores the auto commit mode of the
+	 * connection and releases the prepared statements. The connection is not closed.
+	 * @throws SQLException
+	 */
+	public void close() throws SQLException {
+		try {
+			commit();
+			if (inTransaction && autoCommit) {
+				conn.setAutoCommit(true);
+			}
+			inTransaction = false;
+		} finally {
+			closeInserts();
+		}
+	}
+
+	private void clearInserts() {
+		for (PreparedStatement ps:inserts.values()) {
+			try {
+				ps.clearBatch();
+				ps.clearParameters();
+			} catch (SQLException e) {
+				// the statement can't be reused: it will be prepared again
+				closeInserts();
+				return;
+			}
+		}
+	}
+
+	private void closeInserts() {
+		for (PreparedStatement ps:inserts.values()) {
+			try {
+				ps.close();
+			} catch (SQLException e) {
+				// nothing to do: the statement is not used anymore
+			}
+		}
+		inserts.clear();
+	}
+
+	/**
+	 * Returns the rows for single_model_node of the given graph (columns as {@link #NODE_COLUMNS}),
+	 * in order of residue serials, which are written to serials
+	 */
+	private static List<Object[]> getNodeRows(RIGraph graph, int graphId, int[] serials) {
+		List<Object[]> rows = new ArrayList<Object[]>(graph.getVertexCount());
+		String chainCode = graph.getChainCode();
+		boolean directed = graph.isDirected();
+		for (int resser:graph.getSerials()) {
+			RIGNode node = graph.getNodeFromSerial(resser);
+			serials[rows.size()] = resser;
+			RIGNbhood nbh = graph.getNbhood(node);
+			Object[] ssCols = getSecStrucColumns(node);
+			Integer k, kIn = null, kOut = null;
+			if (directed) { // we insert k(=k_in+k_out), k_in and k_out
+				kIn = graph.inDegree(node);
+				kOut = graph.outDegree(node);
+				k = kIn+kOut;
+			} else {		// we insert k (and no k_in or k_out)
+				k = graph.degree(node);
+			}
+			rows.add(new Object[] {graphId, chainCode, resser, Character.toString(AminoAcid.three2one(node.getResidueType())),
+					ssCols[0], ssCols[1], ssCols[2], ssCols[3],
+					k, kIn, kOut,
+					nbh.getMotifNoGaps(), nbh.getMotif(), nbh.getCommaSeparatedResSerials()});
+		}
+		return rows;
+	}
+
+	/**
+	 * Returns the rows for single_model_edge of the given graph (columns as {@link #EDGE_COLUMNS}).
+	 * Undirected edges are written in both directions.
+	 */
+	private static List<Object[]> getEdgeRows(RIGraph graph, int graphId, boolean weighted, HashMap<Integer,Integer> resser2nodeid) {
+		boolean directed = graph.isDirected();
+		List<Object[]> rows = new ArrayList<Object[]>(directed?graph.getEdgeCount():2*graph.getEdgeCount());
+		String chainCode = graph.getChainCode();
+		double maxWeight = 0;
+		if (weighted) {
+			for (RIGEdge cont:graph.getEdges()) {
+				maxWeight = (maxWeight<cont.getAtomWeight())?cont.getAtomWeight():maxWeight;
+			}
+		} else {
+			maxWeight = 1;
+		}
+		for (RIGEdge cont:graph.getEdges()) {
+			Pair<RIGNode> pair = graph.getEndpoints(cont);
+			Object[] iCols = getEdgeEndColumns(pair.getFirst(), chainCode, resser2nodeid);
+			Object[] jCols = getEdgeEndColumns(pair.getSecond(), chainCode, resser2nodeid);
+			Object weight = weighted?cont.getAtomWeight():1;
+			Object normWeight = weighted?(cont.getAtomWeight()/maxWeight):1;
+			rows.add(getEdgeRow(graphId, iCols, jCols, weight, normWeight, cont.getDistance()));
+			if (!directed) { // we want both side of the matrix in the table to follow Ioannis' convention
+				rows.add(getEdgeRow(graphId, jCols, iCols, weight, normWeight, cont.getDistance()));
+			}
+		}
+		return rows;
+	}
+
+	private static Object[] getEdgeRow(int graphId, Object[] iCols, Object[] jCols, Object weight, Object normWeight, double distance) {
+		Object[] row = new Object[1+iCols.length+jCols.length+3];
+		row[0] = graphId;
+		System.arraycopy(iCols, 0, row, 1, iCols.length);
+		System.arraycopy(jCols, 0, row, 1+iCols.length, jCols.length);
+		row[row.length-3] = weight;
+		row[row.length-2] = normWeight;
+		row[row.length-1] = distance;
+		return row;
+	}
+
+	/**
+	 * Returns the node id, cid, num, res, sstype, ssid, sheet_serial and turn columns of an edge end
+	 */
+	private static Object[] getEdgeEndColumns(RIGNode node, String chainCode, HashMap<Integer,Integer> resser2nodeid) {
+		Object[] ssCols = getSecStrucColumns(node);
+		return new Object[] {resser2nodeid.get(node.getResidueSerial()), chainCode, node.getResidueSerial(),
+				Character.toString(AminoAcid.three2one(node.getResidueType())), ssCols[0], ssCols[1], ssCols[2], ssCols[3]};
+	}
+
+	/**
+	 * Returns the sstype, ssid, sheet_serial and turn columns of a node (null if no secondary structure)
+	 */
+	private static Object[] getSecStrucColumns(RIGNode node) {
+		Object[] cols = new Object[4];
+		SecStrucElement sselem = node.getSecStrucElement();
+		if (sselem!=null){
+			cols[0] = Character.toString(sselem.getType());
+			cols[1] = sselem.getId();
+			char sheetSerialChar = sselem.getSheetSerial();
+			if (sheetSerialChar != 0) {
+				cols[2] = Character.toString(sheetSerialChar);
+			}
+			cols[3] = sselem.isTurn()?1:0;
+		}
+		return cols;
+	}
+
+	/**
+	 * Writes the given rows to the given table with multi-row INSERTs
+	 * @return the generated (auto increment) ids of the rows if returnIds is true, null otherwise
+	 */
+	private int[] insert(String table, String columns, List<Object[]> rows, boolean returnIds) throws SQLException {
+		int[] ids = returnIds?new int[rows.size()]:null;
+		int numBatched = 0;
+		PreparedStatement fullInsert = null;
+		for (int from=0;from<rows.size();from+=rowsPerInsert) {
+			int to = Math.min(from+rowsPerInsert, rows.size());
+			PreparedStatement ps;
+			if (to-from==rowsPerInsert) {
+				fullInsert = getFullInsert(table, columns, rows.get(0).length);
+				ps = fullInsert;
+			} else {
+				ps = conn.prepareStatement(getInsertSql(table, columns, rows.get(0).length, to-from),
+						returnIds?Statement.RETURN_GENERATED_KEYS:Statement.NO_GENERATED_KEYS);
+			}
+			int index = 1;
+			for (int r=from;r<to;r++) {
+				for (Object value:rows.get(r)) {
+					if (value==null) {
+						ps.setNull(index++, Types.NULL);
+					} else {
+						ps.setObject(index++, value);
+					}
+				}
+			}
+			if (ps!=fullInsert) {
+				try {
+					ps.executeUpdate();
+					if (returnIds) readIds(ps, ids, from, to);
+				} finally {
+					ps.close();
+				}
+			} else if (returnIds) {
+				ps.executeUpdate();
+				readIds(ps, ids, from, to);
+			} else {
+				ps.addBatch();
+				numBatched++;
+			}
+		}
+		if (numBatched>0) {
+			fullInsert.executeBatch();
+		}
+		return ids;
+	}
+
+	/**
+	 * Returns the (cached) prepared INSERT of rowsPerInsert rows for the given table
+	 */
+	private PreparedStatement getFullInsert(String table, String columns, int numColumns) throws SQLException {
+		PreparedStatement ps = inserts.get(table);
+		if (ps==null) {
+			ps = conn.prepareStatement(getInsertSql(table, columns, numColumns, rowsPerInsert),
+					table.equals(NODE_TABLE)?Statement.RETURN_GENERATED_KEYS:Statement.NO_GENERATED_KEYS);
+			inserts.put(table, ps);
+		}
+		return ps;
+	}
+
+	private String getInsertSql(String table, String columns, int numColumns, int numRows) {
+		StringBuilder row = new StringBuilder("(");
+		for (int c=0;c<numColumns;c++) {
+			row.append(c==0?"?":",?");
+		}
+		row.append(")");
+		StringBuilder sql = new StringBuilder("INSERT INTO "+db+"."+table+" ("+columns+") VALUES ");
+		for (int r=0;r<numRows;r++) {
+			if (r>0) sql.append(",");
+			sql.append(row);
+		}
+		return sql.toString();
+	}
+
+	private static void readIds(PreparedStatement ps, int[] ids, int from, int to) throws SQLException {
+		ResultSet rs = ps.getGeneratedKeys();
+		int r = from;
+		while (rs.next() && r<to) {
+			ids[r++] = rs.getInt(1);
+		}
+		rs.close();
+		if (r<to) {
+			throw new SQLException("Got "+(r-from)+" generated ids for "+(to-from)+" inserted rows");
+		}
+	}
+
+	/**
+	 * Writes the given rows to the given table with a LOAD DATA LOCAL INFILE statement reading
+	 * them as tab separated values from memory
+	 */
+	private void loadData(String table, String columns, List<Object[]> rows) throws SQLException {
+		Statement stmt = conn.createStatement();
+		try {
+			if (!stmt.isWrapperFor(com.mysql.jdbc.Statement.class)) {
+				throw new SQLException("LOAD DATA streams can only be used with a connection of the MySQL driver");
+			}
+			stmt.unwrap(com.mysql.jdbc.Statement.class).setLocalInfileInputStream(new ByteArrayInputStream(toTsv(rows)));
+			stmt.executeUpdate("LOAD DATA LOCAL INFILE '"+table+".txt' INTO TABLE "+db+"."+table+" ("+columns+")");
+		} finally {
+			stmt.close();
+		}
+	}
+
+	/**
+	 * Formats the given rows in the default LOAD DATA INFILE format: tab separated fields,
+	 * one line per row and \N for NULL
+	 */
+	private static byte[] toTsv(List<Object[]> rows) {
+		StringBuilder sb = new StringBuilder();
+		for (Object[] row:rows) {
+			for (int c=0;c<row.length;c++) {
+				if (c>0) sb.append('\t');
+				if (row[c]==null) {
+					sb.append("\\N");
+				} else {
+					String value = row[c].toString();
+					for (int i=0;i<value.length();i++) {
+						char ch = value.charAt(i);
+						if (ch=='\\' || ch=='\t' || ch=='\n') sb.append('\\');
+						sb.append(ch);
+					}
+				}
+			}
+			sb.append('\n');
+		}
+		try {
+			return sb.toString().getBytes("UTF-8");
+		} catch (UnsupportedEncodingException e) {
+			// UTF-8 is always supported
+			throw new RuntimeException(e);
+		}
+	}
+
+	/**
+	 * Returns the LAST_INSERT_ID() of the connection, i.e. the first id generated by the last INSERT or LOAD DATA
+	 */
+	private int getLastInsertId() throws SQLException {
+		Statement stmt = conn.createStatement();
+		try {
+			ResultSet rs = stmt.executeQuery("SELECT LAST_INSERT_ID()");
+			int id = 0;
+			if (rs.next()) {
+				id = rs.getInt(1);
+			}
+			rs.close();
+			return id;
+		} finally {
+			stmt.close();
+		}
+	}
+}
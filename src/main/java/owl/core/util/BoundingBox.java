@@ -70,6 +70,34 @@ public class BoundingBox implements Serializable {
 
 	}
 	
+	/**
+	 * Constructs a BoundingBox by calculating maxs and mins of given array of coordinates.
+	 * @param coords the coordinates packed as x,y,z of each point, thus of size 3 times the number of points
+	 * @throws IllegalArgumentException if there are no coordinates or their number is not a multiple of 3
+	 */
+	public BoundingBox (double[] coords) {
+		
+		if (coords.length==0 || coords.length%3!=0) 
+			throw new IllegalArgumentException("Can't calculate the bounding box of "+coords.length+" coordinates: they must be a non-zero multiple of 3");
+		
+		xmax = coords[0];
+		xmin = xmax;
+		ymax = coords[1];
+		ymin = ymax;
+		zmax = coords[2];
+		zmin = zmax;
+
+		for(int i=3;i<coords.length;i+=3) {
+			if(coords[i] > xmax) xmax = coords[i];
+			else if(coords[i] < xmin) xmin = coords[i];
+			if(coords[i+1] > ymax) ymax = coords[i+1];
+			else if(coords[i+1] < ymin) ymin = coords[i+1]; 
+			if(coords[i+2] > zmax) zmax = coords[i+2];
+			else if(coords[i+2] < zmin) zmin = coords[i+2]; 
+		}
+
+	}
+	
 	/**
 	 * Given a set of bounding boxes returns a bounding box that bounds all of them. 
 	 * @param boxes
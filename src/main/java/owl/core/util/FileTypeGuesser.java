@@ -20,6 +20,7 @@ import java.util.regex.*;
  * - Casp RR (contact prediction) files
  * - mmCIF files
  * - CMView contact map files
+ * - OWL binary structure files
  * 
  * Changelog:
  * 2007/12/20 first created by HS
@@ -38,6 +39,7 @@ public class FileTypeGuesser {
 	public static final int CASP_RR_FILE 	= 4;	// CASP contact prediction file
 	public static final int OWL_CM_FILE 	= 5;	// contact map file
 	public static final int CIF_FILE 		= 6;	// mmCIF file from PDB
+	public static final int OWL_BIN_FILE 	= 7;	// binary structure file (see owl.core.structure.BinfileWriter)
 	
 	// names of the file types as above
 	private static final String[] FILE_TYPE_NAMES  = {
@@ -47,7 +49,8 @@ public class FileTypeGuesser {
 		"Casp 3D prediction file",
 		"Casp contact prediction file",
 		"Contact map file",
-		"PDB mmCIF file"
+		"PDB mmCIF file",
+		"OWL binary structure file"
 	};
 	
 	// signatures for the files as above
@@ -59,7 +62,8 @@ public class FileTypeGuesser {
 		"#(?:AGLAPPE|CMVIEW|OWL) GRAPH FILE.*",
 		// mmCIF files from PDB always start with "data_PDBcode". 
 		// Phenix's cif files do start with data_ but then with no PDB code 
-		"data_\\w+.*"
+		"data_\\w+.*",
+		"#OWL BINARY STRUCTURE FILE.*"
 	};
 	
 	/*---------------------------- public methods ---------------------------*/
@@ -67,6 +71,7 @@ public class FileTypeGuesser {
 	/**
 	 * Attempts to determine the type of the given file. If file type could be
 	 * identified, returns the file type constant, otherwise UNKNOWN_FILE_TYPE.
+	 * Gzipped files are decompressed on the fly, the type returned is the one of the contents.
 	 * 
 	 * File type constant can be:
 	 * PDB_FILE		 	PDB file with header
@@ -75,6 +80,7 @@ public class FileTypeGuesser {
 	 * CASP_RR_FILE 	CASP contact prediction file
 	 * OWL_CM_FILE 		Contact map file
 	 * CIF_FILE 		mmCIF file from PDB	
+	 * OWL_BIN_FILE 	OWL binary structure file
 	 * 
 	 * @param file the file whose type to guess
 	 * @throws FileNotFoundException if file could not be found
@@ -82,7 +88,7 @@ public class FileTypeGuesser {
 	 * @return the determined file type or UNKNOWN_FILE_TYPE
 	 */
 	public static int guessFileType(File file) throws FileNotFoundException, IOException {
-		BufferedReader in = new BufferedReader(new FileReader(file));
+		BufferedReader in = new BufferedReader(new InputStreamReader(Goodies.openPossiblyGzippedFile(file)));
 		String firstLine = in.readLine();
 		if(firstLine != null) {
 			// be lenient here and allow one empty line at the beginning
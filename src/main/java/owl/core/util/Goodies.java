@@ -1,4 +1,5 @@
 package owl.core.util;
+import java.io.BufferedInputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
@@ -25,6 +26,9 @@ public class Goodies {
 	public static final boolean DESCENDING = false;
 	
 	public static final String MD5_ALGORITHM = "MD5";
+	
+	// size of the buffers used for streaming and (de)compressing files
+	private static final int IO_BUFFER_SIZE = 65536;
 
 	
 	/**
@@ -196,12 +200,9 @@ public class Goodies {
 	 * @throws IOException
 	 */
 	public static void gunzipFile(File inFile, File outFile) throws IOException {
-		GZIPInputStream zis = new GZIPInputStream(new FileInputStream(inFile));
+		GZIPInputStream zis = new GZIPInputStream(new FileInputStream(inFile), IO_BUFFER_SIZE);
 		FileOutputStream os = new FileOutputStream(outFile);
-		int b;
-		while ( (b=zis.read())!=-1) {
-			os.write(b);
-		}
+		copyStream(zis, os);
 		zis.close();
 		os.close();
 	}
@@ -213,14 +214,45 @@ public class Goodies {
 	 * @throws IOException
 	 */
 	public static void gzipFile(File inFile, File outFile) throws IOException {
-		GZIPOutputStream zos = new GZIPOutputStream(new FileOutputStream(outFile));
+		GZIPOutputStream zos = new GZIPOutputStream(new FileOutputStream(outFile), IO_BUFFER_SIZE);
 		FileInputStream is = new FileInputStream(inFile);
-
-		int b;
-		while ( (b=is.read())!=-1) {
-			zos.write(b);
-		}
+		copyStream(is, zos);
 		zos.close();
 		is.close();
 	}
+	
+	/**
+	 * Copies all remaining bytes from the given input stream to the given output stream
+	 * through a buffer. Neither of the streams is closed.
+	 * @param is
+	 * @param os
+	 * @throws IOException
+	 */
+	public static void copyStream(InputStream is, OutputStream os) throws IOException {
+		byte[] buf = new byte[IO_BUFFER_SIZE];
+		int len;
+		while ((len = is.read(buf)) != -1) {
+			os.write(buf, 0, len);
+		}
+	}
+	
+	/**
+	 * Opens the given file for reading, transparently decompressing it if it is gzipped.
+	 * Gzipped files are recognised by their magic number and not by their extension, thus
+	 * the data is streamed and never written uncompressed to disk.
+	 * @param file
+	 * @return an input stream with the (uncompressed) contents of the file
+	 * @throws IOException
+	 */
+	public static InputStream openPossiblyGzippedFile(File file) throws IOException {
+		InputStream is = new BufferedInputStream(new FileInputStream(file), IO_BUFFER_SIZE);
+		is.mark(2);
+		int b1 = is.read();
+		int b2 = is.read();
+		is.reset();
+		if (b1==(GZIPInputStream.GZIP_MAGIC & 0xff) && b2==(GZIPInputStream.GZIP_MAGIC >> 8)) {
+			return new GZIPInputStream(is, IO_BUFFER_SIZE);
+		}
+		return is;
+	}
 }
@@ -19,13 +19,24 @@ public class Grid {
 	
 	private static final int SCALE=100; // i.e. we use units of hundredths of Amstrongs (thus cutoffs can be specified with a maximum precission of 0.01A)
 	
-	private GridCell[][][] cells;
+	// relative margin on the cutoff for the early rejection in squared distances, well above the float precision (~6e-8)
+	private static final double CUTOFF_MARGIN = 1e-6;
+	
+	// the grid dimensions (in number of cells)
+	private int nx;
+	private int ny;
+	private int nz;
+	
+	private PackedCells iCells;
+	private PackedCells jCells;
 	
 	private double cutoff;
 	private int cellSize;
 	
 	private Atom[] iAtoms;
 	private Atom[] jAtoms;
+	// alternatively to jAtoms the j coordinates can be given directly, packed as x,y,z of each atom
+	private double[] jCoords;
 	
 	// the bounds in int grid coordinates
 	private int[] bounds;
@@ -99,6 +110,37 @@ public class Grid {
 		
 		fillGrid();
 	}
+	
+	/**
+	 * Adds the i atoms and the j coordinates and fills the grid, passing their bounds. 
+	 * The j coordinates are packed as x,y,z of each atom, the j indices of the contacts 
+	 * (see {@link #getContacts(boolean)}) are then the index of each coordinate triplet.
+	 * This way the j set can be a transformed copy of some atoms that doesn't need any
+	 * Atom objects (see {@link owl.core.structure.TransformedPdbChain}).
+	 * @param iAtoms
+	 * @param icoordbounds the bounds of iAtoms, if null they will be computed
+	 * @param jCoords
+	 * @param jcoordbounds the bounds of jCoords, if null they will be computed
+	 */
+	public void addAtoms(Atom[] iAtoms, BoundingBox icoordbounds, double[] jCoords, BoundingBox jcoordbounds) {
+		this.iAtoms = iAtoms;
+
+		if (icoordbounds!=null) {
+			this.ibounds = icoordbounds;
+		} else {
+			this.ibounds = new BoundingBox(iAtoms);
+		}
+		
+		this.jCoords = jCoords;
+		
+		if (jcoordbounds!=null) {
+			this.jbounds = jcoordbounds;
+		} else {
+			this.jbounds = new BoundingBox(jCoords);
+		}
+		
+		fillGrid();
+	}
 
 	/**
 	 * Creates the grid based on the boundaries defined by all atoms given (iAtoms and jAtoms)
@@ -107,8 +149,11 @@ public class Grid {
 	 * the 2 grids (i and j) are no more than one cell size apart. If they don't
 	 * overlap then they are too far apart so there's nothing to calculate, we set
 	 * the noOverlap flag and then getDistMatrix will do no calculation at all.
-	 * @param iAtoms
-	 * @param jAtoms
+	 * 
+	 * The cells are laid out with a counting sort: the atom indices are stored in one array
+	 * ordered by cell, with an array of offsets giving the start of each cell. The coordinates 
+	 * are copied to flat arrays in the same order, so that the distance loops don't 
+	 * need to go through the Atom objects.
 	 */
 	private void fillGrid() {
 
@@ -120,36 +165,123 @@ public class Grid {
 		
 		findFullGridIntBounds();
 		
-		cells = new GridCell[1+(bounds[3]-bounds[0])/cellSize]
-		                    [1+(bounds[4]-bounds[1])/cellSize]
-		                    [1+(bounds[5]-bounds[2])/cellSize];
+		nx = 1+(bounds[3]-bounds[0])/cellSize;
+		ny = 1+(bounds[4]-bounds[1])/cellSize;
+		nz = 1+(bounds[5]-bounds[2])/cellSize;
+		
+		iCells = new PackedCells(iAtoms);
+		if (jCoords!=null) {
+			jCells = new PackedCells(jCoords);
+		} else if (jAtoms==iAtoms) {
+			jCells = iCells;
+		} else {
+			jCells = new PackedCells(jAtoms);
+		}
+		
+	}
+	
+	/**
+	 * The atoms of one of the 2 sets (i or j) sorted by grid cell.
+	 */
+	private class PackedCells {
+		
+		// cellStart[c] is the position in indices of the first atom of cell c, cellStart[c+1] the position after its last atom
+		int[] cellStart;
+		// the atom indices ordered by cell (within each cell in the order they were given)
+		int[] indices;
+		// the coordinates in the same order as indices
+		double[] x;
+		double[] y;
+		double[] z;
+		
+		PackedCells(Atom[] atoms) {
+			int[] cellOfAtom = new int[atoms.length];
+			cellStart = new int[nx*ny*nz+1];
+			
+			// counting atoms per cell
+			for (int i=0;i<atoms.length;i++) {
+				Point3d coord = atoms[i].getCoords();
+				int cell = getCellIndex(coord.x, coord.y, coord.z);
+				cellOfAtom[i] = cell;
+				cellStart[cell+1]++;
+			}
+			int[] next = getCellOffsets();
+			// placing the atoms
+			indices = new int[atoms.length];
+			x = new double[atoms.length];
+			y = new double[atoms.length];
+			z = new double[atoms.length];
+			for (int i=0;i<atoms.length;i++) {
+				int pos = next[cellOfAtom[i]];
+				next[cellOfAtom[i]]++;
+				Point3d coord = atoms[i].getCoords();
+				indices[pos] = i;
+				x[pos] = coord.x;
+				y[pos] = coord.y;
+				z[pos] = coord.z;
+			}
+		}
 		
-		int i = 0;
-		for (Atom atom:iAtoms) {
-			Point3d coord = atom.getCoords();
-			int xind = xintgrid2xgridindex(getFloor(coord.x));
-			int yind = yintgrid2ygridindex(getFloor(coord.y));
-			int zind = zintgrid2zgridindex(getFloor(coord.z));
-			if (cells[xind][yind][zind]==null) {
-				cells[xind][yind][zind] = new GridCell();
+		PackedCells(double[] coords) {
+			int numAtoms = coords.length/3;
+			int[] cellOfAtom = new int[numAtoms];
+			cellStart = new int[nx*ny*nz+1];
+			
+			// counting atoms per cell
+			for (int i=0;i<numAtoms;i++) {
+				int cell = getCellIndex(coords[3*i], coords[3*i+1], coords[3*i+2]);
+				cellOfAtom[i] = cell;
+				cellStart[cell+1]++;
+			}
+			int[] next = getCellOffsets();
+			// placing the atoms
+			indices = new int[numAtoms];
+			x = new double[numAtoms];
+			y = new double[numAtoms];
+			z = new double[numAtoms];
+			for (int i=0;i<numAtoms;i++) {
+				int pos = next[cellOfAtom[i]];
+				next[cellOfAtom[i]]++;
+				indices[pos] = i;
+				x[pos] = coords[3*i];
+				y[pos] = coords[3*i+1];
+				z[pos] = coords[3*i+2];
 			}
-			cells[xind][yind][zind].addIindex(i);
-			i++;
 		}
 		
-		int j = 0;
-		for (Atom atom:jAtoms) {
-			Point3d coord = atom.getCoords();
-			int xind = xintgrid2xgridindex(getFloor(coord.x));
-			int yind = yintgrid2ygridindex(getFloor(coord.y));
-			int zind = zintgrid2zgridindex(getFloor(coord.z));
-			if (cells[xind][yind][zind]==null) {
-				cells[xind][yind][zind] = new GridCell();
+		/**
+		 * Turns the atom counts per cell into the start offsets (prefix sums) and returns 
+		 * a copy of them to be used as the next free position of each cell while placing the atoms
+		 * @return
+		 */
+		private int[] getCellOffsets() {
+			int numCells = cellStart.length-1;
+			for (int c=0;c<numCells;c++) {
+				cellStart[c+1] += cellStart[c];
 			}
-			cells[xind][yind][zind].addJindex(j);
-			j++;
+			int[] next = new int[numCells];
+			System.arraycopy(cellStart, 0, next, 0, numCells);
+			return next;
 		}
 		
+		boolean isEmpty(int cell) {
+			return cellStart[cell]==cellStart[cell+1];
+		}
+	}
+	
+	private int getCellIndex(double x, double y, double z) {
+		int xind = xintgrid2xgridindex(getFloor(x));
+		int yind = yintgrid2ygridindex(getFloor(y));
+		int zind = zintgrid2zgridindex(getFloor(z));
+		return getCellIndex(xind, yind, zind);
+	}
+	
+	private int getCellIndex(int xind, int yind, int zind) {
+		return (xind*ny+yind)*nz+zind;
+	}
+	
+	private boolean isCellEmpty(int cell) {
+		return iCells.isEmpty(cell) && jCells.isEmpty(cell);
 	}
 	
 	/**
@@ -198,32 +330,45 @@ public class Grid {
 	 * 
 	 * The procedure is first calculate all pairwise distances within the same cell and then
 	 * distances of points of each cell to all its neighbouring cells.
+	 * 
+	 * Note that the matrix is dense (size of i atoms times size of j atoms) even though only a 
+	 * small fraction of it is filled: use {@link #getContacts(boolean)} when only the pairs 
+	 * within the cutoff are needed.
 	 * @param crossed
 	 * @return
 	 */
 	public float[][] getDistMatrix(boolean crossed) {
 		// to minimise memory footprint we use floats
-		float[][]distMatrix = new float[iAtoms.length][jAtoms.length];
+		float[][]distMatrix = new float[iAtoms.length][jCoords!=null?jCoords.length/3:jAtoms.length];
 		
 		// if the 2 sets of atoms are not overlapping they are too far away and no need to calculate anything
 		if (noOverlap) return distMatrix;
 		
-		for (int xind=0;xind<cells.length;xind++) {
-			for (int yind=0;yind<cells[xind].length;yind++) {
-				for (int zind=0;zind<cells[xind][yind].length;zind++) {
-					// distances of points within this cell
-					GridCell thisCell = cells[xind][yind][zind];
-					if (thisCell==null) continue;
-					thisCell.getDistancesWithinCell(distMatrix,iAtoms,jAtoms,crossed);
+		for (int xind=0;xind<nx;xind++) {
+			for (int yind=0;yind<ny;yind++) {
+				for (int zind=0;zind<nz;zind++) {
+					int thisCell = getCellIndex(xind, yind, zind);
+					if (iCells.isEmpty(thisCell)) continue;
 					
-					// distances of points from this box to all neighbouring boxes: 26 iterations (26 neighbouring boxes)
+					// distances of points within this cell and from this box to all neighbouring boxes: 27 iterations
 					for (int x=xind-1;x<=xind+1;x++) {
 						for (int y=yind-1;y<=yind+1;y++) {
 							for (int z=zind-1;z<=zind+1;z++) {
-								if (x==xind && y==yind && z==zind) continue;
-								if (x>=0 && x<cells.length && y>=0 && y<cells[x].length && z>=0 && z<cells[x][y].length) {
-									if (cells[x][y][z] == null) continue;
-									thisCell.getDistancesToNeighborCell(cells[x][y][z],distMatrix,iAtoms,jAtoms,crossed);
+								if (x>=0 && x<nx && y>=0 && y<ny && z>=0 && z<nz) {
+									int nbCell = getCellIndex(x, y, z);
+									
+									for (int p=iCells.cellStart[thisCell];p<iCells.cellStart[thisCell+1];p++) {
+										int i = iCells.indices[p];
+										for (int q=jCells.cellStart[nbCell];q<jCells.cellStart[nbCell+1];q++) {
+											int j = jCells.indices[q];
+											// if not crossed i and j are the same set: we only fill the upper half
+											if (!crossed && j<=i) continue;
+											double dx = iCells.x[p]-jCells.x[q];
+											double dy = iCells.y[p]-jCells.y[q];
+											double dz = iCells.z[p]-jCells.z[q];
+											distMatrix[i][j] = (float)Math.sqrt(dx*dx+dy*dy+dz*dz);
+										}
+									}
 								}
 							}
 						}
@@ -234,13 +379,128 @@ public class Grid {
 		return distMatrix;
 	}
 	
+	/**
+	 * Finds all pairs of i and j atoms within the cutoff distance, following the same 
+	 * procedure as {@link #getDistMatrix(boolean)} but storing only the pairs under the cutoff.
+	 * Thus the memory used grows with the number of contacts and not with the product 
+	 * of the numbers of i and j atoms.
+	 * @param crossed if false the i and j atoms are the same set and each pair is returned
+	 * only once (with j>i), if true all i,j pairs are returned
+	 * @return
+	 */
+	public GridContacts getContacts(boolean crossed) {
+		GridContacts contacts = new GridContacts();
+		
+		// if the 2 sets of atoms are not overlapping they are too far away and no need to calculate anything
+		if (noOverlap) return contacts;
+		
+		// distances are compared in float precision (as it's always been done with the distance matrix), 
+		// we reject early in squared distances with a small margin so that the float comparison 
+		// of the square root is only needed for the pairs close to or within the cutoff
+		double cutoffSqWithMargin = (cutoff*(1.0+CUTOFF_MARGIN))*(cutoff*(1.0+CUTOFF_MARGIN));
+		
+		for (int xind=0;xind<nx;xind++) {
+			for (int yind=0;yind<ny;yind++) {
+				for (int zind=0;zind<nz;zind++) {
+					int thisCell = getCellIndex(xind, yind, zind);
+					if (iCells.isEmpty(thisCell)) continue;
+					
+					// points within this cell first and then from this box to all neighbouring boxes: 27 iterations
+					for (int x=xind-1;x<=xind+1;x++) {
+						for (int y=yind-1;y<=yind+1;y++) {
+							for (int z=zind-1;z<=zind+1;z++) {
+								if (x>=0 && x<nx && y>=0 && y<ny && z>=0 && z<nz) {
+									int nbCell = getCellIndex(x, y, z);
+									int jStart = jCells.cellStart[nbCell];
+									int jEnd = jCells.cellStart[nbCell+1];
+									if (jStart==jEnd) continue;
+									
+									for (int p=iCells.cellStart[thisCell];p<iCells.cellStart[thisCell+1];p++) {
+										int i = iCells.indices[p];
+										double ix = iCells.x[p];
+										double iy = iCells.y[p];
+										double iz = iCells.z[p];
+										for (int q=jStart;q<jEnd;q++) {
+											int j = jCells.indices[q];
+											// if not crossed i and j are the same set: each pair only once
+											if (!crossed && j<=i) continue;
+											double dx = ix-jCells.x[q];
+											double dy = iy-jCells.y[q];
+											double dz = iz-jCells.z[q];
+											double distSq = dx*dx+dy*dy+dz*dz;
+											if (distSq>cutoffSqWithMargin) continue;
+											float dist = (float)Math.sqrt(distSq);
+											if (dist<=cutoff) {
+												contacts.add(i, j, dist);
+											}
+										}
+									}
+								}
+							}
+						}
+					}
+				}
+			}
+		}
+		return contacts;
+	}
+	
+	/**
+	 * Returns the indices of all j atoms that lie in the same cell as the given coordinates
+	 * or in any of its 26 neighbouring cells, i.e. a superset of the j atoms that are within
+	 * cutoff distance of the given coordinates. The coordinates must be within the bounds of
+	 * the grid, e.g. those of one of the atoms added to it.
+	 * Useful for neighbour searches where the distance criterion varies per pair of atoms
+	 * (e.g. by atom radius): the grid is then built with the maximum possible cutoff and 
+	 * the exact criterion is applied by the caller on the returned candidates.
+	 * @param coord
+	 * @return the j indices of the candidate neighbours, in no particular order
+	 */
+	public int[] getNearbyJindices(Point3d coord) {
+		
+		if (noOverlap) return new int[0];
+		
+		int xind = xintgrid2xgridindex(getFloor(coord.x));
+		int yind = yintgrid2ygridindex(getFloor(coord.y));
+		int zind = zintgrid2zgridindex(getFloor(coord.z));
+		
+		// first we count so that we can allocate the array with the right size
+		int count = 0;
+		for (int x=xind-1;x<=xind+1;x++) {
+			for (int y=yind-1;y<=yind+1;y++) {
+				for (int z=zind-1;z<=zind+1;z++) {
+					if (x>=0 && x<nx && y>=0 && y<ny && z>=0 && z<nz) {
+						int cell = getCellIndex(x, y, z);
+						count += jCells.cellStart[cell+1]-jCells.cellStart[cell];
+					}
+				}
+			}
+		}
+		
+		int[] indices = new int[count];
+		int offset = 0;
+		for (int x=xind-1;x<=xind+1;x++) {
+			for (int y=yind-1;y<=yind+1;y++) {
+				for (int z=zind-1;z<=zind+1;z++) {
+					if (x>=0 && x<nx && y>=0 && y<ny && z>=0 && z<nz) {
+						int cell = getCellIndex(x, y, z);
+						int size = jCells.cellStart[cell+1]-jCells.cellStart[cell];
+						System.arraycopy(jCells.indices, jCells.cellStart[cell], indices, offset, size);
+						offset += size;
+					}
+				}
+			}
+		}
+		return indices;
+	}
+	
 	public void countDensity(Map<Integer,Integer> densityCount) {
 		// count density
 		
-		for (int xind=0;xind<cells.length;xind++) {
-			for (int yind=0;yind<cells[xind].length;yind++) {
-				for (int zind=0;zind<cells[xind][yind].length;zind++) {
-					if (cells[xind][yind][zind]==null) continue;
+		for (int xind=0;xind<nx;xind++) {
+			for (int yind=0;yind<ny;yind++) {
+				for (int zind=0;zind<nz;zind++) {
+					if (isCellEmpty(getCellIndex(xind, yind, zind))) continue;
 					int size = getNumGridNbs(xind,yind,zind);	// count number of neighbouring grid cells with points in them
 					
 					if(densityCount.containsKey(size)) {
@@ -269,8 +529,8 @@ public class Grid {
 			for (int y=yind-1;y<=yind+1;y++) {
 				for (int z=zind-1;z<=zind+1;z++) {
 					if (x==xind && y==yind && z==zind) continue;
-					if (x>=0 && x<cells.length && y>=0 && y<cells[x].length && z>=0 && z<cells[x][y].length) {
-						if (cells[x][y][z] != null) nbs++;
+					if (x>=0 && x<nx && y>=0 && y<ny && z>=0 && z<nz) {
+						if (!isCellEmpty(getCellIndex(x, y, z))) nbs++;
 					}
 				}
 			}
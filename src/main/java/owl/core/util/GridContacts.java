@@ -0,0 +1,83 @@
+package owl.core.util;
+
+import java.util.Arrays;
+
+/**
+ * A sparse list of atom contacts as found by {@link Grid#getContacts(boolean)}:
+ * packed arrays of i indices, j indices and distances, where the indices are
+ * those of the i and j atom arrays given to the Grid.
+ *
+ * The memory used is proportional to the number of contacts, as opposed to the
+ * i x j distance matrix of {@link Grid#getDistMatrix(boolean)}.
+ */
+public class GridContacts {
+
+	private static final int INITIAL_CAPACITY = 1024;
+
+	private int[] iIndices;
+	private int[] jIndices;
+	private float[] distances;
+
+	private int size;
+
+	public GridContacts() {
+		iIndices = new int[INITIAL_CAPACITY];
+		jIndices = new int[INITIAL_CAPACITY];
+		distances = new float[INITIAL_CAPACITY];
+		size = 0;
+	}
+
+	/**
+	 * Adds a contact between i atom with index i and j atom with index j
+	 * @param i
+	 * @param j
+	 * @param distance
+	 */
+	public void add(int i, int j, float distance) {
+		if (size==iIndices.length) {
+			int newCapacity = iIndices.length*2;
+			iIndices = Arrays.copyOf(iIndices, newCapacity);
+			jIndices = Arrays.copyOf(jIndices, newCapacity);
+			distances = Arrays.copyOf(distances, newCapacity);
+		}
+		iIndices[size] = i;
+		jIndices[size] = j;
+		distances[size] = distance;
+		size++;
+	}
+
+	/**
+	 * Returns the number of contacts
+	 * @return
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Returns the index (in the i atoms array) of the i atom of contact k
+	 * @param k
+	 * @return
+	 */
+	public int getI(int k) {
+		return iIndices[k];
+	}
+
+	/**
+	 * Returns the index (in the j atoms array) of the j atom of contact k
+	 * @param k
+	 * @return
+	 */
+	public int getJ(int k) {
+		return jIndices[k];
+	}
+
+	/**
+	 * Returns the distance between the 2 atoms of contact k
+	 * @param k
+	 * @return
+	 */
+	public float getDistance(int k) {
+		return distances[k];
+	}
+}
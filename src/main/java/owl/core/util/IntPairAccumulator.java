@@ -0,0 +1,188 @@
+package owl.core.util;
+
+import java.util.Arrays;
+
+/**
+ * Accumulates counts and minimum distances of (ordered) pairs of ints, e.g. the
+ * number of atom contacts and the closest atom distance between pairs of residues
+ * as the atom contacts are streamed out of a {@link Grid}.
+ *
+ * The pairs are the keys of an open addressing hash table of packed longs and the
+ * accumulated values are kept in packed arrays in the order the pairs were first added:
+ * no objects are created per pair.
+ */
+public class IntPairAccumulator {
+
+	private static final int INITIAL_CAPACITY = 256;
+	private static final long EMPTY = Long.MIN_VALUE; // the key of pair (Integer.MIN_VALUE, 0), which we don't accept
+
+	private long[] keys;		// hash table of the packed pairs
+	private int[] entries;		// the entry index of each key in the table
+
+	private int[] iValues;
+	private int[] jValues;
+	private int[] counts;
+	private float[] distances;
+
+	private int size;
+
+	public IntPairAccumulator() {
+		keys = new long[2*INITIAL_CAPACITY];
+		Arrays.fill(keys, EMPTY);
+		entries = new int[2*INITIAL_CAPACITY];
+		iValues = new int[INITIAL_CAPACITY];
+		jValues = new int[INITIAL_CAPACITY];
+		counts = new int[INITIAL_CAPACITY];
+		distances = new float[INITIAL_CAPACITY];
+		size = 0;
+	}
+
+	/**
+	 * Adds an occurrence of pair i,j with the given distance: the count of the pair is
+	 * incremented and its distance set to the minimum of all its distances.
+	 * @param i
+	 * @param j
+	 * @param distance
+	 * @return the count of the pair after adding this occurrence, i.e. 1 if the pair is new
+	 * @throws IllegalArgumentException if i is Integer.MIN_VALUE and j is 0
+	 */
+	public int add(int i, int j, float distance) {
+		long key = ((long)i<<32) | (j & 0xffffffffL);
+		if (key==EMPTY) {
+			throw new IllegalArgumentException("Pair ("+i+","+j+") can't be accumulated");
+		}
+		int mask = keys.length-1;
+		int slot = hash(key) & mask;
+		while (keys[slot]!=EMPTY) {
+			if (keys[slot]==key) {
+				int e = entries[slot];
+				if (distance<distances[e]) distances[e] = distance;
+				return ++counts[e];
+			}
+			slot = (slot+1) & mask;
+		}
+
+		if (size==iValues.length) {
+			grow();
+			mask = keys.length-1;
+			slot = hash(key) & mask;
+			while (keys[slot]!=EMPTY) {
+				slot = (slot+1) & mask;
+			}
+		}
+		keys[slot] = key;
+		entries[slot] = size;
+		iValues[size] = i;
+		jValues[size] = j;
+		counts[size] = 1;
+		distances[size] = distance;
+		size++;
+		return 1;
+	}
+
+	/**
+	 * Doubles the capacity of the entries and rehashes the table (which is always kept at most half full).
+	 */
+	private void grow() {
+		int newCapacity = iValues.length*2;
+		iValues = Arrays.copyOf(iValues, newCapacity);
+		jValues = Arrays.copyOf(jValues, newCapacity);
+		counts = Arrays.copyOf(counts, newCapacity);
+		distances = Arrays.copyOf(distances, newCapacity);
+
+		keys = new long[2*newCapacity];
+		Arrays.fill(keys, EMPTY);
+		entries = new int[2*newCapacity];
+		int mask = keys.length-1;
+		for (int e=0;e<size;e++) {
+			long key = ((long)iValues[e]<<32) | (jValues[e] & 0xffffffffL);
+			int slot = hash(key) & mask;
+			while (keys[slot]!=EMPTY) {
+				slot = (slot+1) & mask;
+			}
+			keys[slot] = key;
+			entries[slot] = e;
+		}
+	}
+
+	private static int hash(long key) {
+		long h = key * 0x9E3779B97F4A7C15L;
+		return (int)(h ^ (h>>>32));
+	}
+
+	/**
+	 * Returns the number of distinct pairs
+	 * @return
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Returns the first int of pair k (pairs are numbered in the order they were first added)
+	 * @param k
+	 * @return
+	 */
+	public int getI(int k) {
+		return iValues[k];
+	}
+
+	/**
+	 * Returns the second int of pair k
+	 * @param k
+	 * @return
+	 */
+	public int getJ(int k) {
+		return jValues[k];
+	}
+
+	/**
+	 * Returns the number of times pair k was added
+	 * @param k
+	 * @return
+	 */
+	public int getCount(int k) {
+		return counts[k];
+	}
+
+	/**
+	 * Returns the minimum distance of pair k
+	 * @param k
+	 * @return
+	 */
+	public float getDistance(int k) {
+		return distances[k];
+	}
+
+	/**
+	 * Returns the first ints of all pairs in an array of length {@link #size()}
+	 * @return
+	 */
+	public int[] getIs() {
+		return Arrays.copyOf(iValues, size);
+	}
+
+	/**
+	 * Returns the second ints of all pairs in an array of length {@link #size()}
+	 * @return
+	 */
+	public int[] getJs() {
+		return Arrays.copyOf(jValues, size);
+	}
+
+	/**
+	 * Returns the counts of all pairs in an array of length {@link #size()}
+	 * @return
+	 */
+	public int[] getCounts() {
+		return Arrays.copyOf(counts, size);
+	}
+
+	/**
+	 * Returns the minimum distances of all pairs in an array of length {@link #size()}
+	 * @return
+	 */
+	public float[] getDistances() {
+		return Arrays.copyOf(distances, size);
+	}
+}
@@ -0,0 +1,128 @@
+package owl.core.util;
+
+/**
+ * Static methods to parse numbers from a region of a CharSequence without creating
+ * intermediate Strings, for parsing fixed-column or whitespace separated fields in
+ * structure files. Surrounding spaces in the region are ignored.
+ *
+ * The results are identical to those of {@link Integer#parseInt(String)} and
+ * {@link Double#parseDouble(String)} on the trimmed substring: numbers that can't be
+ * parsed exactly by the fast path (exponents, more than 15 significant digits)
+ * fall back to Double.parseDouble.
+ */
+public class NumberParser {
+
+	// the largest number of digits for which the mantissa is exactly representable in a double
+	private static final int MAX_FAST_DIGITS = 15;
+
+	// the powers of 10 exactly representable in a double
+	private static final double[] POWERS_OF_10 = {
+		1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+		1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+	};
+
+	/**
+	 * Parses an int from the region [beg,end) of the given CharSequence.
+	 * @param s
+	 * @param beg
+	 * @param end
+	 * @return
+	 * @throws NumberFormatException if the region (after trimming) is empty or not an integer
+	 */
+	public static int parseInt(CharSequence s, int beg, int end) {
+		while (beg<end && s.charAt(beg)==' ') beg++;
+		while (end>beg && s.charAt(end-1)==' ') end--;
+		if (beg==end) throw new NumberFormatException("Empty number field");
+
+		int i = beg;
+		boolean negative = false;
+		char c = s.charAt(i);
+		if (c=='-' || c=='+') {
+			negative = (c=='-');
+			i++;
+			if (i==end) throw new NumberFormatException("For input string: \""+s.subSequence(beg, end)+"\"");
+		}
+		// we accumulate negatively so that Integer.MIN_VALUE can be parsed
+		long result = 0;
+		for (;i<end;i++) {
+			c = s.charAt(i);
+			if (c<'0' || c>'9') throw new NumberFormatException("For input string: \""+s.subSequence(beg, end)+"\"");
+			result = result*10 - (c-'0');
+			if (result<Integer.MIN_VALUE) throw new NumberFormatException("For input string: \""+s.subSequence(beg, end)+"\"");
+		}
+		if (!negative) {
+			if (result==Integer.MIN_VALUE) throw new NumberFormatException("For input string: \""+s.subSequence(beg, end)+"\"");
+			return (int)-result;
+		}
+		return (int)result;
+	}
+
+	/**
+	 * Parses a double from the region [beg,end) of the given CharSequence.
+	 * @param s
+	 * @param beg
+	 * @param end
+	 * @return
+	 * @throws NumberFormatException if the region (after trimming) is empty or not a number
+	 */
+	public static double parseDouble(CharSequence s, int beg, int end) {
+		while (beg<end && s.charAt(beg)==' ') beg++;
+		while (end>beg && s.charAt(end-1)==' ') end--;
+		if (beg==end) throw new NumberFormatException("Empty number field");
+
+		int i = beg;
+		boolean negative = false;
+		char c = s.charAt(i);
+		if (c=='-' || c=='+') {
+			negative = (c=='-');
+			i++;
+		}
+
+		long mantissa = 0;
+		boolean seenDigit = false;
+		int numDigits = 0;
+		int numDecimals = 0;
+		boolean seenPoint = false;
+		for (;i<end;i++) {
+			c = s.charAt(i);
+			if (c>='0' && c<='9') {
+				seenDigit = true;
+				// leading zeros are not significant
+				if (mantissa!=0 || c!='0') numDigits++;
+				mantissa = mantissa*10 + (c-'0');
+				if (seenPoint) numDecimals++;
+				if (numDigits>MAX_FAST_DIGITS) return slowParseDouble(s, beg, end);
+			} else if (c=='.' && !seenPoint) {
+				seenPoint = true;
+			} else {
+				// exponents, NaN, Infinity or invalid input
+				return slowParseDouble(s, beg, end);
+			}
+		}
+		// no digits at all, e.g. "." or "-": Double.parseDouble will throw the exception
+		if (!seenDigit) return slowParseDouble(s, beg, end);
+		if (numDecimals>=POWERS_OF_10.length) return slowParseDouble(s, beg, end);
+
+		// both mantissa and power of 10 are exact, thus the division is correctly rounded
+		double value = (double)mantissa / POWERS_OF_10[numDecimals];
+		return negative?-value:value;
+	}
+
+	/**
+	 * Tells whether the region [beg,end) of the given CharSequence contains only spaces.
+	 * @param s
+	 * @param beg
+	 * @param end
+	 * @return
+	 */
+	public static boolean isBlank(CharSequence s, int beg, int end) {
+		for (int i=beg;i<end;i++) {
+			if (s.charAt(i)!=' ') return false;
+		}
+		return true;
+	}
+
+	private static double slowParseDouble(CharSequence s, int beg, int end) {
+		return Double.parseDouble(s.subSequence(beg, end).toString());
+	}
+}
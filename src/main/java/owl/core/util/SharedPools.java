@@ -0,0 +1,45 @@
+package owl.core.util;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Process-wide ForkJoin thread pools, one per parallelism level.
+ *
+ * Creating a thread pool is expensive compared to many of our parallel calculations
+ * (e.g. ASA of a single chain or interface), thus instead of creating and shutting down
+ * a pool for each calculation all callers asking for the same number of threads share
+ * the same pool. The worker threads are daemon threads, so the pools never need to be
+ * shut down explicitly.
+ */
+public class SharedPools {
+
+	private static final ConcurrentMap<Integer,ForkJoinPool> pools = new ConcurrentHashMap<Integer, ForkJoinPool>();
+
+	/**
+	 * Returns the shared ForkJoinPool with the given parallelism level, creating it
+	 * on first request.
+	 * @param parallelism the number of worker threads, must be at least 1
+	 * @return
+	 * @throws IllegalArgumentException if parallelism is smaller than 1
+	 */
+	public static ForkJoinPool getPool(int parallelism) {
+		if (parallelism<1) {
+			throw new IllegalArgumentException("Parallelism level must be at least 1, got "+parallelism);
+		}
+		ForkJoinPool pool = pools.get(parallelism);
+		if (pool==null) {
+			ForkJoinPool newPool = new ForkJoinPool(parallelism);
+			pool = pools.putIfAbsent(parallelism, newPool);
+			if (pool==null) {
+				pool = newPool;
+			} else {
+				// another thread created it first
+				newPool.shutdown();
+			}
+		}
+		return pool;
+	}
+
+}
@@ -11,6 +11,7 @@ import owl.core.sequence.alignment.PairwiseSequenceAlignment;
 import owl.core.sequence.alignment.PairwiseSequenceAlignment.PairwiseSequenceAlignmentException;
 import owl.core.structure.TemplateList;
 import owl.core.structure.features.SecondaryStructure;
+import owl.core.structure.graphs.RIGBitMatrix;
 import owl.core.structure.graphs.RIGEdge;
 import owl.core.structure.graphs.RIGEnsemble;
 import owl.core.structure.graphs.RIGNode;
@@ -45,6 +46,8 @@ public class GraphAverager {
 	
 	private int[] numContacts;		// sorted array with number of contacts for each template graph (see countVotes)
 	private HashMap<Pair<Integer>,Vote> contactVotes; // number of votes for each contact (see countVotes)
+	private boolean directed;		// whether the contacts are directed, as in the first template graph (see countVotes)
+	private TreeMap<String,RIGBitMatrix> alignedContacts; // the contacts of each template graph in alignment positions (see countVotes)
 	
 	/*---------------------------- inner classes ----------------------------*/
 	/**
@@ -298,47 +301,73 @@ public class GraphAverager {
 		contactVotes = new HashMap<Pair<Integer>, Vote>();
 
 		// we get the first graph in templates to see if they are directed or undirected
-		boolean directed = templateGraphs.get(templateGraphs.firstKey()).isDirected();
+		directed = templateGraphs.get(templateGraphs.firstKey()).isDirected();
 		
-		// we go through all positions in the alignment
-		for (int i=1; i<=al.getAlignmentLength(); i++){
-			for (int j=1; j<=al.getAlignmentLength(); j++) {
- 
-				if (directed) {
-					// in directed case we only want to skip loop edges 
-					if (i==j) continue;
-				} else {
-					// in undirected case we want to skip half of the matrix
-					// this way the final contactVotes Map will contain Pair<Integer> always with j>i
-					if (i>=j) continue;
-				}
-				
-				int votes = 0;
-				int potentialVotes = 0;
-				TreeSet<String> voters = new TreeSet<String>(); 
-				// scanning all templates to see if they have this contact
-				for (String tag:templateGraphs.keySet()){			
-					RIGraph thisGraph = templateGraphs.get(tag);
-					int iSeqIdx = al.al2seq(tag, i);
-					int jSeqIdx = al.al2seq(tag, j);
-					
-					// if either of the ends maps to a gap in this sequence we skip it
-					if ((iSeqIdx!=-1) && (jSeqIdx!=-1)) {
-						potentialVotes++;
-						if(thisGraph.containsEdgeIJ(iSeqIdx, jSeqIdx)) {
-							votes++;
-							voters.add(tag);
-						}
+		// the contacts of each template in alignment positions: a template votes for contact i,j of the 
+		// alignment if it has a contact between its residues at positions i and j 
+		// (for undirected contacts the pairs are always with j>i)
+		String[] tags = templateGraphs.keySet().toArray(new String[templateGraphs.size()]);
+		RIGBitMatrix[] contacts = new RIGBitMatrix[tags.length];
+		RIGBitMatrix allContacts = new RIGBitMatrix(al.getAlignmentLength(), directed);
+		alignedContacts = new TreeMap<String, RIGBitMatrix>();
+		for (int t=0;t<tags.length;t++) {
+			contacts[t] = getAlignedContacts(tags[t]);
+			alignedContacts.put(tags[t], contacts[t]);
+			allContacts.or(contacts[t]);
+		}
+		
+		// we go through all alignment contacts that have at least one vote
+		for (int index=allContacts.nextEdgeIndex(0); index>=0; index=allContacts.nextEdgeIndex(index+1)) {
+			int i = allContacts.getI(index);
+			int j = allContacts.getJ(index);
+			int votes = 0;
+			int potentialVotes = 0;
+			TreeSet<String> voters = new TreeSet<String>(); 
+			// scanning all templates to see if they have this contact
+			for (int t=0;t<tags.length;t++) {
+				// if either of the ends maps to a gap in this sequence we skip it
+				if (al.al2seq(tags[t], i)!=-1 && al.al2seq(tags[t], j)!=-1) {
+					potentialVotes++;
+					if (contacts[t].containsEdgeIJ(i, j)) {
+						votes++;
+						voters.add(tags[t]);
 					}
 				}
-				// putting vote in contactVotes Map
-				if (votes>0){
-					contactVotes.put(new Pair<Integer>(i,j), new Vote(votes, potentialVotes, voters));
-				}				
 			}
+			// putting vote in contactVotes Map
+			contactVotes.put(new Pair<Integer>(i,j), new Vote(votes, potentialVotes, voters));
 		}		
 	}
 	
+	/**
+	 * Maps the contacts of the given template graph to alignment positions, with the 
+	 * directionality of the first template graph. 
+	 * @param tag
+	 * @return
+	 */
+	private RIGBitMatrix getAlignedContacts(String tag) {
+		RIGraph graph = templateGraphs.get(tag);
+		boolean graphDirected = graph.isDirected();
+		RIGBitMatrix contacts = new RIGBitMatrix(al.getAlignmentLength(), directed);
+		for (RIGEdge e:graph.getEdges()) {
+			Pair<RIGNode> eps = graph.getEndpoints(e);
+			int i = eps.getFirst().getResidueSerial();
+			int j = eps.getSecond().getResidueSerial();
+			if (i<1 || j<1 || i>graph.getFullLength() || j>graph.getFullLength() || i==j) continue;
+			int ali = al.seq2al(tag, i);
+			int alj = al.seq2al(tag, j);
+			if (directed && !graphDirected) {
+				// an undirected contact is a contact in both directions
+				contacts.addEdgeIJ(ali, alj);
+				contacts.addEdgeIJ(alj, ali);
+			} else if (directed || !graphDirected || ali<alj) {
+				// a directed contact counts for undirected contacts only if it goes from i to j>i
+				contacts.addEdgeIJ(ali, alj);
+			}
+		}
+		return contacts;
+	}
+	
 	/*---------------------------- public methods ---------------------------*/
 	
 	/**
@@ -426,6 +455,9 @@ public class GraphAverager {
 	public int getPairwiseOverlap(String tag1, String tag2) {
 		RIGraph rig1 = templateGraphs.get(tag1);
 		RIGraph rig2 = templateGraphs.get(tag2);
+		if (rig1.isDirected()==directed && rig2.isDirected()==directed) {
+			return alignedContacts.get(tag1).getCommonEdgeCount(alignedContacts.get(tag2), 1);
+		}
 		int sharedEdges = 0;
 		for(RIGEdge e:rig1.getEdges()) {
 			Pair<RIGNode> eps = rig1.getEndpoints(e);
@@ -8,6 +8,7 @@ import java.sql.Statement;
 import owl.core.structure.PdbChain;
 import owl.core.structure.PdbAsymUnit;
 import owl.core.structure.PdbLoadException;
+import owl.core.structure.graphs.GraphAdjacency;
 import owl.core.structure.graphs.RIGraph;
 import owl.core.util.FileFormatException;
 import owl.core.util.MySQLConnection;
@@ -78,11 +79,20 @@ public class benchmarkGraphAlgorithm {
 					RIGraph graph = pdb.getRIGraph(edgeType, cutoff);
 					long end = System.currentTimeMillis();
 
+					// get common neighbourhood sizes and triangles
+					long startNbh = System.currentTimeMillis();
+					GraphAdjacency adjacency = new GraphAdjacency(graph);
+					int numCommonNbhs = adjacency.getAllCommonNbhSizes()[0].length;
+					int numTriangles = adjacency.getTriangleCount();
+					long endNbh = System.currentTimeMillis();
+
 					graph.writeToFile(pdbCode+chainCode+"_"+edgeType+"_"+cutoff);
 					
 					System.out.print(pdbCode+"_"+chainCode);
 					System.out.print("\t"+length+"\t"+atoms);
 					System.out.printf("\t%4.3f",(double) (end-start)/1000);
+					System.out.print("\t"+numCommonNbhs+"\t"+numTriangles);
+					System.out.printf("\t%4.3f",(double) (endNbh-startNbh)/1000);
 					System.out.println();
 
 					
@@ -17,6 +17,7 @@ import owl.core.structure.PdbAsymUnit;
 import owl.core.structure.PdbLoadException;
 import owl.core.structure.features.SecStrucElement;
 import owl.core.structure.graphs.RIGraph;
+import owl.core.structure.graphs.RIGraphDbWriter;
 import owl.core.util.FileFormatException;
 import owl.core.util.MySQLConnection;
 
@@ -182,6 +183,8 @@ public class genDbGraph {
 			System.err.println("Error opening database connection. Exiting");
 			System.exit(1);
 		}
+		// graphs are written in batched inserts, committing every RIGraphDbWriter.DEFAULT_GRAPHS_PER_TRANSACTION graphs
+		RIGraphDbWriter writer = new RIGraphDbWriter(conn, outputDb);
 		
 		
 		if (pdbfile.equals("")){
@@ -286,7 +289,7 @@ public class genDbGraph {
 								}
 							}
 							//graph.writeToDb(conn,outputDb);
-							graph.writeToDbFast(conn,outputDb);
+							writer.write(graph);
 							
 							System.out.println();							
 							numPdbs++;
@@ -385,7 +388,7 @@ public class genDbGraph {
 							}
 						}
 						//graph.writeToDb(conn,outputDb);
-						graph.writeToDbFast(conn,outputDb);
+						writer.write(graph);
 						
 						System.out.println();						
 						numGraphs++;
@@ -404,7 +407,12 @@ public class genDbGraph {
 
 		}
 		
-		// closing db connection
+		// committing the last graphs and closing db connection
+		try {
+			writer.close();
+		} catch (SQLException e) {
+			System.err.println("Couldn't commit last graphs to db, error: "+e.getMessage());
+		}
 		conn.close();
 	}
 
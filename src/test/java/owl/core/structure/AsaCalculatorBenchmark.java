@@ -0,0 +1,89 @@
+package owl.core.structure;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import javax.vecmath.Matrix4d;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import owl.tests.TestsSetup;
+
+/**
+ * JMH benchmark comparing the Atom based and the flat array based Shrake-Rupley
+ * implementations of {@link AsaCalculator}, at different numbers of sphere points and threads.
+ *
+ * As large entry we use a lattice of translated copies of a test chain, so that
+ * the benchmark doesn't depend on any files outside the test resources.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class AsaCalculatorBenchmark {
+
+	private static final String TESTDATADIR = "/owl/core/structure";
+	private static final String PDBFILE = TESTDATADIR+"/1tdrA.pdb";
+
+	// the copies are placed in a 4x4xn lattice with this spacing (in Angstroms), close enough for them to touch
+	private static final double SPACING = 30.0;
+
+	@Param({"32"})
+	public int numCopies;
+
+	@Param({"100","960"})
+	public int nSpherePoints;
+
+	@Param({"1","4"})
+	public int nThreads;
+
+	@Param({"true","false"})
+	public boolean useFlatArrays;
+
+	private Atom[] atoms;
+
+	@Setup
+	public void setUp() throws Exception {
+		File pdbFile = TestsSetup.inputStreamToTempFile(AsaCalculatorBenchmark.class.getResourceAsStream(PDBFILE), "AsaCalculatorBenchmark", ".pdb");
+		PdbAsymUnit pdb = new PdbAsymUnit(pdbFile);
+		pdb.removeHatoms();
+
+		List<Atom> allAtoms = new ArrayList<Atom>();
+		for (int i=0;i<numCopies;i++) {
+			PdbChain chain = pdb.getFirstChain().copy(pdb);
+			Matrix4d translation = new Matrix4d(1,0,0,SPACING*(i%4),
+												0,1,0,SPACING*((i/4)%4),
+												0,0,1,SPACING*(i/16),
+												0,0,0,1);
+			chain.transform(translation);
+			for (Residue residue:chain) {
+				for (Atom atom:residue) {
+					allAtoms.add(atom);
+				}
+			}
+		}
+		atoms = allAtoms.toArray(new Atom[allAtoms.size()]);
+	}
+
+	@Benchmark
+	public double[] calculateAsa() {
+		AsaCalculator asaCalc = new AsaCalculator(atoms, AsaCalculator.DEFAULT_PROBE_SIZE, nSpherePoints, nThreads);
+		asaCalc.setUseFlatArrays(useFlatArrays);
+		return asaCalc.calculateAsa();
+	}
+
+}
@@ -0,0 +1,79 @@
+package owl.core.structure;
+
+import java.io.File;
+
+import javax.vecmath.Matrix4d;
+import javax.vecmath.Vector3d;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import owl.tests.TestsSetup;
+
+public class AsaCalculatorTest {
+
+	private static final String TESTDATADIR = "/owl/core/structure";
+	private static final String PDBFILE_A = TESTDATADIR+"/1tdrA.pdb";
+	private static final String PDBFILE_B = TESTDATADIR+"/1tdrB.pdb";
+
+	private static final int N_SPHERE_POINTS = 100;
+	
+	// the sampling of the sphere points depends on the orientation: a rotated copy has slightly different ASAs
+	private static final double ROTATION_ANGLE = 0.7;
+	private static final Vector3d TRANSLATION = new Vector3d(31.7, -12.3, 45.9);
+
+	/**
+	 * The incremental calculation of the complex ASAs must be within the stated error bound of the
+	 * full one: each atom can be off at most by the error of its given uncomplexed ASA. The uncomplexed 
+	 * ASAs are taken from the calculation of each chain on its own, first with the same coordinates (bound 0) 
+	 * and then for the second chain from a rotated and translated copy.
+	 * @throws Exception
+	 */
+	@Test
+	public void testCalculateComplexAsa() throws Exception {
+		File fileA = TestsSetup.inputStreamToTempFile(AsaCalculatorTest.class.getResourceAsStream(PDBFILE_A), "AsaCalculatorTest", ".pdb");
+		File fileB = TestsSetup.inputStreamToTempFile(AsaCalculatorTest.class.getResourceAsStream(PDBFILE_B), "AsaCalculatorTest", ".pdb");
+		Atom[] atomsA = new PdbAsymUnit(fileA).getFirstChain().getAllAtoms();
+		Atom[] atomsB = new PdbAsymUnit(fileB).getFirstChain().getAllAtoms();
+		Atom[] movedAtomsB = new PdbAsymUnit(fileB).getFirstChain().getAllAtoms();
+		Matrix4d move = new Matrix4d();
+		move.rotZ(ROTATION_ANGLE);
+		move.setTranslation(TRANSLATION);
+		for (Atom atom:movedAtomsB) {
+			move.transform(atom.getCoords());
+		}
+
+		Atom[] atoms = new Atom[atomsA.length+atomsB.length];
+		System.arraycopy(atomsA, 0, atoms, 0, atomsA.length);
+		System.arraycopy(atomsB, 0, atoms, atomsA.length, atomsB.length);
+
+		double[] asasA = new AsaCalculator(atomsA, AsaCalculator.DEFAULT_PROBE_SIZE, N_SPHERE_POINTS, 1).calculateAsa();
+		double[] asasB = new AsaCalculator(atomsB, AsaCalculator.DEFAULT_PROBE_SIZE, N_SPHERE_POINTS, 1).calculateAsa();
+		double[] movedAsasB = new AsaCalculator(movedAtomsB, AsaCalculator.DEFAULT_PROBE_SIZE, N_SPHERE_POINTS, 1).calculateAsa();
+		double[] exactAsas = new double[atoms.length];
+		System.arraycopy(asasA, 0, exactAsas, 0, asasA.length);
+		System.arraycopy(asasB, 0, exactAsas, asasA.length, asasB.length);
+		double[] movedAsas = new double[atoms.length];
+		System.arraycopy(asasA, 0, movedAsas, 0, asasA.length);
+		System.arraycopy(movedAsasB, 0, movedAsas, asasA.length, movedAsasB.length);
+
+		double[] fullAsas = new AsaCalculator(atoms, AsaCalculator.DEFAULT_PROBE_SIZE, N_SPHERE_POINTS, 1).calculateAsa();
+
+		for (double[] uncomplexedAsas:new double[][]{exactAsas, movedAsas}) {
+			for (int nThreads:new int[]{1,2}) {
+				AsaCalculator asaCalc = new AsaCalculator(atoms, AsaCalculator.DEFAULT_PROBE_SIZE, N_SPHERE_POINTS, nThreads);
+				double[] complexAsas = asaCalc.calculateComplexAsa(atomsA.length, uncomplexedAsas);
+
+				Assert.assertEquals(fullAsas.length, complexAsas.length);
+				int buried = 0;
+				for (int i=0;i<atoms.length;i++) {
+					double bound = Math.abs(uncomplexedAsas[i]-exactAsas[i]);
+					Assert.assertEquals(fullAsas[i], complexAsas[i], bound);
+					if (complexAsas[i]<uncomplexedAsas[i]) buried++;
+				}
+				// the 2 chains do form an interface
+				Assert.assertTrue(buried>0);
+			}
+		}
+	}
+}
@@ -0,0 +1,105 @@
+package owl.core.structure;
+
+import java.io.File;
+import java.util.Arrays;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import owl.core.util.FileTypeGuesser;
+import owl.tests.TestsSetup;
+
+public class BinfileParserTest {
+
+	private static final String TESTDATADIR = "/owl/core/structure";
+	private static final String PDBFILE = TESTDATADIR+"/1tdrA.pdb";
+
+	/**
+	 * A PdbAsymUnit written to a binary file must be read back with the same chains, residues
+	 * and atoms, with coordinates exactly as parsed from the PDB file.
+	 * @throws Exception
+	 */
+	@Test
+	public void testRoundTrip() throws Exception {
+		File pdbFile = TestsSetup.inputStreamToTempFile(BinfileParserTest.class.getResourceAsStream(PDBFILE), "BinfileParserTest", ".pdb");
+		File binFile = File.createTempFile("BinfileParserTest", BinfileWriter.BIN_FILE_EXTENSION);
+		binFile.deleteOnExit();
+
+		PdbAsymUnit pdb = new PdbAsymUnit(pdbFile);
+		pdb.writeToBinFile(binFile);
+		Assert.assertEquals(FileTypeGuesser.OWL_BIN_FILE, FileTypeGuesser.guessFileType(binFile));
+
+		PdbAsymUnit binPdb = new PdbAsymUnit(binFile);
+		Assert.assertEquals(pdb.getPdbCode(), binPdb.getPdbCode());
+		Assert.assertEquals(pdb.getResolution(), binPdb.getResolution(), 0);
+		Assert.assertEquals(pdb.getSpaceGroup(), binPdb.getSpaceGroup());
+		Assert.assertEquals(pdb.getPdbChainCodes(), binPdb.getPdbChainCodes());
+		Assert.assertEquals(pdb.getProtChainClusters().size(), binPdb.getProtChainClusters().size());
+
+		for (PdbChain chain:pdb.getAllChains()) {
+			PdbChain binChain = binPdb.getChainForChainCode(chain.getChainCode());
+			Assert.assertEquals(chain.getSequence().getSeq(), binChain.getSequence().getSeq());
+			Assert.assertEquals(chain.getObsLength(), binChain.getObsLength());
+			for (Atom atom:chain.getAllAtoms()) {
+				Atom binAtom = binChain.getAtom(atom.getSerial());
+				Assert.assertEquals(atom.getCode(), binAtom.getCode());
+				Assert.assertEquals(atom.getType(), binAtom.getType());
+				Assert.assertEquals(atom.getParentResidue().getPdbSerial(), binAtom.getParentResidue().getPdbSerial());
+				Assert.assertEquals(atom.getCoords(), binAtom.getCoords());
+				Assert.assertEquals(atom.getBfactor(), binAtom.getBfactor(), 0);
+				Assert.assertEquals(atom.getOccupancy(), binAtom.getOccupancy(), 0);
+			}
+		}
+	}
+
+	/**
+	 * Atoms without a chemical type or of unknown element must be written and read back
+	 * with the same type.
+	 * @throws Exception
+	 */
+	@Test
+	public void testRoundTripUntypedAtoms() throws Exception {
+		File pdbFile = TestsSetup.inputStreamToTempFile(BinfileParserTest.class.getResourceAsStream(PDBFILE), "BinfileParserTest", ".pdb");
+		File binFile = File.createTempFile("BinfileParserTest", BinfileWriter.BIN_FILE_EXTENSION);
+		binFile.deleteOnExit();
+
+		PdbAsymUnit pdb = new PdbAsymUnit(pdbFile);
+		PdbChain chain = pdb.getFirstChain();
+		Atom[] atoms = chain.getAllAtoms();
+		atoms[0].setType(null);
+		atoms[1].setType(AtomType.X);
+		pdb.writeToBinFile(binFile);
+
+		PdbAsymUnit binPdb = new PdbAsymUnit(binFile);
+		PdbChain binChain = binPdb.getChainForChainCode(chain.getChainCode());
+		Assert.assertNull(binChain.getAtom(atoms[0].getSerial()).getType());
+		Assert.assertEquals(AtomType.X, binChain.getAtom(atoms[1].getSerial()).getType());
+		Assert.assertEquals(atoms[2].getType(), binChain.getAtom(atoms[2].getSerial()).getType());
+		Assert.assertEquals(atoms[0].getCoords(), binChain.getAtom(atoms[0].getSerial()).getCoords());
+	}
+
+	/**
+	 * The same parser must read the entry again, with different load options.
+	 * @throws Exception
+	 */
+	@Test
+	public void testReadTwice() throws Exception {
+		File pdbFile = TestsSetup.inputStreamToTempFile(BinfileParserTest.class.getResourceAsStream(PDBFILE), "BinfileParserTest", ".pdb");
+		File binFile = File.createTempFile("BinfileParserTest", BinfileWriter.BIN_FILE_EXTENSION);
+		binFile.deleteOnExit();
+		PdbAsymUnit pdb = new PdbAsymUnit(pdbFile);
+		pdb.writeToBinFile(binFile);
+
+		BinfileParser parser = new BinfileParser(binFile);
+		PdbLoadOptions options = new PdbLoadOptions();
+		options.setAtomNames(Arrays.asList("CA"));
+		PdbAsymUnit caPdb = new PdbAsymUnit();
+		parser.read(caPdb, options);
+		PdbAsymUnit fullPdb = new PdbAsymUnit();
+		parser.read(fullPdb);
+
+		PdbChain chain = pdb.getFirstChain();
+		Assert.assertEquals(chain.getNumAtoms(), fullPdb.getChainForChainCode(chain.getChainCode()).getNumAtoms());
+		Assert.assertEquals(chain.getObsLength(), caPdb.getChainForChainCode(chain.getChainCode()).getNumAtoms());
+	}
+}
@@ -0,0 +1,125 @@
+package owl.core.structure;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import owl.tests.TestsSetup;
+
+public class CiffileParserTest {
+
+	private static final String TESTDATADIR = "/owl/core/structure";
+	private static final String PDBFILE = TESTDATADIR+"/1tdrA.pdb";
+
+	private static final int NUM_MODELS = 3;
+	// the atoms of each model are shifted along x by this times the model serial minus 1
+	private static final double MODEL_SHIFT = 10;
+
+	private static PdbAsymUnit pdb;
+	private static File cifFile;
+
+	/**
+	 * Writes a multi-model mmCIF file from a single model structure: the _atom_site records
+	 * are repeated for each model with shifted coordinates.
+	 * @throws Exception
+	 */
+	@BeforeClass
+	public static void setUpBeforeClass() throws Exception {
+		File pdbFile = TestsSetup.inputStreamToTempFile(CiffileParserTest.class.getResourceAsStream(PDBFILE), "CiffileParserTest", ".pdb");
+		pdb = new PdbAsymUnit(pdbFile);
+		File singleModelFile = File.createTempFile("CiffileParserTest", ".cif");
+		singleModelFile.deleteOnExit();
+		pdb.writeToCifFile(singleModelFile, false, false);
+
+		List<String> subFields = new ArrayList<String>();
+		List<String[]> records = new ArrayList<String[]>();
+		cifFile = File.createTempFile("CiffileParserTest", ".cif");
+		PrintWriter pw = new PrintWriter(cifFile);
+		BufferedReader br = new BufferedReader(new FileReader(singleModelFile));
+		String line;
+		while ((line = br.readLine())!=null) {
+			if (line.startsWith("_atom_site.")) {
+				subFields.add(line.substring("_atom_site.".length()).trim());
+			} else if (line.startsWith("ATOM") || line.startsWith("HETATM")) {
+				records.add(line.trim().split("\\s+"));
+				continue;
+			} else if (!records.isEmpty()) {
+				writeModels(pw, subFields, records);
+				records.clear();
+			}
+			pw.println(line);
+		}
+		if (!records.isEmpty()) writeModels(pw, subFields, records);
+		br.close();
+		pw.close();
+	}
+
+	private static void writeModels(PrintWriter pw, List<String> subFields, List<String[]> records) {
+		int modelIdx = subFields.indexOf("pdbx_PDB_model_num");
+		int xIdx = subFields.indexOf("Cartn_x");
+		for (int model=1;model<=NUM_MODELS;model++) {
+			for (String[] record:records) {
+				String[] tokens = record.clone();
+				tokens[modelIdx] = Integer.toString(model);
+				tokens[xIdx] = String.format(Locale.US, "%.3f", Double.parseDouble(tokens[xIdx])+MODEL_SHIFT*(model-1));
+				StringBuilder sb = new StringBuilder();
+				for (String token:tokens) {
+					if (sb.length()>0) sb.append(' ');
+					sb.append(token);
+				}
+				pw.println(sb);
+			}
+		}
+	}
+
+	@AfterClass
+	public static void tearDownAfterClass() {
+		cifFile.delete();
+	}
+
+	/**
+	 * Only the atoms of one model must be kept after scanning a multi-model file, any model
+	 * must still be readable.
+	 * @throws Exception
+	 */
+	@Test
+	public void testMultiModel() throws Exception {
+		CiffileParser parser = new CiffileParser(cifFile);
+		Assert.assertArrayEquals(new Integer[]{1,2,3}, parser.getModels());
+		int numAtoms = pdb.getFirstChain().getNumAtoms();
+		Assert.assertEquals(numAtoms, parser.getNumAtomLines());
+
+		for (int model:new int[]{2,1,3}) {
+			PdbAsymUnit modelPdb = new PdbAsymUnit();
+			parser.readChains(modelPdb, model);
+			Assert.assertEquals(numAtoms, parser.getNumAtomLines());
+			checkModel(modelPdb, model);
+		}
+
+		// the file with the load options path
+		for (int model=1;model<=NUM_MODELS;model++) {
+			PdbAsymUnit modelPdb = new PdbAsymUnit(cifFile, model);
+			checkModel(modelPdb, model);
+		}
+	}
+
+	private static void checkModel(PdbAsymUnit modelPdb, int model) {
+		PdbChain chain = pdb.getFirstChain();
+		PdbChain modelChain = modelPdb.getChain(chain.getPdbChainCode());
+		Assert.assertEquals(chain.getNumAtoms(), modelChain.getNumAtoms());
+		for (Atom atom:chain.getAllAtoms()) {
+			Atom modelAtom = modelChain.getAtom(atom.getSerial());
+			Assert.assertEquals(atom.getCoords().x+MODEL_SHIFT*(model-1), modelAtom.getCoords().x, 0.0005);
+			Assert.assertEquals(atom.getCoords().y, modelAtom.getCoords().y, 0.0005);
+		}
+	}
+}
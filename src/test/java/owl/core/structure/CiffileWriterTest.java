@@ -0,0 +1,66 @@
+package owl.core.structure;
+
+import java.io.File;
+import java.util.Locale;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import owl.tests.TestsSetup;
+
+public class CiffileWriterTest {
+
+	private static final String TESTDATADIR = "/owl/core/structure";
+	private static final String PDBFILE = TESTDATADIR+"/1c52A.pdb";
+
+	/**
+	 * A structure written in mmCIF format (in both standard and compact layouts) must be read
+	 * back with the same header data, chains, residues and atoms (coordinates to the 3 decimals of the format).
+	 * @throws Exception
+	 */
+	@Test
+	public void testWriteRead() throws Exception {
+		File pdbFile = TestsSetup.inputStreamToTempFile(CiffileWriterTest.class.getResourceAsStream(PDBFILE), "CiffileWriterTest", ".pdb");
+		PdbAsymUnit pdb = new PdbAsymUnit(pdbFile);
+
+		for (boolean compact:new boolean[]{false,true}) {
+			File cifFile = File.createTempFile("CiffileWriterTest", ".cif.gz");
+			cifFile.deleteOnExit();
+			pdb.writeToCifFile(cifFile, true, compact);
+
+			PdbAsymUnit readPdb = new PdbAsymUnit(cifFile);
+			Assert.assertEquals(pdb.getPdbCode(), readPdb.getPdbCode());
+			Assert.assertEquals(pdb.getTitle(), readPdb.getTitle());
+			Assert.assertEquals(pdb.getNumChains(), readPdb.getNumChains());
+			for (PdbChain chain:pdb.getAllChains()) {
+				PdbChain readChain = readPdb.getChainForChainCode(chain.getChainCode());
+				Assert.assertEquals(chain.getPdbChainCode(), readChain.getPdbChainCode());
+				Assert.assertEquals(chain.isNonPolyChain(), readChain.isNonPolyChain());
+				if (!chain.isNonPolyChain()) {
+					Assert.assertEquals(chain.getSequence().getSeq(), readChain.getSequence().getSeq());
+				}
+				Assert.assertEquals(chain.getNumAtoms(), readChain.getNumAtoms());
+				for (Atom atom:chain.getAllAtoms()) {
+					Atom readAtom = readChain.getAtom(atom.getSerial());
+					Assert.assertEquals(atom.getCode(), readAtom.getCode());
+					Assert.assertEquals(atom.getParentResidue().getPdbSerial(), readAtom.getParentResidue().getPdbSerial());
+					Assert.assertEquals(String.format(Locale.US, "%8.3f%8.3f%8.3f", atom.getCoords().x, atom.getCoords().y, atom.getCoords().z),
+							String.format(Locale.US, "%8.3f%8.3f%8.3f", readAtom.getCoords().x, readAtom.getCoords().y, readAtom.getCoords().z));
+					Assert.assertEquals(atom.getBfactor(), readAtom.getBfactor(), 0.005);
+				}
+			}
+		}
+	}
+
+	/**
+	 * The CIF chain codes must follow the PDB convention.
+	 */
+	@Test
+	public void testGetAsymId() {
+		Assert.assertEquals("A", CiffileWriter.getAsymId(0));
+		Assert.assertEquals("Z", CiffileWriter.getAsymId(25));
+		Assert.assertEquals("AA", CiffileWriter.getAsymId(26));
+		Assert.assertEquals("BA", CiffileWriter.getAsymId(27));
+		Assert.assertEquals("AB", CiffileWriter.getAsymId(52));
+	}
+}
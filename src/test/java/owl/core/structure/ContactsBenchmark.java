@@ -0,0 +1,67 @@
+package owl.core.structure;
+
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import owl.core.structure.graphs.AICGraph;
+import owl.core.util.Grid;
+import owl.core.util.GridContacts;
+import owl.tests.TestsSetup;
+
+/**
+ * JMH benchmark of the atom contact calculations: the {@link Grid} contacts of a chain
+ * with itself and the atom interaction graph between 2 chains ({@link PdbChain#getAICGraph(PdbChain, double)}).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class ContactsBenchmark {
+
+	private static final String TESTDATADIR = "/owl/core/structure";
+	private static final String PDBFILE_A = TESTDATADIR+"/1tdrA.pdb";
+	private static final String PDBFILE_B = TESTDATADIR+"/1tdrB.pdb";
+
+	@Param({"4.5","6.0"})
+	public double cutoff;
+
+	private PdbChain chainA;
+	private PdbChain chainB;
+	private Atom[] atomsA;
+
+	@Setup
+	public void setUp() throws Exception {
+		File fileA = TestsSetup.inputStreamToTempFile(ContactsBenchmark.class.getResourceAsStream(PDBFILE_A), "ContactsBenchmark", ".pdb");
+		File fileB = TestsSetup.inputStreamToTempFile(ContactsBenchmark.class.getResourceAsStream(PDBFILE_B), "ContactsBenchmark", ".pdb");
+		chainA = new PdbAsymUnit(fileA).getFirstChain();
+		chainB = new PdbAsymUnit(fileB).getFirstChain();
+		atomsA = chainA.getAllAtoms();
+	}
+
+	@Benchmark
+	public GridContacts gridContacts() {
+		Grid grid = new Grid(cutoff);
+		grid.addAtoms(atomsA, atomsA);
+		return grid.getContacts(false);
+	}
+
+	@Benchmark
+	public AICGraph aicGraph() {
+		return chainA.getAICGraph(chainB, cutoff);
+	}
+
+}
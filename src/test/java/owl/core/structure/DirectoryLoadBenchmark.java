@@ -0,0 +1,92 @@
+package owl.core.structure;
+
+import java.io.File;
+import java.io.FileFilter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import owl.tests.TestsSetup;
+
+/**
+ * JMH benchmark of loading all PDB and mmCIF files (plain or gzipped) of a directory
+ * with {@link PdbAsymUnit#PdbAsymUnit(File)}. Each operation loads one file, cycling
+ * through the files of the directory, so that the throughput is given in files per second.
+ *
+ * The directory is given with -p dir=/path/to/dir, e.g. a local mirror of the PDB. If none
+ * given the PDB files of the test resources are used.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class DirectoryLoadBenchmark {
+
+	private static final String TESTDATADIR = "/owl/core/structure";
+	private static final String[] TEST_PDB_FILES = {"1tdrA.pdb","1tdrB.pdb","1c52A.pdb","1bxyA_tinker.pdb"};
+
+	@Param({""})
+	public String dir;
+
+	private File[] files;
+	private int fileIdx;
+
+	@Setup
+	public void setUp() throws Exception {
+		if (dir.isEmpty()) {
+			files = new File[TEST_PDB_FILES.length];
+			for (int i=0;i<TEST_PDB_FILES.length;i++) {
+				files[i] = TestsSetup.inputStreamToTempFile(DirectoryLoadBenchmark.class.getResourceAsStream(TESTDATADIR+"/"+TEST_PDB_FILES[i]), "DirectoryLoadBenchmark", ".pdb");
+			}
+		} else {
+			files = new File(dir).listFiles(new FileFilter() {
+				@Override
+				public boolean accept(File file) {
+					String name = file.getName();
+					return file.isFile() &&
+							(name.endsWith(".pdb") || name.endsWith(".ent") || name.endsWith(".cif") ||
+							 name.endsWith(".pdb.gz") || name.endsWith(".ent.gz") || name.endsWith(".cif.gz"));
+				}
+			});
+			if (files==null || files.length==0)
+				throw new IllegalArgumentException("No PDB or mmCIF files found in directory "+dir);
+			Arrays.sort(files);
+		}
+
+		// we leave out the files that can't be loaded so that they don't count in the throughput
+		List<File> loadable = new ArrayList<File>();
+		for (File file:files) {
+			try {
+				new PdbAsymUnit(file);
+				loadable.add(file);
+			} catch (Exception e) {
+				System.err.println("Skipping file "+file+" that can't be loaded: "+e.getMessage());
+			}
+		}
+		files = loadable.toArray(new File[loadable.size()]);
+		fileIdx = 0;
+	}
+
+	@Benchmark
+	public PdbAsymUnit loadNextFile() throws Exception {
+		File file = files[fileIdx];
+		fileIdx = (fileIdx+1) % files.length;
+		return new PdbAsymUnit(file);
+	}
+
+}
@@ -0,0 +1,82 @@
+package owl.core.structure;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.InputStreamReader;
+import java.io.PrintWriter;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * JMH benchmark of the full interface calculation of a crystal structure 
+ * ({@link InterfacesFinder#getAllInterfaces(double, int, int, boolean, boolean, int, double)}): 
+ * lattice search plus ASA/BSA calculation.
+ *
+ * None of the test structures has a crystal cell, so the benchmark entry is made of the 2 test chains 
+ * of 1tdr placed in an artificial P 21 21 21 cell small enough for them to pack densely.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class InterfacesFinderBenchmark {
+
+	private static final String TESTDATADIR = "/owl/core/structure";
+	private static final String[] PDBFILES = {TESTDATADIR+"/1tdrA.pdb", TESTDATADIR+"/1tdrB.pdb"};
+
+	private static final String CRYST1 = "CRYST1   45.000   55.000   90.000  90.00  90.00  90.00 P 21 21 21    8";
+
+	private static final double CUTOFF = 5.5;
+	private static final int N_SPHERE_POINTS = 960;
+
+	@Param({"1","4"})
+	public int nThreads;
+
+	@Param({"false","true"})
+	public boolean incrementalBsa;
+
+	private File pdbFile;
+
+	@Setup
+	public void setUp() throws Exception {
+		pdbFile = File.createTempFile("InterfacesFinderBenchmark", ".pdb");
+		pdbFile.deleteOnExit();
+		PrintWriter pw = new PrintWriter(pdbFile);
+		pw.println(CRYST1);
+		for (String pdbFileName:PDBFILES) {
+			BufferedReader br = new BufferedReader(new InputStreamReader(InterfacesFinderBenchmark.class.getResourceAsStream(pdbFileName)));
+			String line;
+			while ((line = br.readLine())!=null) {
+				if (line.startsWith("ATOM")) pw.println(line);
+			}
+			br.close();
+			pw.println("TER");
+		}
+		pw.println("END");
+		pw.close();
+	}
+
+	@Benchmark
+	public ChainInterfaceList getAllInterfaces() throws Exception {
+		// the interface calculation sets values in the structure: we start from a fresh one every time
+		PdbAsymUnit pdb = new PdbAsymUnit(pdbFile);
+		InterfacesFinder interfFinder = new InterfacesFinder(pdb);
+		interfFinder.setSearchThreads(nThreads);
+		interfFinder.setIncrementalBsa(incrementalBsa);
+		return interfFinder.getAllInterfaces(CUTOFF, N_SPHERE_POINTS, nThreads, true, false, -1, 0);
+	}
+
+}
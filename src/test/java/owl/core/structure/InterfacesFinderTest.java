@@ -0,0 +1,135 @@
+package owl.core.structure;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.InputStreamReader;
+import java.io.PrintWriter;
+import java.util.Iterator;
+import java.util.List;
+
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+public class InterfacesFinderTest {
+
+	private static final String TESTDATADIR = "/owl/core/structure";
+	private static final String[] PDBFILES = {TESTDATADIR+"/1tdrA.pdb", TESTDATADIR+"/1tdrB.pdb"};
+	// a chain with a heme cofactor
+	private static final String COFACTOR_PDBFILE = TESTDATADIR+"/1c52A.pdb";
+
+	// the test chains have no crystal cell: we place them in an artificial cell small enough for them to pack densely
+	private static final String CRYST1 = "CRYST1   45.000   55.000   90.000  90.00  90.00  90.00 P 21 21 21    8";
+
+	private static final double CUTOFF = 5.5;
+	private static final int N_SPHERE_POINTS = 100;
+
+	private static File pdbFile;
+	private static File cofactorPdbFile;
+
+	@BeforeClass
+	public static void setUpBeforeClass() throws Exception {
+		pdbFile = writeCrystalFile(PDBFILES, false);
+		cofactorPdbFile = writeCrystalFile(new String[]{COFACTOR_PDBFILE}, true);
+	}
+
+	@AfterClass
+	public static void tearDownAfterClass() {
+		pdbFile.delete();
+		cofactorPdbFile.delete();
+	}
+
+	private static File writeCrystalFile(String[] pdbFileNames, boolean hetAtoms) throws Exception {
+		File file = File.createTempFile("InterfacesFinderTest", ".pdb");
+		PrintWriter pw = new PrintWriter(file);
+		pw.println(CRYST1);
+		for (String pdbFileName:pdbFileNames) {
+			BufferedReader br = new BufferedReader(new InputStreamReader(InterfacesFinderTest.class.getResourceAsStream(pdbFileName)));
+			String line;
+			while ((line = br.readLine())!=null) {
+				if (line.startsWith("ATOM")) pw.println(line);
+			}
+			br.close();
+			pw.println("TER");
+			if (hetAtoms) {
+				// after the TER record the HETATMs go to their own non-poly chain
+				br = new BufferedReader(new InputStreamReader(InterfacesFinderTest.class.getResourceAsStream(pdbFileName)));
+				while ((line = br.readLine())!=null) {
+					if (line.startsWith("HETATM")) pw.println(line);
+				}
+				br.close();
+			}
+		}
+		pw.println("END");
+		pw.close();
+		return file;
+	}
+
+	private static ChainInterfaceList getInterfaces(int searchThreads) throws Exception {
+		PdbAsymUnit pdb = new PdbAsymUnit(pdbFile);
+		InterfacesFinder interfFinder = new InterfacesFinder(pdb);
+		interfFinder.setSearchThreads(searchThreads);
+		return interfFinder.getAllInterfaces(CUTOFF, N_SPHERE_POINTS, 1, true, false, -1, 0);
+	}
+
+	/**
+	 * The parallel lattice search must find the same interfaces as the serial one.
+	 * @throws Exception
+	 */
+	@Test
+	public void testParallelSearch() throws Exception {
+		ChainInterfaceList serial = getInterfaces(1);
+		Assert.assertTrue(serial.size()>0);
+		// a few rounds to give a chance to races between the search threads
+		for (int round=0;round<3;round++) {
+			ChainInterfaceList parallel = getInterfaces(4);
+			Assert.assertEquals(serial.size(), parallel.size());
+			for (int i=1;i<=serial.size();i++) {
+				ChainInterface expected = serial.get(i);
+				ChainInterface actual = parallel.get(i);
+				Assert.assertEquals(expected.getFirstMolecule().getPdbChainCode(), actual.getFirstMolecule().getPdbChainCode());
+				Assert.assertEquals(expected.getSecondMolecule().getPdbChainCode(), actual.getSecondMolecule().getPdbChainCode());
+				Assert.assertEquals(expected.getSecondTransf().toString(), actual.getSecondTransf().toString());
+				Assert.assertEquals(expected.getAICGraph().getEdgeCount(), actual.getAICGraph().getEdgeCount());
+				Assert.assertEquals(expected.getInterfaceArea(), actual.getInterfaceArea(), 0.001);
+			}
+		}
+	}
+
+	/**
+	 * The incremental BSA calculation must give the same BSAs as the full one, also for the 
+	 * interfaces of chains with cofactors.
+	 * @throws Exception
+	 */
+	@Test
+	public void testIncrementalBsaWithCofactors() throws Exception {
+		ChainInterfaceList full = getCofactorInterfaces(false);
+		ChainInterfaceList incremental = getCofactorInterfaces(true);
+		Assert.assertTrue(full.size()>1);
+		Assert.assertEquals(full.size(), incremental.size());
+		for (int i=1;i<=full.size();i++) {
+			ChainInterface expected = full.get(i);
+			ChainInterface actual = incremental.get(i);
+			Assert.assertTrue(expected.hasCofactors());
+			Assert.assertEquals(expected.getInterfaceArea(), actual.getInterfaceArea(), 0.01);
+			for (int molecId=0;molecId<2;molecId++) {
+				List<PdbChain> expectedCofactors = expected.getCofactors(molecId);
+				List<PdbChain> actualCofactors = actual.getCofactors(molecId);
+				for (int j=0;j<expectedCofactors.size();j++) {
+					Iterator<Residue> actualResidues = actualCofactors.get(j).iterator();
+					for (Residue residue:expectedCofactors.get(j)) {
+						Assert.assertEquals(residue.getBsa(), actualResidues.next().getBsa(), 0.01);
+					}
+				}
+			}
+		}
+	}
+
+	private static ChainInterfaceList getCofactorInterfaces(boolean incrementalBsa) throws Exception {
+		PdbAsymUnit pdb = new PdbAsymUnit(cofactorPdbFile);
+		InterfacesFinder interfFinder = new InterfacesFinder(pdb);
+		interfFinder.setIncrementalBsa(incrementalBsa);
+		return interfFinder.getAllInterfaces(CUTOFF, N_SPHERE_POINTS, 1, true, false, 10, 0);
+	}
+}
@@ -0,0 +1,45 @@
+package owl.core.structure;
+
+import java.io.File;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import owl.tests.TestsSetup;
+
+public class NameInternerTest {
+
+	private static final String TESTDATADIR = "/owl/core/structure";
+	private static final String PDBFILE = TESTDATADIR+"/1c52A.pdb";
+
+	@Test
+	public void testIntern() {
+		String line = "ATOM      1  CA  MET A   1      38.591   8.543  15.660  1.00 77.79           C";
+		// standard names are the instances of the enums
+		Assert.assertSame(AminoAcid.MET.getThreeLetterCode(), NameInterner.intern(line, 17, 20));
+		Assert.assertSame(AtomType.C.getSymbol(), NameInterner.internTrimmed(line, 76, 78));
+		// other names are shared from the first time they are seen
+		String atom = NameInterner.internTrimmed(line, 12, 16);
+		Assert.assertEquals("CA", atom);
+		Assert.assertSame(atom, NameInterner.intern(new String("CA")));
+		// long strings are not interned
+		String title = new String("A LONG TITLE");
+		Assert.assertSame(title, NameInterner.intern(title));
+	}
+
+	/**
+	 * Two structures loaded from file must share their atom and residue codes.
+	 * @throws Exception
+	 */
+	@Test
+	public void testSharedNames() throws Exception {
+		File pdbFile = TestsSetup.inputStreamToTempFile(NameInternerTest.class.getResourceAsStream(PDBFILE), "NameInternerTest", ".pdb");
+		PdbChain chain1 = new PdbAsymUnit(pdbFile).getChain("A");
+		PdbChain chain2 = new PdbAsymUnit(pdbFile).getChain("A");
+		for (Atom atom:chain1.getAllAtoms()) {
+			Atom atom2 = chain2.getAtom(atom.getSerial());
+			Assert.assertSame(atom.getCode(), atom2.getCode());
+			Assert.assertSame(atom.getParentResidue().getLongCode(), atom2.getParentResidue().getLongCode());
+		}
+	}
+}
@@ -0,0 +1,107 @@
+package owl.core.structure;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import owl.tests.TestsSetup;
+
+public class PdbBatchLoaderTest {
+
+	private static final String TESTDATADIR = "/owl/core/structure";
+	private static final String[] PDBFILES = {TESTDATADIR+"/1tdrA.pdb", TESTDATADIR+"/1c52A.pdb"};
+
+	private static File cifDir;
+
+	/**
+	 * Writes a local mmCIF mirror with the test structures as entries 1bbb, 1ddd, 1aaa
+	 * and 1eee and a corrupt file as entry 1ccc.
+	 * @throws Exception
+	 */
+	@BeforeClass
+	public static void setUpBeforeClass() throws Exception {
+		cifDir = File.createTempFile("PdbBatchLoaderTest", "");
+		cifDir.delete();
+		cifDir.mkdir();
+		String[] pdbCodes = {"1bbb", "1ddd", "1aaa", "1eee"};
+		for (int i=0;i<pdbCodes.length;i++) {
+			String pdbFileName = PDBFILES[i%PDBFILES.length];
+			File pdbFile = TestsSetup.inputStreamToTempFile(PdbBatchLoaderTest.class.getResourceAsStream(pdbFileName), "PdbBatchLoaderTest", ".pdb");
+			PdbAsymUnit pdb = new PdbAsymUnit(pdbFile);
+			pdb.writeToCifFile(new File(cifDir, pdbCodes[i]+PdbBatchLoader.CIF_GZ_FILE_EXTENSION), true, false);
+		}
+		FileOutputStream corrupt = new FileOutputStream(new File(cifDir, "1ccc"+PdbBatchLoader.CIF_GZ_FILE_EXTENSION));
+		corrupt.write("not a gzipped mmCIF file".getBytes());
+		corrupt.close();
+	}
+
+	@AfterClass
+	public static void tearDownAfterClass() {
+		for (File file:cifDir.listFiles()) {
+			file.delete();
+		}
+		cifDir.delete();
+	}
+
+	/**
+	 * The entries must be listed in alphabetical order and, with 1 thread per stage, processed
+	 * in the given order. The failing entries (corrupt, missing, or throwing an Error in the handler)
+	 * must be recorded without stopping the batch.
+	 * @throws Exception
+	 */
+	@Test(timeout=60000)
+	public void testRun() throws Exception {
+		PdbBatchLoader loader = new PdbBatchLoader(cifDir, 1, 1, 1);
+		List<String> pdbCodes = loader.getAllPdbCodes();
+		Assert.assertEquals(Arrays.asList("1aaa", "1bbb", "1ccc", "1ddd", "1eee"), pdbCodes);
+
+		pdbCodes = new ArrayList<String>(pdbCodes);
+		Collections.reverse(pdbCodes);
+		pdbCodes.add("9zzz");
+		final List<String> processed = Collections.synchronizedList(new ArrayList<String>());
+		loader.run(pdbCodes, new PdbBatchLoader.EntryHandler() {
+			@Override
+			public void process(String pdbCode, PdbAsymUnit pdb) throws Exception {
+				processed.add(pdbCode);
+				Assert.assertTrue(pdb.getNumChains()>0);
+				if (pdbCode.equals("1ddd")) throw new StackOverflowError();
+			}
+		});
+
+		Assert.assertEquals(Arrays.asList("1eee", "1ddd", "1bbb", "1aaa"), processed);
+		Assert.assertEquals(6, loader.getNumEntries());
+		Assert.assertEquals(6, loader.getNumDone());
+		Assert.assertEquals(4, loader.getNumLoaded());
+		Assert.assertEquals(3, loader.getNumFailed());
+		Assert.assertEquals(Arrays.asList("1ccc", "1ddd", "9zzz"), new ArrayList<String>(loader.getErrors().keySet()));
+		Assert.assertTrue(loader.getErrors().get("1ddd") instanceof StackOverflowError);
+	}
+
+	/**
+	 * With several threads per stage all entries must be processed once.
+	 * @throws Exception
+	 */
+	@Test(timeout=60000)
+	public void testRunParallel() throws Exception {
+		PdbBatchLoader loader = new PdbBatchLoader(cifDir, 2, 3, 1);
+		final List<String> processed = Collections.synchronizedList(new ArrayList<String>());
+		loader.run(loader.getAllPdbCodes(), new PdbBatchLoader.EntryHandler() {
+			@Override
+			public void process(String pdbCode, PdbAsymUnit pdb) throws Exception {
+				processed.add(pdbCode);
+			}
+		});
+		Collections.sort(processed);
+		Assert.assertEquals(Arrays.asList("1aaa", "1bbb", "1ddd", "1eee"), processed);
+		Assert.assertEquals(5, loader.getNumDone());
+		Assert.assertEquals(1, loader.getNumFailed());
+	}
+}
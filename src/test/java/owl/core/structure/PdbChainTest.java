@@ -15,6 +15,7 @@ import java.util.TreeMap;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
+import javax.vecmath.Matrix4d;
 import javax.vecmath.Point3d;
 import javax.vecmath.Point3i;
 import javax.vecmath.Tuple3d;
@@ -693,6 +694,56 @@ public class PdbChainTest {
 		}
 	}
 	
+	@Test
+	public void testRIGraphVsAIGraph() throws PdbLoadException, IOException, FileFormatException {
+		PdbAsymUnit fullpdb = new PdbAsymUnit(TEST_PDB_FILE_1);
+		PdbChain pdb = fullpdb.getChain(TEST_CHAIN_1);
+		
+		// the residue graph calculated directly must be the one collapsed from the atom graph
+		for (boolean directed:new boolean[]{false,true}) {
+			RIGraph graph = pdb.getRIGraph("ALL", 4.5, directed);
+			RIGraph atomGraphCollapsed = pdb.getAllAtomGraph(4.5).getRIGraph(directed);
+			Assert.assertEquals(atomGraphCollapsed.getSerials(), graph.getSerials());
+			Assert.assertEquals(atomGraphCollapsed.getEdgeCount(), graph.getEdgeCount());
+			for (RIGEdge edge:atomGraphCollapsed.getEdges()) {
+				Pair<RIGNode> pair = atomGraphCollapsed.getEndpoints(edge);
+				RIGEdge edge2 = graph.getEdgeFromSerials(pair.getFirst().getResidueSerial(), pair.getSecond().getResidueSerial());
+				Assert.assertNotNull(edge2);
+				Assert.assertEquals(edge.getAtomWeight(), edge2.getAtomWeight());
+				Assert.assertEquals(edge.getDistance(), edge2.getDistance(), 0.0);
+			}
+		}
+	}
+	
+	@Test
+	public void testCoordinateOperations() throws PdbLoadException, IOException, FileFormatException {
+		PdbAsymUnit fullpdb = new PdbAsymUnit(TEST_PDB_FILE_1);
+		PdbChain pdb = fullpdb.getChain(TEST_CHAIN_1);
+		PdbChain copy = pdb.copy(fullpdb);
+		
+		Matrix4d m = new Matrix4d();
+		m.rotY(0.7);
+		m.setTranslation(new Vector3d(1.5, -2.0, 10.0));
+		copy.transform(m);
+		
+		// the copy is transformed as each atom by Matrix4d and the original is untouched
+		for (Atom atom:pdb.getAllAtoms()) {
+			Point3d expected = new Point3d(atom.getCoords());
+			m.transform(expected);
+			Assert.assertEquals(expected, copy.getAtom(atom.getSerial()).getCoords());
+		}
+		
+		copy.mirror();
+		copy.mirror();
+		copy.moveToOrigin();
+		Assert.assertEquals(0, new Vector3d(copy.getCentroid()).length(), 0.000001);
+		Assert.assertEquals(pdb.getNumAtoms(), copy.getAllAtoms().length);
+		
+		// the atoms are refreshed after changing them
+		copy.removeHatoms();
+		Assert.assertEquals(copy.getNumAtoms(), copy.getAllAtoms().length);
+	}
+	
 	// to debug the testing code (run as java program so that we can use normal debugger)
 	public static void main(String[] args) throws Exception {
 		PdbChainTest pdbTest = new PdbChainTest();
@@ -0,0 +1,64 @@
+package owl.core.structure;
+
+import java.io.File;
+import java.util.Arrays;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import owl.tests.TestsSetup;
+
+public class PdbLoadOptionsTest {
+
+	private static final String TESTDATADIR = "/owl/core/structure";
+	private static final String PDBFILE = TESTDATADIR+"/1c52A.pdb";
+
+	/**
+	 * Loading only the CA atoms of a chain must give a CA trace of the full chain, dropping
+	 * the het chains without CA atoms, in both PDB and binary formats.
+	 * @throws Exception
+	 */
+	@Test
+	public void testCaTrace() throws Exception {
+		File pdbFile = TestsSetup.inputStreamToTempFile(PdbLoadOptionsTest.class.getResourceAsStream(PDBFILE), "PdbLoadOptionsTest", ".pdb");
+		File binFile = File.createTempFile("PdbLoadOptionsTest", BinfileWriter.BIN_FILE_EXTENSION);
+		binFile.deleteOnExit();
+
+		PdbAsymUnit full = new PdbAsymUnit(pdbFile);
+		full.writeToBinFile(binFile);
+		PdbChain fullChain = full.getChain("A");
+
+		PdbLoadOptions options = new PdbLoadOptions();
+		options.setPdbChainCodes(Arrays.asList("A"));
+		options.setAtomNames(Arrays.asList("CA"));
+		options.setChainClusters(false);
+
+		for (File file:new File[]{pdbFile,binFile}) {
+			PdbAsymUnit pdb = new PdbAsymUnit(file, options);
+			Assert.assertEquals(1, pdb.getNumChains());
+			Assert.assertTrue(pdb.getProtChainClusters().isEmpty());
+			PdbChain chain = pdb.getChain("A");
+			Assert.assertEquals(fullChain.getSequence().getSeq(), chain.getSequence().getSeq());
+			Assert.assertEquals(fullChain.getObsLength(), chain.getObsLength());
+			Assert.assertEquals(chain.getObsLength(), chain.getNumAtoms());
+			for (Residue residue:chain) {
+				Assert.assertEquals(fullChain.getResidue(residue.getSerial()).getAtom("CA").getCoords(), residue.getAtom("CA").getCoords());
+			}
+		}
+	}
+
+	/**
+	 * Skipping the atoms must give no chains but still the header data.
+	 * @throws Exception
+	 */
+	@Test
+	public void testSkipAtoms() throws Exception {
+		File pdbFile = TestsSetup.inputStreamToTempFile(PdbLoadOptionsTest.class.getResourceAsStream(PDBFILE), "PdbLoadOptionsTest", ".pdb");
+
+		PdbLoadOptions options = new PdbLoadOptions();
+		options.skipCategory(PdbLoadOptions.Category.ATOMS);
+		PdbAsymUnit pdb = new PdbAsymUnit(pdbFile, options);
+		Assert.assertEquals(0, pdb.getNumChains());
+		Assert.assertEquals(new PdbAsymUnit(pdbFile).getPdbCode(), pdb.getPdbCode());
+	}
+}
@@ -0,0 +1,48 @@
+package owl.core.structure;
+
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import owl.tests.TestsSetup;
+
+/**
+ * JMH benchmark of loading a structure from a PDB file with {@link PdbfileParser}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class PdbfileParserBenchmark {
+
+	private static final String TESTDATADIR = "/owl/core/structure";
+
+	@Param({"1tdrA.pdb","1c52A.pdb","1bxyA_tinker.pdb"})
+	public String pdbFileName;
+
+	private File pdbFile;
+
+	@Setup
+	public void setUp() throws Exception {
+		pdbFile = TestsSetup.inputStreamToTempFile(PdbfileParserBenchmark.class.getResourceAsStream(TESTDATADIR+"/"+pdbFileName), "PdbfileParserBenchmark", ".pdb");
+	}
+
+	@Benchmark
+	public PdbAsymUnit load() throws Exception {
+		return new PdbAsymUnit(pdbFile);
+	}
+
+}
@@ -0,0 +1,91 @@
+package owl.core.structure;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.PrintWriter;
+import java.util.Iterator;
+import java.util.Locale;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import owl.tests.TestsSetup;
+
+public class PdbfileParserTest {
+
+	private static final String TESTDATADIR = "/owl/core/structure";
+	private static final String PDBFILE = TESTDATADIR+"/1tdrA.pdb";
+
+	private static final int NUM_MODELS = 3;
+
+	/**
+	 * The models read in one pass with the model iterator must be the same as the ones read
+	 * one at a time, with and without ENDMDL records.
+	 * @throws Exception
+	 */
+	@Test
+	public void testModelIterator() throws Exception {
+		File pdbFile = TestsSetup.inputStreamToTempFile(PdbfileParserTest.class.getResourceAsStream(PDBFILE), "PdbfileParserTest", ".pdb");
+
+		for (boolean endmdl:new boolean[]{true,false}) {
+			File multiModelFile = writeMultiModelFile(pdbFile, endmdl);
+
+			Iterator<PdbAsymUnit> it = new PdbfileParser(multiModelFile.getAbsolutePath()).getModelIterator();
+			int model = 0;
+			while (it.hasNext()) {
+				model++;
+				PdbAsymUnit pdb = it.next();
+				PdbAsymUnit expected = new PdbAsymUnit(multiModelFile, model);
+				Assert.assertEquals(model, pdb.getModel());
+				Assert.assertEquals(expected.getPdbCode(), pdb.getPdbCode());
+				Assert.assertEquals(expected.getPdbChainCodes(), pdb.getPdbChainCodes());
+				for (PdbChain chain:expected.getAllChains()) {
+					PdbChain itChain = pdb.getChainForChainCode(chain.getChainCode());
+					Assert.assertEquals(chain.getSequence().getSeq(), itChain.getSequence().getSeq());
+					Assert.assertEquals(chain.getNumAtoms(), itChain.getNumAtoms());
+					for (Atom atom:chain.getAllAtoms()) {
+						Assert.assertEquals(atom.getCoords(), itChain.getAtom(atom.getSerial()).getCoords());
+					}
+				}
+			}
+			Assert.assertEquals(NUM_MODELS, model);
+		}
+	}
+
+	/**
+	 * Writes a multi-model file with the header of the given PDB file and its atoms
+	 * shifted along x by the model serial.
+	 */
+	private static File writeMultiModelFile(File pdbFile, boolean endmdl) throws Exception {
+		File multiModelFile = File.createTempFile("PdbfileParserTest", ".pdb");
+		multiModelFile.deleteOnExit();
+		PrintWriter pw = new PrintWriter(multiModelFile);
+		StringBuilder atoms = new StringBuilder();
+		BufferedReader br = new BufferedReader(new FileReader(pdbFile));
+		String line;
+		while ((line=br.readLine())!=null) {
+			if (line.startsWith("ATOM") || line.startsWith("HETATM") || line.startsWith("TER")) {
+				atoms.append(line).append('\n');
+			} else if (!line.startsWith("END")) {
+				pw.println(line);
+			}
+		}
+		br.close();
+		for (int model=1;model<=NUM_MODELS;model++) {
+			pw.printf("MODEL     %4d\n", model);
+			for (String atomLine:atoms.toString().split("\n")) {
+				if (atomLine.startsWith("TER")) {
+					pw.println(atomLine);
+				} else {
+					double x = Double.parseDouble(atomLine.substring(30,38))+model;
+					pw.println(atomLine.substring(0,30)+String.format(Locale.US, "%8.3f",x)+atomLine.substring(38));
+				}
+			}
+			if (endmdl) pw.println("ENDMDL");
+		}
+		pw.println("END");
+		pw.close();
+		return multiModelFile;
+	}
+}
@@ -0,0 +1,161 @@
+package owl.core.structure;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.PrintWriter;
+import java.util.Locale;
+
+import javax.vecmath.Point3d;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import owl.tests.TestsSetup;
+
+public class PdbfileWriterTest {
+
+	private static final String TESTDATADIR = "/owl/core/structure";
+	private static final String PDBFILE = TESTDATADIR+"/1c52A.pdb";
+
+	// alt codes (only the first location is kept), an insertion code and a HET atom with a 2 letter element
+	private static final String[] EXTRA_LINES = {
+		"ATOM      1  N   SER B  26      -1.000  -2.000  -3.000  1.00 10.00           N  ",
+		"ATOM      2  CA ASER B  26      -1.500  -2.500  -3.500  0.60 11.00           C  ",
+		"ATOM      3  CA BSER B  26      -1.600  -2.600  -3.600  0.40 12.00           C  ",
+		"ATOM      4  N   THR B  27A     -5.000  -6.000  -7.000  1.00 13.00           N  ",
+		"ATOM      5  CA  THR B  27A     -5.500  -6.500  -7.500  1.00 14.00           C  ",
+		"ATOM      6 HG21 THR B  27A     -5.900  -6.900  -7.900  1.00 15.00           H  ",
+		"TER",
+		"HETATM    7 ZN    ZN B 101     -10.000 -20.000 -30.000  1.00 16.00          ZN  "
+	};
+
+	// values around the rounding ties and the width of the decimal fields
+	private static final double[] TRICKY_VALUES = {
+		-123.4565, -0.0004, -0.0005, 0.0005, 2.0005, -9999.9995, 9999.9996, 1234567.25, -1.235, 0.125
+	};
+
+	/**
+	 * A chain written (gzipped) with the PdbfileWriter must be read back with the same
+	 * sequence, atoms and coordinates (to the 3 decimals of the format).
+	 * @throws Exception
+	 */
+	@Test
+	public void testWriteRead() throws Exception {
+		File pdbFile = TestsSetup.inputStreamToTempFile(PdbfileWriterTest.class.getResourceAsStream(PDBFILE), "PdbfileWriterTest", ".pdb");
+		File outFile = File.createTempFile("PdbfileWriterTest", ".pdb.gz");
+		outFile.deleteOnExit();
+
+		PdbAsymUnit pdb = new PdbAsymUnit(pdbFile);
+		PdbChain chain = pdb.getChain("A");
+
+		PdbfileWriter writer = new PdbfileWriter(outFile, true);
+		writer.writeLine("HEADER");
+		writer.writeSeqresRecord(chain, "A");
+		writer.writeAtomLines(chain, "A", true);
+		writer.writeLine("END");
+		writer.close();
+
+		PdbChain readChain = new PdbAsymUnit(outFile).getChain("A");
+		Assert.assertEquals(chain.getSequence().getSeq(), readChain.getSequence().getSeq());
+		Assert.assertEquals(chain.getNumAtoms(), readChain.getNumAtoms());
+		for (Atom atom:chain.getAllAtoms()) {
+			Atom readAtom = readChain.getAtom(atom.getSerial());
+			Assert.assertEquals(atom.getCode(), readAtom.getCode());
+			Assert.assertEquals(atom.getParentResidue().getPdbSerial(), readAtom.getParentResidue().getPdbSerial());
+			Assert.assertEquals(String.format(Locale.US, "%8.3f%8.3f%8.3f", atom.getCoords().x, atom.getCoords().y, atom.getCoords().z),
+					String.format(Locale.US, "%8.3f%8.3f%8.3f", readAtom.getCoords().x, readAtom.getCoords().y, readAtom.getCoords().z));
+			Assert.assertEquals(atom.getBfactor(), readAtom.getBfactor(), 0.005);
+		}
+	}
+
+	/**
+	 * The ATOM/HETATM lines must be byte for byte the same as those of the printf code
+	 * the writer replaced, see {@link #formatAtomLines(PdbChain, String, boolean)}.
+	 * @throws Exception
+	 */
+	@Test
+	public void testSameAsPrintf() throws Exception {
+		File pdbFile = TestsSetup.inputStreamToTempFile(PdbfileWriterTest.class.getResourceAsStream(PDBFILE), "PdbfileWriterTest", ".pdb");
+		PdbChain chain = new PdbAsymUnit(pdbFile).getChain("A");
+		// negative and tricky coordinates, occupancies and b-factors and 6 digit serials for some atoms
+		int i = 0;
+		for (Atom atom:chain.getAllAtoms()) {
+			if (i%7==0) {
+				double v = TRICKY_VALUES[(i/7)%TRICKY_VALUES.length];
+				atom.setCoords(new Point3d(v, -v, v/10));
+				atom.setOccupancy(v/1000);
+				atom.setBfactor(-v/100);
+			}
+			if (i%50==0) {
+				atom.setSerial(100000+i);
+			}
+			i++;
+		}
+		chain.initialiseMaps();
+		checkSameAsPrintf(chain, "A");
+
+		File extraFile = File.createTempFile("PdbfileWriterTest", ".pdb");
+		extraFile.deleteOnExit();
+		PrintWriter pw = new PrintWriter(extraFile);
+		for (String line:EXTRA_LINES) pw.println(line);
+		pw.println("END");
+		pw.close();
+		PdbAsymUnit extraPdb = new PdbAsymUnit(extraFile);
+		for (PdbChain extraChain:extraPdb.getAllChains()) {
+			checkSameAsPrintf(extraChain, extraChain.getPdbChainCode());
+		}
+	}
+
+	private static void checkSameAsPrintf(PdbChain chain, String chainCode) throws Exception {
+		for (boolean usePdbResSer:new boolean[]{false,true}) {
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+			PdbfileWriter writer = new PdbfileWriter(out);
+			writer.writeAtomLines(chain, chainCode, usePdbResSer);
+			writer.close();
+			String[] expected = formatAtomLines(chain, chainCode, usePdbResSer).split("\n");
+			String[] actual = new String(out.toByteArray(), "US-ASCII").split("\n");
+			Assert.assertEquals(expected.length, actual.length);
+			for (int l=0;l<expected.length;l++) {
+				Assert.assertEquals(expected[l], actual[l]);
+			}
+		}
+	}
+
+	/**
+	 * The ATOM/HETATM lines as formatted with printf by the former PdbChain.writeAtomLines
+	 */
+	private static String formatAtomLines(PdbChain chain, String chainCode, boolean usePdbResSer) {
+		StringBuilder sb = new StringBuilder();
+		for (int atomser:chain.getAllAtomSerials()) {
+			Atom atom = chain.getAtom(atomser);
+			int resser = atom.getParentResSerial();
+			String pdbresser = atom.getParentResidue().getPdbSerial();
+			String atomCode = atom.getCode();
+			String atomType = atom.getType().getSymbol();
+			String res = atom.getParentResidue().getLongCode();
+			Point3d coords = atom.getCoords();
+
+			String lineType = "ATOM  ";
+			if (atom.getParentResidue() instanceof HetResidue) {
+				lineType = "HETATM";
+			}
+			String atomCodePrintf = " %-3s";
+			if (atomCode.length()==4 || atomType.length()==2) {
+				atomCodePrintf = "%-4s";
+			}
+			String resSerPrintf = "%4d ";
+			if (usePdbResSer) {
+				resSerPrintf = "%4s ";
+				if (!Character.isDigit(pdbresser.charAt(pdbresser.length()-1))) {
+					resSerPrintf = "%5s";
+				}
+			}
+			String printfStr = lineType+"%5d "+atomCodePrintf+" %3s %1s"+resSerPrintf+"   %8.3f%8.3f%8.3f%6.2f%6.2f          %2s\n";
+			sb.append(String.format(Locale.US, printfStr,
+					atomser, atomCode, res, chainCode, usePdbResSer?pdbresser:resser,
+					coords.x, coords.y, coords.z, atom.getOccupancy(), atom.getBfactor(), atomType));
+		}
+		if (!chain.isNonPolyChain()) sb.append("TER\n");
+		return sb.toString();
+	}
+}
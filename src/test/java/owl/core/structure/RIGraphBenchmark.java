@@ -0,0 +1,57 @@
+package owl.core.structure;
+
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import owl.core.structure.graphs.RIGraph;
+import owl.tests.TestsSetup;
+
+/**
+ * JMH benchmark of the residue interaction graph calculation ({@link PdbChain#getRIGraph(String, double)})
+ * for some of the contact types.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class RIGraphBenchmark {
+
+	private static final String TESTDATADIR = "/owl/core/structure";
+	private static final String PDBFILE = TESTDATADIR+"/1tdrA.pdb";
+
+	// contact type and cutoff, separated by ':'
+	@Param({"Ca:8.0","Cb:8.0","ALL:4.5","BB/SC:4.5"})
+	public String ctAndCutoff;
+
+	private PdbChain chain;
+	private String ct;
+	private double cutoff;
+
+	@Setup
+	public void setUp() throws Exception {
+		File pdbFile = TestsSetup.inputStreamToTempFile(RIGraphBenchmark.class.getResourceAsStream(PDBFILE), "RIGraphBenchmark", ".pdb");
+		chain = new PdbAsymUnit(pdbFile).getFirstChain();
+		ct = ctAndCutoff.split(":")[0];
+		cutoff = Double.parseDouble(ctAndCutoff.split(":")[1]);
+	}
+
+	@Benchmark
+	public RIGraph getRIGraph() {
+		return chain.getRIGraph(ct, cutoff);
+	}
+
+}
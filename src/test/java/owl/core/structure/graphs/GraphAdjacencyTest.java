@@ -0,0 +1,90 @@
+package owl.core.structure.graphs;
+
+import java.io.File;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import owl.core.structure.PdbAsymUnit;
+import owl.core.structure.PdbChain;
+import owl.tests.TestsSetup;
+
+public class GraphAdjacencyTest {
+
+	private static final String PDBFILE = "/owl/core/structure/1tdrA.pdb";
+
+	/**
+	 * The merge and the bitset intersections, serial and in parallel, must give the same
+	 * results, and the common neighbourhood sizes must be those of the RIGraph.
+	 * @throws Exception
+	 */
+	@Test
+	public void testVsRIGraph() throws Exception {
+		File pdbFile = TestsSetup.inputStreamToTempFile(GraphAdjacencyTest.class.getResourceAsStream(PDBFILE), "GraphAdjacencyTest", ".pdb");
+		PdbChain chain = new PdbAsymUnit(pdbFile).getChain("A");
+
+		String[] cts = {"Cb", "ALL", "Ca"};
+		double[] cutoffs = {8.0, 4.5, 15.0};
+		for (int c=0;c<cts.length;c++) {
+			for (boolean directed:new boolean[]{false,true}) {
+				RIGraph graph = chain.getRIGraph(cts[c], cutoffs[c], directed);
+				GraphAdjacency merge = new GraphAdjacency(graph, false);
+				GraphAdjacency bits = new GraphAdjacency(graph, true);
+				GraphAdjacency parallel = new GraphAdjacency(graph);
+				parallel.setNumThreads(3);
+
+				int[][] sizes = merge.getAllCommonNbhSizes();
+				Assert.assertArrayEquals(sizes, bits.getAllCommonNbhSizes());
+				Assert.assertArrayEquals(sizes, parallel.getAllCommonNbhSizes());
+				int numPairs = 0;
+				for (int i:graph.getSerials()) {
+					for (int j:graph.getSerials()) {
+						if (i>=j) continue;
+						int size = graph.getCommonNbhood(graph.getNodeFromSerial(i), graph.getNodeFromSerial(j)).size();
+						Assert.assertEquals(size, merge.getCommonNbhSize(i, j));
+						Assert.assertEquals(size, bits.getCommonNbhSize(i, j));
+						if (size>0) {
+							Assert.assertEquals(i, sizes[0][numPairs]);
+							Assert.assertEquals(j, sizes[1][numPairs]);
+							Assert.assertEquals(size, sizes[2][numPairs]);
+							numPairs++;
+						}
+					}
+				}
+				Assert.assertEquals(numPairs, sizes[0].length);
+
+				int[][] triangles = merge.getTriangles();
+				Assert.assertArrayEquals(triangles, bits.getTriangles());
+				Assert.assertArrayEquals(triangles, parallel.getTriangles());
+				Assert.assertEquals(triangles[0].length, bits.getTriangleCount());
+				Assert.assertEquals(triangles[0].length, graph.getTriangles().size());
+
+				int[][] triplets = merge.getTriplets();
+				Assert.assertArrayEquals(triplets, bits.getTriplets());
+				Assert.assertArrayEquals(triplets, parallel.getTriplets());
+				Assert.assertEquals(triplets[0].length, merge.getTripletCount());
+				Assert.assertEquals(triplets[0].length, graph.getTriplets().size());
+			}
+		}
+	}
+
+	@Test
+	public void testTriangles() {
+		// a square 1-2-3-4 with diagonal 1-3 and a tail 4-5
+		RIGraph graph = new RIGraph("ACDEF");
+		graph.addEdgeIJ(1, 2);
+		graph.addEdgeIJ(2, 3);
+		graph.addEdgeIJ(3, 4);
+		graph.addEdgeIJ(4, 1);
+		graph.addEdgeIJ(1, 3);
+		graph.addEdgeIJ(4, 5);
+		GraphAdjacency adj = new GraphAdjacency(graph);
+		Assert.assertArrayEquals(new int[][]{{1, 1}, {2, 3}, {3, 4}}, adj.getTriangles());
+		Assert.assertEquals(2, adj.getCommonNbhSize(2, 4));
+		Assert.assertEquals(0, adj.getCommonNbhSize(2, 6));
+		Assert.assertEquals(3, adj.getDegree(4));
+		// the 2 triangles and the paths 2-1-4, 2-3-4, 1-4-5, 3-4-5
+		Assert.assertEquals(6, adj.getTripletCount());
+		Assert.assertEquals(6, graph.getTriplets().size());
+	}
+}
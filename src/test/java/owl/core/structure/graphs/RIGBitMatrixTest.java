@@ -0,0 +1,84 @@
+package owl.core.structure.graphs;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class RIGBitMatrixTest {
+
+	/**
+	 * Every cell must map to a bit from which we get back the cell and be counted in its band.
+	 */
+	@Test
+	public void testCells() {
+		int size = 13;
+		for (boolean directed:new boolean[]{false,true}) {
+			RIGBitMatrix bits = new RIGBitMatrix(size, directed);
+			int count = 0;
+			for (int i=1;i<=size;i++) {
+				for (int j=1;j<=size;j++) {
+					if (i==j || (!directed && i>j)) continue;
+					Assert.assertTrue(bits.addEdgeIJ(i, j));
+					Assert.assertFalse(bits.addEdgeIJ(i, j));
+					count++;
+				}
+			}
+			Assert.assertEquals(count, bits.getEdgeCount());
+			int seen = 0;
+			for (int index=bits.nextEdgeIndex(0);index>=0;index=bits.nextEdgeIndex(index+1)) {
+				int i = bits.getI(index);
+				int j = bits.getJ(index);
+				Assert.assertTrue(bits.containsEdgeIJ(i, j));
+				Assert.assertTrue(directed || i<j);
+				seen++;
+			}
+			Assert.assertEquals(count, seen);
+			for (int minSeqSep=1;minSeqSep<=size;minSeqSep++) {
+				int inBands = (size-minSeqSep)*(size-minSeqSep+1)/2;
+				Assert.assertEquals(directed?2*inBands:inBands, bits.getEdgeCount(minSeqSep));
+			}
+		}
+	}
+
+	@Test
+	public void testCounts() {
+		RIGBitMatrix a = new RIGBitMatrix(100, false);
+		RIGBitMatrix b = new RIGBitMatrix(100, false);
+		a.addEdgeIJ(1, 2);
+		a.addEdgeIJ(10, 50);
+		a.addEdgeIJ(70, 20);
+		b.addEdgeIJ(50, 10);
+		b.addEdgeIJ(20, 70);
+		b.addEdgeIJ(99, 100);
+		Assert.assertTrue(a.containsEdgeIJ(20, 70));
+		Assert.assertFalse(a.containsEdgeIJ(0, 70));
+		Assert.assertEquals(2, a.getCommonEdgeCount(b, 1));
+		Assert.assertEquals(1, a.getCommonEdgeCount(b, 41));
+		Assert.assertEquals(1, a.getOnlyThisEdgeCount(b, 1));
+		Assert.assertEquals(0, a.getOnlyThisEdgeCount(b, 2));
+		RIGBitMatrix union = a.copy();
+		union.or(b);
+		Assert.assertEquals(4, union.getEdgeCount());
+		union.andNot(a);
+		Assert.assertEquals(1, union.getEdgeCount());
+		Assert.assertTrue(union.containsEdgeIJ(99, 100));
+	}
+
+	/**
+	 * The evaluation of a prediction must match the direct count of common edges.
+	 */
+	@Test
+	public void testEvaluatePrediction() {
+		RIGraph orig = new RIGraph("ACDEFGHIKL");
+		RIGraph pred = new RIGraph("ACDEFGHIKL");
+		int[][] origEdges = {{1,5},{2,8},{3,4},{6,10}};
+		int[][] predEdges = {{1,5},{3,4},{2,9},{7,10}};
+		for (int[] e:origEdges) orig.addEdgeIJ(e[0], e[1]);
+		for (int[] e:predEdges) pred.addEdgeIJ(e[0], e[1]);
+		GraphComparisonResult eval = pred.evaluatePrediction(orig, 2);
+		Assert.assertEquals(1, eval.TruePos);
+		Assert.assertEquals(2, eval.FalsePos);
+		Assert.assertEquals(2, eval.FalseNeg);
+		Assert.assertEquals(2, pred.evaluatePrediction(orig, 1).TruePos);
+		Assert.assertEquals(2, pred.getCommonEdgesCount(orig));
+	}
+}
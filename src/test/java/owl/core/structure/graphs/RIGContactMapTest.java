@@ -0,0 +1,82 @@
+package owl.core.structure.graphs;
+
+import java.io.File;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import owl.core.structure.PdbAsymUnit;
+import owl.core.structure.PdbChain;
+import owl.tests.TestsSetup;
+
+import edu.uci.ics.jung.graph.util.Pair;
+
+public class RIGContactMapTest {
+
+	private static final String PDBFILE = "/owl/core/structure/1tdrA.pdb";
+
+	/**
+	 * The contact maps from a chain must have the same nodes and edges as the RIGraphs,
+	 * also after conversion to a RIGraph.
+	 * @throws Exception
+	 */
+	@Test
+	public void testContactMapVsRIGraph() throws Exception {
+		File pdbFile = TestsSetup.inputStreamToTempFile(RIGContactMapTest.class.getResourceAsStream(PDBFILE), "RIGContactMapTest", ".pdb");
+		PdbChain chain = new PdbAsymUnit(pdbFile).getChain("A");
+
+		String[] cts = {"Cb", "ALL", "BB/SC"};
+		double[] cutoffs = {8.0, 4.5, 4.5};
+		for (int c=0;c<cts.length;c++) {
+			for (boolean directed:new boolean[]{false,true}) {
+				RIGraph graph = chain.getRIGraph(cts[c], cutoffs[c], directed);
+				RIGContactMap cm = chain.getContactMap(cts[c], cutoffs[c], directed);
+				checkSameGraph(graph, cm);
+				checkSameGraph(cm.toRIGraph(), cm);
+				checkSameGraph(graph, RIGContactMap.fromRIGraph(graph));
+			}
+		}
+	}
+
+	private void checkSameGraph(RIGraph graph, RIGContactMap cm) {
+		Assert.assertEquals(graph.getVertexCount(), cm.getNodeCount());
+		Assert.assertEquals(graph.getEdgeCount(), cm.getEdgeCount());
+		for (int serial:graph.getSerials()) {
+			RIGNode node = graph.getNodeFromSerial(serial);
+			Assert.assertTrue(cm.containsVertexI(serial));
+			Assert.assertEquals(node.getResidueType(), cm.getResidueType(serial));
+			Assert.assertEquals(cm.isDirected()?graph.getSuccessorCount(node):graph.getNeighborCount(node), cm.getDegree(serial));
+		}
+		for (RIGEdge edge:graph.getEdges()) {
+			Pair<RIGNode> pair = graph.getEndpoints(edge);
+			int i = pair.getFirst().getResidueSerial();
+			int j = pair.getSecond().getResidueSerial();
+			Assert.assertTrue(cm.containsEdgeIJ(i, j));
+			Assert.assertEquals(edge.getAtomWeight(), cm.getAtomWeight(i, j));
+			Assert.assertEquals(edge.getDistance(), cm.getDistance(i, j), 0.0001);
+			if (!cm.isDirected()) {
+				Assert.assertTrue(cm.containsEdgeIJ(j, i));
+				Assert.assertEquals(graph.getCommonNbhood(pair.getFirst(), pair.getSecond()).size(), cm.getCommonNbhSize(i, j));
+			}
+		}
+	}
+
+	@Test
+	public void testMergeContacts() {
+		int[] serials = {3, 1, 2, 5};
+		int[] iSerials = {1, 2, 2, 3, 3};
+		int[] jSerials = {2, 1, 1, 3, 5};
+		float[] distances = {4.0f, 3.5f, 5.0f, 1.0f, 6.0f};
+		RIGContactMap cm = new RIGContactMap(serials, null, false, iSerials.length, iSerials, jSerials, null, distances, null);
+		Assert.assertArrayEquals(new int[]{1, 2, 3, 5}, cm.getSerials());
+		Assert.assertEquals(2, cm.getEdgeCount());
+		Assert.assertEquals(3, cm.getAtomWeight(1, 2));
+		Assert.assertEquals(3, cm.getAtomWeight(2, 1));
+		Assert.assertEquals(3.5f, cm.getDistance(1, 2), 0);
+		Assert.assertFalse(cm.containsEdgeIJ(3, 3));
+		Assert.assertFalse(cm.containsEdgeIJ(1, 4));
+		Assert.assertArrayEquals(new int[]{3}, cm.getNeighbors(5));
+		Assert.assertEquals(0, cm.getDegree(4));
+		Assert.assertTrue(Float.isNaN(cm.getWeight(1, 2)));
+	}
+}
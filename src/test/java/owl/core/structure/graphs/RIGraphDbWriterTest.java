@@ -0,0 +1,323 @@
+package owl.core.structure.graphs;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Savepoint;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeMap;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import edu.uci.ics.jung.graph.util.EdgeType;
+
+public class RIGraphDbWriterTest {
+
+	private static final String DB = "test_graphs";
+
+	/**
+	 * A stand-in for a JDBC connection to a graph database: records the rows inserted in
+	 * single_model_node and single_model_edge, the number of statements executed and the commits,
+	 * assigns consecutive auto increment ids and answers the graph info queries.
+	 * Rolling back (to a savepoint) discards the rows inserted since the commit (the savepoint).
+	 */
+	private static class FakeDb implements InvocationHandler {
+
+		List<Object[]> nodes = new ArrayList<Object[]>();
+		List<Object[]> edges = new ArrayList<Object[]>();
+		int numNodeInserts = 0;
+		int numEdgeInserts = 0;
+		int numEdgeBatches = 0;
+		int numCommits = 0;
+		int numRollbacks = 0;
+		boolean autoCommit = true;
+		int lastInsertId = 0;
+		int nextId = 1;
+		boolean failEdges = false;		// the edge INSERTs that are not batched fail
+		boolean failCommit = false;
+		int[] committed = {0, 0};		// the number of nodes and edges at the last commit
+
+		Connection getConnection() {
+			return (Connection) proxy(Connection.class, this);
+		}
+
+		private static Object proxy(Class<?> iface, InvocationHandler handler) {
+			return Proxy.newProxyInstance(RIGraphDbWriterTest.class.getClassLoader(), new Class<?>[]{iface}, handler);
+		}
+
+		public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+			String name = method.getName();
+			if (name.equals("prepareStatement")) {
+				return proxy(PreparedStatement.class, new FakeStatement((String) args[0]));
+			} else if (name.equals("createStatement")) {
+				return proxy(Statement.class, new FakeStatement(null));
+			} else if (name.equals("getAutoCommit")) {
+				return autoCommit;
+			} else if (name.equals("setAutoCommit")) {
+				autoCommit = (Boolean) args[0];
+			} else if (name.equals("commit")) {
+				if (failCommit) throw new SQLException("Fake commit failure");
+				numCommits++;
+				committed = new int[]{nodes.size(), edges.size()};
+			} else if (name.equals("setSavepoint")) {
+				return proxy(Savepoint.class, new SavepointSizes(nodes.size(), edges.size()));
+			} else if (name.equals("rollback")) {
+				numRollbacks++;
+				int[] sizes = args==null?committed:((SavepointSizes) Proxy.getInvocationHandler(args[0])).sizes;
+				nodes.subList(sizes[0], nodes.size()).clear();
+				edges.subList(sizes[1], edges.size()).clear();
+			}
+			return null;
+		}
+
+		private class SavepointSizes implements InvocationHandler {
+			int[] sizes;
+			SavepointSizes(int numNodes, int numEdges) {
+				this.sizes = new int[]{numNodes, numEdges};
+			}
+			public Object invoke(Object proxy, Method method, Object[] args) {
+				return null;
+			}
+		}
+
+		private int insert(String sql, Object[] params) throws SQLException {
+			String table = sql.substring(sql.indexOf('.')+1, sql.indexOf(' ', sql.indexOf('.')));
+			int numColumns = sql.substring(sql.indexOf('(')+1, sql.indexOf(')')).split(",").length;
+			List<Object[]> rows = table.equals("single_model_node")?nodes:edges;
+			if (table.equals("single_model_node")) numNodeInserts++; else numEdgeInserts++;
+			int numRows = params.length/numColumns;
+			for (int r=0;r<numRows;r++) {
+				Object[] row = new Object[numColumns];
+				System.arraycopy(params, r*numColumns, row, 0, numColumns);
+				rows.add(row);
+			}
+			lastInsertId = nextId;
+			nextId += numRows;
+			return numRows;
+		}
+
+		private ResultSet resultSet(final int[] values) {
+			return (ResultSet) proxy(ResultSet.class, new InvocationHandler() {
+				int row = -1;
+				public Object invoke(Object proxy, Method method, Object[] args) {
+					if (method.getName().equals("next")) return ++row<values.length;
+					if (method.getName().equals("getInt")) return values[row];
+					return null;
+				}
+			});
+		}
+
+		private class FakeStatement implements InvocationHandler {
+			String sql;
+			TreeMap<Integer,Object> params = new TreeMap<Integer, Object>();
+			List<Object[]> batch = new ArrayList<Object[]>();
+			int firstId;
+			int numRows;
+
+			FakeStatement(String sql) {
+				this.sql = sql;
+			}
+
+			public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+				String name = method.getName();
+				if (name.equals("setObject")) {
+					params.put((Integer) args[0], args[1]);
+				} else if (name.equals("setNull")) {
+					params.put((Integer) args[0], null);
+				} else if (name.equals("clearBatch")) {
+					batch.clear();
+				} else if (name.equals("clearParameters")) {
+					params.clear();
+				} else if (name.equals("addBatch")) {
+					batch.add(params.values().toArray());
+					params.clear();
+				} else if (name.equals("executeBatch")) {
+					numEdgeBatches++;
+					int[] counts = new int[batch.size()];
+					for (int b=0;b<batch.size();b++) counts[b] = insert(sql, batch.get(b));
+					batch.clear();
+					return counts;
+				} else if (name.equals("executeUpdate")) {
+					String s = args==null?sql:(String) args[0];
+					if (failEdges && s.contains("single_model_edge")) throw new SQLException("Fake failure");
+					if (s.contains("single_model_node") || s.contains("single_model_edge")) {
+						firstId = nextId;
+						numRows = insert(s, params.values().toArray());
+						params.clear();
+						return numRows;
+					}
+					lastInsertId = nextId++;	// chain_graph or single_model_graph
+					return 1;
+				} else if (name.equals("executeQuery")) {
+					String s = (String) args[0];
+					if (s.contains("LAST_INSERT_ID()")) return resultSet(new int[]{lastInsertId});
+					return resultSet(new int[]{});
+				} else if (name.equals("getGeneratedKeys")) {
+					int[] ids = new int[numRows];
+					for (int i=0;i<numRows;i++) ids[i] = firstId+i;
+					return resultSet(ids);
+				} else if (name.equals("isWrapperFor")) {
+					return false;
+				}
+				return null;
+			}
+		}
+	}
+
+	private static RIGraph getGraph(boolean directed) {
+		RIGraph graph = new RIGraph("ACDEFGHIKLMNPQRSTVWY");
+		graph.setPdbCode("1abc");
+		graph.setChainCode("A");
+		graph.setPdbChainCode("A");
+		graph.setContactType("Ca");
+		graph.setCutoff(8.0);
+		for (int i=1;i<=20;i++) {
+			for (int j=i+2;j<=20;j+=3) {
+				graph.addEdge(new RIGEdge(), graph.getNodeFromSerial(i), graph.getNodeFromSerial(j),
+						directed?EdgeType.DIRECTED:EdgeType.UNDIRECTED);
+			}
+		}
+		return graph;
+	}
+
+	/**
+	 * All nodes and edges must be written, the edges referencing the node ids of their residues,
+	 * in INSERTs of at most the rows per insert.
+	 * @throws Exception
+	 */
+	@Test
+	public void testWrite() throws Exception {
+		for (boolean directed:new boolean[]{false,true}) {
+			FakeDb fake = new FakeDb();
+			RIGraphDbWriter writer = new RIGraphDbWriter(fake.getConnection(), DB);
+			writer.setRowsPerInsert(7);
+			RIGraph graph = getGraph(directed);
+			writer.write(graph);
+			writer.close();
+
+			int numEdgeRows = directed?graph.getEdgeCount():2*graph.getEdgeCount();
+			Assert.assertEquals(20, fake.nodes.size());
+			Assert.assertEquals(numEdgeRows, fake.edges.size());
+			Assert.assertEquals(3, fake.numNodeInserts);
+			Assert.assertEquals((numEdgeRows+6)/7, fake.numEdgeInserts);
+			Assert.assertEquals(1, fake.numEdgeBatches);
+			Assert.assertEquals(1, fake.numCommits);
+			Assert.assertTrue(fake.autoCommit);
+
+			TreeMap<Integer,Integer> nodeId2resser = new TreeMap<Integer, Integer>();
+			for (Object[] node:fake.nodes) {
+				Assert.assertEquals(14, node.length);
+				Assert.assertEquals("A", node[1]);
+				// node ids were assigned in order of insertion after the 2 graph info rows
+				nodeId2resser.put(nodeId2resser.size()+3, (Integer) node[2]);
+				int k = graph.degree(graph.getNodeFromSerial((Integer) node[2]));
+				if (directed) {
+					Assert.assertEquals(k, ((Integer) node[9]+(Integer) node[10]));
+				} else {
+					Assert.assertEquals(k, node[8]);
+					Assert.assertNull(node[9]);
+				}
+			}
+			for (Object[] edge:fake.edges) {
+				Assert.assertEquals(20, edge.length);
+				Assert.assertEquals(edge[3], nodeId2resser.get(edge[1]));
+				Assert.assertEquals(edge[11], nodeId2resser.get(edge[9]));
+				Assert.assertTrue(graph.containsEdgeIJ((Integer) edge[3], (Integer) edge[11]));
+			}
+		}
+	}
+
+	/**
+	 * Graphs must be committed in groups of the graphs per transaction.
+	 * @throws Exception
+	 */
+	@Test
+	public void testTransactions() throws Exception {
+		FakeDb fake = new FakeDb();
+		RIGraphDbWriter writer = new RIGraphDbWriter(fake.getConnection(), DB);
+		writer.setGraphsPerTransaction(3);
+		for (int i=0;i<7;i++) {
+			writer.write(getGraph(false), false);
+		}
+		Assert.assertFalse(fake.autoCommit);
+		Assert.assertEquals(2, fake.numCommits);
+		Assert.assertEquals(1, writer.getNumPendingGraphs());
+		Assert.assertEquals(7*20, fake.nodes.size());
+		for (Object[] edge:fake.edges) {
+			Assert.assertEquals(1, edge[17]);
+		}
+		writer.close();
+		Assert.assertEquals(3, fake.numCommits);
+		Assert.assertTrue(fake.autoCommit);
+	}
+
+	/**
+	 * A failing graph with more edges than rows per insert (so that some are batched when the
+	 * failure happens) must roll back only itself: the pending graphs are kept and none of its
+	 * rows are written with the next graph.
+	 * @throws Exception
+	 */
+	@Test
+	public void testFailedGraph() throws Exception {
+		FakeDb fake = new FakeDb();
+		RIGraphDbWriter writer = new RIGraphDbWriter(fake.getConnection(), DB);
+		writer.setGraphsPerTransaction(3);
+		writer.setRowsPerInsert(10);
+		RIGraph graph = getGraph(false);
+		Assert.assertTrue(2*graph.getEdgeCount()>10 && (2*graph.getEdgeCount())%10!=0);
+		writer.write(graph);
+		int numEdgeRows = fake.edges.size();
+
+		fake.failEdges = true;
+		try {
+			writer.write(getGraph(false));
+			Assert.fail("Expected SQLException");
+		} catch (SQLException e) {
+			Assert.assertEquals(1, fake.numRollbacks);
+			Assert.assertEquals(1, writer.getNumPendingGraphs());
+		}
+		Assert.assertEquals(20, fake.nodes.size());
+		Assert.assertEquals(numEdgeRows, fake.edges.size());
+
+		fake.failEdges = false;
+		writer.write(getGraph(false));
+		writer.close();
+		Assert.assertEquals(1, fake.numCommits);
+		Assert.assertEquals(2*20, fake.nodes.size());
+		Assert.assertEquals(2*numEdgeRows, fake.edges.size());
+		// the edges of each graph reference its own graph id and nodes
+		for (int e=0;e<fake.edges.size();e++) {
+			Object[] nodes = fake.nodes.get(e<numEdgeRows?0:20);
+			Assert.assertEquals(nodes[0], fake.edges.get(e)[0]);
+		}
+	}
+
+	/**
+	 * A failing commit must roll back all the pending graphs.
+	 * @throws Exception
+	 */
+	@Test
+	public void testFailedCommit() throws Exception {
+		FakeDb fake = new FakeDb();
+		RIGraphDbWriter writer = new RIGraphDbWriter(fake.getConnection(), DB);
+		writer.setGraphsPerTransaction(2);
+		writer.write(getGraph(false));
+		fake.failCommit = true;
+		try {
+			writer.write(getGraph(false));
+			Assert.fail("Expected SQLException");
+		} catch (SQLException e) {
+			Assert.assertEquals(1, fake.numRollbacks);
+			Assert.assertEquals(0, writer.getNumPendingGraphs());
+		}
+		Assert.assertEquals(0, fake.nodes.size());
+		Assert.assertEquals(0, fake.edges.size());
+	}
+}
@@ -0,0 +1,72 @@
+package owl.core.util;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import javax.vecmath.Point3d;
+import javax.vecmath.Tuple3d;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import owl.core.structure.PdbAsymUnit;
+import owl.core.structure.PdbChain;
+import owl.core.structure.Residue;
+import owl.tests.TestsSetup;
+
+/**
+ * JMH benchmark of the optimal superposition ({@link GeometryTools#calcOptimalSuperposition(Tuple3d[], Tuple3d[], boolean)})
+ * of the CA atoms of the 2 test chains of 1tdr.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class SuperpositionBenchmark {
+
+	private static final String TESTDATADIR = "/owl/core/structure";
+	private static final String PDBFILE_A = TESTDATADIR+"/1tdrA.pdb";
+	private static final String PDBFILE_B = TESTDATADIR+"/1tdrB.pdb";
+
+	private Tuple3d[] conformation1;
+	private Tuple3d[] conformation2;
+
+	@Setup
+	public void setUp() throws Exception {
+		File fileA = TestsSetup.inputStreamToTempFile(SuperpositionBenchmark.class.getResourceAsStream(PDBFILE_A), "SuperpositionBenchmark", ".pdb");
+		File fileB = TestsSetup.inputStreamToTempFile(SuperpositionBenchmark.class.getResourceAsStream(PDBFILE_B), "SuperpositionBenchmark", ".pdb");
+		PdbChain chainA = new PdbAsymUnit(fileA).getFirstChain();
+		PdbChain chainB = new PdbAsymUnit(fileB).getFirstChain();
+
+		// the CA atoms of the residues observed in both chains
+		List<Tuple3d> cas1 = new ArrayList<Tuple3d>();
+		List<Tuple3d> cas2 = new ArrayList<Tuple3d>();
+		for (Residue residue:chainA) {
+			if (!residue.containsAtom("CA") || !chainB.containsResidue(residue.getSerial())) continue;
+			Residue other = chainB.getResidue(residue.getSerial());
+			if (!other.containsAtom("CA")) continue;
+			cas1.add(new Point3d(residue.getAtom("CA").getCoords()));
+			cas2.add(new Point3d(other.getAtom("CA").getCoords()));
+		}
+		conformation1 = cas1.toArray(new Tuple3d[cas1.size()]);
+		conformation2 = cas2.toArray(new Tuple3d[cas2.size()]);
+	}
+
+	@Benchmark
+	public OptSuperposition calcOptimalSuperposition() {
+		return GeometryTools.calcOptimalSuperposition(conformation1, conformation2, false);
+	}
+
+}